@@ -0,0 +1,92 @@
+package io.lock.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * 对比两次JMH结果(-rf json), 任何一项比基线差超过阈值时以非0状态退出, 用于升级前发现性能退化.
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar -rf json -rff baseline.json     # 记录基线
+ * java -jar benchmarks/target/benchmarks.jar -rf json -rff current.json
+ * java -cp benchmarks/target/benchmarks.jar io.lock.benchmark.BaselineComparator baseline.json current.json [0.10]
+ * </pre>
+ * 吞吐量(thrpt)越高越好, 其他模式(avgt, sample, ss)越低越好. 只在其中一方出现的项只打印, 不算退化.
+ *
+ * @author lixiaohui
+ *
+ */
+public class BaselineComparator {
+
+	private static final double DEFAULT_THRESHOLD = 0.10;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: BaselineComparator <baseline.json> <current.json> [threshold, default " + DEFAULT_THRESHOLD + "]");
+			System.exit(2);
+		}
+		double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+		Map<String, JSONObject> baseline = load(args[0]);
+		Map<String, JSONObject> current = load(args[1]);
+		int regressions = 0;
+		for (Map.Entry<String, JSONObject> entry : current.entrySet()) {
+			JSONObject base = baseline.get(entry.getKey());
+			JSONObject now = entry.getValue();
+			JSONObject metric = now.getJSONObject("primaryMetric");
+			if (base == null) {
+				System.out.printf("%-70s %14.3f %s (new)%n", entry.getKey(), metric.getDoubleValue("score"), metric.getString("scoreUnit"));
+				continue;
+			}
+			double before = base.getJSONObject("primaryMetric").getDoubleValue("score");
+			double after = metric.getDoubleValue("score");
+			// 正数表示变好
+			double change = "thrpt".equals(now.getString("mode")) ? (after - before) / before : (before - after) / before;
+			boolean regressed = change < -threshold;
+			if (regressed) {
+				regressions++;
+			}
+			System.out.printf("%-70s %14.3f -> %14.3f %s %+7.1f%%%s%n", entry.getKey(), before, after, metric.getString("scoreUnit"), change * 100, regressed ? "  REGRESSION" : "");
+		}
+		for (String key : baseline.keySet()) {
+			if (!current.containsKey(key)) {
+				System.out.printf("%-70s (missing)%n", key);
+			}
+		}
+		if (regressions > 0) {
+			System.out.printf("%d benchmark(s) regressed more than %.0f%%%n", regressions, threshold * 100);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @return benchmark(含参数) -> 结果
+	 */
+	private static Map<String, JSONObject> load(String path) throws IOException {
+		String json = new String(Files.readAllBytes(new File(path).toPath()), Charset.forName("UTF-8"));
+		JSONArray results = JSON.parseArray(json);
+		Map<String, JSONObject> byName = new LinkedHashMap<String, JSONObject>();
+		for (int i = 0; i < results.size(); i++) {
+			JSONObject result = results.getJSONObject(i);
+			StringBuilder name = new StringBuilder(result.getString("benchmark"));
+			JSONObject params = result.getJSONObject("params");
+			if (params != null) {
+				// 参数顺序固定
+				for (Map.Entry<String, Object> param : new TreeMap<String, Object>(params).entrySet()) {
+					name.append(':').append(param.getKey()).append('=').append(param.getValue());
+				}
+			}
+			name.append(" [").append(result.getString("mode")).append(", threads=").append(result.getIntValue("threads")).append(']');
+			byName.put(name.toString(), result);
+		}
+		return byName;
+	}
+
+}
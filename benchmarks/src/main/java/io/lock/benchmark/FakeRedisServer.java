@@ -0,0 +1,515 @@
+package io.lock.benchmark;
+
+import io.lock.Releasable;
+import io.lock.redis.util.LockScripts;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 进程内的redis协议替身, 使benchmark不依赖外部的redis server, 结果可在离线环境复现.
+ * <p>
+ * 只实现锁的热路径用到的命令: {@link LockScripts#ACQUIRE}, {@link LockScripts#RELEASE}, {@link LockScripts#RENEW} 三个脚本(以Java实现, 按sha1识别),
+ * 以及 PING, EXISTS, HEXISTS, PTTL, DEL, TIME, SUBSCRIBE, UNSUBSCRIBE, PUBLISH. 其他脚本返回错误.
+ * 所有数据由一把锁保护, 与redis的单线程执行模型一致; 每个连接一个线程, 支持pipeline.
+ * </p>
+ * 结果只反映客户端的开销(编码, 本地重入, 连接池, 通知)与一次loopback往返, 不代表真实redis的脚本执行开销.
+ *
+ * @author lixiaohui
+ *
+ */
+public class FakeRedisServer implements Releasable {
+
+	private static final Logger logger = LoggerFactory.getLogger(FakeRedisServer.class);
+
+	private static final Charset BINARY = Charset.forName("ISO-8859-1");
+
+	private static final byte[] CRLF = { '\r', '\n' };
+
+	private static final byte[] OK = "+OK\r\n".getBytes(BINARY);
+	private static final byte[] PONG = "+PONG\r\n".getBytes(BINARY);
+	private static final byte[] NIL = "$-1\r\n".getBytes(BINARY);
+
+	// 已在命令执行中直接写出回复(订阅类命令)
+	private static final Object NO_REPLY = new Object();
+
+	private final ServerSocket serverSocket;
+
+	private final Thread acceptor;
+
+	// key -> hash, 二进制的key/field以 ISO-8859-1 字符串表示
+	private final Map<String, Hash> data = new HashMap<String, Hash>();
+
+	private final Map<String, Set<Connection>> subscribers = new HashMap<String, Set<Connection>>();
+
+	private volatile boolean closed;
+
+	public FakeRedisServer() throws IOException {
+		serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+		acceptor = new Thread(new Runnable() {
+			public void run() {
+				acceptLoop();
+			}
+		}, "fake-redis-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	public String getHost() {
+		return serverSocket.getInetAddress().getHostAddress();
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	public void release() {
+		closed = true;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	private void acceptLoop() {
+		while (!closed) {
+			try {
+				final Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				Thread t = new Thread(new Runnable() {
+					public void run() {
+						new Connection(socket).serve();
+					}
+				}, "fake-redis-connection");
+				t.setDaemon(true);
+				t.start();
+			} catch (IOException e) {
+				if (!closed) {
+					logger.warn("accept failed", e);
+				}
+			}
+		}
+	}
+
+	// ------------------- commands ------------------------
+
+	private synchronized Hash live(String key) {
+		Hash hash = data.get(key);
+		if (hash != null && hash.expireAt - System.nanoTime() <= 0) {
+			data.remove(key);
+			return null;
+		}
+		return hash;
+	}
+
+	/**
+	 * 与 {@link LockScripts#ACQUIRE} 相同
+	 */
+	private synchronized Object acquire(String key, long lease, long inc, String owner) {
+		Hash hash = live(key);
+		if (hash == null) {
+			hash = new Hash();
+			hash.fields.put(owner, 1L);
+			hash.expire(lease);
+			data.put(key, hash);
+			return null;
+		}
+		Long count = hash.fields.get(owner);
+		if (count != null) {
+			hash.fields.put(owner, count + inc);
+			hash.expire(lease);
+			return null;
+		}
+		return hash.pttl();
+	}
+
+	/**
+	 * 与 {@link LockScripts#RELEASE} 相同
+	 */
+	private synchronized Object release(String key, String channel, String owner) {
+		Hash hash = live(key);
+		if (hash == null) {
+			return null;
+		}
+		Long count = hash.fields.get(owner);
+		if (count == null) {
+			return -1L;
+		}
+		if (count > 1) {
+			hash.fields.put(owner, count - 1);
+			return count - 1;
+		}
+		data.remove(key);
+		publish(channel, "0");
+		return 0L;
+	}
+
+	/**
+	 * 与 {@link LockScripts#RENEW} 相同
+	 */
+	private synchronized Object renew(String key, long lease, String owner) {
+		Hash hash = live(key);
+		if (hash == null || !hash.fields.containsKey(owner)) {
+			return 0L;
+		}
+		hash.expire(lease);
+		return 1L;
+	}
+
+	private synchronized long publish(String channel, String message) {
+		Set<Connection> connections = subscribers.get(channel);
+		if (connections == null) {
+			return 0;
+		}
+		for (Connection connection : connections) {
+			connection.message(channel, message);
+		}
+		return connections.size();
+	}
+
+	private Object evalsha(String sha1, List<String> args) {
+		int keyCount = Integer.parseInt(args.get(1));
+		List<String> keys = args.subList(2, 2 + keyCount);
+		List<String> argv = args.subList(2 + keyCount, args.size());
+		if (sha1.equals(LockScripts.ACQUIRE.getSha1())) {
+			return acquire(keys.get(0), Long.parseLong(argv.get(0)), Long.parseLong(argv.get(1)), argv.get(2));
+		}
+		if (sha1.equals(LockScripts.RELEASE.getSha1())) {
+			return release(keys.get(0), keys.get(1), argv.get(0));
+		}
+		if (sha1.equals(LockScripts.RENEW.getSha1())) {
+			return renew(keys.get(0), Long.parseLong(argv.get(0)), argv.get(1));
+		}
+		return new Error("NOSCRIPT No matching script (not supported by FakeRedisServer)");
+	}
+
+	private Object execute(Connection connection, List<String> args) {
+		String command = args.get(0).toUpperCase();
+		if ("EVALSHA".equals(command)) {
+			return evalsha(args.get(1).toLowerCase(), args.subList(1, args.size()));
+		}
+		if ("PING".equals(command)) {
+			return PONG;
+		}
+		if ("EXISTS".equals(command)) {
+			return live(args.get(1)) == null ? 0L : 1L;
+		}
+		if ("HEXISTS".equals(command)) {
+			synchronized (this) {
+				Hash hash = live(args.get(1));
+				return hash != null && hash.fields.containsKey(args.get(2)) ? 1L : 0L;
+			}
+		}
+		if ("PTTL".equals(command)) {
+			synchronized (this) {
+				Hash hash = live(args.get(1));
+				return hash == null ? -2L : hash.pttl();
+			}
+		}
+		if ("DEL".equals(command)) {
+			long deleted = 0;
+			synchronized (this) {
+				for (String key : args.subList(1, args.size())) {
+					if (live(key) != null) {
+						data.remove(key);
+						deleted++;
+					}
+				}
+			}
+			return deleted;
+		}
+		if ("TIME".equals(command)) {
+			long micros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+			List<String> time = new ArrayList<String>();
+			time.add(String.valueOf(micros / 1000000));
+			time.add(String.valueOf(micros % 1000000));
+			return time;
+		}
+		if ("SCRIPT".equals(command) && args.size() == 3 && "LOAD".equalsIgnoreCase(args.get(1))) {
+			return sha1Hex(args.get(2).getBytes(BINARY));
+		}
+		if ("PUBLISH".equals(command)) {
+			return publish(args.get(1), args.get(2));
+		}
+		if ("SUBSCRIBE".equals(command)) {
+			for (String channel : args.subList(1, args.size())) {
+				subscribe(connection, channel);
+			}
+			return NO_REPLY;
+		}
+		if ("UNSUBSCRIBE".equals(command)) {
+			unsubscribe(connection, args.subList(1, args.size()));
+			return NO_REPLY;
+		}
+		if ("QUIT".equals(command) || "SELECT".equals(command)) {
+			return OK;
+		}
+		return new Error("ERR unknown command '" + args.get(0) + "'");
+	}
+
+	private synchronized void subscribe(Connection connection, String channel) {
+		Set<Connection> connections = subscribers.get(channel);
+		if (connections == null) {
+			connections = new LinkedHashSet<Connection>();
+			subscribers.put(channel, connections);
+		}
+		if (connections.add(connection)) {
+			connection.channels.add(channel);
+		}
+		connection.subscriptionReply("subscribe", channel);
+	}
+
+	private synchronized void unsubscribe(Connection connection, List<String> channels) {
+		List<String> targets = channels.isEmpty() ? new ArrayList<String>(connection.channels) : channels;
+		if (targets.isEmpty()) {
+			connection.subscriptionReply("unsubscribe", null);
+			return;
+		}
+		for (String channel : targets) {
+			Set<Connection> connections = subscribers.get(channel);
+			if (connections != null) {
+				connections.remove(connection);
+				if (connections.isEmpty()) {
+					subscribers.remove(channel);
+				}
+			}
+			connection.channels.remove(channel);
+			connection.subscriptionReply("unsubscribe", channel);
+		}
+	}
+
+	private synchronized void disconnected(Connection connection) {
+		for (String channel : connection.channels) {
+			Set<Connection> connections = subscribers.get(channel);
+			if (connections != null) {
+				connections.remove(connection);
+				if (connections.isEmpty()) {
+					subscribers.remove(channel);
+				}
+			}
+		}
+		connection.channels.clear();
+	}
+
+	private static String sha1Hex(byte[] source) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(source);
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static class Hash {
+
+		final Map<String, Long> fields = new HashMap<String, Long>(4);
+
+		// System.nanoTime()
+		long expireAt;
+
+		void expire(long lease) {
+			expireAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lease);
+		}
+
+		long pttl() {
+			return Math.max(TimeUnit.NANOSECONDS.toMillis(expireAt - System.nanoTime()), 0);
+		}
+
+	}
+
+	/**
+	 * 错误回复
+	 */
+	private static class Error {
+
+		final String message;
+
+		Error(String message) {
+			this.message = message;
+		}
+
+	}
+
+	private class Connection {
+
+		private final Socket socket;
+
+		private InputStream in;
+
+		private OutputStream out;
+
+		// 由 FakeRedisServer.this 保护
+		final Set<String> channels = new HashSet<String>();
+
+		Connection(Socket socket) {
+			this.socket = socket;
+		}
+
+		void serve() {
+			try {
+				in = new BufferedInputStream(socket.getInputStream());
+				out = new BufferedOutputStream(socket.getOutputStream());
+				while (!closed) {
+					List<String> args = readCommand();
+					if (args == null) {
+						break;
+					}
+					Object reply = execute(this, args);
+					synchronized (this) {
+						if (reply != NO_REPLY) {
+							writeReply(reply);
+						}
+						// pipeline 中的命令处理完再一起发送
+						if (in.available() == 0) {
+							out.flush();
+						}
+					}
+					if ("QUIT".equalsIgnoreCase(args.get(0))) {
+						break;
+					}
+				}
+			} catch (IOException e) {
+				// 客户端断开
+			} finally {
+				disconnected(this);
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+
+		synchronized void message(String channel, String message) {
+			try {
+				out.write(("*3\r\n$7\r\nmessage\r\n").getBytes(BINARY));
+				writeBulk(channel);
+				writeBulk(message);
+				out.flush();
+			} catch (IOException e) {
+				// 订阅者已断开
+			}
+		}
+
+		synchronized void subscriptionReply(String kind, String channel) {
+			try {
+				out.write(("*3\r\n$" + kind.length() + "\r\n" + kind + "\r\n").getBytes(BINARY));
+				if (channel == null) {
+					out.write(NIL);
+				} else {
+					writeBulk(channel);
+				}
+				out.write((":" + channels.size() + "\r\n").getBytes(BINARY));
+			} catch (IOException e) {
+				// 订阅者已断开
+			}
+		}
+
+		private List<String> readCommand() throws IOException {
+			int b = in.read();
+			if (b == -1) {
+				return null;
+			}
+			if (b != '*') {
+				throw new IOException("unsupported request: " + (char) b);
+			}
+			int count = (int) readNumber();
+			List<String> args = new ArrayList<String>(count);
+			for (int i = 0; i < count; i++) {
+				if (in.read() != '$') {
+					throw new IOException("bulk string expected");
+				}
+				int length = (int) readNumber();
+				byte[] bytes = new byte[length];
+				int read = 0;
+				while (read < length) {
+					int n = in.read(bytes, read, length - read);
+					if (n == -1) {
+						throw new EOFException();
+					}
+					read += n;
+				}
+				in.read(); // \r
+				in.read(); // \n
+				args.add(new String(bytes, BINARY));
+			}
+			return args;
+		}
+
+		private long readNumber() throws IOException {
+			long value = 0;
+			boolean negative = false;
+			int b;
+			while ((b = in.read()) != '\r') {
+				if (b == -1) {
+					throw new EOFException();
+				}
+				if (b == '-') {
+					negative = true;
+				} else {
+					value = value * 10 + (b - '0');
+				}
+			}
+			in.read(); // \n
+			return negative ? -value : value;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void writeReply(Object reply) throws IOException {
+			if (reply == null) {
+				out.write(NIL);
+			} else if (reply instanceof byte[]) {
+				out.write((byte[]) reply);
+			} else if (reply instanceof Long) {
+				out.write((":" + reply + "\r\n").getBytes(BINARY));
+			} else if (reply instanceof String) {
+				writeBulk((String) reply);
+			} else if (reply instanceof List) {
+				List<String> list = (List<String>) reply;
+				out.write(("*" + list.size() + "\r\n").getBytes(BINARY));
+				for (String s : list) {
+					writeBulk(s);
+				}
+			} else if (reply instanceof Error) {
+				out.write(("-" + ((Error) reply).message + "\r\n").getBytes(BINARY));
+			} else {
+				throw new IllegalStateException("unsupported reply: " + reply);
+			}
+		}
+
+		private void writeBulk(String s) throws IOException {
+			byte[] bytes = s.getBytes(BINARY);
+			out.write(("$" + bytes.length + "\r\n").getBytes(BINARY));
+			out.write(bytes);
+			out.write(CRLF);
+		}
+
+	}
+
+}
@@ -0,0 +1,130 @@
+package io.lock.benchmark;
+
+import io.lock.redis.RedisReentrantLock;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link RedisReentrantLock} 获取/释放的热路径, 每次操作为一次完整的获取与释放.
+ * 线程数可用 -t 覆盖.
+ *
+ * @author lixiaohui
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LockBenchmark {
+
+	private static final int KEY_COUNT = 1024;
+
+	/**
+	 * 每个线程各自的锁, 互不竞争
+	 */
+	@State(Scope.Thread)
+	public static class ThreadLock {
+
+		RedisReentrantLock lock;
+
+		@Setup
+		public void setUp(RedisState redis) {
+			lock = redis.lockManager.getLock("bench.thread." + Thread.currentThread().getId());
+		}
+
+	}
+
+	/**
+	 * 所有线程竞争同一个锁
+	 */
+	@State(Scope.Benchmark)
+	public static class SharedLock {
+
+		RedisReentrantLock lock;
+
+		@Setup
+		public void setUp(RedisState redis) {
+			lock = redis.lockManager.getLock("bench.shared");
+		}
+
+	}
+
+	/**
+	 * 分散在 KEY_COUNT 个 lockKey 上, 线程间偶尔竞争
+	 */
+	@State(Scope.Benchmark)
+	public static class ManyLocks {
+
+		final RedisReentrantLock[] locks = new RedisReentrantLock[KEY_COUNT];
+
+		@Setup
+		public void setUp(RedisState redis) {
+			for (int i = 0; i < KEY_COUNT; i++) {
+				locks[i] = redis.lockManager.getLock("bench.many." + i);
+			}
+		}
+
+	}
+
+	@State(Scope.Thread)
+	public static class Depth {
+
+		@Param({ "1", "8", "64" })
+		int depth;
+
+	}
+
+	@Benchmark
+	@Threads(1)
+	public boolean uncontended(ThreadLock state) {
+		boolean locked = state.lock.tryLock();
+		state.lock.unlock();
+		return locked;
+	}
+
+	/**
+	 * 嵌套获取 depth 次再全部释放, 只有最外层访问redis
+	 */
+	@Benchmark
+	@Threads(1)
+	public void reentrant(ThreadLock state, Depth depth) {
+		RedisReentrantLock lock = state.lock;
+		for (int i = 0; i < depth.depth; i++) {
+			lock.lock();
+		}
+		for (int i = 0; i < depth.depth; i++) {
+			lock.unlock();
+		}
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void contended(SharedLock state) {
+		state.lock.lock();
+		state.lock.unlock();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void manyKeys(ManyLocks state) {
+		RedisReentrantLock lock = state.locks[ThreadLocalRandom.current().nextInt(KEY_COUNT)];
+		lock.lock();
+		lock.unlock();
+	}
+
+}
@@ -0,0 +1,74 @@
+package io.lock.benchmark;
+
+import io.lock.redis.util.BinaryLockInfoCodec;
+import io.lock.redis.util.JsonLockInfoCodec;
+import io.lock.redis.util.LockInfo;
+import io.lock.redis.util.LockInfoCodec;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link LockInfoCodec} 的编码/解码, 不访问redis
+ *
+ * @author lixiaohui
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LockInfoCodecBenchmark {
+
+	@Param({ "binary", "json" })
+	String codecName;
+
+	private LockInfoCodec codec;
+
+	private LockInfo lockInfo;
+
+	private byte[] owner;
+
+	private final LockInfo into = new LockInfo();
+
+	@Setup
+	public void setUp() {
+		codec = "json".equals(codecName) ? JsonLockInfoCodec.INSTANCE : BinaryLockInfoCodec.INSTANCE;
+		lockInfo = new LockInfo().setMac(LockInfo.localMac()).setJvmPid(LockInfo.currentPid()).setThreadId(Thread.currentThread().getId());
+		owner = codec.encodeOwner(lockInfo);
+	}
+
+	@Benchmark
+	public byte[] encode() {
+		return codec.encodeOwner(lockInfo);
+	}
+
+	@Benchmark
+	public LockInfo decode() {
+		return codec.decodeOwner(owner, into);
+	}
+
+	@Benchmark
+	public byte[] currentOwner() {
+		return codec.currentOwner();
+	}
+
+	@Benchmark
+	public boolean isCurrentThread() {
+		return codec.isCurrentThread(owner);
+	}
+
+}
@@ -0,0 +1,108 @@
+package io.lock.benchmark;
+
+import io.lock.memory.MemoryLockBackend;
+import io.lock.spi.BackendLock;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 与 {@link LockBenchmark} 相同的操作, 但后端为 {@link MemoryLockBackend}, 没有网络往返, 只测量库本身的开销.
+ *
+ * @author lixiaohui
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemoryLockBenchmark {
+
+	private static final long LEASE_MILLIS = 3000L;
+
+	@State(Scope.Benchmark)
+	public static class Backend {
+
+		final MemoryLockBackend backend = new MemoryLockBackend();
+
+	}
+
+	/**
+	 * 每个线程各自的锁, 互不竞争
+	 */
+	@State(Scope.Thread)
+	public static class ThreadLock {
+
+		BackendLock<MemoryLockBackend.Slot> lock;
+
+		@Setup
+		public void setUp(Backend backend) {
+			lock = new BackendLock<MemoryLockBackend.Slot>(backend.backend, "bench.thread." + Thread.currentThread().getId(), LEASE_MILLIS);
+		}
+
+	}
+
+	/**
+	 * 所有线程竞争同一个锁
+	 */
+	@State(Scope.Benchmark)
+	public static class SharedLock {
+
+		BackendLock<MemoryLockBackend.Slot> lock;
+
+		@Setup
+		public void setUp(Backend backend) {
+			lock = new BackendLock<MemoryLockBackend.Slot>(backend.backend, "bench.shared", LEASE_MILLIS);
+		}
+
+	}
+
+	@State(Scope.Thread)
+	public static class Depth {
+
+		@Param({ "1", "8", "64" })
+		int depth;
+
+	}
+
+	@Benchmark
+	@Threads(1)
+	public boolean uncontended(ThreadLock state) {
+		boolean locked = state.lock.tryLock();
+		state.lock.unlock();
+		return locked;
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void reentrant(ThreadLock state, Depth depth) {
+		BackendLock<MemoryLockBackend.Slot> lock = state.lock;
+		for (int i = 0; i < depth.depth; i++) {
+			lock.lock();
+		}
+		for (int i = 0; i < depth.depth; i++) {
+			lock.unlock();
+		}
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void contended(SharedLock state) {
+		state.lock.lock();
+		state.lock.unlock();
+	}
+
+}
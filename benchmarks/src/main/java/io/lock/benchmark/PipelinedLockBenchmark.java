@@ -0,0 +1,115 @@
+package io.lock.benchmark;
+
+import io.lock.redis.JedisExecutor;
+import io.lock.redis.LockManager;
+import io.lock.redis.PipelinedJedisExecutor;
+import io.lock.redis.PooledJedisExecutor;
+import io.lock.redis.RedisLockNotifier;
+import io.lock.redis.RedisReentrantLock;
+import io.lock.redis.util.BinaryLockInfoCodec;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Protocol;
+
+/**
+ * 大量线程各自获取/释放互不竞争的锁, 比较相同连接数下 {@link PooledJedisExecutor} 与 {@link PipelinedJedisExecutor} 的总吞吐.
+ * 与 {@link RedisState} 一样, 默认连接进程内的 {@link FakeRedisServer}, 可用 -Dredis.address=host:port 指定真实的redis server.
+ *
+ * @author lixiaohui
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelinedLockBenchmark {
+
+	private static final int CONNECTIONS = 2;
+
+	private static final long LOCK_EXPIRES = 3000L;
+
+	@State(Scope.Benchmark)
+	public static class Transport {
+
+		@Param({ "pooled", "pipelined" })
+		String executor;
+
+		private FakeRedisServer server;
+
+		LockManager lockManager;
+
+		@Setup
+		public void setUp() throws IOException {
+			String host;
+			int port;
+			String address = System.getProperty("redis.address");
+			if (address == null) {
+				server = new FakeRedisServer();
+				host = server.getHost();
+				port = server.getPort();
+			} else {
+				int i = address.lastIndexOf(':');
+				host = address.substring(0, i);
+				port = Integer.parseInt(address.substring(i + 1));
+			}
+			GenericObjectPoolConfig config = new GenericObjectPoolConfig();
+			config.setMaxTotal(CONNECTIONS);
+			config.setMaxIdle(CONNECTIONS);
+			JedisExecutor jedisExecutor = new PooledJedisExecutor(new JedisPool(config, host, port));
+			if ("pipelined".equals(executor)) {
+				jedisExecutor = new PipelinedJedisExecutor(host, port, Protocol.DEFAULT_TIMEOUT, CONNECTIONS, PipelinedJedisExecutor.DEFAULT_MAX_BATCH, jedisExecutor);
+			}
+			lockManager = new LockManager(jedisExecutor, new RedisLockNotifier(new Jedis(host, port)), LOCK_EXPIRES, BinaryLockInfoCodec.INSTANCE);
+		}
+
+		@TearDown
+		public void tearDown() {
+			lockManager.release();
+			if (server != null) {
+				server.release();
+			}
+		}
+
+	}
+
+	@State(Scope.Thread)
+	public static class ThreadLock {
+
+		RedisReentrantLock lock;
+
+		@Setup
+		public void setUp(Transport transport) {
+			lock = transport.lockManager.getLock("bench.pipelined." + Thread.currentThread().getId());
+		}
+
+	}
+
+	@Benchmark
+	@Threads(64)
+	public boolean uncontended(ThreadLock state) {
+		boolean locked = state.lock.tryLock();
+		state.lock.unlock();
+		return locked;
+	}
+
+}
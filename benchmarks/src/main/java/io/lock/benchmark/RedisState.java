@@ -0,0 +1,46 @@
+package io.lock.benchmark;
+
+import io.lock.redis.LockManager;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * benchmark共用的 {@link LockManager}. 默认连接进程内的 {@link FakeRedisServer};
+ * 指定 -Dredis.address=host:port 时连接真实的redis server.
+ *
+ * @author lixiaohui
+ *
+ */
+@State(Scope.Benchmark)
+public class RedisState {
+
+	private FakeRedisServer server;
+
+	LockManager lockManager;
+
+	@Setup
+	public void setUp() throws IOException {
+		String address = System.getProperty("redis.address");
+		if (address == null) {
+			server = new FakeRedisServer();
+			lockManager = new LockManager(server.getHost(), server.getPort());
+		} else {
+			int i = address.lastIndexOf(':');
+			lockManager = new LockManager(address.substring(0, i), Integer.parseInt(address.substring(i + 1)));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		lockManager.release();
+		if (server != null) {
+			server.release();
+		}
+	}
+
+}
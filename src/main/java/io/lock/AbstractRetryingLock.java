@@ -0,0 +1,187 @@
+package io.lock;
+
+import io.lock.spi.LockBackend;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 以一次获取尝试为基础的锁的骨架实现: 阻塞/超时/中断语义, 两次尝试之间按 {@link WaitStrategy} 等待,
+ * 以及支持锁释放通知时等待通知的逻辑({@link RetryLoop}). redis上的锁与基于 {@link LockBackend} 的锁共用.
+ * 子类只需实现一次获取尝试({@link #acquire(boolean)})和本地重入({@link #tryReenterLocally()}), 以及释放;
+ * 独占锁的本地持有信息见 {@link LocalHold}.
+ *
+ * @author lixiaohui
+ *
+ */
+public abstract class AbstractRetryingLock extends AbstractLock {
+
+	// 为null时使用默认策略
+	private volatile WaitStrategy waitStrategy;
+
+	// 每次尝试执行一次 acquire(true), 失败则按 waitStrategy 等待后再次尝试(支持通知时等待期间收到锁释放的通知则提前醒来)
+	private final RetryLoop retryLoop = new RetryLoop(this) {
+		@Override
+		protected Long attempt() {
+			return AbstractRetryingLock.this.attempt(true);
+		}
+
+		@Override
+		protected LockBackend.Subscription subscribe(long timeoutMillis) throws InterruptedException {
+			return AbstractRetryingLock.this.subscribe(timeoutMillis);
+		}
+
+		@Override
+		protected void unsubscribe(LockBackend.Subscription subscription) {
+			AbstractRetryingLock.this.unsubscribe(subscription);
+		}
+
+		@Override
+		protected WaitStrategy defaultWaitStrategy(boolean notified) {
+			return AbstractRetryingLock.this.defaultWaitStrategy(notified);
+		}
+	};
+
+	// 阻塞式获取锁的实现
+	protected boolean lock(boolean useTimeout, long time, TimeUnit unit, boolean interrupt) throws InterruptedException {
+		if (interrupt) {
+			checkInterruption();
+		}
+
+		if (tryReenterLocally()) {
+			return true;
+		}
+
+		// 超时控制以本地单调时钟计算, 与锁的有效期无关, 也不受系统时间调整的影响
+		long startNanos = System.nanoTime();
+		long deadline = startNanos + (useTimeout ? unit.toNanos(time) : 0);
+
+		boolean acquired = false;
+		try {
+			int attempts = retryLoop.run(useTimeout, deadline, interrupt, waitStrategy);
+			acquired = attempts > 0;
+			if (acquired) {
+				onAcquired(startNanos, attempts);
+			} else {
+				onTimedOut();
+			}
+			return acquired;
+		} finally {
+			if (!acquired) {
+				cancelAcquire();
+			}
+		}
+	}
+
+	public boolean tryLock() {
+		if (tryReenterLocally()) {
+			return true;
+		}
+		if (isKnownHeldByOther()) {
+			return false;
+		}
+		long startNanos = System.nanoTime();
+		if (attempt(false) == null) {
+			onAcquired(startNanos, 1);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 设置阻塞式获取中两次尝试之间的等待策略, 为null时使用默认策略({@link #defaultWaitStrategy(boolean)})
+	 */
+	public void setWaitStrategy(WaitStrategy waitStrategy) {
+		this.waitStrategy = waitStrategy;
+	}
+
+	/**
+	 * @return 设置的等待策略, 为null时使用默认策略
+	 */
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	/**
+	 * 当前线程已通过该锁对象持有锁且本地估计的有效期未过, 则只在本地增加重入次数, 不访问后端
+	 */
+	protected abstract boolean tryReenterLocally();
+
+	/**
+	 * 尝试一次获取锁, 成功则更新本地的持有信息
+	 *
+	 * @param blocking 是否是阻塞式获取中的一次尝试(失败后会等待并重试), 还是 {@link #tryLock()}
+	 * @return {@code null} 若成功获取到锁, 否则为下一次尝试前最多等待的时长(毫秒), 通常为当前持有者剩余的有效时长
+	 */
+	protected abstract Long acquire(boolean blocking);
+
+	/**
+	 * 不访问后端即可确定锁被其他持有者持有(如有近端缓存), {@link #tryLock()} 直接返回 {@code false}
+	 */
+	protected boolean isKnownHeldByOther() {
+		return false;
+	}
+
+	/**
+	 * 第一次尝试失败后开始等待锁释放通知
+	 *
+	 * @param timeoutMillis 最多等待订阅生效的时长(获取的剩余超时时间); 为 -1 时获取没有超时, 由实现决定(通常为锁的有效时长)
+	 * @return {@code null} 若不支持通知, 此时两次尝试之间只按等待策略等待
+	 */
+	protected LockBackend.Subscription subscribe(long timeoutMillis) throws InterruptedException {
+		return null;
+	}
+
+	/**
+	 * 阻塞式获取结束时取消 {@link #subscribe(long)} 返回的订阅
+	 */
+	protected void unsubscribe(LockBackend.Subscription subscription) {
+	}
+
+	/**
+	 * 没有设置等待策略时使用的策略
+	 *
+	 * @param notified 是否能收到锁释放通知
+	 */
+	protected WaitStrategy defaultWaitStrategy(boolean notified) {
+		return WaitStrategies.defaultStrategy(notified);
+	}
+
+	/**
+	 * 阻塞式获取锁放弃(超时, 中断或出错)时调用, 用于撤销获取过程中在后端留下的状态(如排队)
+	 */
+	protected void cancelAcquire() {
+	}
+
+	/**
+	 * 每次获取尝试之前调用, 用于统计
+	 */
+	protected void onAttempt() {
+	}
+
+	/**
+	 * 获取成功(不含本地重入)后调用, 用于统计
+	 *
+	 * @param startNanos 开始获取时的 System.nanoTime()
+	 * @param attempts 尝试的次数
+	 */
+	protected void onAcquired(long startNanos, int attempts) {
+	}
+
+	/**
+	 * 阻塞式获取超时后调用, 用于统计
+	 */
+	protected void onTimedOut() {
+	}
+
+	protected void checkInterruption() throws InterruptedException {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new InterruptedException();
+		}
+	}
+
+	private Long attempt(boolean blocking) {
+		onAttempt();
+		return acquire(blocking);
+	}
+
+}
@@ -0,0 +1,52 @@
+package io.lock;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不阻塞调用线程的锁, 等待期间不占用线程, 结果通过 {@link CompletableFuture} 返回.
+ * <p>
+ * 锁的持有者默认为调用线程; 在回调中释放锁(通常不在获取锁的线程中执行)时, 应使用带 ownerId 的方法,
+ * 获取与释放使用同一个 ownerId. ownerId 代替线程id标识持有者, 不同的持有者必须使用不同的 ownerId.
+ * ownerId 必须在 [1, 2^62 - 1] 中(否则抛出 {@link IllegalArgumentException}), 与线程属于不同的命名空间:
+ * ownerId 与某个线程id相等时也是不同的持有者, 不会被当作该线程的重入.
+ * </p>
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	final long ownerId = ...;
+ * 	lock.tryLockAsync(ownerId, 3, TimeUnit.SECONDS).thenCompose(locked -&gt; {
+ * 		// do something
+ * 		return lock.unlockAsync(ownerId);
+ * 	});
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public interface AsyncLock {
+
+	/**
+	 * 获取锁, 直到获取到锁才完成
+	 */
+	CompletableFuture<Void> lockAsync();
+
+	CompletableFuture<Void> lockAsync(long ownerId);
+
+	/**
+	 * 超时自动返回的获取锁
+	 *
+	 * @return 完成值为 {@code true} 若成功获取到锁, {@code false} 若在指定时间内未获取到锁
+	 */
+	CompletableFuture<Boolean> tryLockAsync(long time, TimeUnit unit);
+
+	CompletableFuture<Boolean> tryLockAsync(long ownerId, long time, TimeUnit unit);
+
+	/**
+	 * 释放锁, 锁不被该持有者持有时以 {@link IllegalMonitorStateException} 异常完成
+	 */
+	CompletableFuture<Void> unlockAsync();
+
+	CompletableFuture<Void> unlockAsync(long ownerId);
+
+}
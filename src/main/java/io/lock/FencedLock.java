@@ -0,0 +1,48 @@
+package io.lock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每次获取锁(不含重入)都分配一个 fencing token 的锁, 同一个锁的 token 随获取严格递增.
+ * <p>
+ * 锁的有效期过去后持有者可能仍在执行(如长时间GC停顿), 此时锁可能已被其他持有者获取. 持有者把 token 随写请求一起发给存储,
+ * 存储只接受不小于已见过的最大 token 的写(compare-and-set), 即可拒绝过期持有者的写, 而不必把锁的有效时长设得很大.
+ * </p>
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	{@link LockHandle} handle = lock.tryLockWithToken(3, TimeUnit.SECONDS);
+ * 	if (handle != null) {
+ * 		try {
+ * 			storage.write(data, handle.getFencingToken());
+ * 		} finally {
+ * 			handle.unlock();
+ * 		}
+ * 	}
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public interface FencedLock extends Lock {
+
+	/**
+	 * 阻塞性的获取锁, 不响应中断, 见 {@link #lock()}
+	 */
+	LockHandle lockWithToken();
+
+	/**
+	 * 超时自动返回的阻塞性的获取锁, 不响应中断, 见 {@link #tryLock(long, TimeUnit)}
+	 *
+	 * @return {@code null} 若在指定时间内未获取到锁
+	 */
+	LockHandle tryLockWithToken(long time, TimeUnit unit);
+
+	/**
+	 * 当前线程持有的锁的 fencing token
+	 *
+	 * @throws IllegalMonitorStateException 当前线程不持有锁
+	 */
+	long getFencingToken();
+
+}
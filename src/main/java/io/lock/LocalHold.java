@@ -0,0 +1,122 @@
+package io.lock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 独占锁在本地的持有信息: 当前jvm内通过某个锁对象持有锁的线程, 重入次数, 以及本地估计的有效期.
+ * 同一个锁对象上的嵌套获取/释放只修改这里的计数, 只有第一次获取和最后一次释放才访问后端;
+ * 本地估计的有效期过去后的重入回到后端续约(或重新获取).
+ * <p>
+ * 重入次数只会被持有线程读写; 有效期由持有线程写, 也可被续约线程推后({@link #extend(long)}).
+ * </p>
+ *
+ * @author lixiaohui
+ *
+ */
+public final class LocalHold {
+
+	// 本地估计的有效期比锁的有效时长少 1/LEASE_MARGIN_DIVISOR, 远大于本地与server时钟速率的差异
+	private static final long LEASE_MARGIN_DIVISOR = 100;
+
+	private volatile Thread owner;
+
+	private int count;
+
+	// System.nanoTime()
+	private volatile long deadline;
+
+	/**
+	 * 本地估计的锁有效期截止时间(System.nanoTime()), 以发出获取请求前的时刻为起点, 并扣除本地与server时钟速率差异的余量, 偏保守
+	 *
+	 * @param requestTime 发出获取请求前的 System.nanoTime()
+	 * @param leaseMillis 锁的有效时长(毫秒)
+	 */
+	public static long leaseDeadline(long requestTime, long leaseMillis) {
+		return requestTime + TimeUnit.MILLISECONDS.toNanos(leaseMillis - leaseMillis / LEASE_MARGIN_DIVISOR);
+	}
+
+	/**
+	 * 当前线程是否在本地持有(不论有效期是否已过)
+	 */
+	public boolean isHeldByCurrentThread() {
+		return owner == Thread.currentThread();
+	}
+
+	/**
+	 * 当前线程在本地持有, 且本地估计的有效期未过, 不需要访问后端即可确定仍持有锁
+	 */
+	public boolean isValid() {
+		return owner == Thread.currentThread() && System.nanoTime() - deadline < 0;
+	}
+
+	/**
+	 * {@link #isValid()} 时只在本地增加重入次数
+	 */
+	public boolean tryReenter() {
+		if (!isValid()) {
+			return false;
+		}
+		increment();
+		return true;
+	}
+
+	/**
+	 * 当前线程的一次获取尝试成功
+	 *
+	 * @param deadline 本地估计的有效期截止时间, 见 {@link #leaseDeadline(long, long)}
+	 * @return {@code true} 若是第一次获取, {@code false} 若是本地已持有时(有效期过后)的重入
+	 */
+	public boolean acquired(long deadline) {
+		this.deadline = deadline;
+		Thread current = Thread.currentThread();
+		if (owner == current) {
+			increment();
+			return false;
+		}
+		count = 1;
+		owner = current;
+		return true;
+	}
+
+	/**
+	 * 当前线程释放一次, 调用前需确认 {@link #isHeldByCurrentThread()}
+	 *
+	 * @return {@code true} 若仍持有(本地重入的释放, 不需要访问后端); {@code false} 若是最后一次释放
+	 */
+	public boolean release() {
+		if (--count > 0) {
+			return true;
+		}
+		owner = null;
+		return false;
+	}
+
+	/**
+	 * 本地持有期间的重新获取失败, 锁已失去
+	 */
+	public void lost() {
+		owner = null;
+		count = 0;
+	}
+
+	/**
+	 * 续约成功后推后有效期, 不会提前
+	 */
+	public void extend(long deadline) {
+		if (deadline - this.deadline > 0) {
+			this.deadline = deadline;
+		}
+	}
+
+	public long getDeadline() {
+		return deadline;
+	}
+
+	private void increment() {
+		if (count == Integer.MAX_VALUE) {
+			throw new Error("Maximum lock count exceeded");
+		}
+		++count;
+	}
+
+}
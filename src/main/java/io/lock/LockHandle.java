@@ -0,0 +1,43 @@
+package io.lock;
+
+/**
+ * 一次成功获取锁的凭证, 带有该次获取的 fencing token, 见 {@link FencedLock}
+ *
+ * @author lixiaohui
+ *
+ */
+public final class LockHandle {
+
+	private final Lock lock;
+
+	private final long fencingToken;
+
+	public LockHandle(Lock lock, long fencingToken) {
+		this.lock = lock;
+		this.fencingToken = fencingToken;
+	}
+
+	public Lock getLock() {
+		return lock;
+	}
+
+	/**
+	 * 获取锁时分配的 fencing token, 同一个锁的 token 随获取严格递增
+	 */
+	public long getFencingToken() {
+		return fencingToken;
+	}
+
+	/**
+	 * 释放锁, 与 {@link Lock#unlock()} 相同
+	 */
+	public void unlock() {
+		lock.unlock();
+	}
+
+	@Override
+	public String toString() {
+		return "LockHandle[fencingToken=" + fencingToken + "]";
+	}
+
+}
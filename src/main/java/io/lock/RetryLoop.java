@@ -0,0 +1,132 @@
+package io.lock;
+
+import io.lock.spi.LockBackend;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 以一次获取尝试为基础的阻塞式获取循环, 锁({@link AbstractRetryingLock})与信号量共用.
+ * <p>
+ * 第一次尝试失败后订阅释放通知, 订阅成功才立即再尝试一次(两者之间发出的通知可能已错过); 之后两次尝试之间按 {@link WaitStrategy} 等待,
+ * 有订阅时等待期间收到通知则提前醒来. 不支持通知时失败后直接等待, 不会连续两次访问后端.
+ * </p>
+ *
+ * @author lixiaohui
+ *
+ */
+public abstract class RetryLoop {
+
+	// 不支持通知时 park 的 blocker
+	private final Object blocker;
+
+	protected RetryLoop(Object blocker) {
+		this.blocker = blocker;
+	}
+
+	/**
+	 * 每次等待前检查是否超时; 响应中断时每次尝试前检查是否被中断, 若是则抛 {@link InterruptedException}
+	 *
+	 * @param useTimeout 是否有超时
+	 * @param deadline 超时的截止时间(System.nanoTime()), useTimeout 为 {@code false} 时忽略
+	 * @param interrupt 是否响应中断; 否则等待期间的中断被记下, 返回前恢复中断状态
+	 * @param waitStrategy 两次尝试之间的等待策略, 为null时使用 {@link #defaultWaitStrategy(boolean)}
+	 * @return 获取成功时为尝试的次数, 超时为 0
+	 */
+	public int run(boolean useTimeout, long deadline, boolean interrupt, WaitStrategy waitStrategy) throws InterruptedException {
+		int attempts = 1;
+		Long ttl = attempt();
+		if (ttl == null) {
+			return attempts;
+		}
+		LockBackend.Subscription subscription = null;
+		boolean interrupted = false;
+		try {
+			// 先订阅再重试, 避免错过两者之间发出的释放通知
+			subscription = subscribe(useTimeout ? Math.max(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()), 0) : -1);
+			if (subscription != null) {
+				attempts++;
+				if ((ttl = attempt()) == null) {
+					return attempts;
+				}
+			}
+			if (waitStrategy == null) {
+				waitStrategy = defaultWaitStrategy(subscription != null);
+			}
+			while (true) {
+				long waitNanos = waitStrategy.waitNanos(attempts, ttl);
+				if (useTimeout) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						return 0;
+					}
+					waitNanos = Math.min(waitNanos, remaining);
+				}
+				if (waitNanos > 0) {
+					try {
+						if (subscription != null) {
+							subscription.await(waitNanos, TimeUnit.NANOSECONDS);
+						} else {
+							LockSupport.parkNanos(blocker, waitNanos);
+							if (Thread.interrupted()) {
+								throw new InterruptedException();
+							}
+						}
+					} catch (InterruptedException e) {
+						if (interrupt) {
+							throw e;
+						}
+						interrupted = true;
+					}
+				}
+				if (interrupt && Thread.currentThread().isInterrupted()) {
+					throw new InterruptedException();
+				}
+				attempts++;
+				if ((ttl = attempt()) == null) {
+					return attempts;
+				}
+			}
+		} finally {
+			if (subscription != null) {
+				unsubscribe(subscription);
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * 尝试一次获取
+	 *
+	 * @return {@code null} 若获取成功, 否则为下一次尝试前最多等待的时长(毫秒)
+	 */
+	protected abstract Long attempt();
+
+	/**
+	 * 第一次尝试失败后开始等待释放通知
+	 *
+	 * @param timeoutMillis 最多等待订阅生效的时长(获取的剩余超时时间); 为 -1 时获取没有超时, 由实现决定
+	 * @return {@code null} 若不支持通知, 此时两次尝试之间只按等待策略等待
+	 */
+	protected LockBackend.Subscription subscribe(long timeoutMillis) throws InterruptedException {
+		return null;
+	}
+
+	/**
+	 * 循环结束时取消 {@link #subscribe(long)} 返回的订阅
+	 */
+	protected void unsubscribe(LockBackend.Subscription subscription) {
+	}
+
+	/**
+	 * 没有指定等待策略时使用的策略
+	 *
+	 * @param notified 是否能收到释放通知
+	 */
+	protected WaitStrategy defaultWaitStrategy(boolean notified) {
+		return WaitStrategies.defaultStrategy(notified);
+	}
+
+}
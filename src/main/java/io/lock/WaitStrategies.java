@@ -0,0 +1,97 @@
+package io.lock;
+
+import io.lock.util.ObjectUtils;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内置的 {@link WaitStrategy}:
+ * <ul>
+ * <li>{@link #untilLeaseExpiry()}: 等到持有者的有效期过去; 有锁释放通知时通知先到则提前重试. 有通知时的默认策略</li>
+ * <li>{@link #exponentialBackoff(long, long)}: 指数退避加 full jitter, 竞争者的重试在时间上分散开. 没有通知时的默认策略</li>
+ * <li>{@link #boundedSpin(int, WaitStrategy)}: 前若干次失败立即重试, 之后交给另一个策略, 适合持有时间极短的锁</li>
+ * </ul>
+ *
+ * @author lixiaohui
+ *
+ */
+public final class WaitStrategies {
+
+	public static final long DEFAULT_BACKOFF_BASE_MILLIS = 1;
+	public static final long DEFAULT_BACKOFF_MAX_MILLIS = 100;
+
+	private static final WaitStrategy UNTIL_LEASE_EXPIRY = new WaitStrategy() {
+		public long waitNanos(int attempts, long ttlMillis) {
+			return TimeUnit.MILLISECONDS.toNanos(Math.max(ttlMillis, 1));
+		}
+
+		@Override
+		public String toString() {
+			return "untilLeaseExpiry";
+		}
+	};
+
+	private static final WaitStrategy DEFAULT_BACKOFF = exponentialBackoff(DEFAULT_BACKOFF_BASE_MILLIS, DEFAULT_BACKOFF_MAX_MILLIS);
+
+	private WaitStrategies() {
+	}
+
+	public static WaitStrategy untilLeaseExpiry() {
+		return UNTIL_LEASE_EXPIRY;
+	}
+
+	/**
+	 * 第 n 次失败后在 (0, min(maxMillis, baseMillis * 2^(n-1), 持有者剩余的有效时长)] 中随机等待
+	 */
+	public static WaitStrategy exponentialBackoff(long baseMillis, long maxMillis) {
+		if (baseMillis <= 0 || maxMillis < baseMillis) {
+			throw new IllegalArgumentException(String.format("illegal backoff range: [%d, %d]", baseMillis, maxMillis));
+		}
+		final long baseNanos = TimeUnit.MILLISECONDS.toNanos(baseMillis);
+		final long maxNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+		return new WaitStrategy() {
+			public long waitNanos(int attempts, long ttlMillis) {
+				int shift = Math.min(attempts - 1, Long.numberOfLeadingZeros(baseNanos) - 1);
+				long cap = Math.min(maxNanos, baseNanos << Math.max(shift, 0));
+				cap = Math.min(cap, TimeUnit.MILLISECONDS.toNanos(Math.max(ttlMillis, 1)));
+				return ThreadLocalRandom.current().nextLong(cap) + 1;
+			}
+
+			@Override
+			public String toString() {
+				return String.format("exponentialBackoff(%dms, %dms)", TimeUnit.NANOSECONDS.toMillis(baseNanos), TimeUnit.NANOSECONDS.toMillis(maxNanos));
+			}
+		};
+	}
+
+	/**
+	 * 前 spins 次失败立即重试(每次仍是一次完整的获取尝试), 之后按 then 等待
+	 */
+	public static WaitStrategy boundedSpin(final int spins, final WaitStrategy then) {
+		if (spins < 0) {
+			throw new IllegalArgumentException("spins must not be negative: " + spins);
+		}
+		ObjectUtils.requireNonNull(then, "then");
+		return new WaitStrategy() {
+			public long waitNanos(int attempts, long ttlMillis) {
+				return attempts <= spins ? 0 : then.waitNanos(attempts - spins, ttlMillis);
+			}
+
+			@Override
+			public String toString() {
+				return String.format("boundedSpin(%d, %s)", spins, then);
+			}
+		};
+	}
+
+	/**
+	 * waitStrategy 为null时的默认策略
+	 *
+	 * @param notified 等待时能否收到锁释放通知
+	 */
+	public static WaitStrategy defaultStrategy(boolean notified) {
+		return notified ? UNTIL_LEASE_EXPIRY : DEFAULT_BACKOFF;
+	}
+
+}
@@ -0,0 +1,20 @@
+package io.lock;
+
+/**
+ * 阻塞式获取锁时, 一次尝试失败后到下一次尝试之前等待多久. 等待通过 {@link java.util.concurrent.locks.LockSupport#parkNanos(Object, long)}
+ * (或锁释放通知的 await)完成, 超时的截止时间以 {@link System#nanoTime()} 计算, 等待时长不会超过剩余的超时时间.
+ * 内置的实现见 {@link WaitStrategies}.
+ *
+ * @author lixiaohui
+ *
+ */
+public interface WaitStrategy {
+
+	/**
+	 * @param attempts 本次获取中已失败的尝试次数, 从1开始
+	 * @param ttlMillis 最近一次尝试观察到的持有者剩余的有效时长(毫秒)
+	 * @return 下一次尝试前等待的时长(纳秒), 不大于0则立即重试
+	 */
+	long waitNanos(int attempts, long ttlMillis);
+
+}
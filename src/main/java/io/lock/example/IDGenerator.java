@@ -7,7 +7,7 @@ import java.math.BigInteger;
 import java.util.concurrent.TimeUnit;
 
 /**
- * 模拟分布式环境中的ID生成 
+ * 模拟分布式环境中的ID生成, 每个ID获取一次锁, 只用于演示锁的用法; 实际使用见 {@link io.lock.redis.RedisIdGenerator RedisIdGenerator}
  * 
  * @author lixiaohui
  * @date 2016年9月19日 下午9:18:40
@@ -0,0 +1,228 @@
+package io.lock.memory;
+
+import io.lock.spi.LockBackend;
+import io.lock.util.ObjectUtils;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 进程内的 {@link LockBackend}, 租约语义与redis后端相同(有效期过去后锁被视为不存在), 但没有网络往返.
+ * 用于单节点部署, 测试, 以及在基准测试中把库本身的开销与网络开销分开.
+ * <ul>
+ * <li>每个 lockKey 对应一个 {@link Slot}, 锁的状态是一个不可变的 {@link Lease}, 所有操作都是对它的 CAS, 不加锁</li>
+ * <li>有效期以 {@link System#nanoTime()} 计算</li>
+ * <li>锁被删除时唤醒该 lockKey 的所有等待者, 由它们重新竞争</li>
+ * <li>Slot 创建后一直保留(每个 lockKey 一个小对象), lockKey 的个数应是有限的</li>
+ * </ul>
+ *
+ * @author lixiaohui
+ *
+ */
+public class MemoryLockBackend implements LockBackend<MemoryLockBackend.Slot> {
+
+	private static final AtomicLong backendIds = new AtomicLong();
+
+	private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+
+	// 持有者标识的前8个字节, 区分同一个进程内的多个后端
+	private final long backendId = backendIds.incrementAndGet();
+
+	private final ThreadLocal<byte[]> currentOwner = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return owner(Thread.currentThread().getId());
+		}
+	};
+
+	public Slot key(String lockKey) {
+		ObjectUtils.requireNonNull(lockKey, "lockKey");
+		Slot slot = slots.get(lockKey);
+		if (slot == null) {
+			Slot newSlot = new Slot();
+			slot = slots.putIfAbsent(lockKey, newSlot);
+			if (slot == null) {
+				slot = newSlot;
+			}
+		}
+		return slot;
+	}
+
+	public byte[] currentOwner() {
+		return currentOwner.get();
+	}
+
+	/**
+	 * 以 ownerId 代替线程id的持有者标识
+	 */
+	public byte[] owner(long ownerId) {
+		byte[] owner = new byte[16];
+		putLong(owner, 0, backendId);
+		putLong(owner, 8, ownerId);
+		return owner;
+	}
+
+	public Long acquire(Slot slot, byte[] owner, long leaseMillis, boolean renewOnly) {
+		long leaseNanos = TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+		while (true) {
+			long now = System.nanoTime();
+			Lease lease = slot.lease.get();
+			Lease next;
+			if (lease == null || lease.isExpired(now)) {
+				next = new Lease(owner, 1, now + leaseNanos);
+			} else if (lease.isOwnedBy(owner)) {
+				next = new Lease(lease.owner, renewOnly ? lease.count : lease.count + 1, now + leaseNanos);
+			} else {
+				return Math.max(TimeUnit.NANOSECONDS.toMillis(lease.deadline - now), 1);
+			}
+			if (slot.lease.compareAndSet(lease, next)) {
+				return null;
+			}
+		}
+	}
+
+	public Long release(Slot slot, byte[] owner) {
+		while (true) {
+			Lease lease = slot.lease.get();
+			if (lease == null) {
+				return null;
+			}
+			if (lease.isExpired(System.nanoTime())) {
+				if (slot.lease.compareAndSet(lease, null)) {
+					slot.wakeAll();
+					return null;
+				}
+				continue;
+			}
+			if (!lease.isOwnedBy(owner)) {
+				return -1L;
+			}
+			int remains = lease.count - 1;
+			if (slot.lease.compareAndSet(lease, remains == 0 ? null : new Lease(lease.owner, remains, lease.deadline))) {
+				if (remains == 0) {
+					slot.wakeAll();
+				}
+				return (long) remains;
+			}
+		}
+	}
+
+	public boolean renew(Slot slot, byte[] owner, long leaseMillis) {
+		while (true) {
+			long now = System.nanoTime();
+			Lease lease = slot.lease.get();
+			if (lease == null || lease.isExpired(now) || !lease.isOwnedBy(owner)) {
+				return false;
+			}
+			if (slot.lease.compareAndSet(lease, new Lease(lease.owner, lease.count, now + TimeUnit.MILLISECONDS.toNanos(leaseMillis)))) {
+				return true;
+			}
+		}
+	}
+
+	public boolean isLocked(Slot slot) {
+		Lease lease = slot.lease.get();
+		return lease != null && !lease.isExpired(System.nanoTime());
+	}
+
+	public boolean isHeldBy(Slot slot, byte[] owner) {
+		Lease lease = slot.lease.get();
+		return lease != null && !lease.isExpired(System.nanoTime()) && lease.isOwnedBy(owner);
+	}
+
+	public Subscription subscribe(Slot slot, long timeoutMillis) {
+		Waiter waiter = new Waiter();
+		slot.waiters.add(waiter);
+		return waiter;
+	}
+
+	public void unsubscribe(Slot slot, Subscription subscription) {
+		slot.waiters.remove(subscription);
+	}
+
+	/**
+	 * 锁的状态都在内存中, 没有需要释放的资源
+	 */
+	public void release() {
+	}
+
+	private static void putLong(byte[] b, int off, long v) {
+		for (int i = 7; i >= 0; i--) {
+			b[off + i] = (byte) v;
+			v >>>= 8;
+		}
+	}
+
+	/**
+	 * 一个 lockKey 的锁状态与等待者
+	 */
+	public static final class Slot {
+
+		// 为null时锁不存在
+		private final AtomicReference<Lease> lease = new AtomicReference<Lease>();
+
+		private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<Waiter>();
+
+		private Slot() {
+		}
+
+		private void wakeAll() {
+			if (waiters.isEmpty()) {
+				return;
+			}
+			for (Waiter waiter : waiters) {
+				waiter.wake();
+			}
+		}
+
+	}
+
+	/**
+	 * 不可变的锁状态, 有效期截止时间为 System.nanoTime()
+	 */
+	private static final class Lease {
+
+		final byte[] owner;
+
+		final int count;
+
+		final long deadline;
+
+		Lease(byte[] owner, int count, long deadline) {
+			this.owner = owner;
+			this.count = count;
+			this.deadline = deadline;
+		}
+
+		boolean isExpired(long now) {
+			return now - deadline >= 0;
+		}
+
+		boolean isOwnedBy(byte[] owner) {
+			return this.owner == owner || Arrays.equals(this.owner, owner);
+		}
+
+	}
+
+	private static final class Waiter implements Subscription {
+
+		private final Semaphore latch = new Semaphore(0);
+
+		public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+			return latch.tryAcquire(timeout, unit);
+		}
+
+		void wake() {
+			latch.release();
+		}
+
+	}
+
+}
@@ -0,0 +1,154 @@
+package io.lock.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对数-线性分桶的直方图(与HdrHistogram相同的思路), 用于记录时长或次数的分布.
+ * <p>
+ * 每个2的幂区间分成 {@value #SUB_BUCKETS} 个桶, 相对误差不超过 1/{@value #SUB_BUCKETS}; 小于 {@value #SUB_BUCKETS} 的值精确记录.
+ * 桶的个数固定, 覆盖整个 long 的范围, 记录时不分配对象.
+ * 计数按线程分散到多个条带(stripe), 减少多个线程同时记录时对同一缓存行的竞争, 快照时再合并.
+ * </p>
+ *
+ * @author lixiaohui
+ *
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	// 最高的 magnitude 为 63, 见 bucketIndex
+	static final int BUCKETS = (63 - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private static final int STRIPES = stripes();
+
+	private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+
+	private final LongAdder sum = new LongAdder();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * 记录一个值, 负数按 0 记录
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+		counts.incrementAndGet(stripe * BUCKETS + bucketIndex(value));
+		sum.add(value);
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+		}
+	}
+
+	public Snapshot snapshot() {
+		long[] merged = new long[BUCKETS];
+		long count = 0;
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			for (int i = 0; i < BUCKETS; i++) {
+				long c = counts.get(stripe * BUCKETS + i);
+				merged[i] += c;
+				count += c;
+			}
+		}
+		return new Snapshot(merged, count, sum.sum(), max.get());
+	}
+
+	/**
+	 * 清零, 与并发的记录之间不是原子的
+	 */
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+		sum.reset();
+		max.set(0);
+	}
+
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * 桶中的最大值
+	 */
+	static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int magnitude = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int sub = index % SUB_BUCKETS;
+		long lower = (long) (SUB_BUCKETS + sub) << (magnitude - SUB_BUCKET_BITS);
+		return lower + (1L << (magnitude - SUB_BUCKET_BITS)) - 1;
+	}
+
+	private static int stripes() {
+		int n = Integer.highestOneBit(Math.max(Runtime.getRuntime().availableProcessors() - 1, 1)) << 1;
+		return Math.min(n, 8);
+	}
+
+	/**
+	 * 某一时刻的分布
+	 */
+	public static final class Snapshot {
+
+		private final long[] counts;
+
+		private final long count;
+
+		private final long sum;
+
+		private final long max;
+
+		Snapshot(long[] counts, long count, long sum, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		public double getMean() {
+			return count == 0 ? 0 : (double) sum / count;
+		}
+
+		/**
+		 * @param quantile 0 ~ 1
+		 * @return 不小于 quantile 比例的值的最小的桶上界(不超过最大值), 没有记录时为 0
+		 */
+		public long getValueAtQuantile(double quantile) {
+			if (count == 0) {
+				return 0;
+			}
+			long target = Math.max((long) Math.ceil(quantile * count), 1);
+			long cumulative = 0;
+			for (int i = 0; i < counts.length; i++) {
+				cumulative += counts[i];
+				if (cumulative >= target) {
+					return Math.min(bucketUpperBound(i), max);
+				}
+			}
+			return max;
+		}
+
+	}
+
+}
@@ -0,0 +1,152 @@
+package io.lock.metrics;
+
+import io.lock.Releasable;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 锁的统计(可选), 按 lockKey 的前缀分组: 获取尝试次数, 成功次数, 超时次数, 有效期在释放前过去的次数, redis命令数,
+ * 以及等待时长, 持有时长, 每次获取的尝试次数(网络往返次数)的分布.
+ * <ul>
+ * <li>记录在锁的获取/释放路径上直接完成, 不分配对象, 见 {@link LockStats}</li>
+ * <li>可以注册为 MXBean({@link #registerMBean(String)}), 也可以定期输出到 {@link LockMetricsSink}</li>
+ * <li>前缀为 lockKey 最后一个 ':' 之前的部分(没有 ':' 时为整个 lockKey), 如 account:1 与 account:2 都计入 account;
+ * 前缀的个数应是有限的</li>
+ * </ul>
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	{@link LockMetrics} metrics = new {@link LockMetrics}();
+ * 	metrics.registerMBean("default");
+ * 	metrics.startReporting(new {@link Slf4jLockMetricsSink}(), 60000);
+ * 	lockManager.setMetrics(metrics); // 或者 lock.setMetrics(metrics);
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public class LockMetrics implements LockMetricsMXBean, Releasable {
+
+	private static final Logger logger = LoggerFactory.getLogger(LockMetrics.class);
+
+	private static final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "redis-lock-metrics");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private final ConcurrentMap<String, LockStats> stats = new ConcurrentHashMap<String, LockStats>();
+
+	private final List<ScheduledFuture<?>> reports = new CopyOnWriteArrayList<ScheduledFuture<?>>();
+
+	private volatile ObjectName objectName;
+
+	/**
+	 * lockKey 所属的统计, 由锁在创建或设置统计时调用一次
+	 */
+	public LockStats statsFor(String lockKey) {
+		String prefix = keyPrefix(lockKey);
+		LockStats s = stats.get(prefix);
+		if (s == null) {
+			LockStats newStats = new LockStats(prefix);
+			s = stats.putIfAbsent(prefix, newStats);
+			if (s == null) {
+				s = newStats;
+			}
+		}
+		return s;
+	}
+
+	public List<LockStatsSnapshot> getStats() {
+		List<LockStatsSnapshot> snapshots = new ArrayList<LockStatsSnapshot>(stats.size());
+		for (LockStats s : stats.values()) {
+			snapshots.add(s.snapshot());
+		}
+		return snapshots;
+	}
+
+	public void reset() {
+		for (LockStats s : stats.values()) {
+			s.reset();
+		}
+	}
+
+	/**
+	 * 以 io.lock:type=LockMetrics,name=name 注册到platform MBeanServer
+	 */
+	public void registerMBean(String name) {
+		try {
+			ObjectName objectName = new ObjectName("io.lock:type=LockMetrics,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			this.objectName = objectName;
+		} catch (JMException e) {
+			throw new IllegalStateException("failed to register LockMetrics MBean: " + name, e);
+		}
+	}
+
+	/**
+	 * 每隔 interval 毫秒把所有统计输出到 sink, 所有 {@link LockMetrics} 共用一个后台线程
+	 */
+	public void startReporting(final LockMetricsSink sink, long interval) {
+		if (interval <= 0) {
+			throw new IllegalArgumentException("interval must be positive: " + interval);
+		}
+		reports.add(reporter.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					sink.report(getStats());
+				} catch (RuntimeException e) {
+					logger.warn("failed to report lock metrics to {}", sink, e);
+				}
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * 停止输出并注销MBean, 已记录的统计仍可读取
+	 */
+	public void release() {
+		for (ScheduledFuture<?> report : reports) {
+			report.cancel(false);
+		}
+		reports.clear();
+		ObjectName objectName = this.objectName;
+		if (objectName != null) {
+			this.objectName = null;
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			try {
+				server.unregisterMBean(objectName);
+			} catch (JMException e) {
+				logger.warn("failed to unregister {}", objectName, e);
+			}
+		}
+	}
+
+	/**
+	 * lockKey 最后一个 ':' 之前的部分, 没有 ':' 时为整个 lockKey
+	 */
+	public static String keyPrefix(String lockKey) {
+		int i = lockKey.lastIndexOf(':');
+		return i < 0 ? lockKey : lockKey.substring(0, i);
+	}
+
+}
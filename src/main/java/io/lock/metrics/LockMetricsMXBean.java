@@ -0,0 +1,23 @@
+package io.lock.metrics;
+
+import java.util.List;
+
+/**
+ * {@link LockMetrics} 的JMX接口, 见 {@link LockMetrics#registerMBean(String)}
+ *
+ * @author lixiaohui
+ *
+ */
+public interface LockMetricsMXBean {
+
+	/**
+	 * 每个 key 前缀一项, 时长的单位为微秒
+	 */
+	List<LockStatsSnapshot> getStats();
+
+	/**
+	 * 所有统计清零
+	 */
+	void reset();
+
+}
@@ -0,0 +1,20 @@
+package io.lock.metrics;
+
+import java.util.List;
+
+/**
+ * 统计的输出, 如写日志或推送到监控系统, 由 {@link LockMetrics#startReporting(LockMetricsSink, long)} 定期调用.
+ *
+ * @author lixiaohui
+ *
+ */
+public interface LockMetricsSink {
+
+	/**
+	 * 在 {@link LockMetrics} 的后台线程中调用, 不应阻塞太久
+	 *
+	 * @param snapshots 每个 key 前缀一项, 值为累计值
+	 */
+	void report(List<LockStatsSnapshot> snapshots);
+
+}
@@ -0,0 +1,112 @@
+package io.lock.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一组锁(同一个 key 前缀, 见 {@link LockMetrics#keyPrefix(String)})的统计, 由锁在获取/释放的路径上直接记录.
+ * 计数器为 {@link LongAdder}, 直方图见 {@link LatencyHistogram}, 记录时不分配对象, 多线程同时记录时竞争很小.
+ *
+ * @author lixiaohui
+ *
+ */
+public final class LockStats {
+
+	private final String keyPrefix;
+
+	private final LongAdder attempts = new LongAdder();
+
+	private final LongAdder acquisitions = new LongAdder();
+
+	private final LongAdder timeouts = new LongAdder();
+
+	private final LongAdder expiredLeases = new LongAdder();
+
+	private final LongAdder redisCommands = new LongAdder();
+
+	// 纳秒
+	private final LatencyHistogram waitTime = new LatencyHistogram();
+
+	// 纳秒
+	private final LatencyHistogram holdTime = new LatencyHistogram();
+
+	private final LatencyHistogram attemptsPerAcquire = new LatencyHistogram();
+
+	LockStats(String keyPrefix) {
+		this.keyPrefix = keyPrefix;
+	}
+
+	public String getKeyPrefix() {
+		return keyPrefix;
+	}
+
+	/**
+	 * 一次获取尝试, 即一次访问redis的获取命令
+	 */
+	public void attempt() {
+		attempts.increment();
+		redisCommands.increment();
+	}
+
+	/**
+	 * 访问了redis的获取成功(不含本地重入)
+	 *
+	 * @param startNanos 开始获取时的 System.nanoTime()
+	 * @param attempts 本次获取用掉的尝试次数(网络往返次数)
+	 */
+	public void acquired(long startNanos, int attempts) {
+		acquisitions.increment();
+		waitTime.record(System.nanoTime() - startNanos);
+		attemptsPerAcquire.record(attempts);
+	}
+
+	/**
+	 * 在给定时间内未获取到锁
+	 */
+	public void timedOut() {
+		timeouts.increment();
+	}
+
+	/**
+	 * 完全释放
+	 *
+	 * @param acquiredNanos 获取成功时的 System.nanoTime()
+	 */
+	public void released(long acquiredNanos) {
+		holdTime.record(System.nanoTime() - acquiredNanos);
+	}
+
+	/**
+	 * 持有者的有效期在释放之前已经过去(释放时锁已不存在, 或续约时发现锁已不被持有), 期间锁可能已被其他线程获取
+	 */
+	public void leaseExpired() {
+		expiredLeases.increment();
+	}
+
+	/**
+	 * 获取尝试以外的redis命令(释放, 续约, 出队等)
+	 */
+	public void command() {
+		redisCommands.increment();
+	}
+
+	public LockStatsSnapshot snapshot() {
+		return new LockStatsSnapshot(keyPrefix, attempts.sum(), acquisitions.sum(), timeouts.sum(), expiredLeases.sum(), redisCommands.sum(),
+				waitTime.snapshot(), holdTime.snapshot(), attemptsPerAcquire.snapshot(), TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * 清零, 与并发的记录之间不是原子的
+	 */
+	public void reset() {
+		attempts.reset();
+		acquisitions.reset();
+		timeouts.reset();
+		expiredLeases.reset();
+		redisCommands.reset();
+		waitTime.reset();
+		holdTime.reset();
+		attemptsPerAcquire.reset();
+	}
+
+}
@@ -0,0 +1,138 @@
+package io.lock.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LockStats} 在某一时刻的值, 不可变. 时长的单位为微秒.
+ * 只有基本类型的 getter, 可以作为 MXBean 的属性({@link LockMetricsMXBean})
+ *
+ * @author lixiaohui
+ *
+ */
+public final class LockStatsSnapshot {
+
+	private final String keyPrefix;
+
+	private final long attempts;
+
+	private final long acquisitions;
+
+	private final long timeouts;
+
+	private final long expiredLeases;
+
+	private final long redisCommands;
+
+	private final long waitTimeP50;
+	private final long waitTimeP99;
+	private final long waitTimeMax;
+	private final double waitTimeMean;
+
+	private final long holdTimeP50;
+	private final long holdTimeP99;
+	private final long holdTimeMax;
+	private final double holdTimeMean;
+
+	private final long attemptsPerAcquireP99;
+	private final long attemptsPerAcquireMax;
+	private final double attemptsPerAcquireMean;
+
+	LockStatsSnapshot(String keyPrefix, long attempts, long acquisitions, long timeouts, long expiredLeases, long redisCommands,
+			LatencyHistogram.Snapshot waitTime, LatencyHistogram.Snapshot holdTime, LatencyHistogram.Snapshot attemptsPerAcquire, TimeUnit unit) {
+		this.keyPrefix = keyPrefix;
+		this.attempts = attempts;
+		this.acquisitions = acquisitions;
+		this.timeouts = timeouts;
+		this.expiredLeases = expiredLeases;
+		this.redisCommands = redisCommands;
+		this.waitTimeP50 = unit.convert(waitTime.getValueAtQuantile(0.5), TimeUnit.NANOSECONDS);
+		this.waitTimeP99 = unit.convert(waitTime.getValueAtQuantile(0.99), TimeUnit.NANOSECONDS);
+		this.waitTimeMax = unit.convert(waitTime.getMax(), TimeUnit.NANOSECONDS);
+		this.waitTimeMean = waitTime.getMean() / unit.toNanos(1);
+		this.holdTimeP50 = unit.convert(holdTime.getValueAtQuantile(0.5), TimeUnit.NANOSECONDS);
+		this.holdTimeP99 = unit.convert(holdTime.getValueAtQuantile(0.99), TimeUnit.NANOSECONDS);
+		this.holdTimeMax = unit.convert(holdTime.getMax(), TimeUnit.NANOSECONDS);
+		this.holdTimeMean = holdTime.getMean() / unit.toNanos(1);
+		this.attemptsPerAcquireP99 = attemptsPerAcquire.getValueAtQuantile(0.99);
+		this.attemptsPerAcquireMax = attemptsPerAcquire.getMax();
+		this.attemptsPerAcquireMean = attemptsPerAcquire.getMean();
+	}
+
+	public String getKeyPrefix() {
+		return keyPrefix;
+	}
+
+	public long getAttempts() {
+		return attempts;
+	}
+
+	public long getAcquisitions() {
+		return acquisitions;
+	}
+
+	public long getTimeouts() {
+		return timeouts;
+	}
+
+	public long getExpiredLeases() {
+		return expiredLeases;
+	}
+
+	public long getRedisCommands() {
+		return redisCommands;
+	}
+
+	public long getWaitTimeP50() {
+		return waitTimeP50;
+	}
+
+	public long getWaitTimeP99() {
+		return waitTimeP99;
+	}
+
+	public long getWaitTimeMax() {
+		return waitTimeMax;
+	}
+
+	public double getWaitTimeMean() {
+		return waitTimeMean;
+	}
+
+	public long getHoldTimeP50() {
+		return holdTimeP50;
+	}
+
+	public long getHoldTimeP99() {
+		return holdTimeP99;
+	}
+
+	public long getHoldTimeMax() {
+		return holdTimeMax;
+	}
+
+	public double getHoldTimeMean() {
+		return holdTimeMean;
+	}
+
+	public long getAttemptsPerAcquireP99() {
+		return attemptsPerAcquireP99;
+	}
+
+	public long getAttemptsPerAcquireMax() {
+		return attemptsPerAcquireMax;
+	}
+
+	public double getAttemptsPerAcquireMean() {
+		return attemptsPerAcquireMean;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: attempts=%d, acquisitions=%d, timeouts=%d, expiredLeases=%d, redisCommands=%d, "
+				+ "wait(us) p50=%d p99=%d max=%d, hold(us) p50=%d p99=%d max=%d, attemptsPerAcquire mean=%.2f p99=%d max=%d",
+				keyPrefix, attempts, acquisitions, timeouts, expiredLeases, redisCommands,
+				waitTimeP50, waitTimeP99, waitTimeMax, holdTimeP50, holdTimeP99, holdTimeMax,
+				attemptsPerAcquireMean, attemptsPerAcquireP99, attemptsPerAcquireMax);
+	}
+
+}
@@ -0,0 +1,24 @@
+package io.lock.metrics;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 把统计以 info 级别写到日志, 每个 key 前缀一行
+ *
+ * @author lixiaohui
+ *
+ */
+public class Slf4jLockMetricsSink implements LockMetricsSink {
+
+	private static final Logger logger = LoggerFactory.getLogger(Slf4jLockMetricsSink.class);
+
+	public void report(List<LockStatsSnapshot> snapshots) {
+		for (LockStatsSnapshot snapshot : snapshots) {
+			logger.info("{}", snapshot);
+		}
+	}
+
+}
@@ -0,0 +1,450 @@
+package io.lock.mmap;
+
+import io.lock.redis.util.LockInfo;
+import io.lock.spi.LockBackend;
+import io.lock.util.ObjectUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 基于内存映射文件的 {@link LockBackend}, 同一台机器上的多个进程通过映射同一个文件互斥, 不经过网络.
+ * 文件中是一张固定大小的锁表:
+ * <pre>
+ * header(64字节) : magic | slotCount
+ * slot(64字节)   : latch | keyHash | owner(pid &lt;&lt; 32 | threadId) | deadline | count | releases
+ * </pre>
+ * <ul>
+ * <li>lockKey 的64位hash通过线性探测绑定到一个slot(CAS 0 -&gt; hash), 之后一直保留; 表满时 {@link #key(String)} 抛出 {@link IllegalStateException}.
+ * 不同的 lockKey hash相同时共用一把锁</li>
+ * <li>slot 的每次状态变更在 latch 内完成: latch 是对 slot 首个long的 CAS(0 -&gt; pid), 临界区只有几次内存读写</li>
+ * <li>持有者标识与 {@link LockInfo} 相同取自 pid 与线程id, 两者都必须在32位以内(pid 取不到时构造抛出 {@link IllegalStateException}); 有效期以 {@link System#currentTimeMillis()} 计算, 各进程共用系统时钟</li>
+ * <li>有效期已过, 或持有者(以及 latch 的持有者)的进程已不存在(/proc/pid), 则锁被视为不存在, 直接被回收</li>
+ * <li>等待者没有跨进程的通知, 以退避的方式(自旋, yield, 再以最多 {@value #MAX_PARK_NANOS} 纳秒的间隔 park)轮询 slot 的释放计数</li>
+ * </ul>
+ * 映射内存上的 CAS 经由 {@link MappedMemory}(sun.misc.Unsafe)完成, jvm 不提供时构造抛出 {@link UnsupportedOperationException}.
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	{@link MappedLockBackend} backend = new {@link MappedLockBackend}(new File("/dev/shm/app.locks"), 1024);
+ * 	{@link io.lock.Lock Lock} lock = new {@link io.lock.spi.BackendLock BackendLock}&lt;MappedLockBackend.Slot&gt;(backend, "spool", 3000);
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public class MappedLockBackend implements LockBackend<MappedLockBackend.Slot> {
+
+	public static final int DEFAULT_SLOT_COUNT = 1024;
+
+	private static final long MAGIC = 0x4c4f434b54424c31L; // "LOCKTBL1"
+
+	private static final int HEADER_SIZE = 64;
+	private static final int SLOT_SIZE = 64;
+
+	// slot 内各字段的偏移
+	private static final int LATCH = 0;
+	private static final int KEY_HASH = 8;
+	private static final int OWNER = 16;
+	private static final int DEADLINE = 24;
+	private static final int COUNT = 32;
+	private static final int RELEASES = 40;
+
+	// 等待者自旋/yield的次数, 之后开始 park
+	private static final int SPINS = 64;
+	private static final int YIELDS = 64;
+
+	private static final long MIN_PARK_NANOS = 1000L;
+	private static final long MAX_PARK_NANOS = 1000000L;
+
+	private static final File PROC = new File("/proc");
+
+	private static final long MAX_OWNER_ID = 0xffffffffL;
+
+	private final File file;
+
+	private final RandomAccessFile raf;
+
+	// 持有映射, 在后端被回收之前映射不会被解除
+	private final MappedByteBuffer buffer;
+
+	private final long base;
+
+	private final int slotCount;
+
+	private final long pid = LockInfo.currentPid();
+
+	private final ThreadLocal<byte[]> currentOwner = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return owner(Thread.currentThread().getId());
+		}
+	};
+
+	public MappedLockBackend(File file) throws IOException {
+		this(file, DEFAULT_SLOT_COUNT);
+	}
+
+	/**
+	 * @param file 锁表文件, 不存在时创建; 宜放在tmpfs(如 /dev/shm)上
+	 * @param slotCount 创建文件时锁表的大小; 文件已存在时以文件中的为准
+	 */
+	public MappedLockBackend(File file, int slotCount) throws IOException {
+		ObjectUtils.requireNonNull(file, "file");
+		if (slotCount <= 0) {
+			throw new IllegalArgumentException("slotCount must be positive: " + slotCount);
+		}
+		if (!MappedMemory.isAvailable()) {
+			throw new UnsupportedOperationException("sun.misc.Unsafe is not available");
+		}
+		// pid 是持有者标识的高32位, 也用于 /proc 判断持有者是否存活
+		if (pid <= 0) {
+			throw new IllegalStateException("cannot determine the pid of current jvm: " + pid);
+		}
+		this.file = file;
+		this.raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			// 文件锁只在初始化时使用, 保证表头只被一个进程写入
+			FileLock fileLock = channel.lock();
+			try {
+				if (raf.length() < HEADER_SIZE) {
+					raf.setLength((long) HEADER_SIZE + (long) slotCount * SLOT_SIZE);
+					raf.seek(0);
+					raf.writeLong(MAGIC);
+					raf.writeLong(slotCount);
+				} else {
+					raf.seek(0);
+					if (raf.readLong() != MAGIC) {
+						throw new IllegalStateException("not a lock table: " + file);
+					}
+					slotCount = (int) raf.readLong();
+					if (raf.length() < (long) HEADER_SIZE + (long) slotCount * SLOT_SIZE) {
+						throw new IllegalStateException("truncated lock table: " + file);
+					}
+				}
+				this.slotCount = slotCount;
+				this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) HEADER_SIZE + (long) slotCount * SLOT_SIZE);
+				this.base = MappedMemory.address(buffer);
+			} finally {
+				fileLock.release();
+			}
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		} catch (RuntimeException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public int getSlotCount() {
+		return slotCount;
+	}
+
+	public Slot key(String lockKey) {
+		ObjectUtils.requireNonNull(lockKey, "lockKey");
+		long hash = hash(lockKey);
+		int start = (int) ((hash & Long.MAX_VALUE) % slotCount);
+		for (int i = 0; i < slotCount; i++) {
+			long address = base + HEADER_SIZE + (long) ((start + i) % slotCount) * SLOT_SIZE;
+			long h = getLong(address + KEY_HASH);
+			if (h == 0 && (MappedMemory.compareAndSwapLong(address + KEY_HASH, 0, hash) || getLong(address + KEY_HASH) == hash)) {
+				return new Slot(lockKey, address);
+			}
+			if (h == hash) {
+				return new Slot(lockKey, address);
+			}
+		}
+		throw new IllegalStateException(String.format("lock table is full: %s, slotCount: %d", file, slotCount));
+	}
+
+	public byte[] currentOwner() {
+		return currentOwner.get();
+	}
+
+	/**
+	 * 以 ownerId 代替线程id的持有者标识
+	 *
+	 * @param ownerId 在 [0, 0xffffffff] 内, 否则抛出 {@link IllegalArgumentException}
+	 */
+	public byte[] owner(long ownerId) {
+		if (ownerId < 0 || ownerId > MAX_OWNER_ID) {
+			throw new IllegalArgumentException("ownerId out of 32 bits: " + ownerId);
+		}
+		byte[] owner = new byte[8];
+		long v = pid << 32 | ownerId;
+		for (int i = 7; i >= 0; i--) {
+			owner[i] = (byte) v;
+			v >>>= 8;
+		}
+		return owner;
+	}
+
+	public Long acquire(Slot slot, byte[] owner, long leaseMillis, boolean renewOnly) {
+		long o = toLong(owner);
+		long address = slot.address;
+		latch(address);
+		try {
+			long now = System.currentTimeMillis();
+			long current = getLong(address + OWNER);
+			if (current == 0 || isStale(address, current, now)) {
+				putLong(address + OWNER, o);
+				putLong(address + COUNT, 1);
+			} else if (current == o) {
+				if (!renewOnly) {
+					putLong(address + COUNT, getLong(address + COUNT) + 1);
+				}
+			} else {
+				return Math.max(getLong(address + DEADLINE) - now, 1);
+			}
+			putLong(address + DEADLINE, now + leaseMillis);
+			return null;
+		} finally {
+			unlatch(address);
+		}
+	}
+
+	public Long release(Slot slot, byte[] owner) {
+		long address = slot.address;
+		latch(address);
+		try {
+			long current = getLong(address + OWNER);
+			if (current == 0) {
+				return null;
+			}
+			if (isStale(address, current, System.currentTimeMillis())) {
+				clear(address);
+				return null;
+			}
+			if (current != toLong(owner)) {
+				return -1L;
+			}
+			long remains = getLong(address + COUNT) - 1;
+			if (remains == 0) {
+				clear(address);
+			} else {
+				putLong(address + COUNT, remains);
+			}
+			return remains;
+		} finally {
+			unlatch(address);
+		}
+	}
+
+	public boolean renew(Slot slot, byte[] owner, long leaseMillis) {
+		long address = slot.address;
+		latch(address);
+		try {
+			long now = System.currentTimeMillis();
+			if (getLong(address + OWNER) != toLong(owner) || getLong(address + DEADLINE) - now <= 0) {
+				return false;
+			}
+			putLong(address + DEADLINE, now + leaseMillis);
+			return true;
+		} finally {
+			unlatch(address);
+		}
+	}
+
+	public boolean isLocked(Slot slot) {
+		long address = slot.address;
+		latch(address);
+		try {
+			long current = getLong(address + OWNER);
+			return current != 0 && !isStale(address, current, System.currentTimeMillis());
+		} finally {
+			unlatch(address);
+		}
+	}
+
+	public boolean isHeldBy(Slot slot, byte[] owner) {
+		long address = slot.address;
+		latch(address);
+		try {
+			return getLong(address + OWNER) == toLong(owner) && getLong(address + DEADLINE) - System.currentTimeMillis() > 0;
+		} finally {
+			unlatch(address);
+		}
+	}
+
+	public Subscription subscribe(Slot slot, long timeoutMillis) {
+		return new Waiter(slot.address, getLong(slot.address + RELEASES));
+	}
+
+	public void unsubscribe(Slot slot, Subscription subscription) {
+	}
+
+	/**
+	 * 关闭文件; 映射在后端被回收时解除, 之后不应再使用该后端创建的锁
+	 */
+	public void release() {
+		try {
+			raf.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	/**
+	 * 获取 slot 的 latch, 持有 latch 的进程已不存在时接管
+	 */
+	private void latch(long address) {
+		int spins = 0;
+		while (!MappedMemory.compareAndSwapLong(address + LATCH, 0, pid)) {
+			if (++spins < SPINS) {
+				continue;
+			}
+			if (spins % SPINS == 0) {
+				long holder = getLong(address + LATCH);
+				if (holder != 0 && !isAlive(holder) && MappedMemory.compareAndSwapLong(address + LATCH, holder, pid)) {
+					return;
+				}
+			}
+			Thread.yield();
+		}
+	}
+
+	private void unlatch(long address) {
+		putLong(address + LATCH, 0);
+	}
+
+	/**
+	 * 持有者的有效期已过或进程已不存在, 在 latch 内调用
+	 */
+	private boolean isStale(long address, long owner, long now) {
+		return getLong(address + DEADLINE) - now <= 0 || !isAlive(owner >>> 32);
+	}
+
+	/**
+	 * 删除锁并递增释放计数, 在 latch 内调用
+	 */
+	private void clear(long address) {
+		putLong(address + OWNER, 0);
+		putLong(address + COUNT, 0);
+		putLong(address + DEADLINE, 0);
+		putLong(address + RELEASES, getLong(address + RELEASES) + 1);
+	}
+
+	private boolean isAlive(long pid) {
+		// 没有 /proc 时无法判断, 只依赖有效期
+		return pid == this.pid || !PROC.isDirectory() || new File(PROC, Long.toString(pid)).exists();
+	}
+
+	private static long getLong(long address) {
+		return MappedMemory.getLongVolatile(address);
+	}
+
+	private static void putLong(long address, long value) {
+		MappedMemory.putLongVolatile(address, value);
+	}
+
+	private static long toLong(byte[] owner) {
+		long v = 0;
+		for (int i = 0; i < 8; i++) {
+			v = v << 8 | (owner[i] & 0xff);
+		}
+		return v;
+	}
+
+	/**
+	 * 64位 FNV-1a, 0 表示空的 slot, 不作为hash
+	 */
+	private static long hash(String lockKey) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < lockKey.length(); i++) {
+			h ^= lockKey.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return h == 0 ? 1 : h;
+	}
+
+	/**
+	 * 一个 lockKey 在锁表中的位置
+	 */
+	public static final class Slot {
+
+		private final String lockKey;
+
+		private final long address;
+
+		private Slot(String lockKey, long address) {
+			this.lockKey = lockKey;
+			this.address = address;
+		}
+
+		public String getLockKey() {
+			return lockKey;
+		}
+
+	}
+
+	/**
+	 * 以退避的方式轮询 slot, 直到释放计数变化, 或锁看起来已不存在
+	 */
+	private final class Waiter implements Subscription {
+
+		private final long address;
+
+		private final long releases;
+
+		Waiter(long address, long releases) {
+			this.address = address;
+			this.releases = releases;
+		}
+
+		public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			long parkNanos = MIN_PARK_NANOS;
+			for (int i = 0; ; i++) {
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				if (isReleased(parkNanos == MAX_PARK_NANOS)) {
+					return true;
+				}
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				if (i < SPINS) {
+					continue;
+				}
+				if (i < SPINS + YIELDS) {
+					Thread.yield();
+					continue;
+				}
+				LockSupport.parkNanos(this, Math.min(parkNanos, remaining));
+				parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+			}
+		}
+
+		/**
+		 * 不加 latch 的读, 只用于决定何时重试获取
+		 *
+		 * @param checkOwner 是否检查持有者的有效期与进程, 退避到最大间隔后才检查
+		 */
+		private boolean isReleased(boolean checkOwner) {
+			if (getLong(address + RELEASES) != releases) {
+				return true;
+			}
+			long owner = getLong(address + OWNER);
+			if (owner == 0) {
+				return true;
+			}
+			return checkOwner && (getLong(address + DEADLINE) - System.currentTimeMillis() <= 0 || !isAlive(owner >>> 32));
+		}
+
+	}
+
+}
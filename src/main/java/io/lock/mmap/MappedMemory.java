@@ -0,0 +1,71 @@
+package io.lock.mmap;
+
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+
+import sun.misc.Unsafe;
+
+/**
+ * 映射内存上的原子访问, 是 {@link MappedLockBackend} 唯一使用 {@link Unsafe} 的地方(编译时的 internal API 警告只出现在这里).
+ * 跨进程的 CAS 需要直接操作映射内存, jdk 8 没有其他公开的方式.
+ * <p>
+ * 只提供锁表需要的操作: 取映射的起始地址, 以及对绝对地址上的 long 的 volatile 读写与 CAS.
+ * 地址必须落在仍被持有的映射之内且8字节对齐, 否则会破坏jvm.
+ * </p>
+ *
+ * @author lixiaohui
+ *
+ */
+final class MappedMemory {
+
+	private static final Unsafe UNSAFE;
+
+	// Buffer.address 字段的偏移
+	private static final long ADDRESS_OFFSET;
+
+	static {
+		Unsafe unsafe = null;
+		long addressOffset = -1;
+		try {
+			Field f = Unsafe.class.getDeclaredField("theUnsafe");
+			f.setAccessible(true);
+			unsafe = (Unsafe) f.get(null);
+			addressOffset = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+		} catch (Throwable e) {
+			unsafe = null;
+		}
+		UNSAFE = unsafe;
+		ADDRESS_OFFSET = addressOffset;
+	}
+
+	private MappedMemory() {
+	}
+
+	/**
+	 * jvm 是否提供所需的访问, 否则其他方法都不可用
+	 */
+	static boolean isAvailable() {
+		return UNSAFE != null;
+	}
+
+	/**
+	 * 映射的起始地址, 在 buffer 被回收之前有效
+	 */
+	static long address(MappedByteBuffer buffer) {
+		return UNSAFE.getLong(buffer, ADDRESS_OFFSET);
+	}
+
+	static long getLongVolatile(long address) {
+		return UNSAFE.getLongVolatile(null, address);
+	}
+
+	static void putLongVolatile(long address, long value) {
+		UNSAFE.putLongVolatile(null, address, value);
+	}
+
+	static boolean compareAndSwapLong(long address, long expected, long value) {
+		return UNSAFE.compareAndSwapLong(null, address, expected, value);
+	}
+
+}
@@ -0,0 +1,171 @@
+package io.lock.redis;
+
+import io.lock.AbstractRetryingLock;
+import io.lock.LocalHold;
+import io.lock.metrics.LockMetrics;
+import io.lock.metrics.LockStats;
+import io.lock.redis.util.LockInfoCodec;
+import io.lock.spi.LockBackend;
+import io.lock.util.ObjectUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Protocol;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 基于Redis的锁的骨架实现: 阻塞式获取的等待逻辑继承自 {@link AbstractRetryingLock}, 有 {@link RedisLockNotifier} 时等待锁释放通知;
+ * 另有连接, 编码与统计. 子类只需实现一次获取尝试({@link #acquire(boolean)})和本地重入({@link #tryReenterLocally()}), 以及释放.
+ *
+ * @author lixiaohui
+ *
+ */
+public abstract class AbstractRedisLock extends AbstractRetryingLock {
+
+	protected static final byte[] NO_INCREMENT = Protocol.toByteArray(0);
+	protected static final byte[] INCREMENT = Protocol.toByteArray(1);
+
+	private static final Logger logger = LoggerFactory.getLogger(AbstractRedisLock.class);
+
+	protected final JedisExecutor executor;
+
+	// executor 是否由该锁对象创建, 是则在 release 时一并释放
+	private final boolean ownsExecutor;
+
+	protected String lockKey;
+
+	protected final byte[] lockKeyBytes;
+
+	// 锁释放通知的channel
+	protected final byte[] channel;
+
+	protected final LockInfoCodec codec;
+
+	// 为null时等待者按等待策略定期重试
+	protected final RedisLockNotifier notifier;
+
+	// 锁的有效时长(毫秒)
+	protected long lockExpires;
+
+	protected final byte[] lockExpiresBytes;
+
+	// 为null时不统计
+	protected volatile LockStats stats;
+
+	// 为null时不通知, 由 LockManager 设置
+	private volatile HoldListener holdListener;
+
+	protected AbstractRedisLock(JedisExecutor executor, boolean ownsExecutor, String lockKey, long lockExpires, RedisLockNotifier notifier, LockInfoCodec codec) {
+		ObjectUtils.requireNonNull(executor, "executor", lockKey, "lockKey", codec, "codec");
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		this.lockKey = lockKey;
+		this.lockKeyBytes = SafeEncoder.encode(lockKey);
+		this.lockExpires = lockExpires;
+		this.lockExpiresBytes = Protocol.toByteArray(lockExpires);
+		this.channel = SafeEncoder.encode(RedisLockNotifier.channelOf(lockKey));
+		this.notifier = notifier;
+		this.codec = codec;
+	}
+
+	/**
+	 * 设置统计, 之后的获取/释放被记录到 lockKey 前缀对应的 {@link LockStats} 中, 为null时不统计
+	 */
+	public void setMetrics(LockMetrics metrics) {
+		this.stats = metrics == null ? null : metrics.statsFor(metricsKey());
+	}
+
+	void setHoldListener(HoldListener holdListener) {
+		this.holdListener = holdListener;
+	}
+
+	/**
+	 * 一个持有者开始在本地持有, 见 {@link HoldListener#held()}
+	 */
+	protected void holdStarted() {
+		HoldListener holdListener = this.holdListener;
+		if (holdListener != null) {
+			holdListener.held();
+		}
+	}
+
+	/**
+	 * 一个持有者结束在本地持有, 见 {@link HoldListener#released()}
+	 */
+	protected void holdEnded() {
+		HoldListener holdListener = this.holdListener;
+		if (holdListener != null) {
+			holdListener.released();
+		}
+	}
+
+	/**
+	 * 决定统计分组的key, 见 {@link LockMetrics#keyPrefix(String)}
+	 */
+	protected String metricsKey() {
+		return lockKey;
+	}
+
+	public void release() {
+		if (ownsExecutor) {
+			executor.release();
+		}
+	}
+
+	/**
+	 * 等待锁释放通知时订阅的key, 见 {@link RedisLockNotifier#subscribe(String, long)}
+	 */
+	protected String notificationKey() {
+		return lockKey;
+	}
+
+	/**
+	 * 本地估计的锁有效期截止时间(System.nanoTime()), 见 {@link LocalHold#leaseDeadline(long, long)}.
+	 * 过了这个时间的重入需要回到redis续约(或重新获取)
+	 *
+	 * @param requestTime 发出获取请求前的 System.nanoTime()
+	 */
+	protected long leaseDeadline(long requestTime) {
+		return LocalHold.leaseDeadline(requestTime, lockExpires);
+	}
+
+	/**
+	 * 有 notifier 时订阅 {@link #notificationKey()}
+	 */
+	@Override
+	protected LockBackend.Subscription subscribe(long timeoutMillis) throws InterruptedException {
+		return notifier == null ? null : notifier.subscribe(notificationKey(), timeoutMillis < 0 ? lockExpires : timeoutMillis);
+	}
+
+	@Override
+	protected void unsubscribe(LockBackend.Subscription subscription) {
+		notifier.unsubscribe((RedisLockNotifier.Subscription) subscription);
+	}
+
+	@Override
+	protected void onAttempt() {
+		LockStats stats = this.stats;
+		if (stats != null) {
+			stats.attempt();
+		}
+	}
+
+	@Override
+	protected void onAcquired(long startNanos, int attempts) {
+		logger.debug("{} get lock, lockKey: {}", Thread.currentThread().getName(), lockKey);
+		LockStats stats = this.stats;
+		if (stats != null) {
+			stats.acquired(startNanos, attempts);
+		}
+	}
+
+	@Override
+	protected void onTimedOut() {
+		LockStats stats = this.stats;
+		if (stats != null) {
+			stats.timedOut();
+		}
+	}
+
+}
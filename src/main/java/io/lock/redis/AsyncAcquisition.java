@@ -0,0 +1,233 @@
+package io.lock.redis;
+
+import io.lock.WaitStrategies;
+import io.lock.WaitStrategy;
+import io.lock.metrics.LockStats;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 一次异步获取锁的过程, 见 {@link io.lock.AsyncLock AsyncLock}.
+ * <p>
+ * 等待期间不占用线程: 每次尝试(一次网络往返)在共享的少量工作线程中执行, 失败后登记锁释放通知的回调和一个定时器(时长由 {@link WaitStrategy} 决定),
+ * 两者之一触发时再次尝试. 同一个获取过程的尝试总是串行执行, 尝试期间到来的触发会在本次尝试结束后再尝试一次, 不会丢失.
+ * </p>
+ *
+ * @author lixiaohui
+ *
+ */
+final class AsyncAcquisition implements Runnable {
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncAcquisition.class);
+
+	/**
+	 * 执行获取/释放尝试的线程, 只在一次网络往返期间被占用
+	 */
+	static final ExecutorService workers = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), daemonThreadFactory("redis-lock-async"));
+
+	/**
+	 * 等待超时与重试的定时器, 取消的任务立即移除, 因此大量的等待者只占用内存
+	 */
+	private static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, daemonThreadFactory("redis-lock-async-timer"));
+
+	static {
+		timer.setRemoveOnCancelPolicy(true);
+	}
+
+	private final RedisReentrantLock lock;
+
+	// 持有者在锁的hash中的field
+	private final byte[] owner;
+
+	// 为null时使用默认策略
+	private final WaitStrategy waitStrategy;
+
+	private final boolean useTimeout;
+
+	// System.nanoTime()
+	private final long startNanos;
+
+	// System.nanoTime()
+	private final long deadline;
+
+	private final CompletableFuture<Boolean> future = new CompletableFuture<Boolean>();
+
+	// 待执行的触发次数, 见 run()
+	private final AtomicInteger wip = new AtomicInteger();
+
+	private final Runnable trigger = new Runnable() {
+		public void run() {
+			trigger();
+		}
+	};
+
+	// 以下字段只在尝试中(串行)读写
+	private RedisLockNotifier.Subscription subscription;
+
+	private ScheduledFuture<?> retry;
+
+	private boolean finished;
+
+	private int attempts;
+
+	/**
+	 * @param waitStrategy 两次尝试之间(没有收到通知时)的等待策略, 为null时使用默认策略
+	 */
+	AsyncAcquisition(RedisReentrantLock lock, byte[] owner, WaitStrategy waitStrategy, boolean useTimeout, long timeoutNanos) {
+		this.lock = lock;
+		this.owner = owner;
+		this.waitStrategy = waitStrategy;
+		this.useTimeout = useTimeout;
+		this.startNanos = System.nanoTime();
+		this.deadline = startNanos + timeoutNanos;
+	}
+
+	CompletableFuture<Boolean> start() {
+		// 被调用方取消等情况下, 也要清理订阅, 定时器与排队
+		future.whenComplete(new BiConsumer<Boolean, Throwable>() {
+			public void accept(Boolean locked, Throwable t) {
+				trigger();
+			}
+		});
+		trigger();
+		return future;
+	}
+
+	private void trigger() {
+		if (wip.getAndIncrement() == 0) {
+			workers.execute(this);
+		}
+	}
+
+	public void run() {
+		int missed = 1;
+		while (true) {
+			if (!finished) {
+				attempt();
+			}
+			missed = wip.addAndGet(-missed);
+			if (missed == 0) {
+				return;
+			}
+		}
+	}
+
+	private void attempt() {
+		if (future.isDone()) {
+			finish(true);
+			return;
+		}
+		LockStats stats = lock.stats;
+		if (stats != null) {
+			stats.attempt();
+		}
+		attempts++;
+		Long ttl;
+		try {
+			ttl = lock.tryAcquire(owner, false, true);
+		} catch (RuntimeException e) {
+			finish(true);
+			future.completeExceptionally(e);
+			return;
+		}
+		if (ttl == null) {
+			finish(false);
+			lock.markLocked();
+			if (stats != null) {
+				stats.acquired(startNanos, attempts);
+			}
+			if (!future.complete(Boolean.TRUE)) {
+				// 调用方已取消, 释放刚获取到的锁
+				releaseQuietly();
+			}
+			return;
+		}
+		long remaining = useTimeout ? deadline - System.nanoTime() : Long.MAX_VALUE;
+		if (remaining <= 0) {
+			finish(true);
+			if (stats != null) {
+				stats.timedOut();
+			}
+			future.complete(Boolean.FALSE);
+			return;
+		}
+		if (retry != null) {
+			retry.cancel(false);
+		}
+		RedisLockNotifier notifier = lock.notifier;
+		if (notifier != null) {
+			if (subscription == null) {
+				try {
+					subscription = notifier.subscribe(lock.notificationKey(owner), 0);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				if (subscription != null) {
+					// 订阅生效前发出的通知收不到, 生效后再尝试一次
+					subscription.whenSubscribed(trigger);
+				}
+			}
+			if (subscription != null) {
+				subscription.removeListener(trigger);
+				subscription.addListener(trigger);
+			}
+		}
+		WaitStrategy waitStrategy = this.waitStrategy;
+		if (waitStrategy == null) {
+			waitStrategy = WaitStrategies.defaultStrategy(subscription != null);
+		}
+		retry = timer.schedule(trigger, Math.max(Math.min(waitStrategy.waitNanos(attempts, ttl), remaining), 0), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @param cancel 是否需要撤销排队等在redis中留下的状态
+	 */
+	private void finish(boolean cancel) {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		if (retry != null) {
+			retry.cancel(false);
+		}
+		if (subscription != null) {
+			subscription.removeListener(trigger);
+			lock.notifier.unsubscribe(subscription);
+		}
+		if (cancel) {
+			lock.cancelAcquire(owner);
+		}
+	}
+
+	private void releaseQuietly() {
+		try {
+			lock.tryRelease(owner);
+		} catch (RuntimeException e) {
+			logger.warn("failed to release lockKey: {} after the acquisition was cancelled", lock.lockKey, e);
+		}
+	}
+
+	private static ThreadFactory daemonThreadFactory(final String name) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+}
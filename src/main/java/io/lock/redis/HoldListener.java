@@ -0,0 +1,25 @@
+package io.lock.redis;
+
+/**
+ * 锁对象在本地开始/结束持有时的回调. {@link LockManager} 只以弱引用缓存锁对象, 持有期间通过该回调强引用锁对象,
+ * 以免调用方丢弃引用后锁对象被回收, 同一个 lockKey 得到一个没有本地持有信息(重入次数等)的新对象.
+ * <p>
+ * 每个持有者(线程, 或 {@link RedisCohortLock} 所在的jvm)的 {@link #held()} 与 {@link #released()} 成对调用.
+ * </p>
+ *
+ * @author lixiaohui
+ *
+ */
+interface HoldListener {
+
+	/**
+	 * 一个持有者开始在本地持有(第一次获取, 不含重入)
+	 */
+	void held();
+
+	/**
+	 * 一个持有者结束在本地持有(最后一次释放, 或发现锁已失去)
+	 */
+	void released();
+
+}
@@ -0,0 +1,15 @@
+package io.lock.redis;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * 在 {@link JedisExecutor} 提供的连接上执行的一组redis命令
+ * 
+ * @author lixiaohui
+ *
+ */
+public interface JedisCallback<T> {
+
+	T doInJedis(Jedis jedis);
+
+}
@@ -0,0 +1,45 @@
+package io.lock.redis;
+
+import io.lock.Releasable;
+import io.lock.redis.util.RedisScript;
+
+import java.util.List;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * 锁访问redis的入口, 屏蔽连接的来源(单个连接或连接池), 保证在多个线程间共享同一个锁对象时的线程安全.
+ * 
+ * @author lixiaohui
+ *
+ */
+public abstract class JedisExecutor implements Releasable {
+
+	/**
+	 * 在一个连接上执行callback, 执行期间该连接只被当前线程使用
+	 */
+	public abstract <T> T execute(JedisCallback<T> callback);
+
+	/**
+	 * 执行脚本, 见 {@link RedisScript#eval(Jedis, int, byte[]...)}
+	 */
+	public Object eval(final RedisScript script, final int keyCount, final byte[]... params) {
+		return execute(new JedisCallback<Object>() {
+			public Object doInJedis(Jedis jedis) {
+				return script.eval(jedis, keyCount, params);
+			}
+		});
+	}
+
+	/**
+	 * 在一个连接上一次网络往返执行多次脚本, 见 {@link RedisScript#evalPipelined(Jedis, int, List)}
+	 */
+	public List<Object> evalPipelined(final RedisScript script, final int keyCount, final List<byte[][]> paramsList) {
+		return execute(new JedisCallback<List<Object>>() {
+			public List<Object> doInJedis(Jedis jedis) {
+				return script.evalPipelined(jedis, keyCount, paramsList);
+			}
+		});
+	}
+
+}
@@ -0,0 +1,375 @@
+package io.lock.redis;
+
+import io.lock.Releasable;
+import io.lock.WaitStrategies;
+import io.lock.WaitStrategy;
+import io.lock.metrics.LockMetrics;
+import io.lock.redis.util.BinaryLockInfoCodec;
+import io.lock.redis.util.LockInfoCodec;
+import io.lock.util.ObjectUtils;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * 锁的工厂, 线程安全, 一个jvm(对同一个redis server)通常只需要一个.
+ * <ul>
+ * <li>持有一个有界的连接池, 所有锁共享, 连接数不再随线程数/锁对象数增长</li>
+ * <li>每个 lockKey 对应一个可在线程间共享的 {@link RedisReentrantLock}(或 {@link RedisFairLock}, {@link RedisFencedLock}, {@link RedisCohortLock}, {@link RedisReentrantReadWriteLock}), 重复获取返回同一个对象</li>
+ * <li>锁对象以弱引用缓存, 不再被使用的 lockKey 随GC从缓存中移除; 本地持有期间锁对象被强引用, 即使调用方没有保留引用, 释放时也总能取回持有时的对象</li>
+ * <li>默认开启 {@link RedisLockNotifier 锁释放通知}, 额外占用一个订阅连接</li>
+ * </ul>
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	{@link LockManager} lockManager = new {@link LockManager}("localhost", 6379);
+ * 	{@link io.lock.Lock Lock} lock = lockManager.getLock("lockKey");
+ * 	if (lock.tryLock(3, TimeUnit.SECONDS)) {
+ * 		try {
+ * 			// do something
+ * 		} finally {
+ * 			lock.unlock();
+ * 		}
+ * 	}
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public class LockManager implements Releasable {
+
+	private static final int DEFAULT_MAX_CONNECTIONS = 8;
+	private static final long DEFAULT_LOCK_EXPIRES = 3000L;
+	private static final int DEFAULT_MAX_LOCAL_PASSES = 16;
+
+	private final JedisExecutor executor;
+
+	private final RedisLockNotifier notifier;
+
+	private final long lockExpires;
+
+	private final LockInfoCodec codec;
+
+	// 为null时不自动续约
+	private volatile LockWatchdog watchdog;
+
+	// 为null时不统计
+	private volatile LockMetrics metrics;
+
+	// 为null时锁使用默认的等待策略
+	private volatile WaitStrategy waitStrategy;
+
+	// 为null时不使用近端缓存
+	private volatile LockStateCache stateCache;
+
+	private final ConcurrentMap<String, LockReference> locks = new ConcurrentHashMap<String, LockReference>();
+
+	private final ConcurrentMap<String, LockReference> fairLocks = new ConcurrentHashMap<String, LockReference>();
+
+	private final ConcurrentMap<String, LockReference> fencedLocks = new ConcurrentHashMap<String, LockReference>();
+
+	private final ConcurrentMap<String, LockReference> cohortLocks = new ConcurrentHashMap<String, LockReference>();
+
+	private final ConcurrentMap<String, LockReference> readWriteLocks = new ConcurrentHashMap<String, LockReference>();
+
+	private final ConcurrentMap<String, LockReference> idGenerators = new ConcurrentHashMap<String, LockReference>();
+
+	private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+	public LockManager(String host, int port) {
+		this(defaultPoolConfig(), host, port, DEFAULT_LOCK_EXPIRES);
+	}
+
+	/**
+	 * @param poolConfig 连接池配置, maxTotal 即为最大连接数(不含订阅连接)
+	 * @param lockExpires 锁的有效时长(毫秒)
+	 */
+	public LockManager(GenericObjectPoolConfig poolConfig, String host, int port, long lockExpires) {
+		this(new PooledJedisExecutor(new JedisPool(poolConfig, host, port)), new RedisLockNotifier(new Jedis(host, port)), lockExpires, BinaryLockInfoCodec.INSTANCE);
+	}
+
+	/**
+	 * @param executor 所有锁共享的连接, 由 LockManager 负责释放
+	 * @param notifier 锁释放通知, 为null时等待者不停地重试; 由 LockManager 负责释放
+	 * @param lockExpires 锁的有效时长(毫秒)
+	 * @param codec 锁持有者在redis中的格式
+	 */
+	public LockManager(JedisExecutor executor, RedisLockNotifier notifier, long lockExpires, LockInfoCodec codec) {
+		ObjectUtils.requireNonNull(executor, "executor", codec, "codec");
+		this.executor = executor;
+		this.notifier = notifier;
+		this.lockExpires = lockExpires;
+		this.codec = codec;
+	}
+
+	/**
+	 * lockKey 对应的锁, 同一个 lockKey 在被使用期间总是返回同一个对象
+	 */
+	public RedisReentrantLock getLock(String lockKey) {
+		ObjectUtils.requireNonNull(lockKey, "lockKey");
+		RedisReentrantLock lock = (RedisReentrantLock) get(locks, lockKey);
+		if (lock != null) {
+			return lock;
+		}
+		RedisReentrantLock newLock = new RedisReentrantLock(executor, lockKey, lockExpires, notifier, codec);
+		newLock.setWatchdog(watchdog);
+		newLock.setMetrics(metrics);
+		newLock.setWaitStrategy(waitStrategy);
+		newLock.setStateCache(stateCache);
+		return (RedisReentrantLock) putIfAbsent(locks, lockKey, newLock);
+	}
+
+	/**
+	 * lockKey 对应的公平锁, 等待者的排队资格的有效时长与锁的有效时长相同, 同一个 lockKey 在被使用期间总是返回同一个对象.
+	 * 同一个 lockKey 不能同时用作 {@link #getLock(String)} 的互斥锁.
+	 */
+	public RedisFairLock getFairLock(String lockKey) {
+		ObjectUtils.requireNonNull(lockKey, "lockKey");
+		RedisFairLock lock = (RedisFairLock) get(fairLocks, lockKey);
+		if (lock != null) {
+			return lock;
+		}
+		RedisFairLock newLock = new RedisFairLock(executor, lockKey, lockExpires, lockExpires, notifier, codec);
+		newLock.setWatchdog(watchdog);
+		newLock.setMetrics(metrics);
+		newLock.setWaitStrategy(waitStrategy);
+		return (RedisFairLock) putIfAbsent(fairLocks, lockKey, newLock);
+	}
+
+	/**
+	 * lockKey 对应的带 fencing token 的锁, 同一个 lockKey 在被使用期间总是返回同一个对象, 见 {@link RedisFencedLock}
+	 */
+	public RedisFencedLock getFencedLock(String lockKey) {
+		ObjectUtils.requireNonNull(lockKey, "lockKey");
+		RedisFencedLock lock = (RedisFencedLock) get(fencedLocks, lockKey);
+		if (lock != null) {
+			return lock;
+		}
+		RedisFencedLock newLock = new RedisFencedLock(executor, lockKey, lockExpires, notifier, codec);
+		newLock.setWatchdog(watchdog);
+		newLock.setMetrics(metrics);
+		newLock.setWaitStrategy(waitStrategy);
+		newLock.setStateCache(stateCache);
+		return (RedisFencedLock) putIfAbsent(fencedLocks, lockKey, newLock);
+	}
+
+	/**
+	 * lockKey 对应的两级锁(jvm内的线程先在本地竞争), 同一个 lockKey 在被使用期间总是返回同一个对象.
+	 * 连续本地交接 16 次后释放redis中的锁, 见 {@link RedisCohortLock}
+	 */
+	public RedisCohortLock getCohortLock(String lockKey) {
+		ObjectUtils.requireNonNull(lockKey, "lockKey");
+		RedisCohortLock lock = (RedisCohortLock) get(cohortLocks, lockKey);
+		if (lock != null) {
+			return lock;
+		}
+		RedisCohortLock newLock = new RedisCohortLock(getLock(lockKey), DEFAULT_MAX_LOCAL_PASSES);
+		newLock.setWaitStrategy(waitStrategy);
+		return (RedisCohortLock) putIfAbsent(cohortLocks, lockKey, newLock);
+	}
+
+	/**
+	 * lockKey 对应的读写锁, 读锁与写锁的有效时长都为 lockExpires, 同一个 lockKey 在被使用期间总是返回同一个对象.
+	 * 同一个 lockKey 不能同时用作 {@link #getLock(String)} 的互斥锁.
+	 */
+	public RedisReentrantReadWriteLock getReadWriteLock(String lockKey) {
+		ObjectUtils.requireNonNull(lockKey, "lockKey");
+		RedisReentrantReadWriteLock lock = (RedisReentrantReadWriteLock) get(readWriteLocks, lockKey);
+		if (lock != null) {
+			return lock;
+		}
+		RedisReentrantReadWriteLock newLock = new RedisReentrantReadWriteLock(executor, lockKey, lockExpires, lockExpires, notifier, codec);
+		((RedisReentrantReadWriteLock.WriteLock) newLock.writeLock()).setWatchdog(watchdog);
+		newLock.setMetrics(metrics);
+		newLock.setWaitStrategy(waitStrategy);
+		return (RedisReentrantReadWriteLock) putIfAbsent(readWriteLocks, lockKey, newLock);
+	}
+
+	/**
+	 * 同时锁住 lockKeys 的锁, 每次调用返回新的对象(不缓存). lockKeys 可与 {@link #getLock(String)} 的互斥锁混用
+	 */
+	public RedisMultiLock getMultiLock(Collection<String> lockKeys) {
+		RedisMultiLock lock = new RedisMultiLock(executor, lockKeys, lockExpires, notifier, codec);
+		lock.setMetrics(metrics);
+		lock.setWaitStrategy(waitStrategy);
+		return lock;
+	}
+
+	/**
+	 * 在 time 内同时获取 lockKeys 的所有锁, 每次尝试一次网络往返
+	 * 
+	 * @return 已被当前线程持有的 {@link RedisMultiLock}, 用于一次性释放所有锁; 超时则为 {@code null}, 此时不持有任何锁
+	 */
+	public RedisMultiLock lockAll(Collection<String> lockKeys, long time, TimeUnit unit) {
+		RedisMultiLock lock = getMultiLock(lockKeys);
+		return lock.tryLock(time, unit) ? lock : null;
+	}
+
+	/**
+	 * key 对应的分布式信号量, 租约的有效时长为 lockExpires, 每次调用返回新的对象(不缓存, 对象本身没有状态).
+	 * 使用同一个 key 的所有节点的 permits 必须一致
+	 */
+	public RedisSemaphore getSemaphore(String key, int permits) {
+		RedisSemaphore semaphore = new RedisSemaphore(executor, key, permits, lockExpires, notifier, codec);
+		semaphore.setMetrics(metrics);
+		semaphore.setWaitStrategy(waitStrategy);
+		return semaphore;
+	}
+
+	/**
+	 * key 对应的ID生成器, 同一个 key 在被使用期间总是返回同一个对象, 以免多个生成器各自租用的ID段被浪费. 见 {@link RedisIdGenerator}
+	 */
+	public RedisIdGenerator getIdGenerator(String key) {
+		ObjectUtils.requireNonNull(key, "key");
+		RedisIdGenerator generator = (RedisIdGenerator) get(idGenerators, key);
+		if (generator != null) {
+			return generator;
+		}
+		return (RedisIdGenerator) putIfAbsent(idGenerators, key, new RedisIdGenerator(executor, key));
+	}
+
+	/**
+	 * 设置自动续约, 作用于之后新创建的锁(读写锁只作用于写锁), 应在获取锁之前设置. watchdog 不由 LockManager 释放
+	 */
+	public void setWatchdog(LockWatchdog watchdog) {
+		this.watchdog = watchdog;
+	}
+
+	/**
+	 * 设置统计, 作用于之后新创建的锁, 应在获取锁之前设置. metrics 不由 LockManager 释放
+	 */
+	public void setMetrics(LockMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * 设置阻塞式获取(含异步获取, 两级锁在redis中的竞争与信号量)的等待策略, 作用于之后新创建的锁, 为null时使用默认策略. 见 {@link WaitStrategies}
+	 */
+	public void setWaitStrategy(WaitStrategy waitStrategy) {
+		this.waitStrategy = waitStrategy;
+	}
+
+	/**
+	 * 启用jvm内共享的锁状态近端缓存, 作用于之后新创建的 {@link #getLock(String)} 与 {@link #getFencedLock(String)} 的锁
+	 * (包括 {@link #getCohortLock(String)} 使用的锁), 应在获取锁之前调用. 需要 notifier, 缓存由 LockManager 释放. 见 {@link LockStateCache}
+	 */
+	public synchronized void enableStateCache() {
+		if (notifier == null) {
+			throw new IllegalStateException("state cache requires a lock notifier");
+		}
+		if (stateCache == null) {
+			stateCache = new LockStateCache(notifier);
+		}
+	}
+
+	private Object get(ConcurrentMap<String, LockReference> registry, String lockKey) {
+		expungeStaleLocks();
+		LockReference ref = registry.get(lockKey);
+		return ref == null ? null : ref.get();
+	}
+
+	/**
+	 * @return 已存在的锁对象, 或者新放入的 newLock
+	 */
+	private Object putIfAbsent(ConcurrentMap<String, LockReference> registry, String lockKey, Object newLock) {
+		LockReference newRef = new LockReference(registry, lockKey, newLock, queue);
+		// 未能放入时 newLock 被丢弃, 不会被持有
+		if (newLock instanceof AbstractRedisLock) {
+			((AbstractRedisLock) newLock).setHoldListener(newRef);
+		} else if (newLock instanceof RedisCohortLock) {
+			((RedisCohortLock) newLock).setHoldListener(newRef);
+		} else if (newLock instanceof RedisReentrantReadWriteLock) {
+			((RedisReentrantReadWriteLock) newLock).setHoldListener(newRef);
+		}
+		while (true) {
+			LockReference ref = registry.get(lockKey);
+			Object lock = ref == null ? null : ref.get();
+			if (lock != null) {
+				return lock;
+			}
+			if (ref == null ? registry.putIfAbsent(lockKey, newRef) == null : registry.replace(lockKey, ref, newRef)) {
+				return newLock;
+			}
+		}
+	}
+
+	/**
+	 * 释放连接池与订阅连接, 之后由该 LockManager 创建的锁都不可再使用
+	 */
+	public void release() {
+		locks.clear();
+		fairLocks.clear();
+		fencedLocks.clear();
+		cohortLocks.clear();
+		readWriteLocks.clear();
+		idGenerators.clear();
+		LockStateCache stateCache = this.stateCache;
+		if (stateCache != null) {
+			stateCache.release();
+		}
+		if (notifier != null) {
+			notifier.release();
+		}
+		executor.release();
+	}
+
+	private void expungeStaleLocks() {
+		LockReference ref;
+		while ((ref = (LockReference) queue.poll()) != null) {
+			ref.registry.remove(ref.lockKey, ref);
+		}
+	}
+
+	private static GenericObjectPoolConfig defaultPoolConfig() {
+		GenericObjectPoolConfig config = new GenericObjectPoolConfig();
+		config.setMaxTotal(DEFAULT_MAX_CONNECTIONS);
+		config.setMaxIdle(DEFAULT_MAX_CONNECTIONS);
+		return config;
+	}
+
+	/**
+	 * 缓存中的锁对象, 有本地持有者时强引用锁对象, 使其在释放之前不被回收
+	 */
+	private static class LockReference extends WeakReference<Object> implements HoldListener {
+
+		private final ConcurrentMap<String, LockReference> registry;
+
+		private final String lockKey;
+
+		// 以下字段由 this 保护
+
+		private int holders;
+
+		// holders > 0 时为锁对象
+		private Object pinned;
+
+		LockReference(ConcurrentMap<String, LockReference> registry, String lockKey, Object lock, ReferenceQueue<Object> queue) {
+			super(lock, queue);
+			this.registry = registry;
+			this.lockKey = lockKey;
+		}
+
+		public synchronized void held() {
+			if (holders++ == 0) {
+				pinned = get();
+			}
+		}
+
+		public synchronized void released() {
+			if (holders > 0 && --holders == 0) {
+				pinned = null;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,256 @@
+package io.lock.redis;
+
+import io.lock.Releasable;
+import io.lock.util.ObjectUtils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * jvm内共享的锁状态近端缓存(每个redis server一个): 记录获取尝试观察到的"被其他持有者持有, 直到T",
+ * 使同一个jvm内各线程对同一个 lockKey 的 {@link RedisReentrantLock#tryLock()} 与 {@link RedisReentrantLock#isLocked()} 在T之前不必访问redis.
+ * <ul>
+ * <li>缓存的正确性依赖锁释放通知: 被缓存的 lockKey 订阅其channel, 收到通知或订阅(重新)生效时失效; 只采用订阅生效之后发出的尝试的结果</li>
+ * <li>本jvm内获取到锁后, 该 lockKey 不再缓存, 直到本jvm释放</li>
+ * <li>T 以发出请求前的 System.nanoTime() 加上持有者剩余的有效时长计算, 偏保守; 通知丢失时最多到T失效</li>
+ * <li>T 过后只有一个线程回到redis探测, 其余线程在探测完成前仍视为被持有(最多 {@value #PROBE_GRACE_MILLIS} 毫秒)</li>
+ * <li>最多缓存 maxEntries 个 lockKey, 之后新的 lockKey 不缓存; 条目(与订阅)在 {@link #release()} 之前一直保留</li>
+ * </ul>
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	lockManager.enableStateCache();
+ * 	{@link RedisReentrantLock} lock = lockManager.getLock("lockKey");
+ * 	lock.tryLock(); // 其他节点持有期间, 本jvm内只有第一次尝试访问redis
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public class LockStateCache implements Releasable {
+
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+	private static final long PROBE_GRACE_MILLIS = 10L;
+
+	private static final long PROBE_GRACE_NANOS = TimeUnit.MILLISECONDS.toNanos(PROBE_GRACE_MILLIS);
+
+	// heldUntil 的取值, 表示没有可用的缓存
+	private static final long UNKNOWN = Long.MIN_VALUE;
+
+	private final RedisLockNotifier notifier;
+
+	private final int maxEntries;
+
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	private volatile boolean closed;
+
+	public LockStateCache(RedisLockNotifier notifier) {
+		this(notifier, DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * @param notifier 锁释放通知, 不由缓存释放
+	 */
+	public LockStateCache(RedisLockNotifier notifier, int maxEntries) {
+		ObjectUtils.requireNonNull(notifier, "notifier");
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+		}
+		this.notifier = notifier;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * 查询缓存, lockKey 的缓存已过期时只让一个调用者返回 {@code null} 去探测
+	 *
+	 * @return lockKey 已知被其他持有者持有时为剩余的有效时长(毫秒); 否则为 {@code null}, 调用方需要访问redis, 并通过
+	 *         {@link #heldByOther(String, long, long)} 或 {@link #acquiredLocally(String)} 告知结果
+	 */
+	public Long remainingLease(String lockKey) {
+		Entry entry = entries.get(lockKey);
+		return entry == null ? null : entry.remainingLease();
+	}
+
+	/**
+	 * 只读的查询, 不发起探测
+	 *
+	 * @return lockKey 是否已知被其他持有者持有
+	 */
+	public boolean isHeldByOther(String lockKey) {
+		Entry entry = entries.get(lockKey);
+		if (entry == null) {
+			return false;
+		}
+		long until = entry.heldUntil.get();
+		return until != UNKNOWN && until - System.nanoTime() > 0;
+	}
+
+	/**
+	 * 一次获取尝试失败
+	 *
+	 * @param requestTime 发出请求前的 System.nanoTime()
+	 * @param ttl 持有者剩余的有效时长(毫秒)
+	 */
+	public void heldByOther(String lockKey, long requestTime, long ttl) {
+		Entry entry = entry(lockKey);
+		if (entry != null) {
+			entry.heldByOther(requestTime, ttl);
+		}
+	}
+
+	/**
+	 * 本jvm内获取到锁, 释放之前不再缓存
+	 */
+	public void acquiredLocally(String lockKey) {
+		Entry entry = entry(lockKey);
+		if (entry != null) {
+			entry.setHeldLocally(true);
+		}
+	}
+
+	/**
+	 * 本jvm释放了锁(或发现锁已过期)
+	 */
+	public void releasedLocally(String lockKey) {
+		Entry entry = entries.get(lockKey);
+		if (entry != null) {
+			entry.setHeldLocally(false);
+		}
+	}
+
+	/**
+	 * 取消所有订阅, 清空缓存
+	 */
+	public void release() {
+		closed = true;
+		for (Entry entry : entries.values()) {
+			entry.unsubscribe();
+		}
+		entries.clear();
+	}
+
+	private Entry entry(String lockKey) {
+		Entry entry = entries.get(lockKey);
+		if (entry != null || closed || entries.size() >= maxEntries) {
+			return entry;
+		}
+		Entry newEntry = new Entry(lockKey);
+		entry = entries.putIfAbsent(lockKey, newEntry);
+		return entry == null ? newEntry : entry;
+	}
+
+	/**
+	 * 一个 lockKey 的缓存, 也是其锁释放通知的 observer
+	 */
+	private final class Entry implements Runnable {
+
+		private final String lockKey;
+
+		// 其他持有者的有效期截止时间(System.nanoTime()), 无锁地读
+		private final AtomicLong heldUntil = new AtomicLong(UNKNOWN);
+
+		// 以下字段由 this 保护
+
+		private RedisLockNotifier.Subscription subscription;
+
+		private boolean subscribed;
+
+		// 订阅生效时的 System.nanoTime()
+		private long subscribedAt;
+
+		// 最近一次失效时的 System.nanoTime()
+		private long invalidatedAt = System.nanoTime();
+
+		private boolean heldLocally;
+
+		Entry(String lockKey) {
+			this.lockKey = lockKey;
+		}
+
+		Long remainingLease() {
+			long until = heldUntil.get();
+			if (until == UNKNOWN) {
+				return null;
+			}
+			long now = System.nanoTime();
+			long remaining = until - now;
+			if (remaining > 0) {
+				return Math.max(TimeUnit.NANOSECONDS.toMillis(remaining), 1);
+			}
+			// 有效期已过, 抢到的线程去探测, 其余线程在宽限期内仍视为被持有
+			if (heldUntil.compareAndSet(until, now + PROBE_GRACE_NANOS)) {
+				return null;
+			}
+			return PROBE_GRACE_MILLIS;
+		}
+
+		synchronized void heldByOther(long requestTime, long ttl) {
+			if (!subscribe()) {
+				return;
+			}
+			// 请求发出时订阅尚未生效, 或之后锁已被释放(或可能丢失了通知), 观察到的结果不可信
+			if (!subscribed || subscribedAt - requestTime > 0 || invalidatedAt - requestTime >= 0 || heldLocally) {
+				return;
+			}
+			heldUntil.set(requestTime + TimeUnit.MILLISECONDS.toNanos(ttl));
+		}
+
+		synchronized void setHeldLocally(boolean heldLocally) {
+			this.heldLocally = heldLocally;
+			invalidate();
+		}
+
+		/**
+		 * 锁释放通知, 或订阅(重新)生效, 在订阅线程中执行
+		 */
+		public synchronized void run() {
+			invalidate();
+		}
+
+		synchronized void unsubscribe() {
+			if (subscription != null) {
+				subscription.removeObserver(this);
+				notifier.unobserve(subscription);
+				subscription = null;
+			}
+			invalidate();
+		}
+
+		private void invalidate() {
+			invalidatedAt = System.nanoTime();
+			heldUntil.set(UNKNOWN);
+		}
+
+		/**
+		 * 第一次观察到其他持有者时开始订阅, 不等待订阅生效
+		 *
+		 * @return 是否已订阅
+		 */
+		private boolean subscribe() {
+			if (subscription != null) {
+				return true;
+			}
+			if (closed) {
+				return false;
+			}
+			// 只观察, 不算等待者: 缓存期间每次释放的通知不会给之后的等待者留下许可
+			subscription = notifier.observe(lockKey);
+			subscription.addObserver(this);
+			subscription.whenSubscribed(new Runnable() {
+				public void run() {
+					synchronized (Entry.this) {
+						subscribed = true;
+						subscribedAt = System.nanoTime();
+					}
+				}
+			});
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,163 @@
+package io.lock.redis;
+
+import io.lock.Releasable;
+import io.lock.metrics.LockStats;
+import io.lock.redis.util.LockScripts;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 锁的自动续约(可选). 持有期间锁的有效期被不断延长, 因此可以使用较短的 lockExpires 以便持有者崩溃后锁尽快失效,
+ * 同时不必担心临界区执行时间超过 lockExpires 而丢失锁.
+ * <ul>
+ * <li>所有 {@link LockWatchdog} 共用一个jvm内唯一的后台线程</li>
+ * <li>每次续约时, 同一个 {@link JedisExecutor} 上的所有被持有的锁在一次pipeline中续约, 一次网络往返</li>
+ * <li>锁被完全释放后不再续约; 续约时发现锁已不被持有(已过期)也不再续约</li>
+ * <li>只作用于互斥锁({@link RedisReentrantLock} 及读写锁的写锁)</li>
+ * </ul>
+ * renewInterval 应明显小于锁的有效时长(如 1/3), 以容忍一次续约失败.
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	{@link LockWatchdog} watchdog = new {@link LockWatchdog}(1000);
+ * 	lockManager.setWatchdog(watchdog); // 或者 lock.setWatchdog(watchdog);
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public class LockWatchdog implements Releasable {
+
+	private static final Logger logger = LoggerFactory.getLogger(LockWatchdog.class);
+
+	private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "redis-lock-watchdog");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	/**
+	 * 被持有的锁 -> 持有者在hash中的field
+	 */
+	private final ConcurrentMap<RedisReentrantLock, byte[]> heldLocks = new ConcurrentHashMap<RedisReentrantLock, byte[]>();
+
+	private final ScheduledFuture<?> task;
+
+	/**
+	 * @param renewInterval 续约间隔(毫秒)
+	 */
+	public LockWatchdog(long renewInterval) {
+		if (renewInterval <= 0) {
+			throw new IllegalArgumentException("renewInterval must be positive: " + renewInterval);
+		}
+		task = scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				renewAll();
+			}
+		}, renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 开始为锁续约, 由锁在第一次获取成功后调用
+	 *
+	 * @param owner 持有者在hash中的field
+	 */
+	void watch(RedisReentrantLock lock, byte[] owner) {
+		heldLocks.put(lock, owner);
+	}
+
+	/**
+	 * 停止为锁续约, 由锁在完全释放时调用
+	 */
+	void unwatch(RedisReentrantLock lock) {
+		heldLocks.remove(lock);
+	}
+
+	/**
+	 * 当前正在续约的锁的个数
+	 */
+	public int size() {
+		return heldLocks.size();
+	}
+
+	/**
+	 * 停止续约, 不影响共用的后台线程
+	 */
+	public void release() {
+		task.cancel(false);
+		heldLocks.clear();
+	}
+
+	private void renewAll() {
+		if (heldLocks.isEmpty()) {
+			return;
+		}
+		Map<JedisExecutor, List<RedisReentrantLock>> byExecutor = new HashMap<JedisExecutor, List<RedisReentrantLock>>();
+		for (RedisReentrantLock lock : heldLocks.keySet()) {
+			List<RedisReentrantLock> locks = byExecutor.get(lock.executor);
+			if (locks == null) {
+				locks = new ArrayList<RedisReentrantLock>();
+				byExecutor.put(lock.executor, locks);
+			}
+			locks.add(lock);
+		}
+		for (Map.Entry<JedisExecutor, List<RedisReentrantLock>> entry : byExecutor.entrySet()) {
+			try {
+				renew(entry.getKey(), entry.getValue());
+			} catch (RuntimeException e) {
+				// 下一次再试, 锁的有效期应能容忍一次失败
+				logger.warn("failed to renew {} locks", entry.getValue().size(), e);
+			}
+		}
+	}
+
+	private void renew(JedisExecutor executor, List<RedisReentrantLock> candidates) {
+		List<RedisReentrantLock> locks = new ArrayList<RedisReentrantLock>(candidates.size());
+		List<byte[]> owners = new ArrayList<byte[]>(candidates.size());
+		List<byte[][]> paramsList = new ArrayList<byte[][]>(candidates.size());
+		for (RedisReentrantLock lock : candidates) {
+			byte[] owner = heldLocks.get(lock);
+			if (owner == null) { // 已释放
+				continue;
+			}
+			locks.add(lock);
+			owners.add(owner);
+			paramsList.add(new byte[][] { lock.lockKeyBytes, lock.lockExpiresBytes, owner });
+		}
+		if (locks.isEmpty()) {
+			return;
+		}
+		long requestTime = System.nanoTime();
+		List<Object> replies = executor.evalPipelined(LockScripts.RENEW, 1, paramsList);
+		for (int i = 0; i < locks.size(); i++) {
+			RedisReentrantLock lock = locks.get(i);
+			Object reply = replies.get(i);
+			if (Long.valueOf(1).equals(reply)) {
+				lock.renewed(requestTime);
+			} else if (Long.valueOf(0).equals(reply)) {
+				// 锁已释放或已过期, 不再续约
+				if (heldLocks.remove(lock, owners.get(i))) {
+					logger.debug("stop renewing lockKey: {}", lock.lockKey);
+				}
+			} else {
+				logger.warn("failed to renew lockKey: {}, reply: {}", lock.lockKey, reply);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,358 @@
+package io.lock.redis;
+
+import io.lock.redis.util.RedisScript;
+import io.lock.util.ObjectUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * 跨线程自动合并命令的 {@link JedisExecutor}: 各线程并发发出的脚本调用({@link #eval(RedisScript, int, byte[]...)},
+ * {@link #evalPipelined(RedisScript, int, List)})进入少数几个共享连接的队列, 连接空闲时由等待中的一个调用者把队列中积攒的命令
+ * 一次写出(pipeline), 再按顺序把回复交还给各个等待的调用者.
+ * <ul>
+ * <li>锁的获取, 释放与续约都是脚本调用, 大量线程同时加锁时网络往返被分摊, 吞吐不再受限于连接数 x 往返时间</li>
+ * <li>没有专门的I/O线程, 没有并发时与同步调用一样只有一次往返, 不多一次线程切换</li>
+ * <li>一个线程总是使用同一个连接, 同一个线程的命令按发出顺序执行</li>
+ * <li>其他命令({@link #execute(JedisCallback)})需要独占连接, 交给 fallback 执行</li>
+ * <li>连接出错时该批命令都以 {@link JedisConnectionException} 失败, 下一批重新连接</li>
+ * </ul>
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	{@link JedisExecutor} executor = new {@link PipelinedJedisExecutor}(host, port);
+ * 	{@link LockManager} lockManager = new LockManager(executor, new RedisLockNotifier(new Jedis(host, port)), 3000, BinaryLockInfoCodec.INSTANCE);
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public class PipelinedJedisExecutor extends JedisExecutor {
+
+	private static final Logger logger = LoggerFactory.getLogger(PipelinedJedisExecutor.class);
+
+	public static final int DEFAULT_CONNECTIONS = 2;
+
+	// 每次写出的最大命令数
+	public static final int DEFAULT_MAX_BATCH = 512;
+
+	private static final int DEFAULT_FALLBACK_CONNECTIONS = 4;
+
+	private final JedisExecutor fallback;
+
+	private final Pipe[] pipes;
+
+	private final int maxBatch;
+
+	private final LongAdder commands = new LongAdder();
+
+	private final LongAdder flushes = new LongAdder();
+
+	private volatile boolean closed;
+
+	public PipelinedJedisExecutor(String host, int port) {
+		this(host, port, Protocol.DEFAULT_TIMEOUT, DEFAULT_CONNECTIONS, DEFAULT_MAX_BATCH, new PooledJedisExecutor(new JedisPool(fallbackPoolConfig(), host, port)));
+	}
+
+	/**
+	 * @param timeout 连接的读写超时(毫秒)
+	 * @param connections 合并命令的连接数
+	 * @param maxBatch 每次写出的最大命令数
+	 * @param fallback 执行不能合并的命令, 由 {@link #release()} 释放
+	 */
+	public PipelinedJedisExecutor(String host, int port, int timeout, int connections, int maxBatch, JedisExecutor fallback) {
+		ObjectUtils.requireNonNull(host, "host", fallback, "fallback");
+		if (connections <= 0 || maxBatch <= 0) {
+			throw new IllegalArgumentException(String.format("connections and maxBatch must be positive: %d, %d", connections, maxBatch));
+		}
+		this.fallback = fallback;
+		this.maxBatch = maxBatch;
+		this.pipes = new Pipe[connections];
+		for (int i = 0; i < connections; i++) {
+			pipes[i] = new Pipe(new Jedis(host, port, timeout));
+		}
+	}
+
+	@Override
+	public <T> T execute(JedisCallback<T> callback) {
+		return fallback.execute(callback);
+	}
+
+	@Override
+	public Object eval(RedisScript script, int keyCount, byte[]... params) {
+		Pipe pipe = pipe();
+		Command command = new Command(script, keyCount, params);
+		pipe.submit(command);
+		Object reply = pipe.await(command);
+		if (reply instanceof JedisDataException) {
+			throw (JedisDataException) reply;
+		}
+		return reply;
+	}
+
+	/**
+	 * 所有调用进入同一个连接的队列, 与其他线程的命令合并写出
+	 */
+	@Override
+	public List<Object> evalPipelined(RedisScript script, int keyCount, List<byte[][]> paramsList) {
+		Pipe pipe = pipe();
+		List<Command> batch = new ArrayList<Command>(paramsList.size());
+		for (byte[][] params : paramsList) {
+			Command command = new Command(script, keyCount, params);
+			batch.add(command);
+			pipe.submit(command);
+		}
+		List<Object> replies = new ArrayList<Object>(batch.size());
+		for (Command command : batch) {
+			replies.add(pipe.await(command));
+		}
+		return replies;
+	}
+
+	/**
+	 * 已执行的脚本调用数
+	 */
+	public long getCommandCount() {
+		return commands.sum();
+	}
+
+	/**
+	 * 写出的批数, 与 {@link #getCommandCount()} 之比即平均每批合并的命令数
+	 */
+	public long getFlushCount() {
+		return flushes.sum();
+	}
+
+	public void release() {
+		closed = true;
+		for (Pipe pipe : pipes) {
+			pipe.close();
+		}
+		fallback.release();
+	}
+
+	private Pipe pipe() {
+		return pipes[(int) (Thread.currentThread().getId() % pipes.length)];
+	}
+
+	private static GenericObjectPoolConfig fallbackPoolConfig() {
+		GenericObjectPoolConfig config = new GenericObjectPoolConfig();
+		config.setMaxTotal(DEFAULT_FALLBACK_CONNECTIONS);
+		config.setMaxIdle(DEFAULT_FALLBACK_CONNECTIONS);
+		return config;
+	}
+
+	/**
+	 * 一个连接与等待写出的命令. 没有专门的线程: 等待中的调用者之一取得连接, 把队列中积攒的命令一次写出并分发回复,
+	 * 其余调用者阻塞; 取得连接的调用者完成一批后交还连接, 并唤醒队首的调用者接手下一批
+	 */
+	private final class Pipe {
+
+		private final Jedis jedis;
+
+		private final Queue<Command> queue = new ConcurrentLinkedQueue<Command>();
+
+		private final AtomicBoolean flushing = new AtomicBoolean();
+
+		Pipe(Jedis jedis) {
+			this.jedis = jedis;
+		}
+
+		void submit(Command command) {
+			if (closed) {
+				throw new IllegalStateException("executor released");
+			}
+			queue.add(command);
+		}
+
+		/**
+		 * 等待 command 完成, 期间可能替其他调用者写出命令
+		 */
+		Object await(Command command) {
+			boolean interrupted = false;
+			while (!command.done) {
+				if (flushing.compareAndSet(false, true)) {
+					try {
+						flushQueued();
+					} finally {
+						flushing.set(false);
+					}
+					// 交还连接后入队的调用者自己能取得连接; 之前入队的由这里唤醒
+					Command next = queue.peek();
+					if (next != null) {
+						LockSupport.unpark(next.waiter);
+					}
+				} else {
+					// 不响应中断(与同步的 Jedis 调用一致), 中断状态在返回时恢复
+					LockSupport.park(this);
+					if (Thread.interrupted()) {
+						interrupted = true;
+					}
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			return command.get();
+		}
+
+		void close() {
+			while (!flushing.compareAndSet(false, true)) {
+				Thread.yield();
+			}
+			try {
+				failQueued();
+				jedis.disconnect();
+			} finally {
+				flushing.set(false);
+			}
+		}
+
+		private void flushQueued() {
+			if (closed) {
+				failQueued();
+				return;
+			}
+			List<Command> batch = new ArrayList<Command>();
+			Command command;
+			while (batch.size() < maxBatch && (command = queue.poll()) != null) {
+				batch.add(command);
+			}
+			if (!batch.isEmpty()) {
+				flush(batch);
+			}
+		}
+
+		private void flush(List<Command> batch) {
+			try {
+				List<Object> replies = sendAll(batch);
+				List<Command> retries = null;
+				for (int i = 0; i < batch.size(); i++) {
+					Object reply = replies.get(i);
+					if (RedisScript.isNoScript(reply)) {
+						if (retries == null) {
+							retries = new ArrayList<Command>();
+						}
+						retries.add(batch.get(i));
+					} else {
+						batch.get(i).complete(reply);
+					}
+				}
+				if (retries != null) {
+					// redis server 尚未缓存脚本(重启, SCRIPT FLUSH等), 加载后重试一次
+					Set<RedisScript> scripts = new HashSet<RedisScript>();
+					for (Command command : retries) {
+						if (scripts.add(command.script)) {
+							command.script.load(jedis);
+						}
+					}
+					replies = sendAll(retries);
+					for (int i = 0; i < retries.size(); i++) {
+						retries.get(i).complete(replies.get(i));
+					}
+				}
+				commands.add(batch.size());
+				flushes.increment();
+			} catch (RuntimeException e) {
+				logger.warn("pipelined flush of {} commands failed, reconnecting", batch.size(), e);
+				// 未读取的回复不再可用, 断开后下一批重新连接
+				jedis.getClient().resetPipelinedCount();
+				jedis.disconnect();
+				JedisConnectionException failure = e instanceof JedisConnectionException ? (JedisConnectionException) e : new JedisConnectionException(e);
+				for (Command command : batch) {
+					command.fail(failure);
+				}
+			}
+		}
+
+		private List<Object> sendAll(List<Command> batch) {
+			Client client = jedis.getClient();
+			for (Command command : batch) {
+				command.script.send(client, command.keyCount, command.params);
+			}
+			return client.getAll();
+		}
+
+		private void failQueued() {
+			Command command;
+			while ((command = queue.poll()) != null) {
+				command.fail(new IllegalStateException("executor released"));
+			}
+		}
+
+	}
+
+	/**
+	 * 一次脚本调用, 调用者阻塞到写出它的调用者交还回复
+	 */
+	private static final class Command {
+
+		final RedisScript script;
+
+		final int keyCount;
+
+		final byte[][] params;
+
+		private final Thread waiter = Thread.currentThread();
+
+		private volatile boolean done;
+
+		private Object reply;
+
+		private RuntimeException error;
+
+		Command(RedisScript script, int keyCount, byte[][] params) {
+			this.script = script;
+			this.keyCount = keyCount;
+			this.params = params;
+		}
+
+		void complete(Object reply) {
+			if (done) {
+				return;
+			}
+			this.reply = reply;
+			done = true;
+			LockSupport.unpark(waiter);
+		}
+
+		void fail(RuntimeException error) {
+			if (done) {
+				return;
+			}
+			this.error = error;
+			done = true;
+			LockSupport.unpark(waiter);
+		}
+
+		/**
+		 * @return 回复, 个别命令的 redis 错误以 {@link JedisDataException} 对象返回
+		 */
+		Object get() {
+			if (error != null) {
+				throw error;
+			}
+			return reply;
+		}
+
+	}
+
+}
@@ -0,0 +1,46 @@
+package io.lock.redis;
+
+import io.lock.util.ObjectUtils;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * 基于连接池, 每次执行时借出一个连接, 执行完归还; 连接异常时的连接作废
+ * 
+ * @author lixiaohui
+ *
+ */
+public class PooledJedisExecutor extends JedisExecutor {
+
+	private final JedisPool pool;
+
+	public PooledJedisExecutor(JedisPool pool) {
+		ObjectUtils.requireNonNull(pool, "pool");
+		this.pool = pool;
+	}
+
+	@Override
+	public <T> T execute(JedisCallback<T> callback) {
+		Jedis jedis = pool.getResource();
+		boolean broken = false;
+		try {
+			return callback.doInJedis(jedis);
+		} catch (JedisConnectionException e) {
+			broken = true;
+			throw e;
+		} finally {
+			if (broken) {
+				pool.returnBrokenResource(jedis);
+			} else {
+				pool.returnResource(jedis);
+			}
+		}
+	}
+
+	public void release() {
+		pool.destroy();
+	}
+
+}
@@ -0,0 +1,372 @@
+package io.lock.redis;
+
+import io.lock.AbstractLock;
+import io.lock.WaitStrategy;
+import io.lock.util.ObjectUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 两级的锁(cohort lock): 同一个jvm内的线程先竞争本地的 {@link ReentrantLock}, 只有本地的胜者才去redis竞争.
+ * <p>
+ * redis中的锁由整个jvm(该锁对象)持有, 持有者标识与线程无关. 释放时若本地还有线程在等待, 锁直接交给下一个本地线程,
+ * redis中的锁不释放, 省去释放与重新获取的网络往返. 为了不让其他节点一直等待, 连续本地交接 maxLocalPasses 次后必须释放redis中的锁(公平性上界).
+ * </p>
+ * <ul>
+ * <li>所有线程必须使用同一个锁对象, 通常由 {@link LockManager#getCohortLock(String)} 获取</li>
+ * <li>可重入, 同一个线程的嵌套获取/释放只在本地计数</li>
+ * <li>redis中的锁的有效期在本地交接时检查, 剩余不足一半时先续约; 单次持有的时长仍不应超过锁的有效时长, 且不支持 {@link LockWatchdog}</li>
+ * <li>底层为 {@link RedisFairLock} 时, 释放后其他节点按排队顺序获取</li>
+ * </ul>
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	{@link io.lock.Lock Lock} lock = lockManager.getCohortLock("lockKey");
+ * 	if (lock.tryLock(3, TimeUnit.SECONDS)) {
+ * 		try {
+ * 			// do something
+ * 		} finally {
+ * 			lock.unlock();
+ * 		}
+ * 	}
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public class RedisCohortLock extends AbstractLock {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisCohortLock.class);
+
+	// 持有者标识中代替线程id的值为 -(MAX_OWNER_ID + cohortId), 不与线程id及异步获取的 ownerId 重复
+	private static final AtomicLong cohortIds = new AtomicLong();
+
+	private final RedisReentrantLock redisLock;
+
+	private final long cohortId;
+
+	private final byte[] owner;
+
+	private final int maxLocalPasses;
+
+	private final ReentrantLock local = new ReentrantLock();
+
+	// 为null时使用底层的锁的等待策略
+	private volatile WaitStrategy waitStrategy;
+
+	// 为null时不通知, 由 LockManager 设置; 持有redis中的锁期间整个jvm算一个持有者
+	private volatile HoldListener holdListener;
+
+	// 以下字段由 local 保护
+
+	// 该jvm是否持有redis中的锁; volatile 使 isLocked() 不需要获取 local
+	private volatile boolean globalHeld;
+
+	// 持有redis中的锁期间连续本地交接的次数
+	private int localPasses;
+
+	// System.nanoTime(), 过了这个时间交接时先续约
+	private long renewAfter;
+
+	/**
+	 * @param redisLock redis中的锁, 可以与直接使用它的线程共享
+	 * @param maxLocalPasses 连续本地交接的最大次数, 为0时每次释放都释放redis中的锁
+	 */
+	public RedisCohortLock(RedisReentrantLock redisLock, int maxLocalPasses) {
+		ObjectUtils.requireNonNull(redisLock, "redisLock");
+		if (maxLocalPasses < 0) {
+			throw new IllegalArgumentException("maxLocalPasses must not be negative: " + maxLocalPasses);
+		}
+		this.redisLock = redisLock;
+		this.cohortId = cohortIds.incrementAndGet();
+		this.owner = redisLock.ownerField(-RedisReentrantLock.MAX_OWNER_ID - cohortId);
+		this.maxLocalPasses = maxLocalPasses;
+	}
+
+	public int getMaxLocalPasses() {
+		return maxLocalPasses;
+	}
+
+	@Override
+	protected boolean lock(boolean useTimeout, long time, TimeUnit unit, boolean interrupt) throws InterruptedException {
+		if (local.isHeldByCurrentThread()) { // 重入
+			local.lock();
+			return true;
+		}
+		long timeoutNanos = useTimeout ? unit.toNanos(time) : 0;
+		long deadline = System.nanoTime() + timeoutNanos;
+		boolean lockedLocally = false;
+		try {
+			lockedLocally = lockLocally(useTimeout, timeoutNanos, interrupt);
+		} finally {
+			if (!lockedLocally) {
+				abandonHandOff();
+			}
+		}
+		if (!lockedLocally) {
+			return false;
+		}
+		boolean acquired = false;
+		try {
+			acquired = lockGlobally(useTimeout, deadline, interrupt);
+			if (acquired) {
+				locked = true;
+			}
+			return acquired;
+		} finally {
+			if (!acquired) {
+				local.unlock();
+			}
+		}
+	}
+
+	public boolean tryLock() {
+		if (local.isHeldByCurrentThread()) {
+			local.lock();
+			return true;
+		}
+		if (!local.tryLock()) {
+			return false;
+		}
+		boolean acquired = false;
+		try {
+			acquired = isGlobalLeaseFresh() || attemptGlobally(false) == null;
+			if (acquired) {
+				locked = true;
+			}
+			return acquired;
+		} finally {
+			if (!acquired) {
+				local.unlock();
+			}
+		}
+	}
+
+	@Override
+	protected void unlock0() {
+		if (!local.isHeldByCurrentThread()) {
+			throw new IllegalMonitorStateException(String.format("current thread[%s] does not holds the lock", Thread.currentThread().toString()));
+		}
+		try {
+			if (local.getHoldCount() > 1) {
+				return;
+			}
+			if (globalHeld && localPasses < maxLocalPasses && local.hasQueuedThreads()) {
+				// 交给下一个本地线程, 不释放redis中的锁
+				localPasses++;
+				return;
+			}
+			releaseGlobally();
+		} finally {
+			local.unlock();
+		}
+	}
+
+	@Override
+	public boolean isHeldByCurrentThread() {
+		return local.isHeldByCurrentThread() && globalHeld;
+	}
+
+	/**
+	 * 该锁对象是否持有redis中的锁(可能正在被某个本地线程使用, 也可能正在交接).
+	 * 不获取本地的锁: 查询既不会等待持有者, 也不会被当作等待交接的线程
+	 */
+	public boolean isLocked() {
+		return globalHeld;
+	}
+
+	/**
+	 * 设置本地的胜者在redis中竞争时两次尝试之间的等待策略, 为null时使用底层的锁的等待策略(其也为null时使用默认策略)
+	 */
+	public void setWaitStrategy(WaitStrategy waitStrategy) {
+		this.waitStrategy = waitStrategy;
+	}
+
+	void setHoldListener(HoldListener holdListener) {
+		this.holdListener = holdListener;
+	}
+
+	/**
+	 * 底层的锁由创建者释放
+	 */
+	public void release() {
+	}
+
+	private boolean lockLocally(boolean useTimeout, long timeoutNanos, boolean interrupt) throws InterruptedException {
+		if (!useTimeout) {
+			if (interrupt) {
+				local.lockInterruptibly();
+			} else {
+				local.lock();
+			}
+			return true;
+		}
+		if (interrupt) {
+			return local.tryLock(timeoutNanos, TimeUnit.NANOSECONDS);
+		}
+		long deadline = System.nanoTime() + timeoutNanos;
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return local.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * 等待本地的锁超时或被中断: 释放者可能已看到本线程在排队而保留了redis中的锁, 此时没有其他线程接手就由本线程释放,
+	 * 否则redis中的锁要等有效期过后其他节点才能获取
+	 */
+	private void abandonHandOff() {
+		if (!globalHeld || !local.tryLock()) {
+			// 本地的锁被其他线程持有时由其负责释放
+			return;
+		}
+		try {
+			if (!local.hasQueuedThreads()) {
+				releaseGlobally();
+			}
+		} catch (RuntimeException e) {
+			logger.warn("failed to release the abandoned cohort hold of lockKey: {}", redisLock.lockKey, e);
+		} finally {
+			local.unlock();
+		}
+	}
+
+	/**
+	 * 已持有本地的锁, 获取(或续约)redis中的锁
+	 */
+	private boolean lockGlobally(boolean useTimeout, long deadline, boolean interrupt) throws InterruptedException {
+		if (isGlobalLeaseFresh()) {
+			return true;
+		}
+		if (attemptGlobally(true) == null) {
+			return true;
+		}
+		// 等待期间不占用redis连接, 由锁释放通知和按等待策略设置的定时器驱动重试, 见 AsyncAcquisition
+		long requestTime = System.nanoTime();
+		long remaining = deadline - requestTime;
+		if (useTimeout && remaining <= 0) {
+			redisLock.cancelAcquire(owner);
+			return false;
+		}
+		WaitStrategy waitStrategy = this.waitStrategy;
+		if (waitStrategy == null) {
+			waitStrategy = redisLock.getWaitStrategy();
+		}
+		CompletableFuture<Boolean> future = new AsyncAcquisition(redisLock, owner, waitStrategy, useTimeout, remaining).start();
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					if (!future.get()) {
+						return false;
+					}
+					globalAcquired(requestTime);
+					return true;
+				} catch (InterruptedException e) {
+					if (interrupt) {
+						// 取消后才获取到的锁会被释放; 取消前已获取到的在这里释放
+						if (!future.cancel(false) && Boolean.TRUE.equals(future.getNow(Boolean.FALSE))) {
+							redisLock.tryRelease(owner);
+						}
+						throw e;
+					}
+					interrupted = true;
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					throw new IllegalStateException(cause);
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * 持有redis中的锁, 且剩余有效期超过一半, 不需要访问redis
+	 */
+	private boolean isGlobalLeaseFresh() {
+		return globalHeld && System.nanoTime() - renewAfter < 0;
+	}
+
+	/**
+	 * 一次获取(已持有时为续约), 一次网络往返
+	 */
+	private Long attemptGlobally(boolean blocking) {
+		long requestTime = System.nanoTime();
+		Long ttl = redisLock.tryAcquire(owner, globalHeld, blocking);
+		if (ttl == null) {
+			globalAcquired(requestTime);
+		} else if (globalHeld) {
+			// 有效期已过, 被其他节点获取
+			logger.warn("cohort lost lockKey: {} after its lease expired", redisLock.lockKey);
+			globalHeld = false;
+			localPasses = 0;
+			holdEnded();
+		}
+		return ttl;
+	}
+
+	private void globalAcquired(long requestTime) {
+		if (!globalHeld) {
+			globalHeld = true;
+			localPasses = 0;
+			holdStarted();
+		}
+		renewAfter = requestTime + TimeUnit.MILLISECONDS.toNanos(redisLock.lockExpires) / 2;
+	}
+
+	private void holdStarted() {
+		HoldListener holdListener = this.holdListener;
+		if (holdListener != null) {
+			holdListener.held();
+		}
+	}
+
+	private void holdEnded() {
+		HoldListener holdListener = this.holdListener;
+		if (holdListener != null) {
+			holdListener.released();
+		}
+	}
+
+	private void releaseGlobally() {
+		if (!globalHeld) {
+			return;
+		}
+		globalHeld = false;
+		localPasses = 0;
+		locked = false;
+		holdEnded();
+		Long remains = redisLock.tryRelease(owner);
+		if (remains == null) {
+			logger.debug("lockKey: {} expired before release", redisLock.lockKey);
+			return;
+		}
+		if (remains < 0) {
+			throw new IllegalMonitorStateException(String.format("cohort[%d] does not holds the lock %s", cohortId, redisLock.lockKey));
+		}
+	}
+
+}
@@ -0,0 +1,180 @@
+package io.lock.redis;
+
+import io.lock.metrics.LockStats;
+import io.lock.redis.util.BinaryLockInfoCodec;
+import io.lock.redis.util.LockInfoCodec;
+import io.lock.redis.util.LockScripts;
+import io.lock.redis.util.ServerClock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Protocol;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 基于Redis的公平锁: 按请求的先后顺序(FIFO)获取锁.
+ * <p>
+ * 获取失败的请求者在redis中排队({@link LockScripts#FAIR_ACQUIRE}), 锁未被持有时只有队列头部的等待者能获取到锁,
+ * 释放锁时只唤醒队列头部的等待者, 而不是让所有等待者同时重试.
+ * 每个等待者的排队资格有截止时间(waitTimeout), 每次尝试时延长; 等待者崩溃后, 最多 waitTimeout 之后被移出队列, 不会永远阻塞后面的等待者.
+ * 等待者放弃等待(超时, 中断)时主动出队.
+ * </p>
+ * <pre>
+ * lockKey : { owner(hex) : hold count }          与 {@link RedisReentrantLock} 相同, 只是 owner 以十六进制字符串存储
+ * lock.queue:lockKey : [ owner, owner, ... ]    等待队列
+ * lock.timeout:lockKey : { owner : deadline }   排队资格的截止时间(server时间, 毫秒)
+ * </pre>
+ * <ul>
+ * <li>{@link #tryLock()} 也是公平的: 有等待者时不插队, 且失败时不排队</li>
+ * <li>需要 {@link RedisLockNotifier} 才能只唤醒队列头部的等待者, 没有时等待者不停地重试(仍然按顺序获取)</li>
+ * <li>同一个 lockKey 不能同时用作公平锁与 {@link RedisReentrantLock}</li>
+ * </ul>
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	{@link io.lock.Lock Lock} lock = new {@link RedisFairLock}(jedis, "lockKey", lockExpires, notifier);
+ * 	// 或者 lock = lockManager.getFairLock("lockKey");
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public class RedisFairLock extends RedisReentrantLock {
+
+	private static final long DEFAULT_WAIT_TIMEOUT = 5000L;
+
+	private static final byte[] ENQUEUE = Protocol.toByteArray(1);
+	private static final byte[] NO_ENQUEUE = Protocol.toByteArray(0);
+
+	private static final byte[] HEX = SafeEncoder.encode("0123456789abcdef");
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisFairLock.class);
+
+	private final byte[] queueKey;
+
+	private final byte[] timeoutKey;
+
+	// 排队资格的有效时长(毫秒)
+	private final long waitTimeout;
+
+	private final byte[] waitTimeoutBytes;
+
+	// 等待者两次尝试之间最多等待的时长, 保证排队资格在等待期间不过期
+	private final long pollInterval;
+
+	// 等待者的channel: lock.channel:lockKey:owner
+	private final byte[] waiterChannelPrefix;
+
+	private final ThreadLocal<byte[]> currentOwnerField = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return hex(codec.currentOwner());
+		}
+	};
+
+	public RedisFairLock(Jedis jedis, String lockKey, long lockExpires, RedisLockNotifier notifier) {
+		this(new SingleJedisExecutor(jedis), true, lockKey, lockExpires, DEFAULT_WAIT_TIMEOUT, notifier, BinaryLockInfoCodec.INSTANCE);
+	}
+
+	/**
+	 * 基于共享的 {@link JedisExecutor}(如连接池), 锁对象可以被多个线程共享, 通常由 {@link LockManager} 创建.
+	 * {@link #release()} 不会释放 executor.
+	 *
+	 * @param waitTimeout 等待者的排队资格的有效时长(毫秒), 即崩溃的等待者最多阻塞队列多久
+	 */
+	public RedisFairLock(JedisExecutor executor, String lockKey, long lockExpires, long waitTimeout, RedisLockNotifier notifier, LockInfoCodec codec) {
+		this(executor, false, lockKey, lockExpires, waitTimeout, notifier, codec);
+	}
+
+	private RedisFairLock(JedisExecutor executor, boolean ownsExecutor, String lockKey, long lockExpires, long waitTimeout, RedisLockNotifier notifier, LockInfoCodec codec) {
+		super(executor, ownsExecutor, lockKey, lockExpires, notifier, codec);
+		if (waitTimeout <= 0) {
+			throw new IllegalArgumentException("waitTimeout must be positive: " + waitTimeout);
+		}
+		this.queueKey = SafeEncoder.encode("lock.queue:" + lockKey);
+		this.timeoutKey = SafeEncoder.encode("lock.timeout:" + lockKey);
+		this.waitTimeout = waitTimeout;
+		this.waitTimeoutBytes = Protocol.toByteArray(waitTimeout);
+		this.pollInterval = Math.max(waitTimeout / 3, 1);
+		this.waiterChannelPrefix = SafeEncoder.encode(RedisLockNotifier.channelOf(lockKey + ":"));
+	}
+
+	public long getWaitTimeout() {
+		return waitTimeout;
+	}
+
+	@Override
+	protected Long tryAcquire(final byte[] owner, final boolean renewOnly, final boolean blocking) {
+		Long ttl = executor.execute(new JedisCallback<Long>() {
+			public Long doInJedis(Jedis jedis) {
+				long now = ServerClock.of(jedis).lowerBoundMillis(jedis);
+				return (Long) LockScripts.FAIR_ACQUIRE.eval(jedis, 3, lockKeyBytes, queueKey, timeoutKey,
+						lockExpiresBytes, renewOnly ? NO_INCREMENT : INCREMENT, owner, waitTimeoutBytes, Protocol.toByteArray(now), blocking ? ENQUEUE : NO_ENQUEUE);
+			}
+		});
+		if (ttl == null) {
+			return null;
+		}
+		// 锁未被持有而前面有等待者时 ttl 为负数, 等待被唤醒; 两种情况都要在排队资格过期前重试
+		return ttl > 0 ? Math.min(ttl, pollInterval) : pollInterval;
+	}
+
+	@Override
+	protected Long tryRelease(final byte[] owner) {
+		return executor.execute(new JedisCallback<Long>() {
+			public Long doInJedis(Jedis jedis) {
+				long now = ServerClock.of(jedis).lowerBoundMillis(jedis);
+				return (Long) LockScripts.FAIR_RELEASE.eval(jedis, 3, lockKeyBytes, queueKey, timeoutKey, owner, waiterChannelPrefix, Protocol.toByteArray(now));
+			}
+		});
+	}
+
+	@Override
+	protected void cancelAcquire(final byte[] owner) {
+		LockStats stats = this.stats;
+		if (stats != null) {
+			stats.command();
+		}
+		try {
+			executor.execute(new JedisCallback<Object>() {
+				public Object doInJedis(Jedis jedis) {
+					long now = ServerClock.of(jedis).lowerBoundMillis(jedis);
+					return LockScripts.FAIR_CANCEL.eval(jedis, 3, lockKeyBytes, queueKey, timeoutKey, owner, waiterChannelPrefix, Protocol.toByteArray(now));
+				}
+			});
+		} catch (RuntimeException e) {
+			// 排队资格过期后会被自动移出队列
+			logger.warn("failed to leave the wait queue of lockKey: {}", lockKey, e);
+		}
+	}
+
+	/**
+	 * 每个等待者订阅自己的channel, 只有轮到它时才被唤醒
+	 */
+	@Override
+	protected String notificationKey(byte[] owner) {
+		return lockKey + ":" + SafeEncoder.encode(owner);
+	}
+
+	@Override
+	protected byte[] ownerField() {
+		return currentOwnerField.get();
+	}
+
+	@Override
+	protected byte[] ownerField(long ownerId) {
+		return hex(super.ownerField(ownerId));
+	}
+
+	private static byte[] hex(byte[] owner) {
+		byte[] hex = new byte[owner.length * 2];
+		for (int i = 0; i < owner.length; i++) {
+			hex[i * 2] = HEX[(owner[i] >> 4) & 0xF];
+			hex[i * 2 + 1] = HEX[owner[i] & 0xF];
+		}
+		return hex;
+	}
+
+}
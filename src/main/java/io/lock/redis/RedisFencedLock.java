@@ -0,0 +1,96 @@
+package io.lock.redis;
+
+import io.lock.FencedLock;
+import io.lock.LockHandle;
+import io.lock.redis.util.BinaryLockInfoCodec;
+import io.lock.redis.util.LockInfoCodec;
+import io.lock.redis.util.LockScripts;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 带 fencing token 的 {@link RedisReentrantLock}: 获取锁的脚本({@link LockScripts#FENCED_ACQUIRE})在创建锁的同一次网络往返中
+ * 原子地递增 lock.fence:lockKey, 作为该次获取的 token.
+ * <pre>
+ * lockKey : { owner(mac + pid + threadId) : hold count }   与 {@link RedisReentrantLock} 相同
+ * lock.fence:lockKey : token                               没有有效期
+ * </pre>
+ * <ul>
+ * <li>重入与续约(包括 {@link LockWatchdog})不改变 token; 有效期过去后重新获取到锁时分配新的 token</li>
+ * <li>lockKey 可与 {@link RedisReentrantLock} 混用, 但通过后者获取的锁没有 token, 不受保护</li>
+ * <li>每个 lockKey 在redis中永久保留一个计数器</li>
+ * </ul>
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	{@link FencedLock} lock = lockManager.getFencedLock("lockKey");
+ * 	{@link LockHandle} handle = lock.tryLockWithToken(3, TimeUnit.SECONDS);
+ * 	if (handle != null) {
+ * 		try {
+ * 			storage.write(data, handle.getFencingToken());
+ * 		} finally {
+ * 			handle.unlock();
+ * 		}
+ * 	}
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public class RedisFencedLock extends RedisReentrantLock implements FencedLock {
+
+	private final byte[] fenceKey;
+
+	/**
+	 * 最近一次成功获取(含续约)时的 token, 锁是互斥的, 只属于当前的持有者
+	 */
+	private volatile long fencingToken;
+
+	public RedisFencedLock(Jedis jedis, String lockKey, long lockExpires, RedisLockNotifier notifier) {
+		this(new SingleJedisExecutor(jedis), true, lockKey, lockExpires, notifier, BinaryLockInfoCodec.INSTANCE);
+	}
+
+	/**
+	 * 基于共享的 {@link JedisExecutor}(如连接池), 通常由 {@link LockManager} 创建. {@link #release()} 不会释放 executor.
+	 */
+	public RedisFencedLock(JedisExecutor executor, String lockKey, long lockExpires, RedisLockNotifier notifier, LockInfoCodec codec) {
+		this(executor, false, lockKey, lockExpires, notifier, codec);
+	}
+
+	private RedisFencedLock(JedisExecutor executor, boolean ownsExecutor, String lockKey, long lockExpires, RedisLockNotifier notifier, LockInfoCodec codec) {
+		super(executor, ownsExecutor, lockKey, lockExpires, notifier, codec);
+		this.fenceKey = SafeEncoder.encode("lock.fence:" + lockKey);
+	}
+
+	public LockHandle lockWithToken() {
+		lock();
+		return new LockHandle(this, fencingToken);
+	}
+
+	public LockHandle tryLockWithToken(long time, TimeUnit unit) {
+		return tryLock(time, unit) ? new LockHandle(this, fencingToken) : null;
+	}
+
+	public long getFencingToken() {
+		long token = fencingToken;
+		if (!isHeldByCurrentThread()) {
+			throw new IllegalMonitorStateException(String.format("current thread[%s] does not holds the lock", Thread.currentThread().toString()));
+		}
+		return token;
+	}
+
+	@Override
+	protected Long tryAcquire(byte[] owner, boolean renewOnly, boolean blocking) {
+		Object result = executor.eval(LockScripts.FENCED_ACQUIRE, 2, lockKeyBytes, fenceKey, lockExpiresBytes, renewOnly ? NO_INCREMENT : INCREMENT, owner);
+		if (result instanceof List) {
+			fencingToken = (Long) ((List<?>) result).get(0);
+			return null;
+		}
+		return (Long) result;
+	}
+
+}
@@ -0,0 +1,233 @@
+package io.lock.redis;
+
+import io.lock.util.ObjectUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * 基于Redis的分段ID生成器: 每次用一个 INCRBY 从redis租用一段连续的ID, 在本地无锁地分配, 不需要分布式锁.
+ * <ul>
+ * <li>同一个 key 的所有生成器(跨jvm)分配的ID不重复; 同一个生成器分配的ID递增, 不同生成器之间不保证顺序</li>
+ * <li>本地分配是一个 {@link AtomicLong} 的自增, 不访问redis, 不分配对象</li>
+ * <li>当前段剩余不足 1/4 时异步预取下一段, 通常在当前段用完之前已取到, 分配线程不等待网络往返</li>
+ * <li>段的大小随消耗速度调整, 使每段大约用 targetBlockMillis 毫秒: 消耗快则加倍, 慢则减半, 在 [minBlockSize, maxBlockSize] 之间</li>
+ * <li>生成器丢弃(或jvm退出)时未分配的ID不再使用, ID不连续</li>
+ * </ul>
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	{@link RedisIdGenerator} generator = lockManager.getIdGenerator("order.id");
+ * 	long id = generator.nextId();
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public class RedisIdGenerator {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisIdGenerator.class);
+
+	public static final long DEFAULT_MIN_BLOCK_SIZE = 100;
+	public static final long DEFAULT_MAX_BLOCK_SIZE = 1000000;
+	public static final long DEFAULT_TARGET_BLOCK_MILLIS = 1000;
+
+	// 剩余 1/PREFETCH_DIVISOR 时预取
+	private static final int PREFETCH_DIVISOR = 4;
+
+	private static final ExecutorService prefetcher = Executors.newCachedThreadPool(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "redis-id-prefetch");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private final JedisExecutor executor;
+
+	private final String key;
+
+	private final long minBlockSize;
+
+	private final long maxBlockSize;
+
+	private final long targetBlockNanos;
+
+	// 为null时还没有取过
+	private volatile Block current;
+
+	// 以下字段由 this 保护
+
+	// 预取中(或已取到)的下一段
+	private CompletableFuture<Block> prefetch;
+
+	// 下一次租用的段的大小
+	private long blockSize;
+
+	public RedisIdGenerator(JedisExecutor executor, String key) {
+		this(executor, key, DEFAULT_MIN_BLOCK_SIZE, DEFAULT_MAX_BLOCK_SIZE, DEFAULT_TARGET_BLOCK_MILLIS);
+	}
+
+	/**
+	 * @param executor 访问redis的连接, 不由生成器释放
+	 * @param key 计数器的key, 其值为已被租用的最大ID
+	 * @param targetBlockMillis 期望每段被用完的时长(毫秒)
+	 */
+	public RedisIdGenerator(JedisExecutor executor, String key, long minBlockSize, long maxBlockSize, long targetBlockMillis) {
+		ObjectUtils.requireNonNull(executor, "executor", key, "key");
+		if (minBlockSize <= 0 || maxBlockSize < minBlockSize) {
+			throw new IllegalArgumentException(String.format("illegal block size range: [%d, %d]", minBlockSize, maxBlockSize));
+		}
+		if (targetBlockMillis <= 0) {
+			throw new IllegalArgumentException("targetBlockMillis must be positive: " + targetBlockMillis);
+		}
+		this.executor = executor;
+		this.key = key;
+		this.minBlockSize = minBlockSize;
+		this.maxBlockSize = maxBlockSize;
+		this.targetBlockNanos = TimeUnit.MILLISECONDS.toNanos(targetBlockMillis);
+		this.blockSize = minBlockSize;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * 分配一个ID, 只在当前段用完且预取未完成时才等待redis
+	 */
+	public long nextId() {
+		while (true) {
+			Block block = current;
+			if (block != null) {
+				long id = block.next.getAndIncrement();
+				if (id <= block.end) {
+					if (id == block.prefetchAt) {
+						prefetch(block);
+					}
+					return id;
+				}
+			}
+			nextBlock(block);
+		}
+	}
+
+	/**
+	 * 下一次租用的段的大小
+	 */
+	public synchronized long getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * 当前段用到 prefetchAt 的线程发起预取, 每段只有一个线程
+	 */
+	private void prefetch(Block block) {
+		synchronized (this) {
+			if (current != block || prefetch != null) {
+				return;
+			}
+			final long size = adjustBlockSize(block, block.prefetchAt - block.start + 1);
+			prefetch = CompletableFuture.supplyAsync(new Supplier<Block>() {
+				public Block get() {
+					return lease(size);
+				}
+			}, prefetcher);
+		}
+	}
+
+	/**
+	 * 当前段 exhausted 已用完, 换成预取的段(没有预取时同步租用)
+	 */
+	private synchronized void nextBlock(Block exhausted) {
+		if (current != exhausted) {
+			return;
+		}
+		Block block;
+		if (prefetch == null) {
+			block = lease(exhausted == null ? blockSize : adjustBlockSize(exhausted, exhausted.end - exhausted.start + 1));
+		} else {
+			// 其他线程在 this 上等待 current 更新
+			try {
+				block = prefetch.join();
+			} catch (CompletionException e) {
+				logger.warn("failed to prefetch ids of key: {}, leasing synchronously", key, e.getCause());
+				block = lease(blockSize);
+			} finally {
+				prefetch = null;
+			}
+		}
+		block.startNanos = System.nanoTime();
+		current = block;
+	}
+
+	/**
+	 * 按 block 的消耗速度调整下一段的大小, 每段只调整一次
+	 *
+	 * @param consumed block 中已分配的ID数
+	 * @return 下一段的大小
+	 */
+	private long adjustBlockSize(Block block, long consumed) {
+		// 按目前的速度用完整段需要的时长
+		double blockNanos = (double) (System.nanoTime() - block.startNanos) * (block.end - block.start + 1) / consumed;
+		long size = blockSize;
+		if (blockNanos < targetBlockNanos / 2) {
+			size = Math.min(size * 2, maxBlockSize);
+		} else if (blockNanos > targetBlockNanos * 2) {
+			size = Math.max(size / 2, minBlockSize);
+		}
+		blockSize = size;
+		return size;
+	}
+
+	/**
+	 * 从redis租用 size 个ID, 一次网络往返
+	 */
+	private Block lease(final long size) {
+		long end = executor.execute(new JedisCallback<Long>() {
+			public Long doInJedis(Jedis jedis) {
+				return jedis.incrBy(key, size);
+			}
+		});
+		logger.debug("leased ids ({}, {}] of key: {}", end - size, end, key);
+		return new Block(end - size + 1, end);
+	}
+
+	/**
+	 * 一段ID [start, end]
+	 */
+	private static class Block {
+
+		final AtomicLong next;
+
+		final long start;
+
+		final long end;
+
+		// 分配到这个ID时预取下一段
+		final long prefetchAt;
+
+		// 成为当前段时的 System.nanoTime(), 由 RedisIdGenerator.this 保护
+		long startNanos;
+
+		Block(long start, long end) {
+			this.next = new AtomicLong(start);
+			this.start = start;
+			this.end = end;
+			this.prefetchAt = end - (end - start + 1) / PREFETCH_DIVISOR;
+		}
+
+	}
+
+}
@@ -0,0 +1,163 @@
+package io.lock.redis;
+
+import io.lock.redis.util.BinaryLockInfoCodec;
+import io.lock.redis.util.LockInfo;
+import io.lock.redis.util.LockInfoCodec;
+import io.lock.redis.util.LockScripts;
+import io.lock.spi.LockBackend;
+import io.lock.util.ObjectUtils;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Protocol;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 基于redis的 {@link LockBackend}: 获取, 释放, 续约各由一个Lua脚本({@link LockScripts#ACQUIRE}, {@link LockScripts#RELEASE},
+ * {@link LockScripts#RENEW})原子完成, 通知由 {@link RedisLockNotifier} 提供. 锁的格式与 {@link RedisReentrantLock} 相同, 两者可以混用.
+ * {@link RedisReentrantLock} 的获取与释放也经由它完成.
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	{@link RedisLockBackend} backend = new {@link RedisLockBackend}(executor, notifier, BinaryLockInfoCodec.INSTANCE);
+ * 	{@link io.lock.Lock Lock} lock = new {@link io.lock.spi.BackendLock BackendLock}&lt;RedisLockBackend.Key&gt;(backend, "lockKey", 3000);
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public class RedisLockBackend implements LockBackend<RedisLockBackend.Key> {
+
+	private static final byte[] NO_INCREMENT = Protocol.toByteArray(0);
+	private static final byte[] INCREMENT = Protocol.toByteArray(1);
+
+	private final JedisExecutor executor;
+
+	// 为null时不支持通知
+	private final RedisLockNotifier notifier;
+
+	private final LockInfoCodec codec;
+
+	public RedisLockBackend(JedisExecutor executor, RedisLockNotifier notifier) {
+		this(executor, notifier, BinaryLockInfoCodec.INSTANCE);
+	}
+
+	/**
+	 * @param executor 由 {@link #release()} 释放
+	 * @param notifier 锁释放通知, 为null时等待者定期重试; 由 {@link #release()} 释放
+	 * @param codec 锁持有者在redis中的格式
+	 */
+	public RedisLockBackend(JedisExecutor executor, RedisLockNotifier notifier, LockInfoCodec codec) {
+		ObjectUtils.requireNonNull(executor, "executor", codec, "codec");
+		this.executor = executor;
+		this.notifier = notifier;
+		this.codec = codec;
+	}
+
+	public Key key(String lockKey) {
+		return new Key(lockKey);
+	}
+
+	public byte[] currentOwner() {
+		return codec.currentOwner();
+	}
+
+	/**
+	 * 以 ownerId 代替线程id的持有者标识
+	 */
+	public byte[] owner(long ownerId) {
+		return codec.encodeOwner(new LockInfo().setMac(LockInfo.localMac()).setJvmPid(LockInfo.currentPid()).setThreadId(ownerId));
+	}
+
+	public Long acquire(Key key, byte[] owner, long leaseMillis, boolean renewOnly) {
+		return (Long) executor.eval(LockScripts.ACQUIRE, 1, key.lockKeyBytes, key.leaseBytes(leaseMillis), renewOnly ? NO_INCREMENT : INCREMENT, owner);
+	}
+
+	public Long release(Key key, byte[] owner) {
+		return (Long) executor.eval(LockScripts.RELEASE, 2, key.lockKeyBytes, key.channel, owner);
+	}
+
+	public boolean renew(Key key, byte[] owner, long leaseMillis) {
+		return Long.valueOf(1).equals(executor.eval(LockScripts.RENEW, 1, key.lockKeyBytes, key.leaseBytes(leaseMillis), owner));
+	}
+
+	public boolean isLocked(final Key key) {
+		// 过期的锁已被redis删除, lockKey存在即被持有
+		return executor.execute(new JedisCallback<Boolean>() {
+			public Boolean doInJedis(Jedis jedis) {
+				return jedis.exists(key.lockKeyBytes);
+			}
+		});
+	}
+
+	public boolean isHeldBy(final Key key, final byte[] owner) {
+		return executor.execute(new JedisCallback<Boolean>() {
+			public Boolean doInJedis(Jedis jedis) {
+				return jedis.hexists(key.lockKeyBytes, owner);
+			}
+		});
+	}
+
+	public Subscription subscribe(Key key, long timeoutMillis) throws InterruptedException {
+		return notifier == null ? null : notifier.subscribe(key.lockKey, timeoutMillis);
+	}
+
+	public void unsubscribe(Key key, Subscription subscription) {
+		notifier.unsubscribe((RedisLockNotifier.Subscription) subscription);
+	}
+
+	public void release() {
+		if (notifier != null) {
+			notifier.release();
+		}
+		executor.release();
+	}
+
+	/**
+	 * 编码后的 lockKey, 锁释放通知的channel, 以及最近一次使用的有效时长
+	 */
+	public static final class Key {
+
+		final String lockKey;
+
+		final byte[] lockKeyBytes;
+
+		final byte[] channel;
+
+		// 同一个锁通常总是使用同一个有效时长, 编码一次, 获取与续约时不再分配
+		private volatile Lease lease;
+
+		Key(String lockKey) {
+			ObjectUtils.requireNonNull(lockKey, "lockKey");
+			this.lockKey = lockKey;
+			this.lockKeyBytes = SafeEncoder.encode(lockKey);
+			this.channel = SafeEncoder.encode(RedisLockNotifier.channelOf(lockKey));
+		}
+
+		public String getLockKey() {
+			return lockKey;
+		}
+
+		byte[] leaseBytes(long leaseMillis) {
+			Lease lease = this.lease;
+			if (lease == null || lease.millis != leaseMillis) {
+				this.lease = lease = new Lease(leaseMillis);
+			}
+			return lease.bytes;
+		}
+
+	}
+
+	private static final class Lease {
+
+		final long millis;
+
+		final byte[] bytes;
+
+		Lease(long millis) {
+			this.millis = millis;
+			this.bytes = Protocol.toByteArray(millis);
+		}
+
+	}
+
+}
@@ -0,0 +1,410 @@
+package io.lock.redis;
+
+import io.lock.Releasable;
+import io.lock.spi.LockBackend;
+import io.lock.util.ObjectUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * 锁释放通知. 释放锁的节点在锁被删除时向该锁的channel发布消息, 等待者在本地阻塞, 收到消息后才重新尝试获取锁,
+ * 而不是不停地访问redis.
+ * <p>
+ * 一个jvm(对同一个redis server)只需要一个 {@link RedisLockNotifier}, 它独占一个jedis连接和一个后台线程,
+ * 按需订阅/退订有等待者的锁的channel, 可被任意多个锁对象共享.
+ * </p>
+ * <p>
+ * 消息可能丢失(连接断开, 持有者未释放锁而是过期等), 因此等待者的阻塞时间总是以持有者剩余的有效时长为上限.
+ * </p>
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	{@link RedisLockNotifier} notifier = new {@link RedisLockNotifier}(new Jedis(host, port));
+ * 	{@link io.lock.Lock Lock} lock = new {@link RedisReentrantLock}(jedis, "lockKey", lockExpires, notifier);
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public class RedisLockNotifier implements Releasable {
+
+	private static final String CHANNEL_PREFIX = "lock.channel:";
+
+	/**
+	 * 始终订阅的channel, 保证订阅线程在没有等待者时也不退出
+	 */
+	private static final String CONTROL_CHANNEL = CHANNEL_PREFIX + "__notifier__";
+
+	/**
+	 * 锁可被一个等待者获取(互斥锁), 只唤醒一个本地等待者
+	 */
+	public static final String WAKE_ONE = "0";
+
+	/**
+	 * 锁可能可以被多个等待者同时获取(如读锁), 唤醒所有本地等待者
+	 */
+	public static final String WAKE_ALL = "1";
+
+	private static final long RECONNECT_INTERVAL = 1000L;
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisLockNotifier.class);
+
+	private final Jedis jedis;
+
+	private final ConcurrentMap<String, Subscription> subscriptions = new ConcurrentHashMap<String, Subscription>();
+
+	private final PubSub pubSub = new PubSub();
+
+	private final Thread subscriber;
+
+	// 以下字段由 this 保护
+
+	// 订阅连接已订阅 CONTROL_CHANNEL, 可以直接发出 subscribe/unsubscribe
+	private boolean active;
+
+	// 本次连接时一并订阅的channel
+	private Set<String> initialChannels = Collections.emptySet();
+
+	private volatile boolean closed;
+
+	/**
+	 * @param jedis 专用于订阅的连接, 不能再用于其他命令
+	 */
+	public RedisLockNotifier(Jedis jedis) {
+		ObjectUtils.requireNonNull(jedis, "jedis");
+		this.jedis = jedis;
+		this.subscriber = new Thread(new Runnable() {
+			public void run() {
+				subscribeLoop();
+			}
+		}, "redis-lock-notifier");
+		subscriber.setDaemon(true);
+		subscriber.start();
+	}
+
+	/**
+	 * 锁对应的channel, 释放锁的脚本向该channel发布消息
+	 */
+	public static String channelOf(String lockKey) {
+		return CHANNEL_PREFIX + lockKey;
+	}
+
+	/**
+	 * 开始等待某个锁的释放通知, 必须在失败的获取尝试之前调用, 否则可能错过两者之间发出的通知.
+	 * 每次调用都需要对应一次 {@link #unsubscribe(Subscription)}.
+	 *
+	 * @param lockKey
+	 * @param timeoutMillis 最多等待订阅生效的时长(不持有 notifier 的锁), 超过后仍返回, 此时只能依赖超时重试;
+	 *        为 0 时不阻塞, 见 {@link Subscription#whenSubscribed(Runnable)}
+	 */
+	public Subscription subscribe(String lockKey, long timeoutMillis) throws InterruptedException {
+		Subscription subscription = retain(lockKey, true);
+		if (timeoutMillis > 0) {
+			subscription.subscribed.await(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		return subscription;
+	}
+
+	public void unsubscribe(Subscription subscription) {
+		unref(subscription, true);
+	}
+
+	/**
+	 * 只观察某个锁的通知(见 {@link Subscription#addObserver(Runnable)}), 不调用 {@link Subscription#await(long, TimeUnit)}:
+	 * 保持channel的订阅, 但不算等待者, 通知不会为其留下唤醒的许可. 不阻塞; 每次调用都需要对应一次 {@link #unobserve(Subscription)}.
+	 */
+	public Subscription observe(String lockKey) {
+		return retain(lockKey, false);
+	}
+
+	public void unobserve(Subscription subscription) {
+		unref(subscription, false);
+	}
+
+	private synchronized Subscription retain(String lockKey, boolean waiter) {
+		String channel = channelOf(lockKey);
+		Subscription subscription = subscriptions.get(channel);
+		if (subscription == null) {
+			subscription = new Subscription(channel);
+			subscriptions.put(channel, subscription);
+			// 订阅连接尚未就绪时, 由订阅线程在 CONTROL_CHANNEL 生效后补上
+			if (active) {
+				pubSub.subscribe(channel);
+			}
+		}
+		subscription.refs++;
+		if (waiter) {
+			subscription.waiters++;
+		}
+		return subscription;
+	}
+
+	private synchronized void unref(Subscription subscription, boolean waiter) {
+		if (waiter) {
+			subscription.waiters--;
+		}
+		if (--subscription.refs > 0) {
+			subscription.trimPermits();
+			return;
+		}
+		subscriptions.remove(subscription.channel);
+		if (active) {
+			pubSub.unsubscribe(subscription.channel);
+		}
+	}
+
+	public void release() {
+		closed = true;
+		synchronized (this) {
+			if (active) {
+				pubSub.unsubscribe();
+			}
+		}
+		jedis.close();
+	}
+
+	private void subscribeLoop() {
+		while (!closed) {
+			try {
+				List<String> channels = new ArrayList<String>();
+				synchronized (this) {
+					channels.add(CONTROL_CHANNEL);
+					channels.addAll(subscriptions.keySet());
+					initialChannels = new HashSet<String>(channels);
+				}
+				jedis.subscribe(pubSub, channels.toArray(new String[channels.size()]));
+			} catch (JedisException e) {
+				synchronized (this) {
+					active = false;
+				}
+				if (closed) {
+					return;
+				}
+				logger.warn("lock notifier disconnected, reconnect in {} ms", RECONNECT_INTERVAL, e);
+				jedis.getClient().disconnect();
+				// 断开期间的通知可能丢失, 唤醒所有等待者重新尝试
+				for (Subscription subscription : subscriptions.values()) {
+					subscription.wake(true);
+				}
+				try {
+					Thread.sleep(RECONNECT_INTERVAL);
+				} catch (InterruptedException ie) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 一个锁channel的订阅, 同一个jvm内等待同一个锁的线程共享
+	 */
+	public static class Subscription implements LockBackend.Subscription {
+
+		private final String channel;
+
+		private final Semaphore latch = new Semaphore(0);
+
+		private final CountDownLatch subscribed = new CountDownLatch(1);
+
+		// 异步等待者, 每个只被通知一次
+		private final Queue<Runnable> listeners = new ConcurrentLinkedQueue<Runnable>();
+
+		// 订阅生效后执行
+		private final Queue<Runnable> subscribedListeners = new ConcurrentLinkedQueue<Runnable>();
+
+		// 每个通知, 以及每次订阅(重新)生效时都执行, 不占用唤醒
+		private final Queue<Runnable> observers = new ConcurrentLinkedQueue<Runnable>();
+
+		// guarded by RedisLockNotifier.this
+		private int refs;
+
+		// refs 中可能调用 await 的部分; 写入时持有 RedisLockNotifier.this, 订阅线程无锁地读, 作为许可数的上限
+		private volatile int waiters;
+
+		Subscription(String channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * 等待锁释放的通知
+		 *
+		 * @return {@code true} 若收到通知, {@code false} 若超时
+		 */
+		public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+			return latch.tryAcquire(timeout, unit);
+		}
+
+		/**
+		 * 不阻塞线程的等待: 收到下一个通知时执行一次 listener. listener 在订阅线程中执行, 不能阻塞
+		 */
+		public void addListener(Runnable listener) {
+			listeners.add(listener);
+		}
+
+		public void removeListener(Runnable listener) {
+			listeners.remove(listener);
+		}
+
+		/**
+		 * 收到每个通知, 以及每次订阅(重新)生效时(之前的通知可能已丢失)都执行 observer, 直到被移除; 不影响等待者的唤醒.
+		 * observer 在订阅线程中执行, 不能阻塞
+		 */
+		public void addObserver(Runnable observer) {
+			observers.add(observer);
+		}
+
+		public void removeObserver(Runnable observer) {
+			observers.remove(observer);
+		}
+
+		/**
+		 * 订阅生效后执行一次 listener(已生效则立即执行), 异步等待者应在此之后才重新尝试获取锁, 以免错过通知
+		 */
+		public void whenSubscribed(Runnable listener) {
+			if (subscribed.getCount() == 0) {
+				listener.run();
+				return;
+			}
+			subscribedListeners.add(listener);
+			if (subscribed.getCount() == 0 && subscribedListeners.remove(listener)) {
+				listener.run();
+			}
+		}
+
+		private void wake(boolean all) {
+			observe();
+			if (all) {
+				Runnable listener;
+				while ((listener = listeners.poll()) != null) {
+					run(listener);
+				}
+				// 每个等待者最多留一个许可, 没有等待者时的通知不会累积, 否则之后的 await 会立即返回
+				int missing = waiters - latch.availablePermits();
+				if (missing > 0) {
+					latch.release(missing);
+				}
+				return;
+			}
+			// 优先唤醒异步等待者, 没有时唤醒一个阻塞的等待者
+			Runnable listener = listeners.poll();
+			if (listener != null) {
+				run(listener);
+			} else if (latch.availablePermits() < waiters) {
+				latch.release();
+			}
+		}
+
+		/**
+		 * 等待者离开后, 去掉超出剩余等待者数的许可
+		 */
+		private void trimPermits() {
+			while (latch.availablePermits() > waiters) {
+				if (!latch.tryAcquire()) {
+					return;
+				}
+			}
+		}
+
+		private void onSubscribed() {
+			observe();
+			subscribed.countDown();
+			Runnable listener;
+			while ((listener = subscribedListeners.poll()) != null) {
+				run(listener);
+			}
+		}
+
+		private void observe() {
+			for (Runnable observer : observers) {
+				run(observer);
+			}
+		}
+
+		private void run(Runnable listener) {
+			try {
+				listener.run();
+			} catch (RuntimeException e) {
+				logger.warn("lock notification listener failed", e);
+			}
+		}
+
+	}
+
+	private class PubSub extends JedisPubSub {
+
+		@Override
+		public void onMessage(String channel, String message) {
+			Subscription subscription = subscriptions.get(channel);
+			if (subscription != null) {
+				subscription.wake(WAKE_ALL.equals(message));
+			}
+		}
+
+		@Override
+		public void onSubscribe(String channel, int subscribedChannels) {
+			if (CONTROL_CHANNEL.equals(channel)) {
+				onConnected();
+				return;
+			}
+			Subscription subscription = subscriptions.get(channel);
+			if (subscription != null) {
+				subscription.onSubscribed();
+			}
+		}
+
+		/**
+		 * 订阅连接就绪, 补上连接期间 subscribe/unsubscribe 的channel, 不遗漏 subscriptions 中的任何一个
+		 */
+		private void onConnected() {
+			synchronized (RedisLockNotifier.this) {
+				active = true;
+				for (String channel : subscriptions.keySet()) {
+					if (!initialChannels.contains(channel)) {
+						subscribe(channel);
+					}
+				}
+				for (String channel : initialChannels) {
+					if (!CONTROL_CHANNEL.equals(channel) && !subscriptions.containsKey(channel)) {
+						unsubscribe(channel);
+					}
+				}
+			}
+		}
+
+		@Override
+		public void onPMessage(String pattern, String channel, String message) {
+		}
+
+		@Override
+		public void onUnsubscribe(String channel, int subscribedChannels) {
+		}
+
+		@Override
+		public void onPUnsubscribe(String pattern, int subscribedChannels) {
+		}
+
+		@Override
+		public void onPSubscribe(String pattern, int subscribedChannels) {
+		}
+
+	}
+
+}
@@ -0,0 +1,239 @@
+package io.lock.redis;
+
+import io.lock.LocalHold;
+import io.lock.metrics.LockStats;
+import io.lock.redis.util.BinaryLockInfoCodec;
+import io.lock.redis.util.LockInfoCodec;
+import io.lock.redis.util.LockScripts;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 同时锁住多个 lockKey 的锁: 要么全部获取到, 要么一个都不获取.
+ * <p>
+ * 每次尝试由一个Lua脚本({@link LockScripts#MULTI_ACQUIRE})在server端原子完成, 无论有多少个 lockKey 都只需一次网络往返;
+ * 获取失败时不持有任何锁, 因此不需要按固定顺序加锁来避免死锁. 释放({@link LockScripts#MULTI_RELEASE})同样是一次网络往返.
+ * </p>
+ * <ul>
+ * <li>每个 lockKey 的格式与 {@link RedisReentrantLock} 相同, 两者可以混用: 当前线程已通过 {@link RedisReentrantLock} 持有的 lockKey 视为重入</li>
+ * <li>同一个锁对象上的嵌套获取/释放只在本地计数, 与 {@link RedisReentrantLock} 相同</li>
+ * <li>有 {@link RedisLockNotifier} 时, 等待者等待阻塞它的那个 lockKey 的释放通知</li>
+ * <li>不支持公平锁与读写锁的 lockKey</li>
+ * </ul>
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	{@link RedisMultiLock} lock = lockManager.lockAll(Arrays.asList("account:1", "account:2"), 3, TimeUnit.SECONDS);
+ * 	if (lock != null) {
+ * 		try {
+ * 			// transfer
+ * 		} finally {
+ * 			lock.unlock();
+ * 		}
+ * 	}
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public class RedisMultiLock extends AbstractRedisLock {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisMultiLock.class);
+
+	private final List<String> lockKeys;
+
+	// lockKey..., channel...
+	private final byte[][] keysAndChannels;
+
+	/**
+	 * 见 {@link RedisReentrantLock}
+	 */
+	private final LocalHold hold = new LocalHold();
+
+	private long acquiredNanos;
+
+	/**
+	 * 当前线程上一次尝试失败时阻塞它的 lockKey, 用于等待该 lockKey 的释放通知
+	 */
+	private final ThreadLocal<String> blockedKey = new ThreadLocal<String>();
+
+	public RedisMultiLock(Jedis jedis, Collection<String> lockKeys, long lockExpires) {
+		this(jedis, lockKeys, lockExpires, null);
+	}
+
+	/**
+	 * @param notifier 不为null时, 等待者阻塞在本地直到收到锁释放的通知或持有者的有效期过去, 再重新尝试获取锁
+	 */
+	public RedisMultiLock(Jedis jedis, Collection<String> lockKeys, long lockExpires, RedisLockNotifier notifier) {
+		this(new SingleJedisExecutor(jedis), true, lockKeys, lockExpires, notifier, BinaryLockInfoCodec.INSTANCE);
+	}
+
+	/**
+	 * 基于共享的 {@link JedisExecutor}(如连接池), 锁对象可以被多个线程共享, 通常由 {@link LockManager} 创建.
+	 * {@link #release()} 不会释放 executor.
+	 */
+	public RedisMultiLock(JedisExecutor executor, Collection<String> lockKeys, long lockExpires, RedisLockNotifier notifier, LockInfoCodec codec) {
+		this(executor, false, lockKeys, lockExpires, notifier, codec);
+	}
+
+	private RedisMultiLock(JedisExecutor executor, boolean ownsExecutor, Collection<String> lockKeys, long lockExpires, RedisLockNotifier notifier, LockInfoCodec codec) {
+		this(executor, ownsExecutor, distinct(lockKeys), lockExpires, notifier, codec);
+	}
+
+	private RedisMultiLock(JedisExecutor executor, boolean ownsExecutor, List<String> lockKeys, long lockExpires, RedisLockNotifier notifier, LockInfoCodec codec) {
+		super(executor, ownsExecutor, lockKeys.toString(), lockExpires, notifier, codec);
+		this.lockKeys = lockKeys;
+		int n = lockKeys.size();
+		this.keysAndChannels = new byte[n * 2][];
+		for (int i = 0; i < n; i++) {
+			keysAndChannels[i] = SafeEncoder.encode(lockKeys.get(i));
+			keysAndChannels[n + i] = SafeEncoder.encode(RedisLockNotifier.channelOf(lockKeys.get(i)));
+		}
+	}
+
+	/**
+	 * 去重后的 lockKey, 顺序与构造时相同
+	 */
+	public List<String> getLockKeys() {
+		return lockKeys;
+	}
+
+	/**
+	 * Queries if any of the lockKeys is held by any thread.
+	 */
+	public boolean isLocked() {
+		return executor.execute(new JedisCallback<Boolean>() {
+			public Boolean doInJedis(Jedis jedis) {
+				for (int i = 0; i < lockKeys.size(); i++) {
+					if (jedis.exists(keysAndChannels[i])) {
+						return true;
+					}
+				}
+				return false;
+			}
+		});
+	}
+
+	/**
+	 * 当前线程是否持有所有的 lockKey
+	 */
+	public boolean isHeldByCurrentThread() {
+		if (hold.isValid()) {
+			return true;
+		}
+		final byte[] owner = codec.currentOwner();
+		return executor.execute(new JedisCallback<Boolean>() {
+			public Boolean doInJedis(Jedis jedis) {
+				for (int i = 0; i < lockKeys.size(); i++) {
+					if (!jedis.hexists(keysAndChannels[i], owner)) {
+						return false;
+					}
+				}
+				return true;
+			}
+		});
+	}
+
+	@Override
+	protected boolean tryReenterLocally() {
+		return hold.tryReenter();
+	}
+
+	@Override
+	protected Long acquire(boolean blocking) {
+		boolean reentrant = hold.isHeldByCurrentThread();
+		long requestTime = System.nanoTime();
+		byte[][] params = new byte[lockKeys.size() + 3][];
+		System.arraycopy(keysAndChannels, 0, params, 0, lockKeys.size());
+		params[lockKeys.size()] = lockExpiresBytes;
+		params[lockKeys.size() + 1] = reentrant ? NO_INCREMENT : INCREMENT;
+		params[lockKeys.size() + 2] = codec.currentOwner();
+		@SuppressWarnings("unchecked")
+		List<Long> blocked = (List<Long>) executor.eval(LockScripts.MULTI_ACQUIRE, lockKeys.size(), params);
+		if (blocked != null) {
+			if (reentrant) {
+				// 已失去锁
+				hold.lost();
+				locked = false;
+			}
+			blockedKey.set(lockKeys.get(blocked.get(0).intValue() - 1));
+			return blocked.get(1);
+		}
+		blockedKey.remove();
+		if (hold.acquired(leaseDeadline(requestTime))) {
+			acquiredNanos = requestTime;
+		}
+		locked = true;
+		return null;
+	}
+
+	/**
+	 * 等待阻塞了上一次尝试的 lockKey 的释放通知; 等待期间其他 lockKey 被占用时, 下一次尝试会失败并最多等待其剩余的有效时长
+	 */
+	@Override
+	protected String notificationKey() {
+		String key = blockedKey.get();
+		return key == null ? lockKeys.get(0) : key;
+	}
+
+	/**
+	 * 统计计入 "multi:" 加第一个 lockKey 的前缀
+	 */
+	@Override
+	protected String metricsKey() {
+		return "multi:" + lockKeys.get(0);
+	}
+
+	@Override
+	protected void cancelAcquire() {
+		blockedKey.remove();
+	}
+
+	@Override
+	protected void unlock0() {
+		if (hold.isHeldByCurrentThread()) {
+			if (hold.release()) { // 本地重入的释放, 不需要访问redis
+				return;
+			}
+			locked = false;
+			LockStats stats = this.stats;
+			if (stats != null) {
+				stats.released(acquiredNanos);
+			}
+		}
+		byte[][] params = new byte[keysAndChannels.length + 1][];
+		System.arraycopy(keysAndChannels, 0, params, 0, keysAndChannels.length);
+		params[keysAndChannels.length] = codec.currentOwner();
+		Long deleted = (Long) executor.eval(LockScripts.MULTI_RELEASE, keysAndChannels.length, params);
+		LockStats stats = this.stats;
+		if (stats != null) {
+			stats.command();
+		}
+		if (deleted < 0) {
+			throw new IllegalMonitorStateException(String.format("current thread[%s] does not holds all of the locks %s", Thread.currentThread().toString(), lockKeys));
+		}
+		logger.debug("{} unlock {}, deleted: {}", Thread.currentThread().getName(), lockKeys, deleted);
+	}
+
+	private static List<String> distinct(Collection<String> lockKeys) {
+		if (lockKeys == null || lockKeys.isEmpty()) {
+			throw new IllegalArgumentException("lockKeys must not be empty");
+		}
+		List<String> keys = new ArrayList<String>(new LinkedHashSet<String>(lockKeys));
+		if (keys.contains(null)) {
+			throw new NullPointerException("lockKeys contains null");
+		}
+		return Collections.unmodifiableList(keys);
+	}
+
+}
@@ -0,0 +1,328 @@
+package io.lock.redis;
+
+import io.lock.AbstractRetryingLock;
+import io.lock.LocalHold;
+import io.lock.WaitStrategy;
+import io.lock.redis.util.BinaryLockInfoCodec;
+import io.lock.redis.util.LockInfoCodec;
+import io.lock.redis.util.LockScripts;
+import io.lock.util.ObjectUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Protocol;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 基于多个相互独立的redis master的锁(Redlock): 在多数(N/2 + 1)个节点上获取到锁, 且用时小于锁的有效时长, 才算获取成功.
+ * 单个节点故障或主从切换丢失锁时, 锁不会同时被两个持有者持有(只要多数节点正常).
+ * <p>
+ * 每次尝试同时向所有节点发出获取请求({@link LockScripts#ACQUIRE}, 与 {@link RedisReentrantLock} 的格式相同),
+ * 等到多数节点成功(或已不可能成功, 或超过 nodeTimeout)即返回, 耗时约为多数节点中最慢的一个, 而不是所有节点的总和.
+ * 剩余的有效期 = 锁的有效时长 - 实测的耗时 - 时钟漂移的余量; 失败时向获取成功或结果未知的节点释放(每个节点的释放排在该节点的获取请求之后),
+ * 按等待策略(默认随机)等待后重试.
+ * 释放同样并行地发往所有节点.
+ * </p>
+ * <ul>
+ * <li>各节点必须是相互独立的master, 不能是同一个主从集群</li>
+ * <li>同一个锁对象上的嵌套获取/释放只在本地计数, 在剩余的有效期内有效</li>
+ * <li>没有锁释放通知, 等待者随机等待后重试</li>
+ * </ul>
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	List&lt;JedisExecutor&gt; nodes = Arrays.asList(
+ * 		new PooledJedisExecutor(new JedisPool("redis1", 6379)),
+ * 		new PooledJedisExecutor(new JedisPool("redis2", 6379)),
+ * 		new PooledJedisExecutor(new JedisPool("redis3", 6379)));
+ * 	{@link io.lock.Lock Lock} lock = new {@link RedisQuorumLock}(nodes, "lockKey", 10000);
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public class RedisQuorumLock extends AbstractRetryingLock {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisQuorumLock.class);
+
+	private static final byte[] NO_INCREMENT = Protocol.toByteArray(0);
+	private static final byte[] INCREMENT = Protocol.toByteArray(1);
+
+	// 时钟漂移的余量: 有效时长的 1% 再加 2 毫秒
+	private static final long CLOCK_DRIFT_DIVISOR = 100;
+	private static final long CLOCK_DRIFT_MIN_MILLIS = 2;
+
+	// releaseAfter 的结果, 表示该节点的获取明确失败, 没有发出释放(RELEASE 只返回 nil, -1 或非负数)
+	private static final long NOT_ACQUIRED = -2L;
+
+	/**
+	 * 向各节点发请求的线程, 只在一次网络往返期间被占用
+	 */
+	private static final ExecutorService requests = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "redis-lock-quorum-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private final List<JedisExecutor> nodes;
+
+	private final int quorum;
+
+	private final String lockKey;
+
+	private final byte[] lockKeyBytes;
+
+	private final byte[] channel;
+
+	private final long lockExpires;
+
+	private final byte[] lockExpiresBytes;
+
+	// 等待各节点回复的最长时间(毫秒)
+	private final long nodeTimeout;
+
+	private final LockInfoCodec codec;
+
+	/**
+	 * 见 {@link RedisReentrantLock}, 有效期为获取时计算出的剩余有效期
+	 */
+	private final LocalHold hold = new LocalHold();
+
+	// 最近一次成功的尝试中各节点的获取请求, 释放排在其后; 只会被持有线程读写
+	private List<CompletableFuture<Boolean>> acquisitions;
+
+	public RedisQuorumLock(List<JedisExecutor> nodes, String lockKey, long lockExpires) {
+		this(nodes, lockKey, lockExpires, Math.max(lockExpires / 10, 1), BinaryLockInfoCodec.INSTANCE);
+	}
+
+	/**
+	 * @param nodes 相互独立的redis master, 由调用方释放
+	 * @param nodeTimeout 一次尝试等待各节点回复的最长时间(毫秒), 应远小于 lockExpires
+	 */
+	public RedisQuorumLock(List<JedisExecutor> nodes, String lockKey, long lockExpires, long nodeTimeout, LockInfoCodec codec) {
+		ObjectUtils.requireNonNull(nodes, "nodes", lockKey, "lockKey", codec, "codec");
+		if (nodes.isEmpty()) {
+			throw new IllegalArgumentException("nodes must not be empty");
+		}
+		if (nodeTimeout <= 0 || nodeTimeout >= lockExpires) {
+			throw new IllegalArgumentException("nodeTimeout must be positive and less than lockExpires: " + nodeTimeout);
+		}
+		this.nodes = Collections.unmodifiableList(new ArrayList<JedisExecutor>(nodes));
+		this.quorum = nodes.size() / 2 + 1;
+		this.lockKey = lockKey;
+		this.lockKeyBytes = SafeEncoder.encode(lockKey);
+		this.channel = SafeEncoder.encode(RedisLockNotifier.channelOf(lockKey));
+		this.lockExpires = lockExpires;
+		this.lockExpiresBytes = Protocol.toByteArray(lockExpires);
+		this.nodeTimeout = nodeTimeout;
+		this.codec = codec;
+	}
+
+	public int getQuorum() {
+		return quorum;
+	}
+
+	/**
+	 * 当前线程持有锁时剩余的有效期(毫秒), 否则为 0
+	 */
+	public long getRemainingValidity() {
+		if (!hold.isHeldByCurrentThread()) {
+			return 0;
+		}
+		return Math.max(TimeUnit.NANOSECONDS.toMillis(hold.getDeadline() - System.nanoTime()), 0);
+	}
+
+	/**
+	 * 没有锁释放通知, 随机等待 1 ~ nodeTimeout 毫秒后重试, 避免多个客户端同时重试时总是各自只拿到少数节点
+	 */
+	@Override
+	protected WaitStrategy defaultWaitStrategy(boolean notified) {
+		return new WaitStrategy() {
+			public long waitNanos(int attempts, long ttlMillis) {
+				return TimeUnit.MILLISECONDS.toNanos(1 + ThreadLocalRandom.current().nextLong(nodeTimeout));
+			}
+		};
+	}
+
+	@Override
+	protected void unlock0() {
+		List<CompletableFuture<Boolean>> pending = null;
+		if (hold.isHeldByCurrentThread()) {
+			if (hold.release()) { // 本地重入的释放, 不需要访问redis
+				return;
+			}
+			locked = false;
+			pending = acquisitions;
+			acquisitions = null;
+		}
+		List<CompletableFuture<Long>> releases = new ArrayList<CompletableFuture<Long>>(nodes.size());
+		byte[] owner = codec.currentOwner();
+		for (int i = 0; i < nodes.size(); i++) {
+			// 获取时未回复的节点, 释放排在获取之后
+			releases.add(pending == null ? CompletableFuture.supplyAsync(release(nodes.get(i), owner), requests) : releaseAfter(pending.get(i), nodes.get(i), owner));
+		}
+		int released = 0, notOwner = 0;
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(nodeTimeout);
+		for (int i = 0; i < releases.size(); i++) {
+			try {
+				Long remains = releases.get(i).get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+				if (remains != null && remains == NOT_ACQUIRED) {
+					continue;
+				}
+				if (remains == null || remains >= 0) {
+					released++;
+				} else {
+					notOwner++;
+				}
+			} catch (InterruptedException e) {
+				// 释放请求已发出, 不再等待
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) {
+				logger.warn("failed to release lockKey: {} on node {}", lockKey, i, e.getCause());
+			} catch (TimeoutException e) {
+				logger.warn("timed out releasing lockKey: {} on node {}", lockKey, i);
+			}
+		}
+		if (released == 0 && notOwner > 0) {
+			throw new IllegalMonitorStateException(String.format("current thread[%s] does not holds the lock", Thread.currentThread().toString()));
+		}
+	}
+
+	@Override
+	public boolean isHeldByCurrentThread() {
+		return getRemainingValidity() > 0;
+	}
+
+	/**
+	 * 节点由创建者释放
+	 */
+	public void release() {
+	}
+
+	@Override
+	protected boolean tryReenterLocally() {
+		return hold.tryReenter();
+	}
+
+	/**
+	 * 一次尝试: 并行地向所有节点获取, 多数成功且有效期未过则成功, 否则向所有节点释放
+	 *
+	 * @return {@code null} 若成功; 否则为锁的有效时长, 不知道各节点上持有者剩余的有效时长
+	 */
+	@Override
+	protected Long acquire(boolean blocking) {
+		boolean reentrant = hold.isHeldByCurrentThread();
+		final byte[] owner = codec.currentOwner();
+		byte[] increment = reentrant ? NO_INCREMENT : INCREMENT;
+		long start = System.nanoTime();
+
+		final AtomicInteger succeeded = new AtomicInteger();
+		final AtomicInteger failed = new AtomicInteger();
+		final CompletableFuture<Boolean> decided = new CompletableFuture<Boolean>();
+		List<CompletableFuture<Boolean>> acquisitions = new ArrayList<CompletableFuture<Boolean>>(nodes.size());
+		for (JedisExecutor node : nodes) {
+			CompletableFuture<Boolean> acquisition = CompletableFuture.supplyAsync(acquire(node, owner, increment), requests);
+			acquisition.whenComplete(new BiConsumer<Boolean, Throwable>() {
+				public void accept(Boolean acquired, Throwable t) {
+					if (acquired != null && acquired) {
+						if (succeeded.incrementAndGet() >= quorum) {
+							decided.complete(Boolean.TRUE);
+						}
+					} else if (failed.incrementAndGet() > nodes.size() - quorum) {
+						decided.complete(Boolean.FALSE);
+					}
+				}
+			});
+			acquisitions.add(acquisition);
+		}
+
+		boolean quorumReached;
+		try {
+			quorumReached = decided.get(nodeTimeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			quorumReached = false;
+		} catch (ExecutionException e) {
+			quorumReached = false;
+		} catch (TimeoutException e) {
+			quorumReached = false;
+		}
+		long elapsed = System.nanoTime() - start;
+		long drift = TimeUnit.MILLISECONDS.toNanos(lockExpires / CLOCK_DRIFT_DIVISOR + CLOCK_DRIFT_MIN_MILLIS);
+		long validity = TimeUnit.MILLISECONDS.toNanos(lockExpires) - elapsed - drift;
+		if (quorumReached && validity > 0) {
+			hold.acquired(start + validity);
+			this.acquisitions = acquisitions;
+			locked = true;
+			logger.debug("{} get lock on {} nodes, lockKey: {}, validity: {} ms", Thread.currentThread().getName(), succeeded.get(), lockKey, TimeUnit.NANOSECONDS.toMillis(validity));
+			return null;
+		}
+		if (reentrant) {
+			// 已失去锁
+			hold.lost();
+			locked = false;
+			this.acquisitions = null;
+		}
+		// 包括仍未回复的节点: 释放排在该节点的获取之后, 不会先于获取执行; 明确失败的节点不释放
+		for (int i = 0; i < nodes.size(); i++) {
+			releaseAfter(acquisitions.get(i), nodes.get(i), owner);
+		}
+		return lockExpires;
+	}
+
+	/**
+	 * 在该节点的获取完成后释放. 获取明确失败(回复 {@code false})的节点不释放: 异步的释放可能晚于同一线程的下一次获取,
+	 * 否则会删除下一次获取到的持有; 获取成功或结果未知(出错, 超时)时释放
+	 *
+	 * @return 释放的结果, 未释放时为 {@link #NOT_ACQUIRED}
+	 */
+	private CompletableFuture<Long> releaseAfter(CompletableFuture<Boolean> acquisition, final JedisExecutor node, final byte[] owner) {
+		return acquisition.handleAsync(new BiFunction<Boolean, Throwable, Long>() {
+			public Long apply(Boolean acquired, Throwable t) {
+				if (t == null && Boolean.FALSE.equals(acquired)) {
+					return NOT_ACQUIRED;
+				}
+				return release(node, owner).get();
+			}
+		}, requests);
+	}
+
+	private Supplier<Boolean> acquire(final JedisExecutor node, final byte[] owner, final byte[] increment) {
+		return new Supplier<Boolean>() {
+			public Boolean get() {
+				return node.eval(LockScripts.ACQUIRE, 1, lockKeyBytes, lockExpiresBytes, increment, owner) == null;
+			}
+		};
+	}
+
+	private Supplier<Long> release(final JedisExecutor node, final byte[] owner) {
+		return new Supplier<Long>() {
+			public Long get() {
+				return (Long) node.eval(LockScripts.RELEASE, 2, lockKeyBytes, channel, owner);
+			}
+		};
+	}
+
+}
@@ -1,19 +1,29 @@
 package io.lock.redis;
 
-import io.lock.AbstractLock;
+import io.lock.AsyncLock;
+import io.lock.LocalHold;
 import io.lock.Lock;
+import io.lock.metrics.LockStats;
+import io.lock.redis.util.BinaryLockInfoCodec;
+import io.lock.redis.util.JsonLockInfoCodec;
 import io.lock.redis.util.LockInfo;
+import io.lock.redis.util.LockInfoCodec;
+import io.lock.redis.util.LockScripts;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.util.SafeEncoder;
 
 /**
- * 基于Redis的SETNX操作实现的分布式锁, 获取锁时最好用tryLock(long time, TimeUnit unit), 以免网路问题而导致线程一直阻塞.
- * <a href="http://redis.io/commands/setnx">SETNC操作参考资料.</a>
+ * 基于Redis的分布式锁, 获取锁时最好用tryLock(long time, TimeUnit unit), 以免网路问题而导致线程一直阻塞.
+ * 获取锁(含重入)与释放锁分别由一个预加载的Lua脚本({@link LockScripts})通过 EVALSHA 原子完成, 每次尝试只需一次网络往返;
+ * 这些原子操作经由 {@link RedisLockBackend}({@link io.lock.spi.LockBackend LockBackend} 的redis实现)完成.
  * 
  * <p><b>可重入实现关键:</b>
  * <ul>
@@ -21,23 +31,21 @@ import redis.clients.jedis.Jedis;
  * pid在单机内唯一, threadId在单jvm内唯一)</li>
  * <li>任何一个线程从redis拿到value值后都需要能确定 该锁是否被自己持有, 因此value值要有以下特性: 保存持有锁的主机(mac), jvm
  * pid, 持有锁的线程ID, 重复持有锁的次数</li>
+ * <li>同一个锁对象上的嵌套获取/释放只在本地计数, redis中只记录第一次获取和最后一次释放</li>
  * </ul></p>
  * <p>
- * redis中value设计如下(in json):
+ * redis中锁以hash存储, 锁的有效期是key的毫秒级TTL, 由redis server负责过期:
  * <pre>
- * {
- * 	expires : expire time in long
- * 	mac : mac address of lock holder's machine
- * 	pid : jvm process id
- * 	threadId : lock holder thread id
- * 	count : hold count(for use of reentrancy)
+ * lockKey : {
+ * 	owner(mac + pid + threadId) : hold count(for use of reentrancy)
  * }
- * 由{@link LockInfo LockInfo}表示.
  * </pre>
+ * owner 的格式由{@link LockInfoCodec}决定(默认为定长二进制, 可选json), 解码后由{@link LockInfo LockInfo}表示.
  * 
  * <b>Usage Example:</b>
  * <pre>
- * 	{@link Lock} lock = new {@link RedisReentrantLock}(jedis, "lockKey", lockExpires, timeServerAddr);
+ * 	{@link Lock} lock = new {@link RedisReentrantLock}(jedis, "lockKey", lockExpires);
+ * 	// 或者从 {@link LockManager} 获取可在线程间共享的锁对象: lock = lockManager.getLock("lockKey");
  * 	if (lock.tryLock(3, TimeUnit.SECONDS)) {
  * 		try {
  * 			// do something
@@ -52,18 +60,39 @@ import redis.clients.jedis.Jedis;
  * @date 2016年9月15日 下午2:52:38
  *
  */
-public class RedisReentrantLock extends AbstractLock {
+public class RedisReentrantLock extends AbstractRedisLock implements AsyncLock {
 	
 	private static final String DEFAULT_LOCK_KEY = "lock.lock";
 	private static final long DEFAULT_LOCK_EXPIRES = 3000L;
-	
 
-	private Jedis jedis;
+	/**
+	 * 异步获取的 ownerId 的上限, 见 {@link AsyncLock}
+	 */
+	public static final long MAX_OWNER_ID = (1L << 62) - 1;
+
+	/**
+	 * 当前jvm内通过该锁对象的持有. 只有第一次获取锁和最后一次释放锁才访问redis, 期间的重入/释放只修改本地的计数;
+	 * 有 watchdog 时有效期也被续约线程推后
+	 */
+	private final LocalHold hold = new LocalHold();
+
+	// 为null时不自动续约
+	private volatile LockWatchdog watchdog;
+
+	// 为null时不使用近端缓存
+	private volatile LockStateCache stateCache;
+
+	/**
+	 * 第一次获取锁时的 System.nanoTime(), 用于统计持有时长, 只会被持有线程读写
+	 */
+	private long acquiredNanos;
 
-	protected String lockKey;
+	/**
+	 * 获取, 释放与查询经由的后端, 与该锁共用 executor 与 notifier
+	 */
+	protected final RedisLockBackend backend;
 
-	// 锁的有效时长(毫秒)
-	protected long lockExpires;
+	private final RedisLockBackend.Key backendKey;
 
 	private static final Logger logger = LoggerFactory.getLogger(RedisReentrantLock.class);
 
@@ -72,120 +101,108 @@ public class RedisReentrantLock extends AbstractLock {
 	}
 	
 	public RedisReentrantLock(Jedis jedis, String lockKey, long lockExpires) {
-		this.jedis = jedis;
-		this.lockKey = lockKey;
-		this.lockExpires = lockExpires;
+		this(jedis, lockKey, lockExpires, null);
 	}
 
-	// 阻塞式获取锁的实现
-	protected boolean lock(boolean useTimeout, long time, TimeUnit unit, boolean interrupt) throws InterruptedException {
-		if (interrupt) {
-			checkInterruption();
-		}
+	/**
+	 * @param notifier 不为null时, 等待者阻塞在本地直到收到锁释放的通知或持有者的有效期过去, 再重新尝试获取锁
+	 */
+	public RedisReentrantLock(Jedis jedis, String lockKey, long lockExpires, RedisLockNotifier notifier) {
+		this(jedis, lockKey, lockExpires, notifier, BinaryLockInfoCodec.INSTANCE);
+	}
 
-		// 超时控制 的时间可以从本地获取, 因为这个和锁超时没有关系, 只是一段时间区间的控制
-		long start = localTimeMillis();
-		long timeout = unit.toMillis(time); // if !useTimeout, then it's useless
-
-		// walkthrough
-		// 1. lockKey未关联value, 直接设置lockKey, 成功获取到锁, return true
-		// 2. lock 已过期, 用getset设置lockKey, 判断返回的旧的LockInfo
-		// 2.1 若仍是超时的, 则成功获取到锁, return true
-		// 2.2 若不是超时的, 则进入下一次循环重新开始 步骤1
-		// 3. lock没过期, 判断是否是当前线程持有
-		// 3.1 是, 则计数加 1, return true
-		// 3.2 否, 则进入下一次循环重新开始 步骤1
-		// note: 每次进入循环都检查 : 1.是否超时, 若是则return false; 2.是否检查中断(interrupt)被中断,
-		// 若需检查中断且被中断, 则抛InterruptedException
-		while (useTimeout ? !isTimeout(start, timeout) : true) {
-			if (interrupt) {
-				checkInterruption();
-			}
+	/**
+	 * @param codec 锁持有者在redis中的格式, 调试时可用 {@link JsonLockInfoCodec}; 使用同一个锁的所有节点必须一致
+	 */
+	public RedisReentrantLock(Jedis jedis, String lockKey, long lockExpires, RedisLockNotifier notifier, LockInfoCodec codec) {
+		this(new SingleJedisExecutor(jedis), true, lockKey, lockExpires, notifier, codec);
+	}
 
-			long lockExpireTime = serverTimeMillis() + lockExpires + 1;// 锁超时时间
-			String newLockInfoJson = LockInfo.newForCurrThread(lockExpireTime).toString();
-			if (jedis.setnx(lockKey, newLockInfoJson) == 1) { // 条件能成立的唯一情况就是redis中lockKey还未关联value
-				// 成功获取到锁, 设置相关标识
-				logger.debug("{} get lock(new), lockInfo: {}", Thread.currentThread().getName(), newLockInfoJson);
-				locked = true;
-				return true;
-			}
+	/**
+	 * 基于共享的 {@link JedisExecutor}(如连接池), 锁对象可以被多个线程共享, 通常由 {@link LockManager} 创建.
+	 * {@link #release()} 不会释放 executor.
+	 */
+	public RedisReentrantLock(JedisExecutor executor, String lockKey, long lockExpires, RedisLockNotifier notifier, LockInfoCodec codec) {
+		this(executor, false, lockKey, lockExpires, notifier, codec);
+	}
 
-			// value已有值, 但不能说明锁被持有, 因为锁可能expired了
-			String currLockInfoJson = jedis.get(lockKey);
-			// 若这瞬间锁被delete了
-			if (currLockInfoJson == null) {
-				continue;
-			}
+	protected RedisReentrantLock(JedisExecutor executor, boolean ownsExecutor, String lockKey, long lockExpires, RedisLockNotifier notifier, LockInfoCodec codec) {
+		super(executor, ownsExecutor, lockKey, lockExpires, notifier, codec);
+		this.backend = new RedisLockBackend(executor, notifier, codec);
+		this.backendKey = backend.key(lockKey);
+	}
 
-			LockInfo currLockInfo = LockInfo.fromString(currLockInfoJson);
-			// 竞争条件只可能出现在锁超时的情况, 因为如果没有超时, 线程发现锁并不是被自己持有, 线程就不会去动value
-			if (isTimeExpired(currLockInfo.getExpires())) {
-				// 锁超时了
-				LockInfo oldLockInfo = LockInfo.fromString(jedis.getSet(lockKey, newLockInfoJson));
-				if (oldLockInfo != null && isTimeExpired(oldLockInfo.getExpires())) {
-					// 成功获取到锁, 设置相关标识
-					logger.debug("{} get lock(new), lockInfo: {}", Thread.currentThread().getName(), newLockInfoJson);
-					locked = true;
-					return true;
-				}
-			} else {
-				// 锁未超时, 不会有竞争情况
-				if (isHeldByCurrentThread(currLockInfo)) { // 当前线程持有
-					// 成功获取到锁, 设置相关标识
-					currLockInfo.setExpires(serverTimeMillis() + lockExpires + 1); // 设置新的锁超时时间
-					currLockInfo.incCount();
-					jedis.set(lockKey, currLockInfo.toString());
-					logger.debug("{} get lock(inc), lockInfo: {}", Thread.currentThread().getName(), currLockInfo);
-					locked = true;
-					return true;
-				}
-			}
-		}
-		locked = false;
-		return false;
+	/**
+	 * 设置自动续约, 之后获取到的锁在持有期间由 watchdog 续约, 为null时不续约
+	 */
+	public void setWatchdog(LockWatchdog watchdog) {
+		this.watchdog = watchdog;
 	}
 
-	public boolean tryLock() {
-		long lockExpireTime = serverTimeMillis() + lockExpires + 1;
-		String newLockInfo = LockInfo.newForCurrThread(lockExpireTime).toString();
+	/**
+	 * 设置近端缓存, 之后的 {@link #tryLock()} 与 {@link #isLocked()} 在已知锁被其他持有者持有时不访问redis, 为null时不使用.
+	 * 缓存应与该锁使用同一个 notifier, 见 {@link LockStateCache}
+	 */
+	public void setStateCache(LockStateCache stateCache) {
+		this.stateCache = stateCache;
+	}
 
-		if (jedis.setnx(lockKey, newLockInfo) == 1) {
-			locked = true;
-			return true;
-		}
+	public CompletableFuture<Void> lockAsync() {
+		return lockAsync(ownerField());
+	}
 
-		String currLockInfoJson = jedis.get(lockKey);
-		if (currLockInfoJson == null) {
-			// 再一次尝试获取
-			if (jedis.setnx(lockKey, newLockInfo) == 1) {
-				locked = true;
-				return true;
-			} else {
-				locked = false;
-				return false;
-			}
-		}
-		
-		LockInfo currLockInfo = LockInfo.fromString(currLockInfoJson);
-		
-		if (isTimeExpired(currLockInfo.getExpires())) {
-			LockInfo oldLockInfo = LockInfo.fromString(jedis.getSet(lockKey, newLockInfo));
-			if (oldLockInfo != null && isTimeExpired(oldLockInfo.getExpires())) {
-				locked = true;
-				return true;
+	public CompletableFuture<Void> lockAsync(long ownerId) {
+		return lockAsync(ownerField(asyncOwnerId(ownerId)));
+	}
+
+	public CompletableFuture<Boolean> tryLockAsync(long time, TimeUnit unit) {
+		return new AsyncAcquisition(this, ownerField(), getWaitStrategy(), true, unit.toNanos(time)).start();
+	}
+
+	public CompletableFuture<Boolean> tryLockAsync(long ownerId, long time, TimeUnit unit) {
+		return new AsyncAcquisition(this, ownerField(asyncOwnerId(ownerId)), getWaitStrategy(), true, unit.toNanos(time)).start();
+	}
+
+	/**
+	 * 只释放redis中的持有, 不影响同步方法在本地记录的重入次数, 因此同一个线程不应混用同步与异步的获取/释放
+	 */
+	public CompletableFuture<Void> unlockAsync() {
+		return unlockAsync(ownerField());
+	}
+
+	public CompletableFuture<Void> unlockAsync(long ownerId) {
+		return unlockAsync(ownerField(asyncOwnerId(ownerId)));
+	}
+
+	private CompletableFuture<Void> lockAsync(byte[] owner) {
+		return new AsyncAcquisition(this, owner, getWaitStrategy(), false, 0).start().thenApply(new Function<Boolean, Void>() {
+			public Void apply(Boolean locked) {
+				return null;
 			}
-		} else {
-			if (isHeldByCurrentThread(currLockInfo)) {
-				currLockInfo.setExpires(serverTimeMillis() + lockExpires + 1); 
-				currLockInfo.incCount();
-				jedis.set(lockKey, currLockInfo.toString());
-				locked = true;
-				return true;
+		});
+	}
+
+	private CompletableFuture<Void> unlockAsync(final byte[] owner) {
+		final CompletableFuture<Void> future = new CompletableFuture<Void>();
+		AsyncAcquisition.workers.execute(new Runnable() {
+			public void run() {
+				try {
+					Long remains = tryRelease(owner);
+					LockStats stats = RedisReentrantLock.this.stats;
+					if (stats != null) {
+						stats.command();
+					}
+					if (remains != null && remains < 0) {
+						future.completeExceptionally(new IllegalMonitorStateException(String.format("owner[%s] does not holds the lock", SafeEncoder.encode(owner))));
+					} else {
+						future.complete(null);
+					}
+				} catch (RuntimeException e) {
+					future.completeExceptionally(e);
+				}
 			}
-		}
-		locked = false;
-		return false;
+		});
+		return future;
 	}
 
 	/**
@@ -195,85 +212,229 @@ public class RedisReentrantLock extends AbstractLock {
 	 *         otherwise
 	 */
 	public boolean isLocked() {
-		// walkthrough
-		// 1. lockKey未关联value, return false
-		// 2. 若 lock 已过期, return false, 否则 return true
+		// 过期的锁已被redis删除, lockKey存在即被持有
 		if (!locked) { // 本地locked为false, 肯定没加锁
 			return false;
 		}
-		String json = jedis.get(lockKey);
-		if (json == null) {
-			return false;
-		}
-		if (isTimeExpired(LockInfo.fromString(json).getExpires())) {
-			return false;
+		LockStateCache stateCache = this.stateCache;
+		if (stateCache != null && stateCache.isHeldByOther(lockKey)) {
+			return true;
 		}
-		return true;
+		return backend.isLocked(backendKey);
 	}
 
 	@Override
 	protected void unlock0() {
-		// walkthrough
-		// 1. 若锁过期, return
+		if (hold.isHeldByCurrentThread()) {
+			if (hold.release()) { // 本地重入的释放, 不需要访问redis
+				return;
+			}
+			locked = false;
+			LockWatchdog watchdog = this.watchdog;
+			if (watchdog != null) {
+				watchdog.unwatch(this);
+			}
+			LockStats stats = this.stats;
+			if (stats != null) {
+				stats.released(acquiredNanos);
+			}
+			holdEnded();
+		}
+		// walkthrough(RELEASE 脚本在server端原子地完成)
+		// 1. 若锁不存在(已过期), return
 		// 2. 判断自己是否是锁的owner
 		// 2.1 是, 若 count = 1, 则删除lockKey; 若 count > 1, 则计数减 1, return
 		// 2.2 否, 则抛异常 IllegalMonitorStateException, reutrn
 		// done, return
-		LockInfo currLockInfo = LockInfo.fromString(jedis.get(lockKey));
-		if (isTimeExpired(currLockInfo.getExpires())) {
-			return;
+		Long remains = tryRelease(ownerField());
+		LockStateCache stateCache = this.stateCache;
+		if (stateCache != null && (remains == null || remains == 0)) {
+			stateCache.releasedLocally(lockKey);
 		}
-
-		if (isHeldByCurrentThread(currLockInfo)) {
-			if (currLockInfo.getCount() == 1) {
-				jedis.del(lockKey);
-				logger.debug("{} unlock(del), lockInfo: null", Thread.currentThread().getName());
-			} else {
-				currLockInfo.decCount(); // 持有锁计数减1
-				String json = currLockInfo.toString();
-				jedis.set(lockKey, json);
-				logger.debug("{} unlock(dec), lockInfo: {}", Thread.currentThread().getName(), json);
+		LockStats stats = this.stats;
+		if (stats != null) {
+			stats.command();
+			if (remains == null) {
+				stats.leaseExpired();
 			}
-		} else {
+		}
+		if (remains == null) {
+			return;
+		}
+		if (remains < 0) {
 			throw new IllegalMonitorStateException(String.format("current thread[%s] does not holds the lock", Thread.currentThread().toString()));
 		}
-
+		if (remains == 0) {
+			logger.debug("{} unlock(del), lockInfo: null", Thread.currentThread().getName());
+		} else {
+			logger.debug("{} unlock(dec), count: {}", Thread.currentThread().getName(), remains);
+		}
 	}
 
-	public void release() {
-		jedis.close();
-	}
-	
 	public boolean isHeldByCurrentThread() {
-		return isHeldByCurrentThread(LockInfo.fromString(jedis.get(lockKey)));
+		if (hold.isValid()) {
+			return true;
+		}
+		return backend.isHeldBy(backendKey, ownerField());
 	}
 
 	// ------------------- utility methods ------------------------
 
-	private boolean isHeldByCurrentThread(LockInfo lockInfo) {
-		return lockInfo.isCurrentThread();
+	/**
+	 * 当前线程已通过该锁对象持有锁且本地估计的有效期未过, 则只在本地增加重入次数, 不访问redis, 不分配对象
+	 */
+	protected boolean tryReenterLocally() {
+		return hold.tryReenter();
+	}
+
+	@Override
+	protected boolean isKnownHeldByOther() {
+		LockStateCache stateCache = this.stateCache;
+		return stateCache != null && !hold.isHeldByCurrentThread() && stateCache.remainingLease(lockKey) != null;
+	}
+
+	protected Long acquire(boolean blocking) {
+		boolean reentrant = hold.isHeldByCurrentThread();
+		LockStateCache stateCache = this.stateCache;
+		long requestTime = System.nanoTime();
+		// walkthrough(ACQUIRE 脚本在server端原子地完成)
+		// 1. lockKey不存在(未加锁或已过期被redis删除), 以当前线程为owner创建hash并设置TTL, 成功获取到锁
+		// 2. lock被当前线程持有, 计数加 1(若本地已持有, 只续约) 并刷新TTL, 成功获取到锁
+		// 3. 否则获取失败, 返回持有者剩余的有效时长
+		Long ttl = tryAcquire(ownerField(), reentrant, blocking);
+		if (ttl != null) {
+			if (reentrant) {
+				lost();
+			}
+			if (stateCache != null) {
+				stateCache.heldByOther(lockKey, requestTime, ttl);
+			}
+			return ttl;
+		}
+		locked = true;
+		if (hold.acquired(leaseDeadline(requestTime))) {
+			acquiredNanos = requestTime;
+			holdStarted();
+			if (stateCache != null) {
+				stateCache.acquiredLocally(lockKey);
+			}
+		}
+		// 本地估计的有效期过后的重入可能在redis中重新创建了持有(watchdog 已发现原来的持有过期而停止续约), 每次都重新登记
+		LockWatchdog watchdog = this.watchdog;
+		if (watchdog != null) {
+			watchdog.watch(this, ownerField());
+		}
+		return null;
 	}
 
-	private void checkInterruption() throws InterruptedException {
-		if (Thread.currentThread().isInterrupted()) {
-			throw new InterruptedException();
+	/**
+	 * 本地估计的有效期过后的重入失败, 锁已过期并被其他持有者获取, 清除本地的持有信息
+	 */
+	private void lost() {
+		logger.warn("{} lost lockKey: {} after its lease expired", Thread.currentThread().getName(), lockKey);
+		hold.lost();
+		locked = false;
+		LockWatchdog watchdog = this.watchdog;
+		if (watchdog != null) {
+			watchdog.unwatch(this);
+		}
+		LockStateCache stateCache = this.stateCache;
+		if (stateCache != null) {
+			stateCache.releasedLocally(lockKey);
+		}
+		LockStats stats = this.stats;
+		if (stats != null) {
+			stats.leaseExpired();
 		}
+		holdEnded();
+	}
+
+	/**
+	 * 异步获取成功
+	 */
+	void markLocked() {
+		locked = true;
 	}
 
-	private boolean isTimeExpired(long time) {
-		return time < serverTimeMillis();
+	/**
+	 * watchdog 续约成功后推后本地估计的有效期
+	 * 
+	 * @param requestTime 发出续约请求前的 System.nanoTime()
+	 */
+	void renewed(long requestTime) {
+		hold.extend(leaseDeadline(requestTime));
+	}
+
+	/**
+	 * 尝试一次获取锁(含重入), 一次网络往返
+	 * 
+	 * @param owner 持有者在锁的hash中的field, 见 {@link #ownerField()}
+	 * @param renewOnly 当前线程已在本地持有锁, 只需续约(或在锁已过期时重新获取), 不增加redis中的持有次数
+	 * @param blocking 见 {@link #acquire(boolean)}
+	 * @return {@code null} 若成功获取到锁, 否则为下一次尝试前最多等待的时长(毫秒)
+	 */
+	protected Long tryAcquire(byte[] owner, boolean renewOnly, boolean blocking) {
+		return backend.acquire(backendKey, owner, lockExpires, renewOnly);
+	}
+
+	/**
+	 * 释放一次redis中的持有, 一次网络往返
+	 * 
+	 * @param owner 持有者在锁的hash中的field
+	 * @return {@code null} 若锁不存在(已过期); -1 若锁被其他线程持有; 否则为释放后剩余的持有次数
+	 */
+	protected Long tryRelease(byte[] owner) {
+		return backend.release(backendKey, owner);
+	}
+
+	/**
+	 * 放弃阻塞式获取时撤销 owner 在redis中留下的状态, 见 {@link #cancelAcquire()}
+	 */
+	protected void cancelAcquire(byte[] owner) {
 	}
 
-	private boolean isTimeout(long start, long timeout) {
-		return start + timeout < System.currentTimeMillis();
+	@Override
+	protected void cancelAcquire() {
+		cancelAcquire(ownerField());
 	}
 
-	private long serverTimeMillis() {
-		return Long.parseLong(jedis.time().get(0));
+	/**
+	 * owner 等待锁释放通知时订阅的key, 见 {@link #notificationKey()}
+	 */
+	protected String notificationKey(byte[] owner) {
+		return lockKey;
 	}
 
-	private long localTimeMillis() {
-		return System.currentTimeMillis();
+	@Override
+	protected String notificationKey() {
+		return notificationKey(ownerField());
+	}
+
+	/**
+	 * 当前线程在锁的hash中的field
+	 */
+	protected byte[] ownerField() {
+		return codec.currentOwner();
+	}
+
+	/**
+	 * 以 id 代替线程id 的持有者在锁的hash中的field, 用于不与线程绑定的持有者. 不检查 id 的范围:
+	 * 异步获取的 ownerId 经 {@link #asyncOwnerId(long)} 映射, 两级锁见 {@link RedisCohortLock}
+	 */
+	protected byte[] ownerField(long id) {
+		return backend.owner(id);
+	}
+
+	/**
+	 * 异步持有者在持有者标识中代替线程id的值 -ownerId, 与线程id(正数)不会重复; 小于 -MAX_OWNER_ID 的值留给 {@link RedisCohortLock}
+	 *
+	 * @throws IllegalArgumentException ownerId 不在 [1, MAX_OWNER_ID] 中
+	 */
+	private static long asyncOwnerId(long ownerId) {
+		if (ownerId <= 0 || ownerId > MAX_OWNER_ID) {
+			throw new IllegalArgumentException(String.format("ownerId must be in [1, %d]: %d", MAX_OWNER_ID, ownerId));
+		}
+		return -ownerId;
 	}
 
 }
@@ -1,43 +1,125 @@
 package io.lock.redis;
 
-import io.lock.AbstractLock;
 import io.lock.Lock;
 import io.lock.ReadWriteLock;
-import io.lock.redis.util.ReadWriteLockInfo;
+import io.lock.Releasable;
+import io.lock.WaitStrategy;
+import io.lock.metrics.LockMetrics;
+import io.lock.metrics.LockStats;
+import io.lock.redis.util.BinaryLockInfoCodec;
+import io.lock.redis.util.LockInfoCodec;
+import io.lock.redis.util.LockScripts;
+import io.lock.redis.util.ServerClock;
 
 import java.io.IOException;
 import java.net.SocketAddress;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Protocol;
+import redis.clients.util.SafeEncoder;
 
 /**
  * 基于Redis的分布式读写可重入锁(读读不互斥, 读写互斥, 写写互斥)
+ * <p>
+ * 读锁与写锁共用一个 hash, 获取读锁, 释放读锁, 获取写锁, 释放写锁各由一个Lua脚本({@link LockScripts})原子完成, 每次尝试只需一次网络往返.
+ * 阻塞/超时/中断语义以及锁释放通知与 {@link RedisReentrantLock} 一致.
  * <pre>
- * 锁设计: 读锁和写锁的锁信息分开存储
- * read lock: {
- * 	expires:
+ * 锁设计:
+ * lockKey : {
+ * 	mode : "read" | "write"
+ * 	reader owner(mac + pid + threadId) : read hold count
+ * 	writer owner + ":write" : write hold count
  * }
+ * lock.readers:lockKey : { reader owner : lease deadline(server时间, 毫秒) }
+ * </pre>
+ * <ul>
+ * <li>写锁的有效期是key的毫秒级TTL; 每个读者有自己的租约, 读模式下key的TTL为最晚到期的租约剩余的有效时长.
+ * 租约过期的读者(已崩溃或持有过久)在下一次获取读锁/写锁时被移除, 不会因为其他读者不断到来而一直挡住写者</li>
+ * <li>写锁的持有者可以再获取读锁, 释放写锁后仍持有读锁(降级); 读锁的持有者不能获取写锁(不支持升级, 会一直等待)</li>
+ * <li>同一个锁对象上的嵌套获取/释放只在本地计数: 写锁与 {@link RedisReentrantLock} 相同, 读锁按线程计数</li>
+ * </ul>
+ * </p>
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	{@link ReadWriteLock} rwLock = new {@link RedisReentrantReadWriteLock}(jedis, "lockKey", lockExpires);
+ * 	// 或者 rwLock = lockManager.getReadWriteLock("lockKey");
+ * 	Lock readLock = rwLock.readLock();
+ * 	if (readLock.tryLock(3, TimeUnit.SECONDS)) {
+ * 		try {
+ * 			// read something
+ * 		} finally {
+ * 			readLock.unlock();
+ * 		}
+ * 	}
  * </pre>
- * 
+ *
  * @author lixiaohui
  * @date 2016年9月17日 上午11:52:06
  *
  */
-public class RedisReentrantReadWriteLock implements ReadWriteLock {
-
-	private RedisReentrantReadWriteLock.ReadLock readLock;
-	
-	private RedisReentrantReadWriteLock.WriteLock writeLock;
-	
-	private Jedis jedis;
-	
+public class RedisReentrantReadWriteLock implements ReadWriteLock, Releasable {
+
+	private static final long DEFAULT_LOCK_EXPIRES = 3000L;
+
+	private static final byte[] WRITE_SUFFIX = SafeEncoder.encode(":write");
+
+	private static final String READERS_KEY_PREFIX = "lock.readers:";
+
+	private final RedisReentrantReadWriteLock.ReadLock readLock;
+
+	private final RedisReentrantReadWriteLock.WriteLock writeLock;
+
+	private final JedisExecutor executor;
+
+	// executor 是否由该锁对象创建, 是则在 release 时一并释放
+	private final boolean ownsExecutor;
+
+	public RedisReentrantReadWriteLock(Jedis jedis, String lockKey) {
+		this(jedis, lockKey, DEFAULT_LOCK_EXPIRES);
+	}
+
+	public RedisReentrantReadWriteLock(Jedis jedis, String lockKey, long lockExpires) {
+		this(jedis, lockKey, lockExpires, lockExpires, (RedisLockNotifier) null);
+	}
+
+	/**
+	 * @param notifier 不为null时, 等待者阻塞在本地直到收到锁释放的通知或持有者的有效期过去, 再重新尝试获取锁
+	 */
+	public RedisReentrantReadWriteLock(Jedis jedis, String lockKey, long readLockExpires, long writeLockExpires, RedisLockNotifier notifier) {
+		this(new SingleJedisExecutor(jedis), true, lockKey, readLockExpires, writeLockExpires, notifier, BinaryLockInfoCodec.INSTANCE);
+	}
+
+	/**
+	 * 锁的有效期由redis server按TTL判断, 不再需要单独的时间服务器
+	 *
+	 * @deprecated timeServerAddr 不再使用, 用 {@link #RedisReentrantReadWriteLock(Jedis, String, long, long, RedisLockNotifier)}
+	 */
+	@Deprecated
 	public RedisReentrantReadWriteLock(Jedis jedis, String lockKey, long readLockExpires, long writeLockExpires, SocketAddress timeServerAddr) throws IOException {
-		this.jedis = jedis;
-		readLock = new ReadLock(this, jedis, lockKey, readLockExpires);
-		writeLock = new WriteLock(jedis, lockKey, writeLockExpires);
+		this(jedis, lockKey, readLockExpires, writeLockExpires, (RedisLockNotifier) null);
 	}
-	
+
+	/**
+	 * 基于共享的 {@link JedisExecutor}(如连接池), 锁对象可以被多个线程共享, 通常由 {@link LockManager} 创建.
+	 * {@link #release()} 不会释放 executor.
+	 */
+	public RedisReentrantReadWriteLock(JedisExecutor executor, String lockKey, long readLockExpires, long writeLockExpires, RedisLockNotifier notifier, LockInfoCodec codec) {
+		this(executor, false, lockKey, readLockExpires, writeLockExpires, notifier, codec);
+	}
+
+	private RedisReentrantReadWriteLock(JedisExecutor executor, boolean ownsExecutor, String lockKey, long readLockExpires, long writeLockExpires, RedisLockNotifier notifier, LockInfoCodec codec) {
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		readLock = new ReadLock(executor, lockKey, readLockExpires, notifier, codec);
+		writeLock = new WriteLock(executor, lockKey, writeLockExpires, notifier, codec);
+	}
+
 	/**
      * Returns the lock used for reading.
      *
@@ -55,165 +137,276 @@ public class RedisReentrantReadWriteLock implements ReadWriteLock {
 	public Lock writeLock() {
 		return writeLock;
 	}
-	
-	private void checkInterruption() throws InterruptedException {
-		if (Thread.currentThread().isInterrupted()) {
-			throw new InterruptedException();
-		}
-	}
 
-	private boolean isTimeExpired(long time) {
-		return time < serverTimeMillis();
+	/**
+	 * 读锁与写锁的统计都计入 lockKey 前缀对应的分组, 为null时不统计
+	 */
+	public void setMetrics(LockMetrics metrics) {
+		readLock.setMetrics(metrics);
+		writeLock.setMetrics(metrics);
 	}
 
-	private boolean isTimeout(long start, long timeout) {
-		// 这里拿本地的时间来比较
-		return start + timeout < System.currentTimeMillis();
+	/**
+	 * 读锁与写锁共用, 任一线程持有读锁或写锁期间该对象被强引用, 见 {@link HoldListener}
+	 */
+	void setHoldListener(HoldListener holdListener) {
+		readLock.setHoldListener(holdListener);
+		writeLock.setHoldListener(holdListener);
 	}
 
-	private long serverTimeMillis() {
-		return Long.parseLong(jedis.time().get(0));
+	/**
+	 * 读锁与写锁使用同一个等待策略, 见 {@link AbstractRedisLock#setWaitStrategy(WaitStrategy)}
+	 */
+	public void setWaitStrategy(WaitStrategy waitStrategy) {
+		readLock.setWaitStrategy(waitStrategy);
+		writeLock.setWaitStrategy(waitStrategy);
 	}
 
-	private long localTimeMillis() {
-		return System.currentTimeMillis();
+	public void release() {
+		if (ownsExecutor) {
+			executor.release();
+		}
 	}
-	
-	public static class ReadLock extends AbstractLock {
-
-		private Jedis jedis;
-		
-		private final String lockKey;
-		
-		private long lockExpires;
-		
-		private RedisReentrantReadWriteLock readWriteLock;
-		
-		public ReadLock(RedisReentrantReadWriteLock readWriteLock, Jedis jedis, String lockKey, long readLockExpires) {
-			this.readWriteLock = readWriteLock;
-			this.jedis = jedis;
-			this.lockKey = lockKey;
-			this.lockExpires = readLockExpires;
-		}
-
-		/* 
-		 * @see cc.lixiaohui.lock.Lock#tryLock()
+
+	/**
+	 * 读锁, 可被多个线程(节点)同时持有. 每个线程在本地记录自己的持有次数, 只有第一次获取和最后一次释放才访问redis.
+	 */
+	public static class ReadLock extends AbstractRedisLock {
+
+		private static final Logger logger = LoggerFactory.getLogger(ReadLock.class);
+
+		private final ThreadLocal<HoldCounter> holdCounter = new ThreadLocal<HoldCounter>() {
+			@Override
+			protected HoldCounter initialValue() {
+				return new HoldCounter();
+			}
+		};
+
+		// 读者 -> 租约截止时间
+		private final byte[] readersKey;
+
+		public ReadLock(JedisExecutor executor, String lockKey, long lockExpires, RedisLockNotifier notifier, LockInfoCodec codec) {
+			super(executor, false, lockKey, lockExpires, notifier, codec);
+			this.readersKey = SafeEncoder.encode(READERS_KEY_PREFIX + lockKey);
+		}
+
+		/**
+		 * Queries if the read lock is held by any thread.
 		 */
-		public boolean tryLock() {
-			/*
-			 * walkthrough
-			 * 1. 判断写锁是否被持有, 若被持有, return false
-			 * 2. 
-			 */
-			long lockExpireTime = readWriteLock.serverTimeMillis() + lockExpires + 1;
-			//String stringOflockExpireTime = String.valueOf(lockExpireTime);
-			
-			String newReadInfoJson = ReadWriteLockInfo.newReadForCurrThread(lockExpireTime).toString();
-
-			if (jedis.setnx(lockKey, newReadInfoJson) == 1) {
-				locked = true;
+		public boolean isLocked() {
+			return "read".equals(executor.execute(new JedisCallback<String>() {
+				public String doInJedis(Jedis jedis) {
+					return jedis.hget(lockKey, "mode");
+				}
+			}));
+		}
+
+		/*
+		 * @see io.lock.AbstractLock#isHeldByCurrentThread()
+		 */
+		@Override
+		public boolean isHeldByCurrentThread() {
+			HoldCounter hc = holdCounter.get();
+			if (hc.count > 0 && System.nanoTime() - hc.leaseDeadline < 0) {
 				return true;
 			}
-			
-			String json = jedis.get(lockKey);
-			if (json == null) {
-				// 再一次尝试获取
-				if (jedis.setnx(lockKey, newReadInfoJson) == 1) {
-					locked = true;
-					return true;
-				} else {
-					locked = false;
-					return false;
+			final byte[] owner = codec.currentOwner();
+			return executor.execute(new JedisCallback<Boolean>() {
+				public Boolean doInJedis(Jedis jedis) {
+					return jedis.hexists(lockKeyBytes, owner);
 				}
-			}
-			ReadWriteLockInfo info = ReadWriteLockInfo.fromString(json);
-			
-			if (info.isWriteLocked()) { // 写锁被加锁
-				locked = false;
+			});
+		}
+
+		@Override
+		protected boolean tryReenterLocally() {
+			HoldCounter hc = holdCounter.get();
+			if (hc.count == 0 || System.nanoTime() - hc.leaseDeadline >= 0) {
 				return false;
 			}
-			
-			
-			
-			
-			return false;
+			hc.increment();
+			return true;
 		}
 
-		/* 
-		 * @see cc.lixiaohui.lock.Releasable#release()
-		 */
-		public void release() {
+		@Override
+		protected Long acquire(boolean blocking) {
+			HoldCounter hc = holdCounter.get();
+			long requestTime = System.nanoTime();
+			// walkthrough(READ_ACQUIRE 脚本在server端原子地完成)
+			// 0. 移除租约已过期的读者
+			// 1. lockKey不存在, 以读模式创建hash, 当前线程计数为 1, 成功获取到读锁
+			// 2. 读模式, 或写锁被当前线程持有(降级), 当前线程计数加 1(若本地已持有, 只续约), 成功获取到读锁
+			// 3. 否则(写锁被其他线程持有)获取失败, 返回持有者剩余的有效时长
+			// 成功时延长当前线程的租约, TTL随之更新
+			final byte[] increment = hc.count > 0 ? NO_INCREMENT : INCREMENT;
+			final byte[] owner = codec.currentOwner();
+			// 租约截止时间以server时间的下界计算, 最多比真实的早 2 倍误差, 本地的估计同样扣除
+			final long[] uncertainty = new long[1];
+			Long ttl = executor.execute(new JedisCallback<Long>() {
+				public Long doInJedis(Jedis jedis) {
+					ServerClock clock = ServerClock.of(jedis);
+					long now = clock.lowerBoundMillis(jedis);
+					uncertainty[0] = clock.uncertaintyMillis();
+					return (Long) LockScripts.READ_ACQUIRE.eval(jedis, 2, lockKeyBytes, readersKey, lockExpiresBytes, increment, owner, Protocol.toByteArray(now));
+				}
+			});
+			if (ttl != null) {
+				if (hc.count > 0) {
+					lost(hc);
+				}
+				return ttl;
+			}
+			hc.leaseDeadline = leaseDeadline(requestTime) - TimeUnit.MILLISECONDS.toNanos(2 * uncertainty[0]);
+			if (hc.count == 0) {
+				hc.acquiredNanos = requestTime;
+				holdStarted();
+			}
+			hc.increment();
+			locked = true;
+			return null;
 		}
 
-		/* 
-		 * @see cc.lixiaohui.lock.AbstractLock#lock(boolean, long, java.util.concurrent.TimeUnit, boolean)
+		/**
+		 * 本地估计的有效期过后的重入失败, 租约已过期并被写者移除, 清除当前线程的持有信息
 		 */
-		@Override
-		protected boolean lock(boolean useTimeout, long time, TimeUnit unit, boolean interrupt) throws InterruptedException {
-			return false;
+		private void lost(HoldCounter hc) {
+			logger.warn("{} lost read lock of lockKey: {} after its lease expired", Thread.currentThread().getName(), lockKey);
+			hc.count = 0;
+			holdCounter.remove();
+			LockStats stats = this.stats;
+			if (stats != null) {
+				stats.leaseExpired();
+			}
+			holdEnded();
 		}
 
-		/* 
-		 * @see cc.lixiaohui.lock.AbstractLock#unlock0()
+		/*
+		 * @see io.lock.AbstractLock#unlock0()
 		 */
 		@Override
 		protected void unlock0() {
+			HoldCounter hc = holdCounter.get();
+			boolean heldLocally = hc.count > 0;
+			if (heldLocally && --hc.count > 0) { // 本地重入的释放, 不需要访问redis
+				return;
+			}
+			holdCounter.remove();
+			if (heldLocally) {
+				holdEnded();
+			}
+			final byte[] owner = codec.currentOwner();
+			Long remains = executor.execute(new JedisCallback<Long>() {
+				public Long doInJedis(Jedis jedis) {
+					long now = ServerClock.of(jedis).lowerBoundMillis(jedis);
+					return (Long) LockScripts.READ_RELEASE.eval(jedis, 3, lockKeyBytes, readersKey, channel, owner, Protocol.toByteArray(now));
+				}
+			});
+			LockStats stats = this.stats;
+			if (stats != null) {
+				stats.command();
+				if (heldLocally) {
+					stats.released(hc.acquiredNanos);
+				}
+				if (remains == null) {
+					stats.leaseExpired();
+				}
+			}
+			if (remains == null) {
+				return;
+			}
+			if (remains < 0) {
+				throw new IllegalMonitorStateException(String.format("current thread[%s] does not holds the read lock", Thread.currentThread().toString()));
+			}
+			logger.debug("{} unlock read lock, count: {}", Thread.currentThread().getName(), remains);
 		}
 
-		/* 
-		 * @see cc.lixiaohui.lock.AbstractLock#isHeldByCurrentThread()
-		 */
-		@Override
-		protected boolean isHeldByCurrentThread() {
-			return false;
-		}
-		
-		
-		
 	}
-	
-	public static class WriteLock implements Lock {
-		
-		private Jedis jedis;
-		
-		private String writeLockKey;
-		
-		private long writeLockExpires;
-		
-		public WriteLock(Jedis jedis, String writeLockKey, long writeLockExpires) {
-			this.jedis = jedis;
-			this.writeLockKey = writeLockKey;
-			this.writeLockExpires = writeLockExpires;
+
+	/**
+	 * 写锁, 与 {@link RedisReentrantLock} 相同, 只是使用读写锁的脚本, 且在hash中的field为持有者标识加 ":write" 后缀.
+	 */
+	public static class WriteLock extends RedisReentrantLock {
+
+		private final ThreadLocal<byte[]> writerField = new ThreadLocal<byte[]>() {
+			@Override
+			protected byte[] initialValue() {
+				return writerField(codec.currentOwner());
+			}
+		};
+
+		// 读者 -> 租约截止时间
+		private final byte[] readersKey;
+
+		public WriteLock(JedisExecutor executor, String lockKey, long lockExpires, RedisLockNotifier notifier, LockInfoCodec codec) {
+			super(executor, false, lockKey, lockExpires, notifier, codec);
+			this.readersKey = SafeEncoder.encode(READERS_KEY_PREFIX + lockKey);
 		}
 
-		public void release() {
-			
+		/**
+		 * Queries if the write lock is held by any thread.
+		 */
+		@Override
+		public boolean isLocked() {
+			return "write".equals(executor.execute(new JedisCallback<String>() {
+				public String doInJedis(Jedis jedis) {
+					return jedis.hget(lockKey, "mode");
+				}
+			}));
 		}
 
-		public void lock() {
-			
+		@Override
+		protected Long tryAcquire(final byte[] owner, boolean renewOnly, boolean blocking) {
+			final byte[] increment = renewOnly ? NO_INCREMENT : INCREMENT;
+			return executor.execute(new JedisCallback<Long>() {
+				public Long doInJedis(Jedis jedis) {
+					long now = ServerClock.of(jedis).lowerBoundMillis(jedis);
+					return (Long) LockScripts.WRITE_ACQUIRE.eval(jedis, 2, lockKeyBytes, readersKey, lockExpiresBytes, increment, owner, Protocol.toByteArray(now));
+				}
+			});
 		}
 
-		public void lockInterruptibly() throws InterruptedException {
-			
+		@Override
+		protected Long tryRelease(byte[] owner) {
+			return (Long) executor.eval(LockScripts.WRITE_RELEASE, 3, lockKeyBytes, readersKey, channel, owner);
 		}
 
-		public boolean tryLock() {
-			return false;
+		@Override
+		protected byte[] ownerField() {
+			return writerField.get();
 		}
 
-		public boolean tryLock(long time, TimeUnit unit) {
-			return false;
+		@Override
+		protected byte[] ownerField(long ownerId) {
+			return writerField(super.ownerField(ownerId));
 		}
 
-		public boolean tryLockInterruptibly(long time, TimeUnit unit) throws InterruptedException {
-			return false;
+		private static byte[] writerField(byte[] owner) {
+			byte[] field = Arrays.copyOf(owner, owner.length + WRITE_SUFFIX.length);
+			System.arraycopy(WRITE_SUFFIX, 0, field, owner.length, WRITE_SUFFIX.length);
+			return field;
 		}
 
-		public void unlock() {
-			
+	}
+
+	/**
+	 * 线程在读锁上的本地持有次数和有效期, 只会被所属线程读写
+	 */
+	static final class HoldCounter {
+
+		int count;
+
+		long leaseDeadline;
+
+		// 第一次获取时的 System.nanoTime()
+		long acquiredNanos;
+
+		void increment() {
+			if (count == Integer.MAX_VALUE) {
+				throw new Error("Maximum lock count exceeded");
+			}
+			++count;
 		}
-		
+
 	}
 
 }
@@ -0,0 +1,309 @@
+package io.lock.redis;
+
+import io.lock.RetryLoop;
+import io.lock.WaitStrategies;
+import io.lock.WaitStrategy;
+import io.lock.metrics.LockMetrics;
+import io.lock.metrics.LockStats;
+import io.lock.redis.util.BinaryLockInfoCodec;
+import io.lock.redis.util.LockInfoCodec;
+import io.lock.redis.util.LockScripts;
+import io.lock.redis.util.ServerClock;
+import io.lock.spi.LockBackend;
+import io.lock.util.ObjectUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Protocol;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 基于Redis的分布式计数信号量: 整个集群同时最多 permits 个许可被持有.
+ * <p>
+ * 获取与释放各由一个Lua脚本({@link LockScripts#SEMAPHORE_ACQUIRE}, {@link LockScripts#SEMAPHORE_RELEASE})原子完成, 每次尝试只需一次网络往返.
+ * 两次尝试之间按 {@link WaitStrategy} 等待, 有 {@link RedisLockNotifier} 时等待期间收到许可释放的通知则提前重试;
+ * 默认策略与锁相同(有通知时最多等到最早到期的租约过去, 否则指数退避), 而不是不停地访问redis.
+ * <pre>
+ * 数据设计:
+ * key : { owner(mac + pid + threadId) : permits }
+ * lock.lease:key : { owner : lease deadline(server时间, 毫秒) }
+ * </pre>
+ * <ul>
+ * <li>许可属于获取它的线程(持有者标识与锁相同, 见 {@link LockInfoCodec}), 只能由该线程释放</li>
+ * <li>每个持有者的所有许可共用一个租约, 每次获取时延长; 租约过期(持有者已崩溃或持有过久)后许可被回收, 因此单次持有的时长不应超过租约的有效时长</li>
+ * <li>使用同一个 key 的所有节点的许可总数与租约的有效时长必须一致</li>
+ * <li>不保证公平, 释放时唤醒所有等待者, 由它们重新竞争</li>
+ * </ul>
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	{@link RedisSemaphore} semaphore = lockManager.getSemaphore("downstream", 10);
+ * 	if (semaphore.tryAcquire(1, 3, TimeUnit.SECONDS)) {
+ * 		try {
+ * 			// call the downstream
+ * 		} finally {
+ * 			semaphore.release();
+ * 		}
+ * 	}
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public class RedisSemaphore {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisSemaphore.class);
+
+	private final JedisExecutor executor;
+
+	private final String key;
+
+	private final byte[] keyBytes;
+
+	private final byte[] leaseKey;
+
+	private final byte[] channel;
+
+	private final int permits;
+
+	private final byte[] permitsBytes;
+
+	private final long leaseTime;
+
+	private final byte[] leaseTimeBytes;
+
+	// 为null时等待者按等待策略定期重试
+	private final RedisLockNotifier notifier;
+
+	private final LockInfoCodec codec;
+
+	// 为null时不统计
+	private volatile LockStats stats;
+
+	// 为null时使用默认策略
+	private volatile WaitStrategy waitStrategy;
+
+	public RedisSemaphore(JedisExecutor executor, String key, int permits, long leaseTime) {
+		this(executor, key, permits, leaseTime, null, BinaryLockInfoCodec.INSTANCE);
+	}
+
+	/**
+	 * @param executor 访问redis的连接, 不由信号量释放
+	 * @param permits 许可总数
+	 * @param leaseTime 租约的有效时长(毫秒)
+	 * @param notifier 许可释放通知, 为null时等待者按等待策略定期重试
+	 * @param codec 持有者在redis中的格式
+	 */
+	public RedisSemaphore(JedisExecutor executor, String key, int permits, long leaseTime, RedisLockNotifier notifier, LockInfoCodec codec) {
+		ObjectUtils.requireNonNull(executor, "executor", key, "key", codec, "codec");
+		if (permits <= 0) {
+			throw new IllegalArgumentException("permits must be positive: " + permits);
+		}
+		if (leaseTime <= 0) {
+			throw new IllegalArgumentException("leaseTime must be positive: " + leaseTime);
+		}
+		this.executor = executor;
+		this.key = key;
+		this.keyBytes = SafeEncoder.encode(key);
+		this.leaseKey = SafeEncoder.encode("lock.lease:" + key);
+		this.channel = SafeEncoder.encode(RedisLockNotifier.channelOf(key));
+		this.permits = permits;
+		this.permitsBytes = Protocol.toByteArray(permits);
+		this.leaseTime = leaseTime;
+		this.leaseTimeBytes = Protocol.toByteArray(leaseTime);
+		this.notifier = notifier;
+		this.codec = codec;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public int getPermits() {
+		return permits;
+	}
+
+	/**
+	 * 获取一个许可, 没有可用的许可时一直等待
+	 */
+	public void acquire() throws InterruptedException {
+		acquire(1);
+	}
+
+	/**
+	 * 获取 permits 个许可, 没有足够的许可时一直等待
+	 */
+	public void acquire(int permits) throws InterruptedException {
+		acquire(permits, false, 0);
+	}
+
+	/**
+	 * 尝试获取一个许可, 不等待
+	 */
+	public boolean tryAcquire() {
+		return tryAcquire(1);
+	}
+
+	/**
+	 * 尝试获取 permits 个许可, 不等待, 一次网络往返
+	 */
+	public boolean tryAcquire(int permits) {
+		checkPermits(permits);
+		long startNanos = System.nanoTime();
+		if (attempt(permits) == null) {
+			recordAcquired(startNanos, 1);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 在 time 内获取 permits 个许可
+	 *
+	 * @return {@code false} 若超时
+	 */
+	public boolean tryAcquire(int permits, long time, TimeUnit unit) throws InterruptedException {
+		return acquire(permits, true, unit.toNanos(time));
+	}
+
+	/**
+	 * 释放当前线程持有的一个许可
+	 */
+	public void release() {
+		release(1);
+	}
+
+	/**
+	 * 释放当前线程持有的 permits 个许可
+	 *
+	 * @throws IllegalMonitorStateException 当前线程持有的许可少于 permits 个
+	 */
+	public void release(int permits) {
+		checkPermits(permits);
+		Long remains = (Long) executor.eval(LockScripts.SEMAPHORE_RELEASE, 3, keyBytes, leaseKey, channel, codec.currentOwner(), Protocol.toByteArray(permits));
+		LockStats stats = this.stats;
+		if (stats != null) {
+			stats.command();
+			if (remains == null) {
+				stats.leaseExpired();
+			}
+		}
+		if (remains == null) {
+			logger.debug("{} released permits of key: {} after its lease expired", Thread.currentThread().getName(), key);
+			return;
+		}
+		if (remains < 0) {
+			throw new IllegalMonitorStateException(String.format("current thread[%s] holds less than %d permits of %s", Thread.currentThread().toString(), permits, key));
+		}
+	}
+
+	/**
+	 * 当前可用的许可数, 一次网络往返, 返回时可能已经变化
+	 */
+	public int availablePermits() {
+		Long available = executor.execute(new JedisCallback<Long>() {
+			public Long doInJedis(Jedis jedis) {
+				long now = ServerClock.of(jedis).lowerBoundMillis(jedis);
+				return (Long) LockScripts.SEMAPHORE_AVAILABLE.eval(jedis, 2, keyBytes, leaseKey, permitsBytes, Protocol.toByteArray(now));
+			}
+		});
+		return available.intValue();
+	}
+
+	/**
+	 * 设置统计, 之后的获取/释放被记录到 key 前缀对应的 {@link LockStats} 中, 为null时不统计
+	 */
+	public void setMetrics(LockMetrics metrics) {
+		this.stats = metrics == null ? null : metrics.statsFor(key);
+	}
+
+	/**
+	 * 设置阻塞式获取中两次尝试之间的等待策略, 为null时使用默认策略({@link WaitStrategies#defaultStrategy(boolean)})
+	 */
+	public void setWaitStrategy(WaitStrategy waitStrategy) {
+		this.waitStrategy = waitStrategy;
+	}
+
+	/**
+	 * @return 设置的等待策略, 为null时使用默认策略
+	 */
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	private boolean acquire(final int permits, boolean useTimeout, long timeoutNanos) throws InterruptedException {
+		checkPermits(permits);
+		checkInterruption();
+		long startNanos = System.nanoTime();
+		int attempts = new RetryLoop(this) {
+			@Override
+			protected Long attempt() {
+				return RedisSemaphore.this.attempt(permits);
+			}
+
+			@Override
+			protected LockBackend.Subscription subscribe(long timeoutMillis) throws InterruptedException {
+				return notifier == null ? null : notifier.subscribe(key, timeoutMillis < 0 ? leaseTime : timeoutMillis);
+			}
+
+			@Override
+			protected void unsubscribe(LockBackend.Subscription subscription) {
+				notifier.unsubscribe((RedisLockNotifier.Subscription) subscription);
+			}
+		}.run(useTimeout, startNanos + timeoutNanos, true, waitStrategy);
+		if (attempts == 0) {
+			LockStats stats = this.stats;
+			if (stats != null) {
+				stats.timedOut();
+			}
+			return false;
+		}
+		logger.debug("{} acquired {} permits of key: {}", Thread.currentThread().getName(), permits, key);
+		recordAcquired(startNanos, attempts);
+		return true;
+	}
+
+	/**
+	 * 一次获取尝试, 一次网络往返
+	 *
+	 * @return {@code null} 若成功获取到许可, 否则为最早到期的租约剩余的有效时长(毫秒)
+	 */
+	private Long attempt(int permits) {
+		LockStats stats = this.stats;
+		if (stats != null) {
+			stats.attempt();
+		}
+		final byte[] owner = codec.currentOwner();
+		final byte[] permitsRequested = Protocol.toByteArray(permits);
+		return executor.execute(new JedisCallback<Long>() {
+			public Long doInJedis(Jedis jedis) {
+				long now = ServerClock.of(jedis).lowerBoundMillis(jedis);
+				return (Long) LockScripts.SEMAPHORE_ACQUIRE.eval(jedis, 2, keyBytes, leaseKey, leaseTimeBytes, permitsRequested, owner, permitsBytes, Protocol.toByteArray(now));
+			}
+		});
+	}
+
+	private void recordAcquired(long startNanos, int attempts) {
+		LockStats stats = this.stats;
+		if (stats != null) {
+			stats.acquired(startNanos, attempts);
+		}
+	}
+
+	private void checkPermits(int permits) {
+		if (permits <= 0 || permits > this.permits) {
+			throw new IllegalArgumentException(String.format("permits must be in [1, %d]: %d", this.permits, permits));
+		}
+	}
+
+	private void checkInterruption() throws InterruptedException {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new InterruptedException();
+		}
+	}
+
+}
@@ -0,0 +1,248 @@
+package io.lock.redis;
+
+import io.lock.Releasable;
+import io.lock.WaitStrategy;
+import io.lock.metrics.LockMetrics;
+import io.lock.redis.util.ConsistentHash;
+import io.lock.util.ObjectUtils;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+
+/**
+ * 把 lockKey 按一致性哈希({@link ConsistentHash}, 带虚拟节点)分布到多个相互独立的redis server上的锁工厂, 线程安全.
+ * <ul>
+ * <li>每个redis server由一个 {@link LockManager} 负责(各自的连接池与订阅连接), 锁的吞吐随server数水平扩展</li>
+ * <li>一个 lockKey 的所有数据(包括读写锁, 公平锁的等待队列)都在同一个server上</li>
+ * <li>lockKey 中的 hash tag(如 "{order:1}:items" 中的 order:1)决定所在的server, 需要一起锁住的 lockKey
+ * ({@link #getMultiLock(Collection)})必须在同一个server上, 可通过相同的 hash tag 保证</li>
+ * <li>增加一个server时只有约 1/N 的 lockKey 改变所在的server; 改变期间同一个 lockKey 可能在新旧两个server上被同时持有,
+ * 因此所有jvm应在这些 lockKey 不被持有时切换到新的server列表</li>
+ * </ul>
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	{@link ShardedLockManager} lockManager = new {@link ShardedLockManager}(Arrays.asList("redis1:6379", "redis2:6379"));
+ * 	{@link io.lock.Lock Lock} lock = lockManager.getLock("lockKey");
+ * 	if (lock.tryLock(3, TimeUnit.SECONDS)) {
+ * 		try {
+ * 			// do something
+ * 		} finally {
+ * 			lock.unlock();
+ * 		}
+ * 	}
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public class ShardedLockManager implements Releasable {
+
+	private static final int DEFAULT_MAX_CONNECTIONS = 8;
+	private static final long DEFAULT_LOCK_EXPIRES = 3000L;
+
+	private final ConsistentHash<LockManager> ring;
+
+	/**
+	 * @param addresses redis server 的地址(host:port), 各个jvm应使用相同的地址写法
+	 */
+	public ShardedLockManager(Collection<String> addresses) {
+		this(addresses, defaultPoolConfig(), DEFAULT_LOCK_EXPIRES);
+	}
+
+	/**
+	 * @param addresses redis server 的地址(host:port), 各个jvm应使用相同的地址写法
+	 * @param poolConfig 每个server的连接池配置
+	 * @param lockExpires 锁的有效时长(毫秒)
+	 */
+	public ShardedLockManager(Collection<String> addresses, GenericObjectPoolConfig poolConfig, long lockExpires) {
+		this(createShards(addresses, poolConfig, lockExpires), ConsistentHash.DEFAULT_VIRTUAL_NODES);
+	}
+
+	/**
+	 * @param shards 节点名(决定节点在环上的位置, 各个jvm应保持一致)到该节点的 {@link LockManager}, 由 ShardedLockManager 负责释放
+	 * @param virtualNodes 每个节点在环上的虚拟节点数, 越多分布越均匀
+	 */
+	public ShardedLockManager(Map<String, LockManager> shards, int virtualNodes) {
+		this.ring = new ConsistentHash<LockManager>(shards, virtualNodes);
+	}
+
+	/**
+	 * lockKey 所在的server的 {@link LockManager}
+	 */
+	public LockManager getShard(String lockKey) {
+		ObjectUtils.requireNonNull(lockKey, "lockKey");
+		return ring.get(lockKey);
+	}
+
+	/**
+	 * 节点名到该节点的 {@link LockManager}
+	 */
+	public Map<String, LockManager> getShards() {
+		return ring.getNodes();
+	}
+
+	/**
+	 * 见 {@link LockManager#getLock(String)}
+	 */
+	public RedisReentrantLock getLock(String lockKey) {
+		return getShard(lockKey).getLock(lockKey);
+	}
+
+	/**
+	 * 见 {@link LockManager#getFairLock(String)}
+	 */
+	public RedisFairLock getFairLock(String lockKey) {
+		return getShard(lockKey).getFairLock(lockKey);
+	}
+
+	/**
+	 * 见 {@link LockManager#getFencedLock(String)}
+	 */
+	public RedisFencedLock getFencedLock(String lockKey) {
+		return getShard(lockKey).getFencedLock(lockKey);
+	}
+
+	/**
+	 * 见 {@link LockManager#getCohortLock(String)}
+	 */
+	public RedisCohortLock getCohortLock(String lockKey) {
+		return getShard(lockKey).getCohortLock(lockKey);
+	}
+
+	/**
+	 * 见 {@link LockManager#getReadWriteLock(String)}
+	 */
+	public RedisReentrantReadWriteLock getReadWriteLock(String lockKey) {
+		return getShard(lockKey).getReadWriteLock(lockKey);
+	}
+
+	/**
+	 * 见 {@link LockManager#getMultiLock(Collection)}
+	 *
+	 * @throws IllegalArgumentException lockKeys 不在同一个server上
+	 */
+	public RedisMultiLock getMultiLock(Collection<String> lockKeys) {
+		return shardOf(lockKeys).getMultiLock(lockKeys);
+	}
+
+	/**
+	 * 见 {@link LockManager#lockAll(Collection, long, TimeUnit)}
+	 *
+	 * @throws IllegalArgumentException lockKeys 不在同一个server上
+	 */
+	public RedisMultiLock lockAll(Collection<String> lockKeys, long time, TimeUnit unit) {
+		return shardOf(lockKeys).lockAll(lockKeys, time, unit);
+	}
+
+	/**
+	 * 见 {@link LockManager#getSemaphore(String, int)}
+	 */
+	public RedisSemaphore getSemaphore(String key, int permits) {
+		return getShard(key).getSemaphore(key, permits);
+	}
+
+	/**
+	 * 见 {@link LockManager#getIdGenerator(String)}
+	 */
+	public RedisIdGenerator getIdGenerator(String key) {
+		return getShard(key).getIdGenerator(key);
+	}
+
+	/**
+	 * 见 {@link LockManager#setWatchdog(LockWatchdog)}, 作用于所有server
+	 */
+	public void setWatchdog(LockWatchdog watchdog) {
+		for (LockManager shard : ring.getNodes().values()) {
+			shard.setWatchdog(watchdog);
+		}
+	}
+
+	/**
+	 * 见 {@link LockManager#setMetrics(LockMetrics)}, 作用于所有server
+	 */
+	public void setMetrics(LockMetrics metrics) {
+		for (LockManager shard : ring.getNodes().values()) {
+			shard.setMetrics(metrics);
+		}
+	}
+
+	/**
+	 * 见 {@link LockManager#setWaitStrategy(WaitStrategy)}, 作用于所有server
+	 */
+	public void setWaitStrategy(WaitStrategy waitStrategy) {
+		for (LockManager shard : ring.getNodes().values()) {
+			shard.setWaitStrategy(waitStrategy);
+		}
+	}
+
+	/**
+	 * 见 {@link LockManager#enableStateCache()}, 每个server一个缓存
+	 */
+	public void enableStateCache() {
+		for (LockManager shard : ring.getNodes().values()) {
+			shard.enableStateCache();
+		}
+	}
+
+	/**
+	 * 释放所有server的 {@link LockManager}
+	 */
+	public void release() {
+		for (LockManager shard : ring.getNodes().values()) {
+			shard.release();
+		}
+	}
+
+	private LockManager shardOf(Collection<String> lockKeys) {
+		ObjectUtils.requireNonNull(lockKeys, "lockKeys");
+		Iterator<String> it = lockKeys.iterator();
+		if (!it.hasNext()) {
+			throw new IllegalArgumentException("lockKeys must not be empty");
+		}
+		String first = it.next();
+		String name = ring.nodeName(first);
+		while (it.hasNext()) {
+			String lockKey = it.next();
+			if (!name.equals(ring.nodeName(lockKey))) {
+				throw new IllegalArgumentException(String.format("lockKeys %s and %s are on different shards, use the same hash tag to co-locate them", first, lockKey));
+			}
+		}
+		return ring.getNodes().get(name);
+	}
+
+	private static Map<String, LockManager> createShards(Collection<String> addresses, GenericObjectPoolConfig poolConfig, long lockExpires) {
+		ObjectUtils.requireNonNull(addresses, "addresses");
+		Map<String, LockManager> shards = new LinkedHashMap<String, LockManager>();
+		try {
+			for (String address : addresses) {
+				int i = address.lastIndexOf(':');
+				if (i <= 0) {
+					throw new IllegalArgumentException("address must be host:port: " + address);
+				}
+				if (!shards.containsKey(address)) {
+					shards.put(address, new LockManager(poolConfig, address.substring(0, i), Integer.parseInt(address.substring(i + 1)), lockExpires));
+				}
+			}
+		} catch (RuntimeException e) {
+			for (LockManager shard : shards.values()) {
+				shard.release();
+			}
+			throw e;
+		}
+		return shards;
+	}
+
+	private static GenericObjectPoolConfig defaultPoolConfig() {
+		GenericObjectPoolConfig config = new GenericObjectPoolConfig();
+		config.setMaxTotal(DEFAULT_MAX_CONNECTIONS);
+		config.setMaxIdle(DEFAULT_MAX_CONNECTIONS);
+		return config;
+	}
+
+}
@@ -0,0 +1,33 @@
+package io.lock.redis;
+
+import io.lock.util.ObjectUtils;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * 基于单个连接, 多个线程的命令串行执行
+ * 
+ * @author lixiaohui
+ *
+ */
+public class SingleJedisExecutor extends JedisExecutor {
+
+	private final Jedis jedis;
+
+	public SingleJedisExecutor(Jedis jedis) {
+		ObjectUtils.requireNonNull(jedis, "jedis");
+		this.jedis = jedis;
+	}
+
+	@Override
+	public <T> T execute(JedisCallback<T> callback) {
+		synchronized (jedis) {
+			return callback.doInJedis(jedis);
+		}
+	}
+
+	public void release() {
+		jedis.close();
+	}
+
+}
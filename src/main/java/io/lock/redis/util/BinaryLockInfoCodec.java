@@ -0,0 +1,141 @@
+package io.lock.redis.util;
+
+import java.util.Arrays;
+
+/**
+ * 定长的二进制格式(默认), 共 18 字节, 整数均为大端序:
+ * <pre>
+ * 0  : mac      (6 bytes)
+ * 6  : jvm pid  (4 bytes)
+ * 10 : threadId (8 bytes)
+ * </pre>
+ * 持有者标识的前缀(mac + pid)在每个jvm内只计算一次, 每个线程的完整标识只在第一次使用时拼接.
+ *
+ * @author lixiaohui
+ *
+ */
+public class BinaryLockInfoCodec implements LockInfoCodec {
+
+	public static final BinaryLockInfoCodec INSTANCE = new BinaryLockInfoCodec();
+
+	private static final int MAC_LENGTH = 6;
+
+	private static final int PREFIX_LENGTH = MAC_LENGTH + 4;
+
+	private static final int LENGTH = PREFIX_LENGTH + 8;
+
+	/**
+	 * mac + jvm pid
+	 */
+	private final byte[] ownerPrefix;
+
+	private final ThreadLocal<byte[]> currentOwner = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			byte[] owner = Arrays.copyOf(ownerPrefix, LENGTH);
+			putLong(owner, PREFIX_LENGTH, Thread.currentThread().getId());
+			return owner;
+		}
+	};
+
+	protected BinaryLockInfoCodec() {
+		ownerPrefix = new byte[PREFIX_LENGTH];
+		System.arraycopy(parseMac(LockInfo.localMac()), 0, ownerPrefix, 0, MAC_LENGTH);
+		putInt(ownerPrefix, MAC_LENGTH, LockInfo.currentPid());
+	}
+
+	public byte[] currentOwner() {
+		return currentOwner.get();
+	}
+
+	public byte[] encodeOwner(LockInfo lockInfo) {
+		byte[] owner = new byte[LENGTH];
+		System.arraycopy(parseMac(lockInfo.getMac()), 0, owner, 0, MAC_LENGTH);
+		putInt(owner, MAC_LENGTH, (int) lockInfo.getJvmPid());
+		putLong(owner, PREFIX_LENGTH, lockInfo.getThreadId());
+		return owner;
+	}
+
+	public LockInfo decodeOwner(byte[] owner, LockInfo into) {
+		requireLength(owner);
+		into.setMac(regionMatches(owner, ownerPrefix, MAC_LENGTH) ? LockInfo.localMac() : formatMac(owner));
+		into.setJvmPid(getInt(owner, MAC_LENGTH));
+		into.setThreadId(getLong(owner, PREFIX_LENGTH));
+		return into;
+	}
+
+	public boolean isCurrentThread(byte[] owner) {
+		return owner.length == LENGTH && regionMatches(owner, currentOwner(), LENGTH);
+	}
+
+	// ---------------- utility methods ----------------
+
+	private static void requireLength(byte[] owner) {
+		if (owner.length != LENGTH) {
+			throw new IllegalArgumentException(String.format("illegal lock owner length %d, expected %d", owner.length, LENGTH));
+		}
+	}
+
+	private static boolean regionMatches(byte[] owner, byte[] other, int length) {
+		for (int i = 0; i < length; i++) {
+			if (owner[i] != other[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * "02-FC-00-00-00-01" 形式的mac地址, 超过6字节的(如EUI-64)取后6字节
+	 */
+	private static byte[] parseMac(String mac) {
+		byte[] bytes = new byte[MAC_LENGTH];
+		if (mac == null) {
+			return bytes;
+		}
+		String[] parts = mac.split("-");
+		for (int i = 0; i < MAC_LENGTH && i < parts.length; i++) {
+			bytes[MAC_LENGTH - 1 - i] = (byte) Integer.parseInt(parts[parts.length - 1 - i], 16);
+		}
+		return bytes;
+	}
+
+	private static String formatMac(byte[] owner) {
+		StringBuilder sb = new StringBuilder(MAC_LENGTH * 3);
+		for (int i = 0; i < MAC_LENGTH; i++) {
+			sb.append(String.format("%02X%s", owner[i], i < MAC_LENGTH - 1 ? "-" : ""));
+		}
+		return sb.toString();
+	}
+
+	private static void putInt(byte[] b, int offset, int v) {
+		for (int i = 3; i >= 0; i--) {
+			b[offset + i] = (byte) v;
+			v >>>= 8;
+		}
+	}
+
+	private static void putLong(byte[] b, int offset, long v) {
+		for (int i = 7; i >= 0; i--) {
+			b[offset + i] = (byte) v;
+			v >>>= 8;
+		}
+	}
+
+	private static int getInt(byte[] b, int offset) {
+		int v = 0;
+		for (int i = 0; i < 4; i++) {
+			v = (v << 8) | (b[offset + i] & 0xFF);
+		}
+		return v;
+	}
+
+	private static long getLong(byte[] b, int offset) {
+		long v = 0;
+		for (int i = 0; i < 8; i++) {
+			v = (v << 8) | (b[offset + i] & 0xFF);
+		}
+		return v;
+	}
+
+}
@@ -0,0 +1,96 @@
+package io.lock.redis.util;
+
+import io.lock.util.ObjectUtils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import redis.clients.util.Hashing;
+
+/**
+ * 带虚拟节点的一致性哈希环, 创建后不可变, 线程安全.
+ * <p>
+ * 每个节点按名字在环上放置 virtualNodes 个点(名字 + "#" + 序号 的 64位 MurmurHash), key 归属于顺时针方向上的第一个点.
+ * 点的位置只与节点的名字有关, 与节点的加入顺序无关; 增加一个节点时只有落到新节点的点上的 key(约 1/N)改变归属, 其余不变.
+ * </p>
+ * <p>
+ * key 中含有 hash tag 时(第一个 '{' 与其后第一个 '}' 之间的非空部分, 与 redis cluster 相同), 只对 hash tag 求哈希,
+ * 因此 "{order:1}:a" 与 "{order:1}:b" 总是落在同一个节点上.
+ * </p>
+ *
+ * @author lixiaohui
+ *
+ */
+public class ConsistentHash<T> {
+
+	public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+	// 点 -> 节点名
+	private final TreeMap<Long, String> ring = new TreeMap<Long, String>();
+
+	private final Map<String, T> nodes;
+
+	/**
+	 * @param nodes 节点名(如 host:port)到节点, 节点名决定节点在环上的位置, 应在各个jvm间保持一致
+	 */
+	public ConsistentHash(Map<String, T> nodes, int virtualNodes) {
+		ObjectUtils.requireNonNull(nodes, "nodes");
+		if (nodes.isEmpty()) {
+			throw new IllegalArgumentException("nodes must not be empty");
+		}
+		if (virtualNodes <= 0) {
+			throw new IllegalArgumentException("virtualNodes must be positive: " + virtualNodes);
+		}
+		this.nodes = Collections.unmodifiableMap(new LinkedHashMap<String, T>(nodes));
+		for (Map.Entry<String, T> e : this.nodes.entrySet()) {
+			ObjectUtils.requireNonNull(e.getValue(), e.getKey());
+			for (int i = 0; i < virtualNodes; i++) {
+				// 极少数的哈希冲突时保留名字较大的节点, 结果只取决于节点集合
+				long point = Hashing.MURMUR_HASH.hash(e.getKey() + "#" + i);
+				String existing = ring.get(point);
+				if (existing == null || e.getKey().compareTo(existing) > 0) {
+					ring.put(point, e.getKey());
+				}
+			}
+		}
+	}
+
+	/**
+	 * key 所在的节点
+	 */
+	public T get(String key) {
+		return nodes.get(nodeName(key));
+	}
+
+	/**
+	 * key 所在的节点的名字
+	 */
+	public String nodeName(String key) {
+		Map.Entry<Long, String> point = ring.ceilingEntry(Hashing.MURMUR_HASH.hash(hashTag(key)));
+		return point == null ? ring.firstEntry().getValue() : point.getValue();
+	}
+
+	/**
+	 * 节点名到节点, 顺序与构造时相同
+	 */
+	public Map<String, T> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * key 中参与哈希的部分: 有非空的 hash tag 时为 hash tag, 否则为整个 key
+	 */
+	public static String hashTag(String key) {
+		int start = key.indexOf('{');
+		if (start >= 0) {
+			int end = key.indexOf('}', start + 1);
+			if (end > start + 1) {
+				return key.substring(start + 1, end);
+			}
+		}
+		return key;
+	}
+
+}
@@ -0,0 +1,54 @@
+package io.lock.redis.util;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * json 格式, 便于用 redis-cli 直接查看锁的持有者, 用于调试. 字段顺序固定:
+ * <pre>
+ * {"jvmPid":11636,"mac":"28-D2-44-0E-0D-9A","threadId":1}
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public class JsonLockInfoCodec implements LockInfoCodec {
+
+	public static final JsonLockInfoCodec INSTANCE = new JsonLockInfoCodec();
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final ThreadLocal<byte[]> currentOwner = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return owner(LockInfo.currentPid(), LockInfo.localMac(), Thread.currentThread().getId());
+		}
+	};
+
+	protected JsonLockInfoCodec() {
+	}
+
+	public byte[] currentOwner() {
+		return currentOwner.get();
+	}
+
+	public byte[] encodeOwner(LockInfo lockInfo) {
+		return owner(lockInfo.getJvmPid(), lockInfo.getMac(), lockInfo.getThreadId());
+	}
+
+	public LockInfo decodeOwner(byte[] owner, LockInfo into) {
+		LockInfo info = LockInfo.fromString(new String(owner, UTF8));
+		return into.setJvmPid(info.getJvmPid())
+				.setMac(info.getMac())
+				.setThreadId(info.getThreadId());
+	}
+
+	public boolean isCurrentThread(byte[] owner) {
+		return Arrays.equals(owner, currentOwner());
+	}
+
+	private static byte[] owner(long jvmPid, String mac, long threadId) {
+		return ("{\"jvmPid\":" + jvmPid + ",\"mac\":\"" + mac + "\",\"threadId\":" + threadId + "}").getBytes(UTF8);
+	}
+
+}
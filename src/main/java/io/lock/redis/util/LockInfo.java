@@ -49,7 +49,21 @@ public class LockInfo {
 	}
 	
 	public boolean isCurrentThread() {
-		return mac.equals(LOCAL_MAC) && jvmPid == CURRENT_PID && Thread.currentThread().getId() == threadId;
+		return LOCAL_MAC.equals(mac) && jvmPid == CURRENT_PID && Thread.currentThread().getId() == threadId;
+	}
+	
+	/**
+	 * 本机mac地址, 与 jvm pid, threadId 一起确定分布式环境中的一个线程
+	 */
+	public static String localMac() {
+		return LOCAL_MAC;
+	}
+	
+	/**
+	 * 当前jvm的进程ID
+	 */
+	public static int currentPid() {
+		return CURRENT_PID;
 	}
 	
 	public static LockInfo fromString(String lockInfo) {
@@ -0,0 +1,37 @@
+package io.lock.redis.util;
+
+/**
+ * 锁持有者标识(mac + jvm pid + threadId)在 redis 中的格式.
+ * <p>
+ * 锁以 hash 存储, field 为持有者标识, value 为持有次数, 超时由 key 的 TTL 表示, 因此 {@link LockInfo}
+ * 中只有持有者部分需要编码. 脚本只比较持有者标识是否相等, 与具体格式无关.
+ * </p>
+ * <p>
+ * 实现需要线程安全, 且热路径上的方法({@link #currentOwner()}, {@link #isCurrentThread(byte[])})不应分配对象.
+ * </p>
+ *
+ * @author lixiaohui
+ *
+ */
+public interface LockInfoCodec {
+
+	/**
+	 * 当前线程的持有者标识, 每个线程只计算一次
+	 */
+	byte[] currentOwner();
+
+	/**
+	 * 编码 lockInfo 的 mac, jvmPid, threadId
+	 */
+	byte[] encodeOwner(LockInfo lockInfo);
+
+	/**
+	 * 解码持有者标识到给定的 {@link LockInfo} 中, 以便调用方复用对象
+	 *
+	 * @return {@code into}
+	 */
+	LockInfo decodeOwner(byte[] owner, LockInfo into);
+
+	boolean isCurrentThread(byte[] owner);
+
+}
@@ -0,0 +1,539 @@
+package io.lock.redis.util;
+
+/**
+ * {@link io.lock.redis.RedisReentrantLock RedisReentrantLock}, {@link io.lock.redis.RedisReentrantReadWriteLock RedisReentrantReadWriteLock} 等使用的 Lua 脚本.
+ * <p>
+ * 每个脚本在 redis server 端原子执行, 获取锁(含重入)和释放锁都只需一次网络往返.
+ * 锁以 hash 存储: field 为持有者标识({@link LockInfoCodec#currentOwner()}), value 为持有次数;
+ * 锁的有效期是 key 的毫秒级 TTL, 由 redis server 负责过期, 客户端不需要判断锁是否"已过期但仍存在".
+ * </p>
+ *
+ * @author lixiaohui
+ *
+ */
+public final class LockScripts {
+
+	/**
+	 * 获取锁(含重入).
+	 * <pre>
+	 * KEYS[1] lockKey
+	 * ARGV[1] 锁的有效时长(毫秒)
+	 * ARGV[2] 已被当前线程持有时持有次数的增量(1: 重入, 0: 仅续约)
+	 * ARGV[3] 当前线程的持有者标识
+	 * </pre>
+	 * 返回 nil 表示成功获取到锁, 否则返回当前持有者剩余的有效时长(毫秒).
+	 */
+	public static final RedisScript ACQUIRE = new RedisScript(
+			"if redis.call('exists', KEYS[1]) == 0 then " +
+				"redis.call('hset', KEYS[1], ARGV[3], 1) " +
+				"redis.call('pexpire', KEYS[1], ARGV[1]) " +
+				"return nil " +
+			"end " +
+			"if redis.call('hexists', KEYS[1], ARGV[3]) == 1 then " +
+				"redis.call('hincrby', KEYS[1], ARGV[3], ARGV[2]) " +
+				"redis.call('pexpire', KEYS[1], ARGV[1]) " +
+				"return nil " +
+			"end " +
+			"return redis.call('pttl', KEYS[1])");
+
+	/**
+	 * 获取锁(含重入)并返回 fencing token. 锁的格式与 {@link #ACQUIRE} 相同; 锁被创建时(第一次获取, 或有效期过去后重新获取)
+	 * 原子地递增 KEYS[2] 作为新的 token, 重入与续约返回当前的 token. KEYS[2] 没有有效期, 保证 token 严格递增.
+	 * <pre>
+	 * KEYS[1] lockKey
+	 * KEYS[2] fencing token 计数器
+	 * ARGV[1] 锁的有效时长(毫秒)
+	 * ARGV[2] 已被当前线程持有时持有次数的增量(1: 重入, 0: 仅续约)
+	 * ARGV[3] 当前线程的持有者标识
+	 * </pre>
+	 * 返回 {token} 表示成功获取到锁, 否则返回当前持有者剩余的有效时长(毫秒).
+	 */
+	public static final RedisScript FENCED_ACQUIRE = new RedisScript(
+			"if redis.call('exists', KEYS[1]) == 0 then " +
+				"local token = redis.call('incr', KEYS[2]) " +
+				"redis.call('hset', KEYS[1], ARGV[3], 1) " +
+				"redis.call('pexpire', KEYS[1], ARGV[1]) " +
+				"return {token} " +
+			"end " +
+			"if redis.call('hexists', KEYS[1], ARGV[3]) == 1 then " +
+				"redis.call('hincrby', KEYS[1], ARGV[3], ARGV[2]) " +
+				"redis.call('pexpire', KEYS[1], ARGV[1]) " +
+				"local token = redis.call('get', KEYS[2]) " +
+				"if token == false then " +
+					"return {redis.call('incr', KEYS[2])} " +
+				"end " +
+				"return {tonumber(token)} " +
+			"end " +
+			"return redis.call('pttl', KEYS[1])");
+
+	/**
+	 * 释放锁, 锁被删除时向 KEYS[2] 发布通知.
+	 * <pre>
+	 * KEYS[1] lockKey
+	 * KEYS[2] 锁释放通知的channel
+	 * ARGV[1] 当前线程的持有者标识
+	 * </pre>
+	 * 返回 nil 表示锁不存在(已过期); -1 表示锁被其他线程持有; 否则返回释放后剩余的持有次数(0 表示锁已删除).
+	 */
+	public static final RedisScript RELEASE = new RedisScript(
+			"if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then " +
+				"if redis.call('exists', KEYS[1]) == 0 then " +
+					"return nil " +
+				"end " +
+				"return -1 " +
+			"end " +
+			"local count = redis.call('hincrby', KEYS[1], ARGV[1], -1) " +
+			"if count > 0 then " +
+				"return count " +
+			"end " +
+			"redis.call('del', KEYS[1]) " +
+			"redis.call('publish', KEYS[2], 0) " +
+			"return 0");
+
+	/**
+	 * 续约, 只在锁仍被给定持有者持有时刷新TTL, 由 {@link io.lock.redis.LockWatchdog LockWatchdog} 批量执行.
+	 * <pre>
+	 * KEYS[1] lockKey
+	 * ARGV[1] 锁的有效时长(毫秒)
+	 * ARGV[2] 持有者在hash中的field
+	 * </pre>
+	 * 返回 1 表示续约成功, 0 表示锁已不被该持有者持有(已释放或已过期).
+	 */
+	public static final RedisScript RENEW = new RedisScript(
+			"if redis.call('hexists', KEYS[1], ARGV[2]) == 1 then " +
+				"redis.call('pexpire', KEYS[1], ARGV[1]) " +
+				"return 1 " +
+			"end " +
+			"return 0");
+
+	/**
+	 * 公平锁: 从等待队列头部移除排队资格已过期(超过 deadline 未再尝试)的等待者.
+	 * KEYS[2] 等待队列(list), KEYS[3] 等待者 -> 排队资格的截止时间(zset), 局部变量 now 为当前的server时间(毫秒)
+	 */
+	private static final String PURGE_EXPIRED_WAITERS =
+			"while true do " +
+				"local head = redis.call('lindex', KEYS[2], 0) " +
+				"if head == false then break end " +
+				"local deadline = redis.call('zscore', KEYS[3], head) " +
+				"if deadline and tonumber(deadline) > now then break end " +
+				"redis.call('lpop', KEYS[2]) " +
+				"redis.call('zrem', KEYS[3], head) " +
+			"end ";
+
+	/**
+	 * 公平锁: 唤醒队列头部的等待者, ARGV[2] 为等待者channel的前缀
+	 */
+	private static final String NOTIFY_HEAD_WAITER =
+			"local waiter = redis.call('lindex', KEYS[2], 0) " +
+			"if waiter then " +
+				"redis.call('publish', ARGV[2] .. waiter, 0) " +
+			"end ";
+
+	/**
+	 * 获取公平锁(含重入). 锁的格式与 {@link #ACQUIRE} 相同, 另有一个等待队列: 锁未被持有时只有队列头部的等待者(或队列为空时的请求者)能获取到锁,
+	 * 其他请求者排到队尾. 每个等待者的排队资格有截止时间, 每次尝试时延长, 过期(等待者已崩溃)后被移出队列.
+	 * <pre>
+	 * KEYS[1] lockKey
+	 * KEYS[2] 等待队列(list)
+	 * KEYS[3] 等待者 -> 排队资格的截止时间(zset)
+	 * ARGV[1] 锁的有效时长(毫秒)
+	 * ARGV[2] 已被当前线程持有时持有次数的增量(1: 重入, 0: 仅续约)
+	 * ARGV[3] 当前线程的持有者标识
+	 * ARGV[4] 排队资格的有效时长(毫秒)
+	 * ARGV[5] 当前的server时间(毫秒)
+	 * ARGV[6] 获取失败时是否排队(1: 排队, 0: 不排队)
+	 * </pre>
+	 * 返回 nil 表示成功获取到锁, 否则返回当前持有者剩余的有效时长(毫秒, 锁未被持有而前面有等待者时为负数).
+	 */
+	public static final RedisScript FAIR_ACQUIRE = new RedisScript(
+			"local now = tonumber(ARGV[5]) " +
+			PURGE_EXPIRED_WAITERS +
+			"if redis.call('exists', KEYS[1]) == 0 then " +
+				"local head = redis.call('lindex', KEYS[2], 0) " +
+				"if head == false or head == ARGV[3] then " +
+					"if head then " +
+						"redis.call('lpop', KEYS[2]) " +
+						"redis.call('zrem', KEYS[3], ARGV[3]) " +
+					"end " +
+					"redis.call('hset', KEYS[1], ARGV[3], 1) " +
+					"redis.call('pexpire', KEYS[1], ARGV[1]) " +
+					"return nil " +
+				"end " +
+			"elseif redis.call('hexists', KEYS[1], ARGV[3]) == 1 then " +
+				"redis.call('hincrby', KEYS[1], ARGV[3], ARGV[2]) " +
+				"redis.call('pexpire', KEYS[1], ARGV[1]) " +
+				"return nil " +
+			"end " +
+			"if ARGV[6] == '1' then " +
+				"if redis.call('zscore', KEYS[3], ARGV[3]) == false then " +
+					"redis.call('rpush', KEYS[2], ARGV[3]) " +
+				"end " +
+				"redis.call('zadd', KEYS[3], now + tonumber(ARGV[4]), ARGV[3]) " +
+				"redis.call('pexpire', KEYS[2], ARGV[4]) " +
+				"redis.call('pexpire', KEYS[3], ARGV[4]) " +
+			"end " +
+			"return redis.call('pttl', KEYS[1])");
+
+	/**
+	 * 释放公平锁, 锁被删除时只唤醒队列头部的等待者.
+	 * <pre>
+	 * KEYS[1] lockKey
+	 * KEYS[2] 等待队列(list)
+	 * KEYS[3] 等待者 -> 排队资格的截止时间(zset)
+	 * ARGV[1] 当前线程的持有者标识
+	 * ARGV[2] 等待者channel的前缀, 加上等待者的持有者标识即为其channel
+	 * ARGV[3] 当前的server时间(毫秒)
+	 * </pre>
+	 * 返回值与 {@link #RELEASE} 相同.
+	 */
+	public static final RedisScript FAIR_RELEASE = new RedisScript(
+			"if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then " +
+				"if redis.call('exists', KEYS[1]) == 0 then " +
+					"return nil " +
+				"end " +
+				"return -1 " +
+			"end " +
+			"local count = redis.call('hincrby', KEYS[1], ARGV[1], -1) " +
+			"if count > 0 then " +
+				"return count " +
+			"end " +
+			"redis.call('del', KEYS[1]) " +
+			"local now = tonumber(ARGV[3]) " +
+			PURGE_EXPIRED_WAITERS +
+			NOTIFY_HEAD_WAITER +
+			"return 0");
+
+	/**
+	 * 公平锁的等待者放弃等待(超时, 中断), 移出队列; 若它是队列头部且锁未被持有, 唤醒下一个等待者. 参数与 {@link #FAIR_RELEASE} 相同.
+	 */
+	public static final RedisScript FAIR_CANCEL = new RedisScript(
+			"local head = redis.call('lindex', KEYS[2], 0) " +
+			"redis.call('lrem', KEYS[2], 0, ARGV[1]) " +
+			"redis.call('zrem', KEYS[3], ARGV[1]) " +
+			"if head == ARGV[1] and redis.call('exists', KEYS[1]) == 0 then " +
+				"local now = tonumber(ARGV[3]) " +
+				PURGE_EXPIRED_WAITERS +
+				NOTIFY_HEAD_WAITER +
+			"end " +
+			"return nil");
+
+	/**
+	 * 读写锁: 移除租约已过期的读者(已崩溃或持有过久), 只剩 mode 时删除锁. KEYS[1] lockKey, KEYS[2] 读者 -> 租约截止时间(zset),
+	 * 局部变量 now 为当前的server时间(毫秒)
+	 */
+	private static final String PURGE_EXPIRED_READERS =
+			"local expired = redis.call('zrangebyscore', KEYS[2], '-inf', now) " +
+			"if #expired > 0 then " +
+				"for i = 1, #expired do " +
+					"redis.call('hdel', KEYS[1], expired[i]) " +
+				"end " +
+				"redis.call('zremrangebyscore', KEYS[2], '-inf', now) " +
+				"if redis.call('hlen', KEYS[1]) == 1 then " +
+					"redis.call('del', KEYS[1]) " +
+				"end " +
+			"end ";
+
+	/**
+	 * 读写锁: 读者的租约变化后, KEYS[2] 的TTL设为最晚到期的租约剩余的有效时长; 读模式下 KEYS[1] 的TTL与之相同(可能缩短),
+	 * 写模式(降级)下只延长不缩短. 局部变量 now 同上
+	 */
+	private static final String UPDATE_READERS_TTL =
+			"local last = redis.call('zrange', KEYS[2], -1, -1, 'withscores') " +
+			"local ttl = math.max(tonumber(last[2]) - now, 1) " +
+			"redis.call('pexpire', KEYS[2], ttl) " +
+			"if redis.call('hget', KEYS[1], 'mode') == 'read' or redis.call('pttl', KEYS[1]) < ttl then " +
+				"redis.call('pexpire', KEYS[1], ttl) " +
+			"end ";
+
+	/**
+	 * 获取读锁(含重入). 读写锁以 hash 存储: field "mode" 为 "read" 或 "write"; 每个读者一个field, value 为持有次数;
+	 * 写者的field为持有者标识加 ":write" 后缀. 写锁的持有者可以再获取读锁(降级).
+	 * 每个读者有自己的租约(截止时间存于 KEYS[2]), 每次获取时延长; 读模式下key的TTL为最晚到期的租约剩余的有效时长,
+	 * 租约过期的读者在下一次获取读锁/写锁时被移除, 因此崩溃的读者不会因为其他读者不断到来而一直挡住写者.
+	 * <pre>
+	 * KEYS[1] lockKey
+	 * KEYS[2] 读者 -> 租约截止时间(zset, server时间, 毫秒)
+	 * ARGV[1] 读锁的有效时长(毫秒)
+	 * ARGV[2] 已被当前线程持有时持有次数的增量(1: 重入, 0: 仅续约)
+	 * ARGV[3] 当前线程的持有者标识
+	 * ARGV[4] 当前的server时间(毫秒)
+	 * </pre>
+	 * 返回 nil 表示成功获取到读锁, 否则返回写锁持有者剩余的有效时长(毫秒).
+	 */
+	public static final RedisScript READ_ACQUIRE = new RedisScript(
+			"local now = tonumber(ARGV[4]) " +
+			PURGE_EXPIRED_READERS +
+			"local mode = redis.call('hget', KEYS[1], 'mode') " +
+			"if mode == false then " +
+				"redis.call('hset', KEYS[1], 'mode', 'read') " +
+				"redis.call('hset', KEYS[1], ARGV[3], 1) " +
+			"elseif mode == 'read' or redis.call('hexists', KEYS[1], ARGV[3] .. ':write') == 1 then " +
+				"if redis.call('hincrby', KEYS[1], ARGV[3], ARGV[2]) == 0 then " +
+					"redis.call('hset', KEYS[1], ARGV[3], 1) " +
+				"end " +
+			"else " +
+				"return redis.call('pttl', KEYS[1]) " +
+			"end " +
+			"redis.call('zadd', KEYS[2], now + tonumber(ARGV[1]), ARGV[3]) " +
+			UPDATE_READERS_TTL +
+			"return nil");
+
+	/**
+	 * 释放读锁, 最后一个持有者释放时删除锁并向 KEYS[3] 发布通知.
+	 * <pre>
+	 * KEYS[1] lockKey
+	 * KEYS[2] 读者 -> 租约截止时间(zset)
+	 * KEYS[3] 锁释放通知的channel
+	 * ARGV[1] 当前线程的持有者标识
+	 * ARGV[2] 当前的server时间(毫秒)
+	 * </pre>
+	 * 返回 nil 表示锁不存在或当前线程的租约已过期; -1 表示当前线程不持有读锁; 否则返回释放后剩余的持有次数.
+	 */
+	public static final RedisScript READ_RELEASE = new RedisScript(
+			"if redis.call('exists', KEYS[1]) == 0 then " +
+				"return nil " +
+			"end " +
+			"local now = tonumber(ARGV[2]) " +
+			"local lease = redis.call('zscore', KEYS[2], ARGV[1]) " +
+			PURGE_EXPIRED_READERS +
+			"local result = 0 " +
+			"if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then " +
+				"if lease == false or tonumber(lease) > now then " +
+					"return -1 " +
+				"end " +
+				"result = nil " +
+			"else " +
+				"local count = redis.call('hincrby', KEYS[1], ARGV[1], -1) " +
+				"if count > 0 then " +
+					"return count " +
+				"end " +
+				"redis.call('hdel', KEYS[1], ARGV[1]) " +
+				"redis.call('zrem', KEYS[2], ARGV[1]) " +
+			"end " +
+			"if redis.call('hlen', KEYS[1]) <= 1 then " +
+				"redis.call('del', KEYS[1], KEYS[2]) " +
+				"redis.call('publish', KEYS[3], 1) " +
+			"end " +
+			"return result");
+
+	/**
+	 * 获取写锁(含重入), 格式见 {@link #READ_ACQUIRE}, 先移除租约已过期的读者. 读锁的持有者不能再获取写锁(不支持升级).
+	 * <pre>
+	 * KEYS[1] lockKey
+	 * KEYS[2] 读者 -> 租约截止时间(zset)
+	 * ARGV[1] 写锁的有效时长(毫秒)
+	 * ARGV[2] 已被当前线程持有时持有次数的增量(1: 重入, 0: 仅续约)
+	 * ARGV[3] 当前线程的写者field(持有者标识 + ":write")
+	 * ARGV[4] 当前的server时间(毫秒)
+	 * </pre>
+	 * 返回 nil 表示成功获取到写锁, 否则返回当前持有者(们)剩余的有效时长(毫秒).
+	 */
+	public static final RedisScript WRITE_ACQUIRE = new RedisScript(
+			"local now = tonumber(ARGV[4]) " +
+			PURGE_EXPIRED_READERS +
+			"local mode = redis.call('hget', KEYS[1], 'mode') " +
+			"if mode == false then " +
+				"redis.call('hset', KEYS[1], 'mode', 'write') " +
+				"redis.call('hset', KEYS[1], ARGV[3], 1) " +
+				"redis.call('pexpire', KEYS[1], ARGV[1]) " +
+				"return nil " +
+			"end " +
+			"if mode == 'write' and redis.call('hexists', KEYS[1], ARGV[3]) == 1 then " +
+				"redis.call('hincrby', KEYS[1], ARGV[3], ARGV[2]) " +
+				"redis.call('pexpire', KEYS[1], ARGV[1]) " +
+				"return nil " +
+			"end " +
+			"return redis.call('pttl', KEYS[1])");
+
+	/**
+	 * 释放写锁. 写锁完全释放后若仍有读者(降级), 锁转为读模式, TTL为读者最晚到期的租约剩余的有效时长, 否则删除锁;
+	 * 两种情况都向 KEYS[3] 发布通知.
+	 * <pre>
+	 * KEYS[1] lockKey
+	 * KEYS[2] 读者 -> 租约截止时间(zset)
+	 * KEYS[3] 锁释放通知的channel
+	 * ARGV[1] 当前线程的写者field(持有者标识 + ":write")
+	 * </pre>
+	 * 返回 nil 表示锁不存在(已过期); -1 表示当前线程不持有写锁; 否则返回释放后剩余的持有次数.
+	 */
+	public static final RedisScript WRITE_RELEASE = new RedisScript(
+			"if redis.call('exists', KEYS[1]) == 0 then " +
+				"return nil " +
+			"end " +
+			"if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then " +
+				"return -1 " +
+			"end " +
+			"local count = redis.call('hincrby', KEYS[1], ARGV[1], -1) " +
+			"if count > 0 then " +
+				"return count " +
+			"end " +
+			"redis.call('hdel', KEYS[1], ARGV[1]) " +
+			"local ttl = redis.call('pttl', KEYS[2]) " +
+			"if redis.call('hlen', KEYS[1]) == 1 or ttl <= 0 then " +
+				"redis.call('del', KEYS[1], KEYS[2]) " +
+			"else " +
+				"redis.call('hset', KEYS[1], 'mode', 'read') " +
+				"redis.call('pexpire', KEYS[1], ttl) " +
+			"end " +
+			"redis.call('publish', KEYS[3], 1) " +
+			"return 0");
+
+	/**
+	 * 同时获取多个锁(含重入), 要么全部获取到, 要么一个都不获取. 每个锁的格式与 {@link #ACQUIRE} 相同,
+	 * 因此已被当前线程通过 {@link io.lock.redis.RedisReentrantLock RedisReentrantLock} 持有的锁视为重入.
+	 * <pre>
+	 * KEYS[1..n] lockKey
+	 * ARGV[1] 锁的有效时长(毫秒)
+	 * ARGV[2] 已被当前线程持有时持有次数的增量(1: 重入, 0: 仅续约)
+	 * ARGV[3] 当前线程的持有者标识
+	 * </pre>
+	 * 返回 nil 表示成功获取到所有锁, 否则返回 {第一个被其他线程持有的锁的下标(从1开始), 该锁剩余的有效时长(毫秒)}.
+	 * 锁的有效期只延长不缩短, 以免缩短单独持有的锁的有效期.
+	 */
+	public static final RedisScript MULTI_ACQUIRE = new RedisScript(
+			"for i = 1, #KEYS do " +
+				"if redis.call('exists', KEYS[i]) == 1 and redis.call('hexists', KEYS[i], ARGV[3]) == 0 then " +
+					"return {i, redis.call('pttl', KEYS[i])} " +
+				"end " +
+			"end " +
+			"for i = 1, #KEYS do " +
+				"if redis.call('hincrby', KEYS[i], ARGV[3], ARGV[2]) == 0 then " +
+					"redis.call('hset', KEYS[i], ARGV[3], 1) " +
+				"end " +
+				"if redis.call('pttl', KEYS[i]) < tonumber(ARGV[1]) then " +
+					"redis.call('pexpire', KEYS[i], ARGV[1]) " +
+				"end " +
+			"end " +
+			"return nil");
+
+	/**
+	 * 同时释放多个锁, 每个被删除的锁向各自的channel发布通知. 有锁被其他线程持有时不释放任何锁.
+	 * <pre>
+	 * KEYS[1..n] lockKey
+	 * KEYS[n+1..2n] 对应的锁释放通知的channel
+	 * ARGV[1] 当前线程的持有者标识
+	 * </pre>
+	 * 返回 -1 表示有锁被其他线程持有; 否则返回被删除的锁的个数(已过期的锁跳过).
+	 */
+	public static final RedisScript MULTI_RELEASE = new RedisScript(
+			"local n = #KEYS / 2 " +
+			"for i = 1, n do " +
+				"if redis.call('exists', KEYS[i]) == 1 and redis.call('hexists', KEYS[i], ARGV[1]) == 0 then " +
+					"return -1 " +
+				"end " +
+			"end " +
+			"local deleted = 0 " +
+			"for i = 1, n do " +
+				"if redis.call('hexists', KEYS[i], ARGV[1]) == 1 and redis.call('hincrby', KEYS[i], ARGV[1], -1) <= 0 then " +
+					"redis.call('hdel', KEYS[i], ARGV[1]) " +
+					"if redis.call('hlen', KEYS[i]) == 0 then " +
+						"redis.call('del', KEYS[i]) " +
+						"redis.call('publish', KEYS[n + i], 0) " +
+						"deleted = deleted + 1 " +
+					"end " +
+				"end " +
+			"end " +
+			"return deleted");
+
+	/**
+	 * 信号量: 移除有效期已过的租约, KEYS[1] 持有者 -> 许可数(hash), KEYS[2] 持有者 -> 租约截止时间(zset), 局部变量 now 为当前的server时间(毫秒)
+	 */
+	private static final String PURGE_EXPIRED_LEASES =
+			"local expired = redis.call('zrangebyscore', KEYS[2], '-inf', now) " +
+			"for i = 1, #expired do " +
+				"redis.call('hdel', KEYS[1], expired[i]) " +
+			"end " +
+			"redis.call('zremrangebyscore', KEYS[2], '-inf', now) ";
+
+	/**
+	 * 获取信号量的许可. 每个持有者(与锁相同的持有者标识)的所有许可共用一个租约, 每次获取时延长; 租约过期(持有者已崩溃)后其许可被回收.
+	 * <pre>
+	 * KEYS[1] 持有者 -> 许可数(hash)
+	 * KEYS[2] 持有者 -> 租约截止时间(zset, server时间, 毫秒)
+	 * ARGV[1] 租约的有效时长(毫秒)
+	 * ARGV[2] 获取的许可数
+	 * ARGV[3] 当前线程的持有者标识
+	 * ARGV[4] 许可总数
+	 * ARGV[5] 当前的server时间(毫秒)
+	 * </pre>
+	 * 返回 nil 表示成功获取到许可, 否则返回最早到期的租约剩余的有效时长(毫秒, 至少为1).
+	 */
+	public static final RedisScript SEMAPHORE_ACQUIRE = new RedisScript(
+			"local now = tonumber(ARGV[5]) " +
+			PURGE_EXPIRED_LEASES +
+			"local used = 0 " +
+			"local counts = redis.call('hvals', KEYS[1]) " +
+			"for i = 1, #counts do " +
+				"used = used + tonumber(counts[i]) " +
+			"end " +
+			"if used + tonumber(ARGV[2]) <= tonumber(ARGV[4]) then " +
+				"redis.call('hincrby', KEYS[1], ARGV[3], ARGV[2]) " +
+				"redis.call('zadd', KEYS[2], now + tonumber(ARGV[1]), ARGV[3]) " +
+				"if redis.call('pttl', KEYS[1]) < tonumber(ARGV[1]) then " +
+					"redis.call('pexpire', KEYS[1], ARGV[1]) " +
+					"redis.call('pexpire', KEYS[2], ARGV[1]) " +
+				"end " +
+				"return nil " +
+			"end " +
+			"local first = redis.call('zrange', KEYS[2], 0, 0, 'withscores') " +
+			"if first[2] then " +
+				"return math.max(tonumber(first[2]) - now, 1) " +
+			"end " +
+			"return 1");
+
+	/**
+	 * 释放信号量的许可, 向 KEYS[3] 发布通知(唤醒所有等待者, 释放的许可可能够多个等待者使用).
+	 * <pre>
+	 * KEYS[1] 持有者 -> 许可数(hash)
+	 * KEYS[2] 持有者 -> 租约截止时间(zset)
+	 * KEYS[3] 释放通知的channel
+	 * ARGV[1] 当前线程的持有者标识
+	 * ARGV[2] 释放的许可数
+	 * </pre>
+	 * 返回 nil 表示当前线程不持有许可(租约已过期); -1 表示持有的许可数少于释放的许可数; 否则返回释放后仍持有的许可数.
+	 */
+	public static final RedisScript SEMAPHORE_RELEASE = new RedisScript(
+			"local held = redis.call('hget', KEYS[1], ARGV[1]) " +
+			"if held == false then " +
+				"return nil " +
+			"end " +
+			"local remains = tonumber(held) - tonumber(ARGV[2]) " +
+			"if remains < 0 then " +
+				"return -1 " +
+			"end " +
+			"if remains == 0 then " +
+				"redis.call('hdel', KEYS[1], ARGV[1]) " +
+				"redis.call('zrem', KEYS[2], ARGV[1]) " +
+				"if redis.call('hlen', KEYS[1]) == 0 then " +
+					"redis.call('del', KEYS[1], KEYS[2]) " +
+				"end " +
+			"else " +
+				"redis.call('hset', KEYS[1], ARGV[1], remains) " +
+			"end " +
+			"redis.call('publish', KEYS[3], 1) " +
+			"return remains");
+
+	/**
+	 * 信号量当前可用的许可数(不修改数据, 租约已过期的许可视为可用).
+	 * <pre>
+	 * KEYS[1] 持有者 -> 许可数(hash)
+	 * KEYS[2] 持有者 -> 租约截止时间(zset)
+	 * ARGV[1] 许可总数
+	 * ARGV[2] 当前的server时间(毫秒)
+	 * </pre>
+	 */
+	public static final RedisScript SEMAPHORE_AVAILABLE = new RedisScript(
+			"local used = 0 " +
+			"local owners = redis.call('zrangebyscore', KEYS[2], '(' .. ARGV[2], '+inf') " +
+			"for i = 1, #owners do " +
+				"local count = redis.call('hget', KEYS[1], owners[i]) " +
+				"if count then " +
+					"used = used + tonumber(count) " +
+				"end " +
+			"end " +
+			"return tonumber(ARGV[1]) - used");
+
+	private LockScripts() {
+	}
+
+}
@@ -19,8 +19,10 @@ import com.alibaba.fastjson.JSON;
  * 
  * @author lixiaohui
  * @date 2016年9月17日 下午12:09:28
+ * @deprecated {@link io.lock.redis.RedisReentrantReadWriteLock RedisReentrantReadWriteLock} 改为以 hash 存储每个持有者的计数, 不再使用整体序列化的json
  * 
  */
+@Deprecated
 public class ReadWriteLockInfo {
 	// ------------- read lock fields ------------
 	
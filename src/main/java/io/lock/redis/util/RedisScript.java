@@ -0,0 +1,176 @@
+package io.lock.redis.util;
+
+import io.lock.util.ObjectUtils;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * 预加载的 Lua 脚本, 通过 EVALSHA 执行, 使每一次调用只消耗一次网络往返.
+ * <p>
+ * sha1 在本地计算, 不需要先 SCRIPT LOAD; 若 redis server 尚未缓存该脚本(重启, SCRIPT FLUSH等),
+ * 会收到 NOSCRIPT 错误, 此时加载脚本后重试一次.
+ * </p>
+ *
+ * @author lixiaohui
+ *
+ */
+public class RedisScript {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final String source;
+
+	private final String sha1;
+
+	private final byte[] sourceBytes;
+
+	private final byte[] sha1Bytes;
+
+	public RedisScript(String source) {
+		ObjectUtils.requireNonNull(source, "source");
+		this.source = source;
+		this.sha1 = sha1Hex(source);
+		this.sourceBytes = source.getBytes(UTF8);
+		this.sha1Bytes = sha1.getBytes(UTF8);
+	}
+
+	/**
+	 * 执行脚本
+	 *
+	 * @param jedis
+	 * @param keys 脚本中的 KEYS
+	 * @param args 脚本中的 ARGV
+	 * @return 脚本返回值, 由 jedis 转换(nil -> null, integer -> Long, bulk -> String, multi bulk -> List)
+	 */
+	public Object eval(Jedis jedis, List<String> keys, List<String> args) {
+		try {
+			return jedis.evalsha(sha1, keys, args);
+		} catch (JedisDataException e) {
+			if (!isNoScript(e)) {
+				throw e;
+			}
+			jedis.scriptLoad(source);
+			return jedis.evalsha(sha1, keys, args);
+		}
+	}
+
+	/**
+	 * 以二进制参数执行脚本, 参数不经过字符串编码
+	 *
+	 * @param jedis
+	 * @param keyCount KEYS 的个数, params 的前 keyCount 个为 KEYS, 其余为 ARGV
+	 * @param params
+	 * @return 脚本返回值(nil -> null, integer -> Long, bulk -> byte[], multi bulk -> List)
+	 */
+	public Object eval(Jedis jedis, int keyCount, byte[]... params) {
+		try {
+			return jedis.evalsha(sha1Bytes, keyCount, params);
+		} catch (JedisDataException e) {
+			if (!isNoScript(e)) {
+				throw e;
+			}
+			jedis.scriptLoad(sourceBytes);
+			return jedis.evalsha(sha1Bytes, keyCount, params);
+		}
+	}
+
+	/**
+	 * 在一次网络往返中执行多次脚本(pipeline), 每次调用的参数格式与 {@link #eval(Jedis, int, byte[]...)} 相同.
+	 * 个别调用的 redis 错误不影响其他调用, 以 {@link JedisDataException} 对象出现在返回值的对应位置
+	 *
+	 * @param jedis
+	 * @param keyCount 每次调用的 KEYS 的个数
+	 * @param paramsList 每次调用的参数
+	 * @return 与 paramsList 一一对应的脚本返回值
+	 */
+	public List<Object> evalPipelined(Jedis jedis, int keyCount, List<byte[][]> paramsList) {
+		List<Object> replies = sendAll(jedis, keyCount, paramsList);
+		List<byte[][]> retries = null;
+		for (int i = 0; i < replies.size(); i++) {
+			Object reply = replies.get(i);
+			if (isNoScript(reply)) {
+				if (retries == null) {
+					retries = new ArrayList<byte[][]>();
+				}
+				retries.add(paramsList.get(i));
+			}
+		}
+		if (retries == null) {
+			return replies;
+		}
+		jedis.scriptLoad(sourceBytes);
+		Iterator<Object> retried = sendAll(jedis, keyCount, retries).iterator();
+		for (int i = 0; i < replies.size(); i++) {
+			Object reply = replies.get(i);
+			if (isNoScript(reply)) {
+				replies.set(i, retried.next());
+			}
+		}
+		return replies;
+	}
+
+	/**
+	 * 只发送一次 EVALSHA, 不读取回复, 用于与其他命令合并在同一个pipeline中(回复由 {@link Client#getAll()} 读取).
+	 * 回复满足 {@link #isNoScript(Object)} 时需 {@link #load(Jedis)} 后重新发送
+	 */
+	public void send(Client client, int keyCount, byte[][] params) {
+		client.evalsha(sha1Bytes, keyCount, params);
+	}
+
+	/**
+	 * 把脚本加载到 redis server 的脚本缓存中
+	 */
+	public void load(Jedis jedis) {
+		jedis.scriptLoad(sourceBytes);
+	}
+
+	/**
+	 * pipeline 中的回复是否为 NOSCRIPT 错误
+	 */
+	public static boolean isNoScript(Object reply) {
+		return reply instanceof JedisDataException && isNoScript((JedisDataException) reply);
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public String getSha1() {
+		return sha1;
+	}
+
+	private List<Object> sendAll(Jedis jedis, int keyCount, List<byte[][]> paramsList) {
+		Client client = jedis.getClient();
+		for (byte[][] params : paramsList) {
+			send(client, keyCount, params);
+		}
+		return client.getAll();
+	}
+
+	private static boolean isNoScript(JedisDataException e) {
+		return e.getMessage() != null && e.getMessage().startsWith("NOSCRIPT");
+	}
+
+	private static String sha1Hex(String source) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(UTF8));
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+package io.lock.redis.util;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * redis server 时钟的本地估计.
+ * <p>
+ * 锁的超时时间以 redis server 的时间为准, 但不必每次都执行 TIME: 每隔一段时间用一次 TIME 采样,
+ * 以往返时间的中点对齐本地的 {@link System#nanoTime()}, 之后的 server 时间由本地单调时钟推算.
+ * 估计的误差 = 采样时往返时间的一半 + 本地时钟相对 server 的最大漂移. 判断其他客户端的租约/排队资格是否过期时
+ * 使用扣除误差后的 {@link #lowerBoundMillis(Jedis)}, 估计偏差不会使有效的持有者被提前移除.
+ * </p>
+ * <p>
+ * 每个 redis server(host:port) 共享一个实例, 线程安全. 需要(重新)采样时使用调用方传入的连接.
+ * </p>
+ *
+ * @author lixiaohui
+ *
+ */
+public class ServerClock {
+
+	private static final long RESYNC_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	/**
+	 * 本地时钟相对 server 时钟的最大漂移(百万分之一), 覆盖晶振误差与 NTP 的调整速率
+	 */
+	private static final long MAX_DRIFT_PPM = 200;
+
+	private static final ConcurrentMap<String, ServerClock> CLOCKS = new ConcurrentHashMap<String, ServerClock>();
+
+	private volatile Sample sample;
+
+	private volatile long lastSyncNanos;
+
+	private final AtomicBoolean syncing = new AtomicBoolean();
+
+	/**
+	 * jedis 所连接的 redis server 的时钟
+	 */
+	public static ServerClock of(Jedis jedis) {
+		String server = jedis.getClient().getHost() + ":" + jedis.getClient().getPort();
+		ServerClock clock = CLOCKS.get(server);
+		if (clock == null) {
+			ServerClock newClock = new ServerClock();
+			clock = CLOCKS.putIfAbsent(server, newClock);
+			if (clock == null) {
+				clock = newClock;
+			}
+		}
+		return clock;
+	}
+
+	/**
+	 * 估计的 server 当前时间(毫秒)
+	 *
+	 * @param jedis 需要采样时使用的连接
+	 */
+	public long currentTimeMillis(Jedis jedis) {
+		return sample(jedis).serverMicros(System.nanoTime()) / 1000;
+	}
+
+	/**
+	 * {@link #currentTimeMillis(Jedis)} 的误差上限(毫秒), 至少为 1
+	 */
+	public long uncertaintyMillis() {
+		Sample s = sample;
+		if (s == null) {
+			return 0;
+		}
+		return s.uncertaintyMicros(System.nanoTime()) / 1000 + 1;
+	}
+
+	/**
+	 * server 当前时间的下界(毫秒): 估计值减去误差上限, server 时间确定已经到达.
+	 * 传给脚本用于移除截止时间已过的租约与等待者, 以及计算新的截止时间(偏早, 持有者自己的估计仍应偏保守)
+	 *
+	 * @param jedis 需要采样时使用的连接
+	 */
+	public long lowerBoundMillis(Jedis jedis) {
+		long now = currentTimeMillis(jedis);
+		return now - uncertaintyMillis();
+	}
+
+	private Sample sample(Jedis jedis) {
+		Sample s = sample;
+		if (s == null) {
+			synchronized (this) {
+				if (sample == null) {
+					sync(jedis);
+				}
+			}
+			return sample;
+		}
+		if (System.nanoTime() - lastSyncNanos > RESYNC_INTERVAL_NANOS && syncing.compareAndSet(false, true)) {
+			try {
+				sync(jedis);
+			} finally {
+				syncing.set(false);
+			}
+		}
+		return sample;
+	}
+
+	private void sync(Jedis jedis) {
+		long t0 = System.nanoTime();
+		List<String> time = jedis.time();
+		long t1 = System.nanoTime();
+		lastSyncNanos = t1;
+		long serverMicros = Long.parseLong(time.get(0)) * 1000000L + Long.parseLong(time.get(1));
+		Sample s = new Sample(t0 + (t1 - t0) / 2, serverMicros, (t1 - t0) / 2000 + 1);
+		// 网络抖动时新的采样可能比旧采样推算的结果更不准确, 保留误差更小的那个
+		Sample old = sample;
+		if (old == null || s.uncertaintyMicros(t1) <= old.uncertaintyMicros(t1)) {
+			sample = s;
+		}
+	}
+
+	/**
+	 * 一次采样: 本地时刻 baseNanos 对应 server 时间 serverMicros, 误差 uncertaintyMicros
+	 */
+	private static final class Sample {
+
+		final long baseNanos;
+
+		final long serverMicros;
+
+		final long uncertaintyMicros;
+
+		Sample(long baseNanos, long serverMicros, long uncertaintyMicros) {
+			this.baseNanos = baseNanos;
+			this.serverMicros = serverMicros;
+			this.uncertaintyMicros = uncertaintyMicros;
+		}
+
+		long serverMicros(long nanoTime) {
+			return serverMicros + (nanoTime - baseNanos) / 1000;
+		}
+
+		long uncertaintyMicros(long nanoTime) {
+			return uncertaintyMicros + (nanoTime - baseNanos) / 1000 * MAX_DRIFT_PPM / 1000000L;
+		}
+
+	}
+
+}
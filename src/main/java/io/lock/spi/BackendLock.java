@@ -0,0 +1,136 @@
+package io.lock.spi;
+
+import io.lock.AbstractRetryingLock;
+import io.lock.LocalHold;
+import io.lock.WaitStrategy;
+import io.lock.util.ObjectUtils;
+
+/**
+ * 基于任意 {@link LockBackend} 的分布式可重入锁, 语义与 {@link io.lock.redis.RedisReentrantLock RedisReentrantLock} 相同:
+ * <ul>
+ * <li>同一个锁对象上的嵌套获取/释放只在本地计数, 后端中只记录第一次获取和最后一次释放</li>
+ * <li>本地估计的有效期过去后的重入回到后端续约(或重新获取)</li>
+ * <li>两次尝试之间按 {@link WaitStrategy} 等待; 后端支持通知时, 等待期间收到锁释放的通知则提前重试</li>
+ * </ul>
+ * 不支持自动续约, 统计与异步获取, 需要这些时使用 {@link io.lock.redis.RedisReentrantLock RedisReentrantLock}.
+ *
+ * <b>Usage Example:</b>
+ * <pre>
+ * 	{@link io.lock.memory.MemoryLockBackend MemoryLockBackend} backend = new MemoryLockBackend();
+ * 	{@link io.lock.Lock Lock} lock = new {@link BackendLock}&lt;MemoryLockBackend.Slot&gt;(backend, "lockKey", 3000);
+ * 	if (lock.tryLock(3, TimeUnit.SECONDS)) {
+ * 		try {
+ * 			// do something
+ * 		} finally {
+ * 			lock.unlock();
+ * 		}
+ * 	}
+ * </pre>
+ *
+ * @author lixiaohui
+ *
+ */
+public class BackendLock<K> extends AbstractRetryingLock {
+
+	private final LockBackend<K> backend;
+
+	private final String lockKey;
+
+	private final K key;
+
+	// 锁的有效时长(毫秒)
+	private final long leaseMillis;
+
+	/**
+	 * 当前jvm内通过该锁对象的持有
+	 */
+	private final LocalHold hold = new LocalHold();
+
+	/**
+	 * @param backend 不由锁对象释放
+	 * @param leaseMillis 锁的有效时长(毫秒)
+	 */
+	public BackendLock(LockBackend<K> backend, String lockKey, long leaseMillis) {
+		ObjectUtils.requireNonNull(backend, "backend", lockKey, "lockKey");
+		if (leaseMillis <= 0) {
+			throw new IllegalArgumentException("leaseMillis must be positive: " + leaseMillis);
+		}
+		this.backend = backend;
+		this.lockKey = lockKey;
+		this.key = backend.key(lockKey);
+		this.leaseMillis = leaseMillis;
+	}
+
+	public String getLockKey() {
+		return lockKey;
+	}
+
+	@Override
+	protected LockBackend.Subscription subscribe(long timeoutMillis) throws InterruptedException {
+		return backend.subscribe(key, timeoutMillis < 0 ? leaseMillis : timeoutMillis);
+	}
+
+	@Override
+	protected void unsubscribe(LockBackend.Subscription subscription) {
+		backend.unsubscribe(key, subscription);
+	}
+
+	@Override
+	protected void unlock0() {
+		if (hold.isHeldByCurrentThread()) {
+			if (hold.release()) { // 本地重入的释放, 不需要访问后端
+				return;
+			}
+			locked = false;
+		}
+		Long remains = backend.release(key, backend.currentOwner());
+		if (remains != null && remains < 0) {
+			throw new IllegalMonitorStateException(String.format("current thread[%s] does not holds the lock", Thread.currentThread().toString()));
+		}
+	}
+
+	@Override
+	public boolean isHeldByCurrentThread() {
+		if (hold.isValid()) {
+			return true;
+		}
+		return backend.isHeldBy(key, backend.currentOwner());
+	}
+
+	/**
+	 * Queries if this lock is held by any thread.
+	 */
+	public boolean isLocked() {
+		return backend.isLocked(key);
+	}
+
+	/**
+	 * 后端由创建者释放
+	 */
+	public void release() {
+	}
+
+	@Override
+	protected boolean tryReenterLocally() {
+		return hold.tryReenter();
+	}
+
+	@Override
+	protected Long acquire(boolean blocking) {
+		long requestTime = System.nanoTime();
+		boolean reentrant = hold.isHeldByCurrentThread();
+		Long ttl = backend.acquire(key, backend.currentOwner(), leaseMillis, reentrant);
+		if (ttl != null) {
+			if (reentrant) {
+				// 已失去锁
+				hold.lost();
+				locked = false;
+			}
+			return ttl;
+		}
+		hold.acquired(LocalHold.leaseDeadline(requestTime, leaseMillis));
+		locked = true;
+		return null;
+	}
+
+}
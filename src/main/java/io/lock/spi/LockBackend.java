@@ -0,0 +1,93 @@
+package io.lock.spi;
+
+import io.lock.Releasable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 锁的存储后端: 带有效期(租约)的可重入互斥锁的原子操作, 以及锁释放的通知. {@link BackendLock} 在其上实现 {@link io.lock.Lock Lock} 的语义.
+ * <p>
+ * 每个锁是 持有者 -&gt; 持有次数 的记录, 带有效期; 有效期过去后锁被视为不存在. 每个方法都是一次原子操作
+ * (对远程后端即一次网络往返), 实现必须线程安全.
+ * </p>
+ * <ul>
+ * <li>{@link io.lock.redis.RedisLockBackend RedisLockBackend}: 基于redis的Lua脚本与 pub/sub</li>
+ * <li>{@link io.lock.memory.MemoryLockBackend MemoryLockBackend}: 进程内, 无锁, 用于单节点部署, 测试与基准测试</li>
+ * </ul>
+ *
+ * @param <K> 后端对 lockKey 预处理的结果(如编码后的key), 每个锁对象只创建一次, 避免每次操作重复计算
+ *
+ * @author lixiaohui
+ *
+ */
+public interface LockBackend<K> extends Releasable {
+
+	/**
+	 * lockKey 在该后端中的表示, 由锁对象在创建时调用一次
+	 */
+	K key(String lockKey);
+
+	/**
+	 * 当前线程的持有者标识, 同一个线程每次返回相同的内容, 实现应避免每次分配对象
+	 */
+	byte[] currentOwner();
+
+	/**
+	 * 获取锁(含重入)
+	 *
+	 * @param leaseMillis 锁的有效时长(毫秒), 成功时重新开始计算
+	 * @param renewOnly 已被 owner 持有时不增加持有次数, 只续约
+	 * @return {@code null} 若成功获取到锁, 否则为当前持有者剩余的有效时长(毫秒)
+	 */
+	Long acquire(K key, byte[] owner, long leaseMillis, boolean renewOnly);
+
+	/**
+	 * 释放一次持有, 锁被删除时通知等待者
+	 *
+	 * @return {@code null} 若锁不存在(已过期); -1 若锁被其他持有者持有; 否则为释放后剩余的持有次数
+	 */
+	Long release(K key, byte[] owner);
+
+	/**
+	 * 锁仍被 owner 持有时延长有效期
+	 *
+	 * @return {@code false} 若锁已不被 owner 持有(已释放或已过期)
+	 */
+	boolean renew(K key, byte[] owner, long leaseMillis);
+
+	/**
+	 * 锁是否被任意持有者持有
+	 */
+	boolean isLocked(K key);
+
+	/**
+	 * 锁是否被 owner 持有
+	 */
+	boolean isHeldBy(K key, byte[] owner);
+
+	/**
+	 * 开始等待锁的释放通知, 必须在失败的获取尝试之前调用, 否则可能错过两者之间发出的通知.
+	 * 每次调用都需要对应一次 {@link #unsubscribe(Object, Subscription)}.
+	 *
+	 * @param timeoutMillis 最多等待订阅生效的时长
+	 * @return {@code null} 若该后端不支持通知, 此时等待者定期重试
+	 */
+	Subscription subscribe(K key, long timeoutMillis) throws InterruptedException;
+
+	void unsubscribe(K key, Subscription subscription);
+
+	/**
+	 * 锁释放通知的等待
+	 */
+	interface Subscription {
+
+		/**
+		 * 等待锁释放的通知, 通知可能丢失或是虚假的, 等待者醒来后总是重新尝试获取锁
+		 *
+		 * @return {@code true} 若收到通知, {@code false} 若超时
+		 */
+		boolean await(long timeout, TimeUnit unit) throws InterruptedException;
+
+	}
+
+}
@@ -6,28 +6,40 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
+import java.util.Enumeration;
 
 import sun.management.VMManagement;
 
 @SuppressWarnings("restriction")
 public class PlatformUtils {
 
+	private static final String UNKNOWN_MAC = "00-00-00-00-00-00";
+
 	/**
-	 * 获取localhost MAC地址
+	 * 获取localhost MAC地址, localhost所在网卡没有硬件地址时(容器, loopback等)取第一块有硬件地址的网卡, 
+	 * 都取不到则返回 {@value #UNKNOWN_MAC}
 	 * @return 
-	 * @throws Exception
 	 */
 	public static final String MACAddress() {
 		try {
 			NetworkInterface networkInterface = NetworkInterface.getByInetAddress(InetAddress.getLocalHost());
-			byte[] macBytes = networkInterface.getHardwareAddress();
+			byte[] macBytes = networkInterface == null ? null : networkInterface.getHardwareAddress();
+			if (macBytes == null) {
+				Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+				while (macBytes == null && interfaces != null && interfaces.hasMoreElements()) {
+					macBytes = interfaces.nextElement().getHardwareAddress();
+				}
+			}
+			if (macBytes == null) {
+				return UNKNOWN_MAC;
+			}
 			StringBuilder sb = new StringBuilder();
 			for (int i = 0; i < macBytes.length; i++) {
 				sb.append(String.format("%02X%s", macBytes[i], i < macBytes.length - 1 ? "-" : ""));
 			}
 			return sb.toString();
 		} catch (Exception e) {
-			return null;
+			return UNKNOWN_MAC;
 		}
 	}
 
@@ -46,7 +58,13 @@ public class PlatformUtils {
 			int pid = (Integer) pidMethod.invoke(mgmt);
 			return pid;
 		} catch (Exception e) {
-			return -1;
+			// 高版本jdk不允许反射访问sun.management, 退而从 RuntimeMXBean 的名字(pid@hostname)中解析
+			try {
+				String name = ManagementFactory.getRuntimeMXBean().getName();
+				return Integer.parseInt(name.substring(0, name.indexOf('@')));
+			} catch (Exception ex) {
+				return -1;
+			}
 		}
 	}
 	
@@ -0,0 +1,129 @@
+package cc.lixiaohui.DistributedLock.DistributedLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import io.lock.redis.LockManager;
+import io.lock.redis.RedisReentrantLock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 需要本地的redis server, 没有时跳过
+ * 
+ * @author lixiaohui
+ *
+ */
+public class AsyncLockTest {
+	
+	// ownerId 与线程属于不同的命名空间, 与线程id相等也不冲突
+	private static final long OTHER_OWNER = 1;
+	
+	private LockManager lockManager;
+	
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+		lockManager = new LockManager(LockManagerTest.HOST, LockManagerTest.PORT);
+	}
+	
+	@After
+	public void tearDown() {
+		if (lockManager != null) {
+			lockManager.release();
+		}
+	}
+	
+	@Test
+	public void testManyPendingAcquisitions() throws Exception {
+		final RedisReentrantLock lock = lockManager.getLock("asynclock.pending");
+		assertTrue(lock.tryLock());
+		final AtomicInteger holders = new AtomicInteger();
+		final AtomicInteger maxHolders = new AtomicInteger();
+		List<CompletableFuture<Boolean>> futures = new ArrayList<CompletableFuture<Boolean>>();
+		for (int i = 0; i < 200; i++) {
+			final long ownerId = 2 + i;
+			futures.add(lock.tryLockAsync(ownerId, 30, TimeUnit.SECONDS).thenCompose(new Function<Boolean, CompletableFuture<Boolean>>() {
+				public CompletableFuture<Boolean> apply(Boolean locked) {
+					if (!locked) {
+						return CompletableFuture.completedFuture(false);
+					}
+					int n = holders.incrementAndGet();
+					int max = maxHolders.get();
+					while (n > max && !maxHolders.compareAndSet(max, n)) {
+						max = maxHolders.get();
+					}
+					// 持有一段时间, 其他持有者此时进入会被发现
+					LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+					holders.decrementAndGet();
+					return lock.unlockAsync(ownerId).thenApply(new Function<Void, Boolean>() {
+						public Boolean apply(Void v) {
+							return true;
+						}
+					});
+				}
+			}));
+		}
+		lock.unlock();
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).get(30, TimeUnit.SECONDS);
+		for (CompletableFuture<Boolean> future : futures) {
+			assertTrue(future.get());
+		}
+		assertEquals(1, maxHolders.get());
+		assertFalse(lock.isHeldByCurrentThread());
+	}
+	
+	@Test
+	public void testTimeoutAndIllegalUnlock() throws Exception {
+		RedisReentrantLock lock = lockManager.getLock("asynclock.timeout");
+		assertTrue(lock.tryLock());
+		long start = System.currentTimeMillis();
+		assertFalse(lock.tryLockAsync(OTHER_OWNER, 200, TimeUnit.MILLISECONDS).get());
+		assertTrue(System.currentTimeMillis() - start >= 200);
+		try {
+			lock.unlockAsync(OTHER_OWNER).get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalMonitorStateException);
+		}
+		lock.unlock();
+		assertTrue(lock.tryLockAsync(OTHER_OWNER, 0, TimeUnit.MILLISECONDS).get());
+		lock.unlockAsync(OTHER_OWNER).get();
+	}
+	
+	@Test
+	public void testOwnerIdDoesNotCollideWithThread() throws Exception {
+		RedisReentrantLock lock = lockManager.getLock("asynclock.namespace");
+		assertTrue(lock.tryLock());
+		// 与当前线程id相等的 ownerId 是另一个持有者, 不是重入
+		assertFalse(lock.tryLockAsync(Thread.currentThread().getId(), 0, TimeUnit.MILLISECONDS).get());
+		lock.unlock();
+		assertFalse(lock.isLocked());
+		try {
+			lock.tryLockAsync(0, 0, TimeUnit.MILLISECONDS);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// 必须为正数
+		}
+		try {
+			lock.unlockAsync(-1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// 负数留给两级锁
+		}
+	}
+	
+}
@@ -0,0 +1,135 @@
+package cc.lixiaohui.DistributedLock.DistributedLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import io.lock.Lock;
+import io.lock.memory.MemoryLockBackend;
+import io.lock.redis.PooledJedisExecutor;
+import io.lock.redis.RedisLockBackend;
+import io.lock.redis.RedisLockNotifier;
+import io.lock.redis.RedisReentrantLock;
+import io.lock.redis.util.BinaryLockInfoCodec;
+import io.lock.spi.BackendLock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * 内存后端不需要redis server; redis后端需要本地的redis server, 没有时跳过
+ * 
+ * @author lixiaohui
+ *
+ */
+public class BackendLockTest {
+	
+	private int counter;
+	
+	@Test
+	public void testMemoryMutualExclusion() throws Exception {
+		MemoryLockBackend backend = new MemoryLockBackend();
+		final Lock lock = new BackendLock<MemoryLockBackend.Slot>(backend, "memory.mutex", 3000);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 4; i++) {
+			Thread t = new Thread(new Runnable() {
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						lock.lock();
+						try {
+							lock.lock(); // 重入
+							counter++;
+							lock.unlock();
+						} finally {
+							lock.unlock();
+						}
+					}
+				}
+			});
+			threads.add(t);
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertEquals(40000, counter);
+	}
+	
+	@Test
+	public void testMemoryLeaseExpires() throws Exception {
+		MemoryLockBackend backend = new MemoryLockBackend();
+		final BackendLock<MemoryLockBackend.Slot> lock = new BackendLock<MemoryLockBackend.Slot>(backend, "memory.lease", 100);
+		// 持有者不释放就退出
+		Thread crashed = new Thread(new Runnable() {
+			public void run() {
+				lock.lock();
+			}
+		});
+		crashed.start();
+		crashed.join();
+		assertTrue(lock.isLocked());
+		assertFalse(lock.tryLock());
+		assertTrue(lock.tryLock(1, TimeUnit.SECONDS));
+		lock.unlock();
+		assertFalse(lock.isLocked());
+	}
+	
+	@Test
+	public void testMemoryWaiterNotified() throws Exception {
+		MemoryLockBackend backend = new MemoryLockBackend();
+		final Lock lock = new BackendLock<MemoryLockBackend.Slot>(backend, "memory.notify", 60000);
+		lock.lock();
+		final AtomicBoolean acquired = new AtomicBoolean();
+		Thread waiter = new Thread(new Runnable() {
+			public void run() {
+				// 锁的有效期远大于等待时间, 只能被释放通知唤醒
+				acquired.set(lock.tryLock(2, TimeUnit.SECONDS));
+				if (acquired.get()) {
+					lock.unlock();
+				}
+			}
+		});
+		waiter.start();
+		Thread.sleep(50);
+		lock.unlock();
+		waiter.join();
+		assertTrue(acquired.get());
+	}
+	
+	@Test
+	public void testRedisBackendCompatible() throws Exception {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+		RedisLockBackend backend = new RedisLockBackend(new PooledJedisExecutor(new JedisPool(LockManagerTest.HOST, LockManagerTest.PORT)),
+				new RedisLockNotifier(new Jedis(LockManagerTest.HOST, LockManagerTest.PORT)), BinaryLockInfoCodec.INSTANCE);
+		final RedisReentrantLock redisLock = new RedisReentrantLock(new Jedis(LockManagerTest.HOST, LockManagerTest.PORT), "backend.redis", 3000);
+		try {
+			BackendLock<RedisLockBackend.Key> lock = new BackendLock<RedisLockBackend.Key>(backend, "backend.redis", 3000);
+			assertTrue(lock.tryLock());
+			// 锁的格式相同, 同一个线程视为重入
+			assertTrue(redisLock.tryLock());
+			redisLock.unlock();
+			final AtomicBoolean other = new AtomicBoolean(true);
+			Thread t = new Thread(new Runnable() {
+				public void run() {
+					other.set(redisLock.tryLock());
+				}
+			});
+			t.start();
+			t.join();
+			assertFalse(other.get());
+			lock.unlock();
+			assertFalse(lock.isLocked());
+		} finally {
+			redisLock.release();
+			backend.release();
+		}
+	}
+	
+}
@@ -0,0 +1,159 @@
+package cc.lixiaohui.DistributedLock.DistributedLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import io.lock.Lock;
+import io.lock.redis.LockManager;
+import io.lock.redis.RedisCohortLock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 需要本地的redis server, 没有时跳过
+ * 
+ * @author lixiaohui
+ *
+ */
+public class CohortLockTest {
+	
+	// 两个 LockManager 模拟两个jvm
+	private LockManager node1;
+	
+	private LockManager node2;
+	
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+		node1 = new LockManager(LockManagerTest.HOST, LockManagerTest.PORT);
+		node2 = new LockManager(LockManagerTest.HOST, LockManagerTest.PORT);
+	}
+	
+	@After
+	public void tearDown() {
+		if (node1 != null) {
+			node1.release();
+			node2.release();
+		}
+	}
+	
+	@Test
+	public void testMutualExclusionAcrossNodes() throws Exception {
+		final AtomicInteger inside = new AtomicInteger();
+		final AtomicInteger total = new AtomicInteger();
+		final AtomicInteger violations = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 8; i++) {
+			final Lock lock = (i % 2 == 0 ? node1 : node2).getCohortLock("cohortlock.mutex");
+			Thread t = new Thread(new Runnable() {
+				public void run() {
+					for (int j = 0; j < 50; j++) {
+						if (!lock.tryLock(10, TimeUnit.SECONDS)) {
+							violations.incrementAndGet();
+							continue;
+						}
+						try {
+							if (inside.incrementAndGet() != 1) {
+								violations.incrementAndGet();
+							}
+							total.incrementAndGet();
+							inside.decrementAndGet();
+						} finally {
+							lock.unlock();
+						}
+					}
+				}
+			});
+			threads.add(t);
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertEquals(0, violations.get());
+		assertEquals(400, total.get());
+		assertFalse(node1.getCohortLock("cohortlock.mutex").isLocked());
+		assertFalse(node2.getCohortLock("cohortlock.mutex").isLocked());
+	}
+	
+	@Test
+	public void testReentrantAndOtherNodeExcluded() throws Exception {
+		RedisCohortLock lock = node1.getCohortLock("cohortlock.reentrant");
+		assertTrue(lock.tryLock());
+		assertTrue(lock.tryLock());
+		assertFalse(node2.getCohortLock("cohortlock.reentrant").tryLock());
+		lock.unlock();
+		assertTrue(lock.isLocked());
+		lock.unlock();
+		assertFalse(lock.isLocked());
+		assertTrue(node2.getCohortLock("cohortlock.reentrant").tryLock(1, TimeUnit.SECONDS));
+		node2.getCohortLock("cohortlock.reentrant").unlock();
+	}
+	
+	@Test
+	public void testIsLockedDoesNotKeepGlobalHold() throws Exception {
+		final RedisCohortLock lock = node1.getCohortLock("cohortlock.query");
+		final CountDownLatch locked = new CountDownLatch(1);
+		final CountDownLatch queried = new CountDownLatch(1);
+		Thread holder = new Thread(new Runnable() {
+			public void run() {
+				lock.lock();
+				try {
+					locked.countDown();
+					queried.await(2, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					lock.unlock();
+				}
+			}
+		});
+		holder.start();
+		assertTrue(locked.await(5, TimeUnit.SECONDS));
+		// 查询不等待持有者, 也不被当作等待交接的本地线程
+		long start = System.nanoTime();
+		assertTrue(lock.isLocked());
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+		queried.countDown();
+		holder.join();
+		assertFalse(lock.isLocked());
+		assertTrue(node2.getCohortLock("cohortlock.query").tryLock(1, TimeUnit.SECONDS));
+		node2.getCohortLock("cohortlock.query").unlock();
+	}
+	
+	
+	@Test
+	public void testTimedOutWaiterReleasesHandOff() throws Exception {
+		final RedisCohortLock lock = node1.getCohortLock("cohortlock.handoff");
+		RedisCohortLock other = node2.getCohortLock("cohortlock.handoff");
+		// 释放时唯一排队的线程恰好超时: 释放者保留了redis中的锁, 由超时的线程释放
+		for (int i = 0; i < 20; i++) {
+			lock.lock();
+			Thread waiter = new Thread(new Runnable() {
+				public void run() {
+					if (lock.tryLock(50, TimeUnit.MILLISECONDS)) {
+						lock.unlock();
+					}
+				}
+			});
+			waiter.start();
+			Thread.sleep(45 + i / 2);
+			lock.unlock();
+			waiter.join();
+			assertFalse(lock.isLocked());
+			// 其他节点不需要等待有效期过去
+			assertTrue(other.tryLock());
+			other.unlock();
+		}
+	}
+	
+}
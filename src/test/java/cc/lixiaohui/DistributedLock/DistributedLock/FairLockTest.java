@@ -0,0 +1,117 @@
+package cc.lixiaohui.DistributedLock.DistributedLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import io.lock.Lock;
+import io.lock.redis.LockManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * 需要本地的redis server, 没有时跳过
+ * 
+ * @author lixiaohui
+ *
+ */
+public class FairLockTest {
+	
+	private LockManager lockManager;
+	
+	private Jedis jedis;
+	
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+		lockManager = new LockManager(LockManagerTest.HOST, LockManagerTest.PORT);
+		jedis = new Jedis(LockManagerTest.HOST, LockManagerTest.PORT);
+	}
+	
+	@After
+	public void tearDown() {
+		if (lockManager != null) {
+			lockManager.release();
+			jedis.close();
+		}
+	}
+	
+	@Test
+	public void testFifo() throws Exception {
+		final Lock lock = lockManager.getFairLock("fairlock.fifo");
+		assertTrue(lock.tryLock());
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 5; i++) {
+			final int id = i;
+			Thread t = new Thread(new Runnable() {
+				public void run() {
+					if (lock.tryLock(10, TimeUnit.SECONDS)) {
+						order.add(id);
+						lock.unlock();
+					}
+				}
+			});
+			threads.add(t);
+			t.start();
+			// 保证排队的先后顺序
+			Thread.sleep(100);
+		}
+		assertEquals(5, jedis.llen("lock.queue:fairlock.fifo").longValue());
+		// 有等待者时 tryLock 不插队
+		assertFalse(inOtherThread(lock));
+		lock.unlock();
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertEquals(5, order.size());
+		for (int i = 0; i < 5; i++) {
+			assertEquals(i, order.get(i).intValue());
+		}
+	}
+	
+	@Test
+	public void testCancelAndExpiredWaiter() throws Exception {
+		final Lock lock = lockManager.getFairLock("fairlock.cancel");
+		assertTrue(lock.tryLock());
+		Thread t = new Thread(new Runnable() {
+			public void run() {
+				lock.tryLock(200, TimeUnit.MILLISECONDS);
+			}
+		});
+		t.start();
+		t.join();
+		// 超时的等待者已出队
+		assertEquals(0, jedis.llen("lock.queue:fairlock.cancel").longValue());
+		lock.unlock();
+		
+		// 崩溃的等待者在排队资格过期后被移出队列
+		jedis.rpush("lock.queue:fairlock.cancel", "dead");
+		jedis.zadd("lock.timeout:fairlock.cancel", 0, "dead");
+		jedis.pexpire("lock.queue:fairlock.cancel", 10000);
+		assertTrue(lock.tryLock());
+		lock.unlock();
+	}
+	
+	private boolean inOtherThread(final Lock lock) throws InterruptedException {
+		final boolean[] locked = new boolean[1];
+		Thread t = new Thread(new Runnable() {
+			public void run() {
+				locked[0] = lock.tryLock();
+			}
+		});
+		t.start();
+		t.join();
+		return locked[0];
+	}
+	
+}
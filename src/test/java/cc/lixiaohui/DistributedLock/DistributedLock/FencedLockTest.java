@@ -0,0 +1,83 @@
+package cc.lixiaohui.DistributedLock.DistributedLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import io.lock.FencedLock;
+import io.lock.LockHandle;
+import io.lock.redis.RedisFencedLock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * 需要本地的redis server, 没有时跳过
+ * 
+ * @author lixiaohui
+ *
+ */
+public class FencedLockTest {
+	
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+	}
+	
+	@Test
+	public void testTokensIncrease() {
+		FencedLock lock = new RedisFencedLock(new Jedis(LockManagerTest.HOST, LockManagerTest.PORT), "fenced.increase", 3000, null);
+		try {
+			LockHandle first = lock.lockWithToken();
+			// 重入不改变 token
+			LockHandle reentered = lock.lockWithToken();
+			assertEquals(first.getFencingToken(), reentered.getFencingToken());
+			assertEquals(first.getFencingToken(), lock.getFencingToken());
+			reentered.unlock();
+			first.unlock();
+			
+			LockHandle second = lock.tryLockWithToken(1, TimeUnit.SECONDS);
+			assertNotNull(second);
+			assertTrue(second.getFencingToken() > first.getFencingToken());
+			second.unlock();
+		} finally {
+			lock.release();
+		}
+	}
+	
+	@Test
+	public void testStaleHolderHasSmallerToken() throws Exception {
+		final FencedLock lock = new RedisFencedLock(new Jedis(LockManagerTest.HOST, LockManagerTest.PORT), "fenced.stale", 200, null);
+		final FencedLock other = new RedisFencedLock(new Jedis(LockManagerTest.HOST, LockManagerTest.PORT), "fenced.stale", 200, null);
+		try {
+			LockHandle stale = lock.lockWithToken();
+			final AtomicLong token = new AtomicLong();
+			// 有效期过去后被其他持有者获取
+			Thread t = new Thread(new Runnable() {
+				public void run() {
+					LockHandle handle = other.tryLockWithToken(1, TimeUnit.SECONDS);
+					token.set(handle.getFencingToken());
+					handle.unlock();
+				}
+			});
+			t.start();
+			t.join();
+			assertTrue(token.get() > stale.getFencingToken());
+			try {
+				lock.getFencingToken();
+				fail("lease expired");
+			} catch (IllegalMonitorStateException expected) {
+			}
+		} finally {
+			lock.release();
+			other.release();
+		}
+	}
+	
+}
@@ -1,6 +1,12 @@
 package cc.lixiaohui.DistributedLock.DistributedLock;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import io.lock.redis.util.BinaryLockInfoCodec;
+import io.lock.redis.util.JsonLockInfoCodec;
 import io.lock.redis.util.LockInfo;
+import io.lock.redis.util.LockInfoCodec;
 
 import org.junit.Test;
 
@@ -19,4 +25,20 @@ public class LockInfoTest {
 		System.out.println(li.toString());
 	}
 	
+	@Test
+	public void testCodec() {
+		for (LockInfoCodec codec : new LockInfoCodec[] {BinaryLockInfoCodec.INSTANCE, JsonLockInfoCodec.INSTANCE}) {
+			LockInfo li = LockInfo.newForCurrThread(0);
+			
+			byte[] owner = codec.encodeOwner(li);
+			LockInfo decoded = codec.decodeOwner(owner, new LockInfo());
+			
+			assertEquals(li.getMac(), decoded.getMac());
+			assertEquals(li.getJvmPid(), decoded.getJvmPid());
+			assertEquals(li.getThreadId(), decoded.getThreadId());
+			assertArrayEquals(codec.currentOwner(), owner);
+			assertTrue(codec.isCurrentThread(owner));
+		}
+	}
+	
 }
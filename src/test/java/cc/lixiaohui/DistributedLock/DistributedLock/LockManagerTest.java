@@ -0,0 +1,223 @@
+package cc.lixiaohui.DistributedLock.DistributedLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import io.lock.Lock;
+import io.lock.redis.LockManager;
+import io.lock.redis.LockWatchdog;
+import io.lock.redis.RedisReentrantLock;
+import io.lock.redis.RedisReentrantReadWriteLock;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * 需要本地的redis server, 没有时跳过
+ * 
+ * @author lixiaohui
+ *
+ */
+public class LockManagerTest {
+	
+	static final String HOST = "localhost";
+	static final int PORT = 6379;
+	
+	private LockManager lockManager;
+	
+	private int counter;
+	
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(isRedisAvailable());
+		lockManager = new LockManager(HOST, PORT);
+	}
+	
+	@After
+	public void tearDown() {
+		if (lockManager != null) {
+			lockManager.release();
+		}
+	}
+	
+	@Test
+	public void testSameInstance() {
+		assertSame(lockManager.getLock("lock.manager"), lockManager.getLock("lock.manager"));
+	}
+	
+	@Test
+	public void testSharedAcrossThreads() throws Exception {
+		final Lock lock = lockManager.getLock("lock.manager.shared");
+		final int loops = 200;
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 16; i++) {
+			threads.add(new Thread(new Runnable() {
+				public void run() {
+					for (int j = 0; j < loops; j++) {
+						if (lock.tryLock(10, TimeUnit.SECONDS)) {
+							try {
+								counter++;
+							} finally {
+								lock.unlock();
+							}
+						}
+					}
+				}
+			}));
+		}
+		for (Thread t : threads) {
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertEquals(threads.size() * loops, counter);
+	}
+	
+	@Test
+	public void testWatchdog() throws Exception {
+		LockManager shortLeases = new LockManager(new GenericObjectPoolConfig(), HOST, PORT, 300);
+		LockWatchdog watchdog = new LockWatchdog(100);
+		shortLeases.setWatchdog(watchdog);
+		try {
+			final Lock lock = shortLeases.getLock("lock.manager.watchdog");
+			assertTrue(lock.tryLock());
+			assertEquals(1, watchdog.size());
+			// 持有时间远超过有效期, 锁仍未过期
+			Thread.sleep(1000);
+			final Lock other = lockManager.getLock("lock.manager.watchdog");
+			final AtomicBoolean otherLocked = new AtomicBoolean(true);
+			Thread t = new Thread(new Runnable() {
+				public void run() {
+					otherLocked.set(other.tryLock());
+				}
+			});
+			t.start();
+			t.join();
+			assertFalse(otherLocked.get());
+			lock.unlock();
+			assertEquals(0, watchdog.size());
+		} finally {
+			watchdog.release();
+			shortLeases.release();
+		}
+	}
+	
+	@Test
+	public void testWatchAgainAfterLeaseLost() throws Exception {
+		LockManager shortLeases = new LockManager(new GenericObjectPoolConfig(), HOST, PORT, 300);
+		LockWatchdog watchdog = new LockWatchdog(100);
+		shortLeases.setWatchdog(watchdog);
+		Jedis jedis = new Jedis(HOST, PORT);
+		try {
+			RedisReentrantLock lock = shortLeases.getLock("lock.manager.lost");
+			assertTrue(lock.tryLock());
+			// 持有在redis中消失, watchdog 发现后停止续约
+			jedis.del("lock.manager.lost");
+			for (int i = 0; i < 100 && watchdog.size() > 0; i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(0, watchdog.size());
+			RedisReentrantLock other = lockManager.getLock("lock.manager.lost");
+			assertTrue(other.tryLockAsync(1, 0, TimeUnit.MILLISECONDS).get());
+			// 本地估计的有效期过后的重入失败, 本地不再认为持有
+			Thread.sleep(400);
+			assertFalse(lock.tryLock());
+			assertFalse(lock.isHeldByCurrentThread());
+			other.unlockAsync(1).get();
+			// 重新获取到的是新的持有, 重新续约, 一次释放即完全释放
+			assertTrue(lock.tryLock());
+			assertEquals(1, watchdog.size());
+			lock.unlock();
+			assertEquals(0, watchdog.size());
+			assertFalse(jedis.exists("lock.manager.lost"));
+		} finally {
+			jedis.close();
+			watchdog.release();
+			shortLeases.release();
+		}
+	}
+	
+	@Test
+	public void testReadLockReleasedAfterLeaseLost() throws Exception {
+		LockManager shortLeases = new LockManager(new GenericObjectPoolConfig(), HOST, PORT, 300);
+		Jedis jedis = new Jedis(HOST, PORT);
+		try {
+			RedisReentrantReadWriteLock.ReadLock readLock = (RedisReentrantReadWriteLock.ReadLock) shortLeases.getReadWriteLock("lock.manager.readlost").readLock();
+			WeakReference<RedisReentrantReadWriteLock> held = new WeakReference<RedisReentrantReadWriteLock>(shortLeases.getReadWriteLock("lock.manager.readlost"));
+			assertTrue(readLock.tryLock());
+			// 租约过期后其他节点获取了写锁
+			Thread.sleep(400);
+			jedis.hset("lock.manager.readlost", "mode", "write");
+			jedis.hset("lock.manager.readlost", "other:write", "1");
+			jedis.pexpire("lock.manager.readlost", 5000);
+			// 本地估计的有效期过后的重入失败, 本地不再认为持有, 也不再强引用锁对象
+			assertFalse(readLock.tryLock());
+			assertFalse(readLock.isHeldByCurrentThread());
+			for (int i = 0; i < 20 && held.get() != null; i++) {
+				awaitGc();
+			}
+			assertTrue(held.get() == null);
+		} finally {
+			jedis.del("lock.manager.readlost", "lock.readers:lock.manager.readlost");
+			jedis.close();
+			shortLeases.release();
+		}
+	}
+	
+	@Test
+	public void testHeldLockNotCollected() throws Exception {
+		lockManager.getLock("lock.manager.pinned").lock();
+		lockManager.getLock("lock.manager.pinned").lock();
+		WeakReference<RedisReentrantLock> held = new WeakReference<RedisReentrantLock>(lockManager.getLock("lock.manager.pinned"));
+		assertTrue(awaitGc());
+		// 持有期间取回的是同一个对象, 本地的重入次数仍在
+		assertSame(held.get(), lockManager.getLock("lock.manager.pinned"));
+		lockManager.getLock("lock.manager.pinned").unlock();
+		assertTrue(lockManager.getLock("lock.manager.pinned").isLocked());
+		lockManager.getLock("lock.manager.pinned").unlock();
+		assertFalse(lockManager.getLock("lock.manager.pinned").isLocked());
+		// 释放之后可以被回收
+		for (int i = 0; i < 20 && held.get() != null; i++) {
+			awaitGc();
+		}
+		assertTrue(held.get() == null);
+	}
+	
+	/**
+	 * 触发GC直到一个只被弱引用的对象被回收
+	 */
+	private static boolean awaitGc() throws InterruptedException {
+		WeakReference<Object> probe = new WeakReference<Object>(new Object());
+		for (int i = 0; i < 50 && probe.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		return probe.get() == null;
+	}
+	
+	static boolean isRedisAvailable() {
+		Jedis jedis = new Jedis(HOST, PORT);
+		try {
+			return "PONG".equals(jedis.ping());
+		} catch (Exception e) {
+			return false;
+		} finally {
+			jedis.disconnect();
+		}
+	}
+	
+}
@@ -0,0 +1,82 @@
+package cc.lixiaohui.DistributedLock.DistributedLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import io.lock.metrics.LatencyHistogram;
+import io.lock.metrics.LockMetrics;
+import io.lock.metrics.LockStatsSnapshot;
+import io.lock.redis.LockManager;
+import io.lock.redis.RedisReentrantLock;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * @author lixiaohui
+ *
+ */
+public class LockMetricsTest {
+	
+	@Test
+	public void testHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000);
+		}
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(1000, snapshot.getCount());
+		assertEquals(1000000, snapshot.getMax());
+		assertEquals(500500, snapshot.getMean(), 0.001);
+		// 相对误差不超过 1/8
+		long p50 = snapshot.getValueAtQuantile(0.5);
+		assertTrue(p50 >= 500000 && p50 <= 500000 * 9 / 8);
+		long p99 = snapshot.getValueAtQuantile(0.99);
+		assertTrue(p99 >= 990000 && p99 <= 1000000);
+	}
+	
+	@Test
+	public void testLockStats() throws Exception {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+		LockManager lockManager = new LockManager(LockManagerTest.HOST, LockManagerTest.PORT);
+		LockMetrics metrics = new LockMetrics();
+		metrics.registerMBean("test");
+		try {
+			lockManager.setMetrics(metrics);
+			final RedisReentrantLock lock = lockManager.getLock("metrics:1");
+			assertTrue(lock.tryLock());
+			assertTrue(lock.tryLock()); // 本地重入, 不计入
+			Thread t = new Thread(new Runnable() {
+				public void run() {
+					lock.tryLock(100, TimeUnit.MILLISECONDS);
+				}
+			});
+			t.start();
+			t.join();
+			lock.unlock();
+			lock.unlock();
+			
+			List<LockStatsSnapshot> stats = metrics.getStats();
+			assertEquals(1, stats.size());
+			LockStatsSnapshot s = stats.get(0);
+			assertEquals("metrics", s.getKeyPrefix());
+			assertEquals(1, s.getAcquisitions());
+			assertEquals(1, s.getTimeouts());
+			assertTrue(s.getAttempts() >= 2);
+			assertEquals(s.getAttempts() + 1, s.getRedisCommands());
+			assertTrue(s.getHoldTimeMax() >= 100000);
+			
+			ObjectName name = new ObjectName("io.lock:type=LockMetrics,name=\"test\"");
+			assertTrue(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Stats") != null);
+		} finally {
+			metrics.release();
+			lockManager.release();
+		}
+	}
+	
+}
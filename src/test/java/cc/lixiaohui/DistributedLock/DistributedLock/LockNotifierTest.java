@@ -0,0 +1,88 @@
+package cc.lixiaohui.DistributedLock.DistributedLock;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import io.lock.redis.RedisLockNotifier;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * 需要本地的redis server, 没有时跳过
+ *
+ * @author lixiaohui
+ *
+ */
+public class LockNotifierTest {
+
+	@Test
+	public void testSubscribeBeforeConnected() throws Exception {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+		RedisLockNotifier notifier = new RedisLockNotifier(new Jedis(LockManagerTest.HOST, LockManagerTest.PORT));
+		Jedis publisher = new Jedis(LockManagerTest.HOST, LockManagerTest.PORT);
+		try {
+			// 订阅线程尚未连接时不阻塞的订阅, 连接后补上
+			RedisLockNotifier.Subscription early = notifier.subscribe("notifier:early", 0);
+			final CountDownLatch subscribed = new CountDownLatch(1);
+			early.whenSubscribed(new Runnable() {
+				public void run() {
+					subscribed.countDown();
+				}
+			});
+			// 等待订阅生效时不持有 notifier 的锁, 不会拖到超时
+			long start = System.nanoTime();
+			RedisLockNotifier.Subscription waited = notifier.subscribe("notifier:waited", 5000);
+			assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+			assertTrue(subscribed.await(2, TimeUnit.SECONDS));
+
+			publisher.publish(RedisLockNotifier.channelOf("notifier:early"), RedisLockNotifier.WAKE_ONE);
+			publisher.publish(RedisLockNotifier.channelOf("notifier:waited"), RedisLockNotifier.WAKE_ONE);
+			assertTrue(early.await(2, TimeUnit.SECONDS));
+			assertTrue(waited.await(2, TimeUnit.SECONDS));
+			notifier.unsubscribe(early);
+			notifier.unsubscribe(waited);
+		} finally {
+			publisher.close();
+			notifier.release();
+		}
+	}
+
+	@Test
+	public void testNotificationsWithoutWaiterDoNotAccumulate() throws Exception {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+		RedisLockNotifier notifier = new RedisLockNotifier(new Jedis(LockManagerTest.HOST, LockManagerTest.PORT));
+		Jedis publisher = new Jedis(LockManagerTest.HOST, LockManagerTest.PORT);
+		try {
+			RedisLockNotifier.Subscription subscription = notifier.subscribe("notifier:stale", 2000);
+			final CountDownLatch delivered = new CountDownLatch(8);
+			subscription.addObserver(new Runnable() {
+				public void run() {
+					delivered.countDown();
+				}
+			});
+			// 没有线程在 await 时收到的通知
+			for (int i = 0; i < 5; i++) {
+				publisher.publish(RedisLockNotifier.channelOf("notifier:stale"), RedisLockNotifier.WAKE_ONE);
+			}
+			for (int i = 0; i < 3; i++) {
+				publisher.publish(RedisLockNotifier.channelOf("notifier:stale"), RedisLockNotifier.WAKE_ALL);
+			}
+			assertTrue(delivered.await(2, TimeUnit.SECONDS));
+			// 唯一的订阅者最多留下一个许可, 之后的 await 仍然阻塞
+			assertTrue(subscription.await(0, TimeUnit.MILLISECONDS));
+			long start = System.nanoTime();
+			assertFalse(subscription.await(200, TimeUnit.MILLISECONDS));
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+			notifier.unsubscribe(subscription);
+		} finally {
+			publisher.close();
+			notifier.release();
+		}
+	}
+
+}
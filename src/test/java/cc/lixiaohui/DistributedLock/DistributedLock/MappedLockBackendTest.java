@@ -0,0 +1,139 @@
+package cc.lixiaohui.DistributedLock.DistributedLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import io.lock.Lock;
+import io.lock.mmap.MappedLockBackend;
+import io.lock.spi.BackendLock;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * 锁表文件放在临时目录; 跨进程的用例需要 /proc, 没有时跳过
+ *
+ * @author lixiaohui
+ *
+ */
+public class MappedLockBackendTest {
+
+	private static final String LOCKED = "locked";
+
+	private int counter;
+
+	@Test
+	public void testMutualExclusion() throws Exception {
+		File file = File.createTempFile("locks", ".tbl");
+		file.deleteOnExit();
+		// 两个后端映射同一个文件, 相当于两个进程
+		MappedLockBackend backend1 = new MappedLockBackend(file, 16);
+		MappedLockBackend backend2 = new MappedLockBackend(file, 16);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 4; i++) {
+			final Lock lock = new BackendLock<MappedLockBackend.Slot>(i % 2 == 0 ? backend1 : backend2, "mmap.mutex", 3000);
+			Thread t = new Thread(new Runnable() {
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						lock.lock();
+						try {
+							lock.lock(); // 重入
+							counter++;
+							lock.unlock();
+						} finally {
+							lock.unlock();
+						}
+					}
+				}
+			});
+			threads.add(t);
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertEquals(40000, counter);
+		// 文件已存在时以文件中的表大小为准
+		MappedLockBackend backend3 = new MappedLockBackend(file, 1024);
+		assertEquals(16, backend3.getSlotCount());
+		backend3.release();
+		backend1.release();
+		backend2.release();
+	}
+
+	@Test
+	public void testOwnerIdOutOf32Bits() throws Exception {
+		File file = File.createTempFile("locks", ".tbl");
+		file.deleteOnExit();
+		MappedLockBackend backend = new MappedLockBackend(file, 16);
+		try {
+			// 超出32位的 ownerId 不能被截断成另一个持有者
+			assertFalse(Arrays.equals(backend.owner(1), backend.owner(0xffffffffL)));
+			try {
+				backend.owner(0x100000001L);
+				fail();
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+			try {
+				backend.owner(-1);
+				fail();
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		} finally {
+			backend.release();
+		}
+	}
+
+	@Test
+	public void testDeadProcessReclaimed() throws Exception {
+		Assume.assumeTrue(new File("/proc/self").exists());
+		File file = File.createTempFile("locks", ".tbl");
+		file.deleteOnExit();
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), MappedLockBackendTest.class.getName(), file.getPath()).start();
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(child.getInputStream()));
+			String line;
+			while ((line = reader.readLine()) != null && !LOCKED.equals(line)) {
+				// 跳过子进程的日志输出
+			}
+			assertEquals(LOCKED, line);
+			MappedLockBackend backend = new MappedLockBackend(file);
+			BackendLock<MappedLockBackend.Slot> lock = new BackendLock<MappedLockBackend.Slot>(backend, "mmap.dead", 60000);
+			assertTrue(lock.isLocked());
+			assertFalse(lock.tryLock(100, TimeUnit.MILLISECONDS));
+			// 持有者进程退出, 不等有效期过去即可获取
+			child.destroy();
+			child.waitFor();
+			assertTrue(lock.tryLock(3, TimeUnit.SECONDS));
+			lock.unlock();
+			assertFalse(lock.isLocked());
+			backend.release();
+		} finally {
+			child.destroy();
+		}
+	}
+
+	/**
+	 * testDeadProcessReclaimed 的子进程: 获取锁后等待被杀死
+	 */
+	public static void main(String[] args) throws Exception {
+		MappedLockBackend backend = new MappedLockBackend(new File(args[0]));
+		new BackendLock<MappedLockBackend.Slot>(backend, "mmap.dead", 60000).lock();
+		System.out.println(LOCKED);
+		System.out.flush();
+		Thread.sleep(Long.MAX_VALUE);
+	}
+
+}
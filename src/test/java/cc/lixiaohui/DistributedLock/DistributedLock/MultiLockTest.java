@@ -0,0 +1,108 @@
+package cc.lixiaohui.DistributedLock.DistributedLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import io.lock.redis.LockManager;
+import io.lock.redis.RedisMultiLock;
+import io.lock.redis.RedisReentrantLock;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * 需要本地的redis server, 没有时跳过
+ * 
+ * @author lixiaohui
+ *
+ */
+public class MultiLockTest {
+	
+	private static final List<String> KEYS = Arrays.asList("multilock.a", "multilock.b", "multilock.c");
+	
+	private LockManager lockManager;
+	
+	private Jedis jedis;
+	
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+		lockManager = new LockManager(LockManagerTest.HOST, LockManagerTest.PORT);
+		jedis = new Jedis(LockManagerTest.HOST, LockManagerTest.PORT);
+	}
+	
+	@After
+	public void tearDown() {
+		if (lockManager != null) {
+			lockManager.release();
+			jedis.close();
+		}
+	}
+	
+	@Test
+	public void testAllOrNothing() throws Exception {
+		final RedisReentrantLock b = lockManager.getLock("multilock.b");
+		Thread holder = new Thread(new Runnable() {
+			public void run() {
+				b.lock();
+				try {
+					Thread.sleep(500);
+				} catch (InterruptedException e) {
+				}
+				b.unlock();
+			}
+		});
+		holder.start();
+		Thread.sleep(100);
+		assertNull(lockManager.lockAll(KEYS, 100, TimeUnit.MILLISECONDS));
+		assertFalse(jedis.exists("multilock.a"));
+		assertFalse(jedis.exists("multilock.c"));
+		
+		// b 释放后通过通知被唤醒, 而不是等到b过期
+		long start = System.currentTimeMillis();
+		RedisMultiLock lock = lockManager.lockAll(KEYS, 3, TimeUnit.SECONDS);
+		assertNotNull(lock);
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertTrue(lock.isHeldByCurrentThread());
+		lock.unlock();
+		for (String key : KEYS) {
+			assertFalse(jedis.exists(key));
+		}
+		holder.join();
+	}
+	
+	@Test
+	public void testReentrantWithSingleLock() throws Exception {
+		final RedisReentrantLock a = lockManager.getLock("multilock.a");
+		assertTrue(a.tryLock());
+		RedisMultiLock lock = lockManager.lockAll(KEYS, 1, TimeUnit.SECONDS);
+		assertNotNull(lock);
+		lock.unlock();
+		// a 仍被单独持有
+		assertTrue(jedis.exists("multilock.a"));
+		assertFalse(jedis.exists("multilock.b"));
+		final AtomicLong other = new AtomicLong(-1);
+		Thread t = new Thread(new Runnable() {
+			public void run() {
+				other.set(lockManager.lockAll(KEYS, 100, TimeUnit.MILLISECONDS) == null ? 0 : 1);
+			}
+		});
+		t.start();
+		t.join();
+		assertEquals(0, other.get());
+		a.unlock();
+		assertFalse(jedis.exists("multilock.a"));
+	}
+	
+}
@@ -0,0 +1,94 @@
+package cc.lixiaohui.DistributedLock.DistributedLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import io.lock.Lock;
+import io.lock.redis.JedisCallback;
+import io.lock.redis.LockManager;
+import io.lock.redis.PipelinedJedisExecutor;
+import io.lock.redis.RedisLockNotifier;
+import io.lock.redis.RedisReentrantLock;
+import io.lock.redis.util.BinaryLockInfoCodec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * 需要本地的redis server, 没有时跳过
+ *
+ * @author lixiaohui
+ *
+ */
+public class PipelinedExecutorTest {
+
+	private int counter;
+
+	@Test
+	public void testConcurrentLocks() throws Exception {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+		PipelinedJedisExecutor executor = new PipelinedJedisExecutor(LockManagerTest.HOST, LockManagerTest.PORT);
+		final LockManager lockManager = new LockManager(executor, new RedisLockNotifier(new Jedis(LockManagerTest.HOST, LockManagerTest.PORT)), 3000, BinaryLockInfoCodec.INSTANCE);
+		try {
+			final Lock shared = lockManager.getLock("pipeline:shared");
+			final AtomicBoolean failed = new AtomicBoolean();
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int i = 0; i < 16; i++) {
+				Thread t = new Thread(new Runnable() {
+					public void run() {
+						Lock own = lockManager.getLock("pipeline:" + Thread.currentThread().getId());
+						for (int j = 0; j < 200; j++) {
+							if (!own.tryLock()) {
+								failed.set(true);
+							}
+							own.unlock();
+							shared.lock();
+							try {
+								counter++;
+							} finally {
+								shared.unlock();
+							}
+						}
+					}
+				});
+				threads.add(t);
+				t.start();
+			}
+			for (Thread t : threads) {
+				t.join();
+			}
+			assertFalse(failed.get());
+			assertEquals(3200, counter);
+			// 并发的命令被合并写出
+			assertTrue(executor.getFlushCount() < executor.getCommandCount());
+		} finally {
+			lockManager.release();
+		}
+	}
+
+	@Test
+	public void testScriptReloaded() throws Exception {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+		PipelinedJedisExecutor executor = new PipelinedJedisExecutor(LockManagerTest.HOST, LockManagerTest.PORT);
+		try {
+			executor.execute(new JedisCallback<String>() {
+				public String doInJedis(Jedis jedis) {
+					return jedis.scriptFlush();
+				}
+			});
+			RedisReentrantLock lock = new RedisReentrantLock(executor, "pipeline:reload", 3000, null, BinaryLockInfoCodec.INSTANCE);
+			assertTrue(lock.tryLock());
+			lock.unlock();
+			assertFalse(lock.isLocked());
+		} finally {
+			executor.release();
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+package cc.lixiaohui.DistributedLock.DistributedLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import io.lock.redis.JedisExecutor;
+import io.lock.redis.PooledJedisExecutor;
+import io.lock.redis.RedisQuorumLock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Protocol;
+
+/**
+ * 需要本地的redis server, 没有时跳过. 以同一个server上的不同db模拟相互独立的节点
+ * 
+ * @author lixiaohui
+ *
+ */
+public class QuorumLockTest {
+	
+	private List<JedisExecutor> nodes;
+	
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+		nodes = new ArrayList<JedisExecutor>();
+		for (int db = 1; db <= 3; db++) {
+			nodes.add(new PooledJedisExecutor(new JedisPool(new GenericObjectPoolConfig(), LockManagerTest.HOST, LockManagerTest.PORT, Protocol.DEFAULT_TIMEOUT, null, db)));
+		}
+	}
+	
+	@After
+	public void tearDown() {
+		if (nodes != null) {
+			for (JedisExecutor node : nodes) {
+				node.release();
+			}
+		}
+	}
+	
+	@Test
+	public void testQuorumWithOneNodeDown() throws Exception {
+		List<JedisExecutor> withDeadNode = new ArrayList<JedisExecutor>(nodes.subList(0, 2));
+		// 没有redis server监听的端口
+		withDeadNode.add(new PooledJedisExecutor(new JedisPool(new GenericObjectPoolConfig(), LockManagerTest.HOST, 1)));
+		final RedisQuorumLock lock = new RedisQuorumLock(withDeadNode, "quorumlock.down", 3000);
+		assertEquals(2, lock.getQuorum());
+		assertTrue(lock.tryLock(1, TimeUnit.SECONDS));
+		assertTrue(lock.getRemainingValidity() > 2000);
+		final AtomicBoolean other = new AtomicBoolean(true);
+		Thread t = new Thread(new Runnable() {
+			public void run() {
+				other.set(lock.tryLock(200, TimeUnit.MILLISECONDS));
+			}
+		});
+		t.start();
+		t.join();
+		assertFalse(other.get());
+		lock.unlock();
+		assertFalse(db(1).exists("quorumlock.down"));
+		assertFalse(db(2).exists("quorumlock.down"));
+		withDeadNode.get(2).release();
+	}
+	
+	@Test
+	public void testMinorityReleasedOnFailure() throws Exception {
+		// 另一个持有者在多数节点上持有锁
+		db(1).hset("quorumlock.minority", "someone", "1");
+		db(2).hset("quorumlock.minority", "someone", "1");
+		try {
+			RedisQuorumLock lock = new RedisQuorumLock(nodes, "quorumlock.minority", 3000);
+			assertFalse(lock.tryLock());
+			// 在少数节点上获取到的锁被释放
+			long deadline = System.currentTimeMillis() + 1000;
+			while (db(3).exists("quorumlock.minority") && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertFalse(db(3).exists("quorumlock.minority"));
+		} finally {
+			db(1).del("quorumlock.minority");
+			db(2).del("quorumlock.minority");
+		}
+	}
+	
+	private Jedis db(int db) {
+		Jedis jedis = new Jedis(LockManagerTest.HOST, LockManagerTest.PORT);
+		jedis.select(db);
+		return jedis;
+	}
+	
+}
@@ -0,0 +1,155 @@
+package cc.lixiaohui.DistributedLock.DistributedLock;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import io.lock.Lock;
+import io.lock.ReadWriteLock;
+import io.lock.redis.LockManager;
+import io.lock.redis.PooledJedisExecutor;
+import io.lock.redis.RedisReentrantReadWriteLock;
+import io.lock.redis.util.BinaryLockInfoCodec;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.JedisPool;
+
+/**
+ * 需要本地的redis server, 没有时跳过
+ * 
+ * @author lixiaohui
+ *
+ */
+public class ReadWriteLockTest {
+	
+	private LockManager lockManager;
+	
+	private ExecutorService executor;
+	
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+		lockManager = new LockManager(LockManagerTest.HOST, LockManagerTest.PORT);
+		executor = Executors.newCachedThreadPool();
+	}
+	
+	@After
+	public void tearDown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		if (lockManager != null) {
+			lockManager.release();
+		}
+	}
+	
+	@Test
+	public void testReadersShareWritersExclude() throws Exception {
+		final ReadWriteLock rwLock = lockManager.getReadWriteLock("rwlock.share");
+		assertTrue(rwLock.readLock().tryLock());
+		assertTrue(rwLock.readLock().tryLock()); // 重入
+		// 其他线程可以同时获取读锁, 但不能获取写锁
+		assertTrue(inOtherThread(new Callable<Boolean>() {
+			public Boolean call() throws Exception {
+				boolean locked = rwLock.readLock().tryLock();
+				rwLock.readLock().unlock();
+				return locked && !rwLock.writeLock().tryLock(100, TimeUnit.MILLISECONDS);
+			}
+		}));
+		rwLock.readLock().unlock();
+		assertFalse(inOtherThread(tryLock(rwLock.writeLock())));
+		rwLock.readLock().unlock();
+		assertTrue(inOtherThread(tryLock(rwLock.writeLock())));
+	}
+	
+	@Test
+	public void testDowngrade() throws Exception {
+		final ReadWriteLock rwLock = lockManager.getReadWriteLock("rwlock.downgrade");
+		assertTrue(rwLock.writeLock().tryLock());
+		assertTrue(rwLock.writeLock().tryLock());
+		assertTrue(rwLock.readLock().tryLock());
+		assertFalse(inOtherThread(tryLock(rwLock.readLock())));
+		rwLock.writeLock().unlock();
+		rwLock.writeLock().unlock();
+		// 写锁释放后仍持有读锁
+		assertTrue(inOtherThread(tryLock(rwLock.readLock())));
+		assertFalse(inOtherThread(tryLock(rwLock.writeLock())));
+		rwLock.readLock().unlock();
+	}
+	
+	@Test
+	public void testReadersWokenByWriter() throws Exception {
+		final ReadWriteLock rwLock = lockManager.getReadWriteLock("rwlock.wake");
+		assertTrue(rwLock.writeLock().tryLock());
+		Future<Boolean> reader1 = executor.submit(waitForReadLock(rwLock));
+		Future<Boolean> reader2 = executor.submit(waitForReadLock(rwLock));
+		Thread.sleep(200);
+		long start = System.currentTimeMillis();
+		rwLock.writeLock().unlock();
+		assertTrue(reader1.get());
+		assertTrue(reader2.get());
+		// 由释放通知唤醒, 而不是等到写锁的有效期过去
+		assertTrue(System.currentTimeMillis() - start < 1000);
+	}
+	
+	@Test
+	public void testExpiredReaderDoesNotBlockWriter() throws Exception {
+		PooledJedisExecutor jedisExecutor = new PooledJedisExecutor(new JedisPool(LockManagerTest.HOST, LockManagerTest.PORT));
+		try {
+			// 读锁租约很短的读者获取读锁后不再释放(崩溃)
+			final ReadWriteLock crashed = new RedisReentrantReadWriteLock(jedisExecutor, "rwlock.expired", 300, 300, null, BinaryLockInfoCodec.INSTANCE);
+			assertTrue(inOtherThread(new Callable<Boolean>() {
+				public Boolean call() throws Exception {
+					return crashed.readLock().tryLock();
+				}
+			}));
+			// 另一个读者的获取不会延长崩溃读者的租约
+			ReadWriteLock rwLock = lockManager.getReadWriteLock("rwlock.expired");
+			assertTrue(rwLock.readLock().tryLock());
+			Thread.sleep(400);
+			rwLock.readLock().unlock();
+			assertTrue(inOtherThread(tryLock(rwLock.writeLock())));
+		} finally {
+			jedisExecutor.release();
+		}
+	}
+	
+	private Callable<Boolean> waitForReadLock(final ReadWriteLock rwLock) {
+		return new Callable<Boolean>() {
+			public Boolean call() throws Exception {
+				boolean locked = rwLock.readLock().tryLock(10, TimeUnit.SECONDS);
+				if (locked) {
+					// 等另一个读者也获取到读锁后再释放
+					Thread.sleep(300);
+					rwLock.readLock().unlock();
+				}
+				return locked;
+			}
+		};
+	}
+	
+	private Callable<Boolean> tryLock(final Lock lock) {
+		return new Callable<Boolean>() {
+			public Boolean call() throws Exception {
+				boolean locked = lock.tryLock();
+				if (locked) {
+					lock.unlock();
+				}
+				return locked;
+			}
+		};
+	}
+	
+	private boolean inOtherThread(Callable<Boolean> task) throws Exception {
+		return executor.submit(task).get();
+	}
+	
+}
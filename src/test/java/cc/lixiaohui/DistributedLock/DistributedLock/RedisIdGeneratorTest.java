@@ -0,0 +1,81 @@
+package cc.lixiaohui.DistributedLock.DistributedLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import io.lock.redis.PooledJedisExecutor;
+import io.lock.redis.RedisIdGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.JedisPool;
+
+/**
+ * 需要本地的redis server, 没有时跳过
+ * 
+ * @author lixiaohui
+ *
+ */
+public class RedisIdGeneratorTest {
+	
+	private static final String KEY = "id.generator.test";
+	
+	private PooledJedisExecutor executor;
+	
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+		executor = new PooledJedisExecutor(new JedisPool(LockManagerTest.HOST, LockManagerTest.PORT));
+	}
+	
+	@After
+	public void tearDown() {
+		if (executor != null) {
+			executor.release();
+		}
+	}
+	
+	@Test
+	public void testUniqueAcrossGenerators() throws Exception {
+		// 两个生成器模拟两个jvm
+		final RedisIdGenerator[] generators = { new RedisIdGenerator(executor, KEY), new RedisIdGenerator(executor, KEY) };
+		final int perThread = 50000;
+		final Set<Long> ids = ConcurrentHashMap.<Long> newKeySet();
+		final AtomicBoolean increasing = new AtomicBoolean(true);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 8; i++) {
+			final RedisIdGenerator generator = generators[i % 2];
+			Thread t = new Thread(new Runnable() {
+				public void run() {
+					long last = 0;
+					for (int j = 0; j < perThread; j++) {
+						long id = generator.nextId();
+						if (id <= last) {
+							increasing.set(false);
+						}
+						last = id;
+						ids.add(id);
+					}
+				}
+			});
+			threads.add(t);
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertEquals(8 * perThread, ids.size());
+		assertTrue(increasing.get());
+		// 消耗很快, 段变大
+		assertTrue(generators[0].getBlockSize() > RedisIdGenerator.DEFAULT_MIN_BLOCK_SIZE);
+	}
+	
+}
@@ -0,0 +1,117 @@
+package cc.lixiaohui.DistributedLock.DistributedLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import io.lock.redis.LockManager;
+import io.lock.redis.PooledJedisExecutor;
+import io.lock.redis.RedisSemaphore;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.JedisPool;
+
+/**
+ * 需要本地的redis server, 没有时跳过
+ * 
+ * @author lixiaohui
+ *
+ */
+public class SemaphoreTest {
+	
+	private LockManager lockManager;
+	
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+		lockManager = new LockManager(LockManagerTest.HOST, LockManagerTest.PORT);
+	}
+	
+	@After
+	public void tearDown() {
+		if (lockManager != null) {
+			lockManager.release();
+		}
+	}
+	
+	@Test
+	public void testPermits() throws Exception {
+		final RedisSemaphore semaphore = lockManager.getSemaphore("semaphore.permits", 2);
+		assertTrue(semaphore.tryAcquire());
+		
+		final CountDownLatch acquired = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Thread holder = new Thread(new Runnable() {
+			public void run() {
+				if (semaphore.tryAcquire()) {
+					acquired.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+					}
+					semaphore.release();
+				}
+			}
+		});
+		holder.start();
+		assertTrue(acquired.await(1, TimeUnit.SECONDS));
+		assertEquals(0, semaphore.availablePermits());
+		
+		final AtomicBoolean waiterAcquired = new AtomicBoolean();
+		Thread waiter = new Thread(new Runnable() {
+			public void run() {
+				try {
+					if (!semaphore.tryAcquire()) {
+						waiterAcquired.set(semaphore.tryAcquire(1, 2, TimeUnit.SECONDS));
+						semaphore.release();
+					}
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		waiter.start();
+		Thread.sleep(100);
+		release.countDown();
+		waiter.join();
+		holder.join();
+		assertTrue(waiterAcquired.get());
+		
+		try {
+			semaphore.release(2);
+			fail("releases more permits than held");
+		} catch (IllegalMonitorStateException expected) {
+		}
+		semaphore.release();
+		assertEquals(2, semaphore.availablePermits());
+	}
+	
+	@Test
+	public void testExpiredLeaseReclaimed() throws Exception {
+		PooledJedisExecutor executor = new PooledJedisExecutor(new JedisPool(LockManagerTest.HOST, LockManagerTest.PORT));
+		try {
+			final RedisSemaphore semaphore = new RedisSemaphore(executor, "semaphore.lease", 1, 200);
+			// 持有者不释放就退出
+			Thread crashed = new Thread(new Runnable() {
+				public void run() {
+					semaphore.tryAcquire();
+				}
+			});
+			crashed.start();
+			crashed.join();
+			assertFalse(semaphore.tryAcquire());
+			assertTrue(semaphore.tryAcquire(1, 1, TimeUnit.SECONDS));
+			semaphore.release();
+		} finally {
+			executor.release();
+		}
+	}
+	
+}
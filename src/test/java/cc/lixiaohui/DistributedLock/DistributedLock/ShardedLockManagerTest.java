@@ -0,0 +1,114 @@
+package cc.lixiaohui.DistributedLock.DistributedLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import io.lock.redis.LockManager;
+import io.lock.redis.PooledJedisExecutor;
+import io.lock.redis.RedisLockNotifier;
+import io.lock.redis.RedisMultiLock;
+import io.lock.redis.RedisReentrantLock;
+import io.lock.redis.ShardedLockManager;
+import io.lock.redis.util.BinaryLockInfoCodec;
+import io.lock.redis.util.ConsistentHash;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.Assume;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Protocol;
+
+/**
+ * 一致性哈希不需要redis server; 锁的部分需要本地的redis server, 没有时跳过, 以同一个server上的不同db模拟不同的server
+ * 
+ * @author lixiaohui
+ *
+ */
+public class ShardedLockManagerTest {
+	
+	@Test
+	public void testAddingNodeMovesOnlyItsShare() {
+		Map<String, String> nodes = new LinkedHashMap<String, String>();
+		for (int i = 0; i < 4; i++) {
+			nodes.put("redis" + i + ":6379", "redis" + i);
+		}
+		ConsistentHash<String> before = new ConsistentHash<String>(nodes, ConsistentHash.DEFAULT_VIRTUAL_NODES);
+		nodes.put("redis4:6379", "redis4");
+		ConsistentHash<String> after = new ConsistentHash<String>(nodes, ConsistentHash.DEFAULT_VIRTUAL_NODES);
+		
+		int keys = 100000, moved = 0;
+		for (int i = 0; i < keys; i++) {
+			String key = "lock:" + i;
+			String from = before.get(key), to = after.get(key);
+			if (!from.equals(to)) {
+				assertEquals("keys only move to the new node", "redis4", to);
+				moved++;
+			}
+		}
+		// 理想情况为 1/5
+		assertTrue("moved " + moved, moved > keys / 10 && moved < keys * 3 / 10);
+	}
+	
+	@Test
+	public void testHashTag() {
+		assertEquals("order:1", ConsistentHash.hashTag("{order:1}:items"));
+		assertEquals("{}:items", ConsistentHash.hashTag("{}:items"));
+		assertEquals("no tag", ConsistentHash.hashTag("no tag"));
+		
+		Map<String, String> nodes = new LinkedHashMap<String, String>();
+		for (int i = 0; i < 8; i++) {
+			nodes.put("redis" + i + ":6379", "redis" + i);
+		}
+		ConsistentHash<String> ring = new ConsistentHash<String>(nodes, ConsistentHash.DEFAULT_VIRTUAL_NODES);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(ring.get("{order:" + i + "}"), ring.get("{order:" + i + "}:items"));
+		}
+	}
+	
+	@Test
+	public void testShardedLocks() {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+		Map<String, LockManager> shards = new LinkedHashMap<String, LockManager>();
+		for (int db = 1; db <= 2; db++) {
+			JedisPool pool = new JedisPool(new GenericObjectPoolConfig(), LockManagerTest.HOST, LockManagerTest.PORT, Protocol.DEFAULT_TIMEOUT, null, db);
+			RedisLockNotifier notifier = new RedisLockNotifier(new Jedis(LockManagerTest.HOST, LockManagerTest.PORT));
+			shards.put("db" + db, new LockManager(new PooledJedisExecutor(pool), notifier, 3000, BinaryLockInfoCodec.INSTANCE));
+		}
+		ShardedLockManager lockManager = new ShardedLockManager(shards, ConsistentHash.DEFAULT_VIRTUAL_NODES);
+		try {
+			RedisReentrantLock lock = lockManager.getLock("sharded:1");
+			assertSame(lockManager.getShard("sharded:1").getLock("sharded:1"), lock);
+			assertTrue(lock.tryLock());
+			lock.unlock();
+			
+			RedisMultiLock multi = lockManager.lockAll(Arrays.asList("{sharded:order}:a", "{sharded:order}:b"), 1, TimeUnit.SECONDS);
+			assertNotNull(multi);
+			multi.unlock();
+			
+			// 找到不在同一个server上的两个 lockKey
+			String other = null;
+			for (int i = 0; other == null; i++) {
+				if (lockManager.getShard("sharded:" + i) != lockManager.getShard("sharded:1")) {
+					other = "sharded:" + i;
+				}
+			}
+			try {
+				lockManager.getMultiLock(Arrays.asList("sharded:1", other));
+				fail("keys on different shards");
+			} catch (IllegalArgumentException expected) {
+			}
+		} finally {
+			lockManager.release();
+		}
+	}
+	
+}
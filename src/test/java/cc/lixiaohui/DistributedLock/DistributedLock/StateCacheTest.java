@@ -0,0 +1,171 @@
+package cc.lixiaohui.DistributedLock.DistributedLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import io.lock.metrics.LockMetrics;
+import io.lock.redis.LockManager;
+import io.lock.redis.LockStateCache;
+import io.lock.redis.PooledJedisExecutor;
+import io.lock.redis.RedisLockNotifier;
+import io.lock.redis.RedisReentrantLock;
+import io.lock.redis.util.BinaryLockInfoCodec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.Assume;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * 需要本地的redis server, 没有时跳过. remote 相当于另一个jvm
+ *
+ * @author lixiaohui
+ *
+ */
+public class StateCacheTest {
+
+	private static final String LOCK_KEY = "cache:1";
+
+	private static final long HOLDER_ID = 1;
+
+	// 远大于用例的执行时间, 持有期间不会过期
+	private static final long HOLDER_LEASE = 60000L;
+
+	@Test
+	public void testTryLockServedFromCache() throws Exception {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+		LockManager remote = new LockManager(new GenericObjectPoolConfig(), LockManagerTest.HOST, LockManagerTest.PORT, HOLDER_LEASE);
+		PooledJedisExecutor executor = new PooledJedisExecutor(new JedisPool(LockManagerTest.HOST, LockManagerTest.PORT));
+		RedisLockNotifier notifier = new RedisLockNotifier(new Jedis(LockManagerTest.HOST, LockManagerTest.PORT));
+		LockStateCache cache = new LockStateCache(notifier);
+		LockMetrics metrics = new LockMetrics();
+		RedisReentrantLock holder = remote.getLock(LOCK_KEY);
+		try {
+			// 以不属于任何线程的 ownerId 持有, 相当于其他jvm的持有者
+			assertTrue(holder.tryLockAsync(HOLDER_ID, 1, TimeUnit.SECONDS).get());
+			final RedisReentrantLock lock = new RedisReentrantLock(executor, LOCK_KEY, 3000, notifier, BinaryLockInfoCodec.INSTANCE);
+			lock.setStateCache(cache);
+			lock.setMetrics(metrics);
+
+			// 第一次失败的尝试使缓存开始订阅, 等待订阅生效(与缓存共用同一个channel的订阅, 生效回调排在缓存的之后)
+			assertFalse(lock.tryLock());
+			RedisLockNotifier.Subscription subscription = notifier.subscribe(LOCK_KEY, 0);
+			final CountDownLatch subscribed = new CountDownLatch(1);
+			subscription.whenSubscribed(new Runnable() {
+				public void run() {
+					subscribed.countDown();
+				}
+			});
+			assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+			notifier.unsubscribe(subscription);
+
+			// 订阅生效之后的尝试结果被缓存
+			assertFalse(lock.tryLock());
+			assertTrue(cache.isHeldByOther(LOCK_KEY));
+			long commands = metrics.getStats().get(0).getRedisCommands();
+
+			final AtomicBoolean acquired = new AtomicBoolean();
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int i = 0; i < 4; i++) {
+				Thread t = new Thread(new Runnable() {
+					public void run() {
+						for (int j = 0; j < 1000; j++) {
+							if (lock.tryLock()) {
+								acquired.set(true);
+								lock.unlock();
+							}
+						}
+					}
+				});
+				threads.add(t);
+				t.start();
+			}
+			for (Thread t : threads) {
+				t.join();
+			}
+			assertFalse(acquired.get());
+			assertEquals(commands, metrics.getStats().get(0).getRedisCommands());
+
+			// 释放通知使缓存失效
+			holder.unlockAsync(HOLDER_ID).get();
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+			while (!lock.tryLock()) {
+				assertTrue(System.nanoTime() - deadline < 0);
+				Thread.sleep(1);
+			}
+			lock.unlock();
+		} finally {
+			cache.release();
+			metrics.release();
+			notifier.release();
+			executor.release();
+			remote.release();
+		}
+	}
+
+	@Test
+	public void testCachedKeyDoesNotShortenWaits() throws Exception {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+		LockManager remote = new LockManager(new GenericObjectPoolConfig(), LockManagerTest.HOST, LockManagerTest.PORT, HOLDER_LEASE);
+		PooledJedisExecutor executor = new PooledJedisExecutor(new JedisPool(LockManagerTest.HOST, LockManagerTest.PORT));
+		RedisLockNotifier notifier = new RedisLockNotifier(new Jedis(LockManagerTest.HOST, LockManagerTest.PORT));
+		LockStateCache cache = new LockStateCache(notifier);
+		LockMetrics metrics = new LockMetrics();
+		RedisReentrantLock holder = remote.getLock("cache:2");
+		try {
+			assertTrue(holder.tryLockAsync(HOLDER_ID, 1, TimeUnit.SECONDS).get());
+			RedisReentrantLock lock = new RedisReentrantLock(executor, "cache:2", 3000, notifier, BinaryLockInfoCodec.INSTANCE);
+			lock.setStateCache(cache);
+			lock.setMetrics(metrics);
+			// 失败的尝试使缓存开始订阅, 之后一直保持
+			assertFalse(lock.tryLock());
+			RedisLockNotifier.Subscription subscription = notifier.observe("cache:2");
+			final CountDownLatch subscribed = new CountDownLatch(1);
+			subscription.whenSubscribed(new Runnable() {
+				public void run() {
+					subscribed.countDown();
+				}
+			});
+			assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+			final CountDownLatch released = new CountDownLatch(21);
+			Runnable observer = new Runnable() {
+				public void run() {
+					released.countDown();
+				}
+			};
+			subscription.addObserver(observer);
+
+			// 其他节点没有竞争的获取/释放, 每次释放都发出通知
+			holder.unlockAsync(HOLDER_ID).get();
+			for (int i = 0; i < 20; i++) {
+				assertTrue(holder.tryLockAsync(HOLDER_ID, 1, TimeUnit.SECONDS).get());
+				holder.unlockAsync(HOLDER_ID).get();
+			}
+			assertTrue(released.await(5, TimeUnit.SECONDS));
+			subscription.removeObserver(observer);
+			notifier.unobserve(subscription);
+
+			// 有竞争时等待不会被之前的通知提前唤醒: 第一次尝试, 订阅后的一次尝试, 超时后的一次尝试
+			assertTrue(holder.tryLockAsync(HOLDER_ID, 1, TimeUnit.SECONDS).get());
+			long attempts = metrics.getStats().get(0).getAttempts();
+			assertFalse(lock.tryLock(300, TimeUnit.MILLISECONDS));
+			assertTrue(metrics.getStats().get(0).getAttempts() - attempts <= 3);
+			holder.unlockAsync(HOLDER_ID).get();
+		} finally {
+			cache.release();
+			metrics.release();
+			notifier.release();
+			executor.release();
+			remote.release();
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+package cc.lixiaohui.DistributedLock.DistributedLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import io.lock.WaitStrategies;
+import io.lock.WaitStrategy;
+import io.lock.metrics.LockMetrics;
+import io.lock.metrics.LockStatsSnapshot;
+import io.lock.redis.PooledJedisExecutor;
+import io.lock.redis.RedisReentrantLock;
+import io.lock.redis.RedisSemaphore;
+import io.lock.redis.util.BinaryLockInfoCodec;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import redis.clients.jedis.JedisPool;
+
+/**
+ * 等待策略本身不需要redis server; 加锁的用例需要本地的redis server, 没有时跳过
+ *
+ * @author lixiaohui
+ *
+ */
+public class WaitStrategyTest {
+
+	@Test
+	public void testStrategies() {
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(500), WaitStrategies.untilLeaseExpiry().waitNanos(1, 500));
+
+		WaitStrategy backoff = WaitStrategies.exponentialBackoff(1, 8);
+		for (int i = 0; i < 1000; i++) {
+			long first = backoff.waitNanos(1, 1000);
+			assertTrue(first > 0 && first <= TimeUnit.MILLISECONDS.toNanos(1));
+			long fourth = backoff.waitNanos(4, 1000);
+			assertTrue(fourth > 0 && fourth <= TimeUnit.MILLISECONDS.toNanos(8));
+			// 不超过上限, 也不超过持有者剩余的有效时长
+			assertTrue(backoff.waitNanos(Integer.MAX_VALUE, 1000) <= TimeUnit.MILLISECONDS.toNanos(8));
+			assertTrue(backoff.waitNanos(10, 2) <= TimeUnit.MILLISECONDS.toNanos(2));
+		}
+
+		WaitStrategy spin = WaitStrategies.boundedSpin(3, WaitStrategies.untilLeaseExpiry());
+		assertEquals(0, spin.waitNanos(3, 500));
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(500), spin.waitNanos(4, 500));
+	}
+
+	@Test
+	public void testBackoffWithoutNotifier() throws Exception {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+		PooledJedisExecutor executor = new PooledJedisExecutor(new JedisPool(LockManagerTest.HOST, LockManagerTest.PORT));
+		LockMetrics metrics = new LockMetrics();
+		try {
+			RedisReentrantLock holder = new RedisReentrantLock(executor, "wait:backoff", 3000, null, BinaryLockInfoCodec.INSTANCE);
+			assertTrue(holder.tryLock());
+			final RedisReentrantLock contender = new RedisReentrantLock(executor, "wait:backoff", 3000, null, BinaryLockInfoCodec.INSTANCE);
+			contender.setMetrics(metrics);
+			final boolean[] acquired = new boolean[1];
+			Thread t = new Thread(new Runnable() {
+				public void run() {
+					acquired[0] = contender.tryLock(500, TimeUnit.MILLISECONDS);
+				}
+			});
+			long start = System.nanoTime();
+			t.start();
+			t.join();
+			assertFalse(acquired[0]);
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(500));
+			// 没有通知时按默认的指数退避重试, 而不是不停地访问redis
+			LockStatsSnapshot s = metrics.getStats().get(0);
+			assertTrue("attempts: " + s.getAttempts(), s.getAttempts() < 50);
+			holder.unlock();
+		} finally {
+			metrics.release();
+			executor.release();
+		}
+	}
+
+	@Test
+	public void testSemaphoreUsesStrategy() throws Exception {
+		Assume.assumeTrue(LockManagerTest.isRedisAvailable());
+		PooledJedisExecutor executor = new PooledJedisExecutor(new JedisPool(LockManagerTest.HOST, LockManagerTest.PORT));
+		try {
+			RedisSemaphore semaphore = new RedisSemaphore(executor, "wait:semaphore", 1, 3000);
+			assertTrue(semaphore.tryAcquire());
+			final RedisSemaphore contender = new RedisSemaphore(executor, "wait:semaphore", 1, 3000);
+			final AtomicInteger waits = new AtomicInteger();
+			contender.setWaitStrategy(new WaitStrategy() {
+				public long waitNanos(int attempts, long ttlMillis) {
+					waits.incrementAndGet();
+					return TimeUnit.MILLISECONDS.toNanos(50);
+				}
+			});
+			final boolean[] acquired = new boolean[1];
+			Thread t = new Thread(new Runnable() {
+				public void run() {
+					try {
+						acquired[0] = contender.tryAcquire(1, 300, TimeUnit.MILLISECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			t.start();
+			t.join();
+			assertFalse(acquired[0]);
+			// 每 50ms 重试一次, 而不是按租约剩余的有效时长等待
+			assertTrue("waits: " + waits.get(), waits.get() >= 3 && waits.get() <= 10);
+			semaphore.release();
+		} finally {
+			executor.release();
+		}
+	}
+
+}